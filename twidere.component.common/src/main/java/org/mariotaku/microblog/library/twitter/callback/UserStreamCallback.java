@@ -19,7 +19,6 @@
 package org.mariotaku.microblog.library.twitter.callback;
 
 import android.support.annotation.NonNull;
-import android.text.TextUtils;
 
 import org.mariotaku.microblog.library.MicroBlogException;
 import org.mariotaku.microblog.library.twitter.model.DeletionEvent;
@@ -27,19 +26,19 @@ import org.mariotaku.microblog.library.twitter.model.DirectMessage;
 import org.mariotaku.microblog.library.twitter.model.Status;
 import org.mariotaku.microblog.library.twitter.model.StatusTargetObjectEvent;
 import org.mariotaku.microblog.library.twitter.model.StreamEvent;
+import org.mariotaku.microblog.library.twitter.model.TwitterStreamDecoder;
 import org.mariotaku.microblog.library.twitter.model.TwitterStreamObject;
 import org.mariotaku.microblog.library.twitter.model.TwitterStreamObject.Type;
 import org.mariotaku.microblog.library.twitter.model.User;
 import org.mariotaku.microblog.library.twitter.model.UserList;
 import org.mariotaku.microblog.library.twitter.model.UserListTargetObjectEvent;
 import org.mariotaku.microblog.library.twitter.model.Warning;
-import org.mariotaku.microblog.library.util.CRLFLineReader;
+import org.mariotaku.microblog.library.util.CRLFByteLineReader;
 import org.mariotaku.restfu.callback.RawCallback;
 import org.mariotaku.restfu.http.HttpResponse;
-import org.mariotaku.twidere.util.JsonSerializer;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.Date;
 
 /**
@@ -48,6 +47,8 @@ import java.util.Date;
 @SuppressWarnings({"WeakerAccess"})
 public abstract class UserStreamCallback implements RawCallback<MicroBlogException> {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private boolean connected;
 
     private boolean disconnected;
@@ -60,9 +61,10 @@ public abstract class UserStreamCallback implements RawCallback<MicroBlogExcepti
             onException(cause);
             return;
         }
-        final CRLFLineReader reader = new CRLFLineReader(new InputStreamReader(response.getBody().stream(), "UTF-8"));
+        final CRLFByteLineReader reader = new CRLFByteLineReader(response.getBody().stream());
+        final TwitterStreamDecoder decoder = new TwitterStreamDecoder();
         try {
-            for (String line; (line = reader.readLine()) != null && !disconnected; ) {
+            for (int length; (length = reader.readLine()) != -1 && !disconnected; ) {
                 if (Thread.currentThread().isInterrupted()) {
                     break;
                 }
@@ -70,10 +72,12 @@ public abstract class UserStreamCallback implements RawCallback<MicroBlogExcepti
                     onConnected();
                     connected = true;
                 }
-                if (TextUtils.isEmpty(line)) continue;
-                final TwitterStreamObject object = JsonSerializer.parse(line, TwitterStreamObject.class);
-                if (!handleEvent(object, line)) {
-                    onUnhandledEvent(object, line);
+                if (length == 0) continue;
+                final byte[] line = reader.getLine();
+                if (!decoder.decode(line, 0, length)) continue;
+                if (!handleEvent(decoder)) {
+                    //noinspection ConstantConditions
+                    onUnhandledEvent(decoder.getObject(), new String(line, 0, length, UTF_8));
                 }
             }
         } catch (IOException e) {
@@ -92,13 +96,27 @@ public abstract class UserStreamCallback implements RawCallback<MicroBlogExcepti
         disconnected = true;
     }
 
-    private boolean handleEvent(final TwitterStreamObject object, final String json) throws IOException {
-        switch (object.determine()) {
+    /**
+     * Feed a single message to this callback, mainly for replaying recorded streams
+     *
+     * @return True if message handled
+     */
+    public final boolean handleMessage(@NonNull final TwitterStreamDecoder decoder,
+            @NonNull final byte[] data, final int offset, final int length) throws IOException {
+        if (!decoder.decode(data, offset, length)) return false;
+        return handleEvent(decoder);
+    }
+
+    private boolean handleEvent(final TwitterStreamDecoder decoder) {
+        final TwitterStreamObject object = decoder.getObject();
+        if (object == null) return false;
+        switch (decoder.getType()) {
             case Type.FRIENDS: {
                 return onFriendList(object.getFriends());
             }
             case Type.STATUS: {
-                return onStatus(JsonSerializer.parse(json, Status.class));
+                //noinspection ConstantConditions
+                return onStatus(decoder.getStatus());
             }
             case Type.DIRECT_MESSAGE: {
                 return onDirectMessage(object.getDirectMessage());
@@ -123,82 +141,82 @@ public abstract class UserStreamCallback implements RawCallback<MicroBlogExcepti
                 return onScrubGeo(scrubGeo.getUserId(), scrubGeo.getUpToStatusId());
             }
             case Type.FAVORITE: {
-                StatusTargetObjectEvent event = JsonSerializer.parse(json, StatusTargetObjectEvent.class);
+                StatusTargetObjectEvent event = (StatusTargetObjectEvent) decoder.getEvent();
                 return onFavorite(event.getCreatedAt(), event.getSource(), event.getTarget(),
                         event.getTargetObject());
             }
             case Type.UNFAVORITE: {
-                StatusTargetObjectEvent event = JsonSerializer.parse(json, StatusTargetObjectEvent.class);
+                StatusTargetObjectEvent event = (StatusTargetObjectEvent) decoder.getEvent();
                 return onUnfavorite(event.getSource(), event.getTarget(), event.getTargetObject());
             }
             case Type.QUOTED_TWEET: {
-                StatusTargetObjectEvent event = JsonSerializer.parse(json, StatusTargetObjectEvent.class);
+                StatusTargetObjectEvent event = (StatusTargetObjectEvent) decoder.getEvent();
                 return onQuotedTweet(event.getCreatedAt(), event.getSource(), event.getTarget(),
                         event.getTargetObject());
             }
             case Type.RETWEETED_RETWEET: {
-                StatusTargetObjectEvent event = JsonSerializer.parse(json, StatusTargetObjectEvent.class);
+                StatusTargetObjectEvent event = (StatusTargetObjectEvent) decoder.getEvent();
                 return onRetweetedRetweet(event.getCreatedAt(), event.getSource(), event.getTarget(),
                         event.getTargetObject());
             }
             case Type.FAVORITED_RETWEET: {
-                StatusTargetObjectEvent event = JsonSerializer.parse(json, StatusTargetObjectEvent.class);
+                StatusTargetObjectEvent event = (StatusTargetObjectEvent) decoder.getEvent();
                 return onFavoritedRetweet(event.getCreatedAt(), event.getSource(), event.getTarget(),
                         event.getTargetObject());
             }
             case Type.FOLLOW: {
-                StreamEvent event = JsonSerializer.parse(json, StreamEvent.class);
+                StreamEvent event = decoder.getEvent();
                 return onFollow(event.getCreatedAt(), event.getSource(), event.getTarget());
             }
             case Type.UNFOLLOW: {
-                StreamEvent event = JsonSerializer.parse(json, StreamEvent.class);
+                StreamEvent event = decoder.getEvent();
                 return onUnfollow(event.getCreatedAt(), event.getSource(), event.getTarget());
             }
             case Type.USER_LIST_MEMBER_ADDED: {
-                UserListTargetObjectEvent event = JsonSerializer.parse(json, UserListTargetObjectEvent.class);
+                UserListTargetObjectEvent event = (UserListTargetObjectEvent) decoder.getEvent();
                 return onUserListMemberAddition(event.getCreatedAt(), event.getSource(),
                         event.getTarget(), event.getTargetObject());
             }
             case Type.USER_LIST_MEMBER_DELETED: {
-                UserListTargetObjectEvent event = JsonSerializer.parse(json, UserListTargetObjectEvent.class);
+                UserListTargetObjectEvent event = (UserListTargetObjectEvent) decoder.getEvent();
                 return onUserListMemberDeletion(event.getCreatedAt(), event.getSource(),
                         event.getTarget(), event.getTargetObject());
             }
             case Type.USER_LIST_SUBSCRIBED: {
-                UserListTargetObjectEvent event = JsonSerializer.parse(json, UserListTargetObjectEvent.class);
+                UserListTargetObjectEvent event = (UserListTargetObjectEvent) decoder.getEvent();
                 return onUserListSubscription(event.getCreatedAt(), event.getSource(),
                         event.getTarget(), event.getTargetObject());
             }
             case Type.USER_LIST_UNSUBSCRIBED: {
-                UserListTargetObjectEvent event = JsonSerializer.parse(json, UserListTargetObjectEvent.class);
+                UserListTargetObjectEvent event = (UserListTargetObjectEvent) decoder.getEvent();
                 return onUserListUnsubscription(event.getCreatedAt(), event.getSource(),
                         event.getTarget(), event.getTargetObject());
             }
             case Type.USER_LIST_CREATED: {
-                UserListTargetObjectEvent event = JsonSerializer.parse(json, UserListTargetObjectEvent.class);
+                UserListTargetObjectEvent event = (UserListTargetObjectEvent) decoder.getEvent();
                 return onUserListCreation(event.getCreatedAt(), event.getSource(),
                         event.getTargetObject());
             }
             case Type.USER_LIST_UPDATED: {
-                UserListTargetObjectEvent event = JsonSerializer.parse(json, UserListTargetObjectEvent.class);
+                UserListTargetObjectEvent event = (UserListTargetObjectEvent) decoder.getEvent();
                 return onUserListUpdate(event.getCreatedAt(), event.getSource(),
                         event.getTargetObject());
             }
             case Type.USER_LIST_DESTROYED: {
-                UserListTargetObjectEvent event = JsonSerializer.parse(json, UserListTargetObjectEvent.class);
+                UserListTargetObjectEvent event = (UserListTargetObjectEvent) decoder.getEvent();
                 return onUserListDeletion(event.getCreatedAt(), event.getSource(),
                         event.getTargetObject());
             }
             case Type.USER_UPDATE: {
-                StreamEvent event = JsonSerializer.parse(json, StreamEvent.class);
+                StreamEvent event = decoder.getEvent();
                 return onUserProfileUpdate(event.getCreatedAt(), event.getSource());
             }
             case Type.BLOCK: {
-                StreamEvent event = JsonSerializer.parse(json, StreamEvent.class);
+                StreamEvent event = decoder.getEvent();
                 return onBlock(event.getCreatedAt(), event.getSource(), event.getTarget());
             }
             case Type.UNBLOCK: {
-                StreamEvent event = JsonSerializer.parse(json, StreamEvent.class);
+                StreamEvent event = decoder.getEvent();
                 return onUnblock(event.getCreatedAt(), event.getSource(), event.getTarget());
             }
             case Type.DISCONNECTION:
@@ -37,6 +37,8 @@ public class MediaUploadResponse extends TwitterResponseObject implements Twitte
     String mediaId;
     @JsonField(name = "size")
     long size;
+    @JsonField(name = "expires_after_secs")
+    long expiresAfterSecs;
     @JsonField(name = "image")
     Image image;
     @JsonField(name = "video")
@@ -57,6 +59,10 @@ public class MediaUploadResponse extends TwitterResponseObject implements Twitte
         return size;
     }
 
+    public long getExpiresAfterSecs() {
+        return expiresAfterSecs;
+    }
+
     public Video getVideo() {
         return video;
     }
@@ -71,6 +77,7 @@ public class MediaUploadResponse extends TwitterResponseObject implements Twitte
         return "MediaUploadResponse{" +
                 "mediaId='" + mediaId + '\'' +
                 ", size=" + size +
+                ", expiresAfterSecs=" + expiresAfterSecs +
                 ", image=" + image +
                 ", video=" + video +
                 ", processingInfo=" + processingInfo +
@@ -0,0 +1,239 @@
+/*
+ *         Twidere - Twitter client for Android
+ *
+ * Copyright 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.microblog.library.twitter.model;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bluelinelabs.logansquare.JsonMapper;
+import com.bluelinelabs.logansquare.LoganSquare;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import org.mariotaku.commons.logansquare.LoganSquareMapperFinder;
+import org.mariotaku.microblog.library.twitter.model.TwitterStreamObject.Type;
+
+import java.io.IOException;
+
+/**
+ * Decodes one user stream message into {@link TwitterStreamObject} and its typed payload in a
+ * single parser pass.
+ * <p>
+ * Type of a message is decided by which top level fields present, so every field is routed while
+ * parsing: envelope fields go to {@link TwitterStreamObject}, {@code source}/{@code target}
+ * objects to the event, and everything else to {@link Status}. {@code target_object} depends on
+ * {@code event}, it's copied aside only if it comes before {@code event}.
+ * <p>
+ * Not thread safe, results are valid until next {@link #decode(byte[], int, int)} call.
+ * <p>
+ * Created by mariotaku on 2017/5/23.
+ */
+public final class TwitterStreamDecoder {
+
+    private final JsonMapper<TwitterStreamObject> objectMapper = LoganSquareMapperFinder.mapperFor(TwitterStreamObject.class);
+    private final JsonMapper<Status> statusMapper = LoganSquareMapperFinder.mapperFor(Status.class);
+    private final JsonMapper<User> userMapper = LoganSquareMapperFinder.mapperFor(User.class);
+    private final JsonMapper<UserList> userListMapper = LoganSquareMapperFinder.mapperFor(UserList.class);
+
+    private final ByteArrayBuilder deferredTargetObject = new ByteArrayBuilder();
+
+    private TwitterStreamObject object;
+    @Type
+    private String type;
+    private Status status;
+    private StreamEvent event;
+
+    /**
+     * @return True if data contains a JSON object
+     */
+    public boolean decode(@NonNull byte[] data, int offset, int length) throws IOException {
+        object = null;
+        type = Type.UNKNOWN;
+        status = null;
+        event = null;
+        deferredTargetObject.reset();
+
+        final JsonParser parser = LoganSquare.JSON_FACTORY.createParser(data, offset, length);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return false;
+            final TwitterStreamObject object = new TwitterStreamObject();
+            final Status status = new Status();
+            User source = null, target = null;
+            Object targetObject = null;
+            while (parser.nextToken() != JsonToken.END_OBJECT) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                switch (fieldName) {
+                    case "sender":
+                    case "event":
+                    case "direct_message":
+                    case "delete":
+                    case "disconnect":
+                    case "limit":
+                    case "warning":
+                    case "scrub_geo":
+                    case "friends":
+                    case "friends_str": {
+                        objectMapper.parseField(object, fieldName, parser);
+                        break;
+                    }
+                    case "source": {
+                        if (token == JsonToken.START_OBJECT) {
+                            source = userMapper.parse(parser);
+                        } else {
+                            // Source of a status is a string
+                            statusMapper.parseField(status, fieldName, parser);
+                        }
+                        break;
+                    }
+                    case "target": {
+                        target = userMapper.parse(parser);
+                        break;
+                    }
+                    case "target_object": {
+                        if (object.event != null) {
+                            targetObject = parseTargetObject(object.event, parser);
+                        } else {
+                            final JsonGenerator generator = LoganSquare.JSON_FACTORY
+                                    .createGenerator(deferredTargetObject);
+                            generator.copyCurrentStructure(parser);
+                            generator.close();
+                        }
+                        break;
+                    }
+                    default: {
+                        statusMapper.parseField(status, fieldName, parser);
+                        break;
+                    }
+                }
+                parser.skipChildren();
+            }
+            // Status text is also what tells a status apart
+            object.text = status.text;
+
+            if (targetObject == null && deferredTargetObject.size() > 0 && object.event != null) {
+                final JsonParser deferredParser = LoganSquare.JSON_FACTORY.createParser(
+                        deferredTargetObject.toByteArray());
+                try {
+                    deferredParser.nextToken();
+                    targetObject = parseTargetObject(object.event, deferredParser);
+                } finally {
+                    deferredParser.close();
+                }
+            }
+
+            this.object = object;
+            this.type = object.determine();
+            switch (type) {
+                case Type.STATUS: {
+                    status.afterStatusParsed();
+                    this.status = status;
+                    break;
+                }
+                case Type.FAVORITE:
+                case Type.UNFAVORITE:
+                case Type.QUOTED_TWEET:
+                case Type.RETWEETED_RETWEET:
+                case Type.FAVORITED_RETWEET: {
+                    final StatusTargetObjectEvent event = new StatusTargetObjectEvent();
+                    if (targetObject instanceof Status) {
+                        event.targetObject = (Status) targetObject;
+                    }
+                    this.event = fillEvent(event, status, source, target);
+                    break;
+                }
+                case Type.USER_LIST_MEMBER_ADDED:
+                case Type.USER_LIST_MEMBER_DELETED:
+                case Type.USER_LIST_SUBSCRIBED:
+                case Type.USER_LIST_UNSUBSCRIBED:
+                case Type.USER_LIST_CREATED:
+                case Type.USER_LIST_UPDATED:
+                case Type.USER_LIST_DESTROYED: {
+                    final UserListTargetObjectEvent event = new UserListTargetObjectEvent();
+                    if (targetObject instanceof UserList) {
+                        event.targetObject = (UserList) targetObject;
+                    }
+                    this.event = fillEvent(event, status, source, target);
+                    break;
+                }
+                default: {
+                    this.event = fillEvent(new StreamEvent(), status, source, target);
+                    break;
+                }
+            }
+            return true;
+        } finally {
+            parser.close();
+        }
+    }
+
+    @Nullable
+    public TwitterStreamObject getObject() {
+        return object;
+    }
+
+    @Type
+    @NonNull
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return Status if type is {@link Type#STATUS}
+     */
+    @Nullable
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return {@link StatusTargetObjectEvent} or {@link UserListTargetObjectEvent} depending on
+     * type, {@link StreamEvent} for other events
+     */
+    @Nullable
+    public StreamEvent getEvent() {
+        return event;
+    }
+
+    private Object parseTargetObject(@NonNull String event, JsonParser parser) throws IOException {
+        if (event.startsWith("list_")) {
+            return userListMapper.parse(parser);
+        }
+        switch (event) {
+            case "favorite":
+            case "unfavorite":
+            case "quoted_tweet":
+            case "retweeted_retweet":
+            case "favorited_retweet": {
+                return statusMapper.parse(parser);
+            }
+        }
+        return null;
+    }
+
+    private static StreamEvent fillEvent(StreamEvent event, Status status, User source, User target) {
+        // created_at of event was parsed as a status field, same date format
+        event.createdAt = status.createdAt;
+        event.source = source;
+        event.target = target;
+        return event;
+    }
+}
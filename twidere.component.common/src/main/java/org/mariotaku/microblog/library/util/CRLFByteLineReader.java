@@ -0,0 +1,102 @@
+/*
+ *         Twidere - Twitter client for Android
+ *
+ * Copyright 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.microblog.library.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Byte oriented counterpart of {@link CRLFLineReader}, lines are terminated by exactly CRLF.
+ * <p>
+ * Bytes of current line are kept in a buffer reused across lines, so no String is created
+ * unless caller asks for one.
+ * <p>
+ * Created by mariotaku on 2017/5/23.
+ */
+public final class CRLFByteLineReader implements Closeable {
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private final InputStream in;
+    private final byte[] readBuffer;
+    private int readPos, readLimit;
+
+    private byte[] line;
+    private int lineLength;
+
+    public CRLFByteLineReader(InputStream in) {
+        this(in, 8192);
+    }
+
+    public CRLFByteLineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.readBuffer = new byte[bufferSize];
+        this.line = new byte[bufferSize];
+    }
+
+    /**
+     * Read next line into {@link #getLine()}
+     *
+     * @return Length of the line without CRLF, or -1 if end of stream reached
+     */
+    public int readLine() throws IOException {
+        lineLength = 0;
+        boolean prevWasCR = false, readAny = false;
+        while (true) {
+            if (readPos >= readLimit) {
+                readLimit = in.read(readBuffer, 0, readBuffer.length);
+                readPos = 0;
+                if (readLimit <= 0) {
+                    readLimit = 0;
+                    return readAny ? lineLength : -1;
+                }
+            }
+            readAny = true;
+            final byte b = readBuffer[readPos++];
+            if (prevWasCR && b == LF) {
+                // Drop CR appended before
+                return --lineLength;
+            }
+            prevWasCR = b == CR;
+            if (lineLength == line.length) {
+                final byte[] grown = new byte[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, lineLength);
+                line = grown;
+            }
+            line[lineLength++] = b;
+        }
+    }
+
+    /**
+     * @return Buffer holding current line, valid until next {@link #readLine()} call
+     */
+    public byte[] getLine() {
+        return line;
+    }
+
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
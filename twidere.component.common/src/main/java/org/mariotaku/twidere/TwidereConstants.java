@@ -62,6 +62,8 @@ public interface TwidereConstants extends SharedPreferenceConstants, IntentConst
     String KEYBOARD_SHORTCUTS_PREFERENCES_NAME = "keyboard_shortcuts_preferences";
     String ETAG_CACHE_PREFERENCES_NAME = "etag_cache";
     String ETAG_MASTODON_APPS_PREFERENCES_NAME = "mastodon_apps";
+    String FILTER_FLAGS_PREFERENCES_NAME = "filter_flags";
+    String AUTO_REFRESH_STATS_PREFERENCES_NAME = "auto_refresh_stats";
     String ACCOUNT_PREFERENCES_NAME_PREFIX = "account_preferences_";
 
     String TWITTER_CONSUMER_KEY = "0WEJk1x6AlgtjGRhyABXw";
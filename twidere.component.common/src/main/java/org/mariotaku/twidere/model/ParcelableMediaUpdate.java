@@ -47,6 +47,9 @@ public class ParcelableMediaUpdate implements Parcelable {
     public boolean delete_on_success;
     @JsonField(name = "delete_always")
     public boolean delete_always;
+    @JsonField(name = "upload_state")
+    @Nullable
+    public UploadState upload_state;
 
     public ParcelableMediaUpdate() {
     }
@@ -110,4 +113,68 @@ public class ParcelableMediaUpdate implements Parcelable {
             return new ParcelableMediaUpdate[size];
         }
     };
+
+    /**
+     * Progress of a chunked upload, saved with draft so an interrupted upload can be resumed
+     */
+    @JsonObject
+    @ParcelablePlease
+    public static class UploadState implements Parcelable {
+
+        @JsonField(name = "media_id")
+        public String media_id;
+        /**
+         * Media ID can't be used after this time, in milliseconds
+         */
+        @JsonField(name = "expires_at")
+        public long expires_at;
+        @JsonField(name = "total_bytes")
+        public long total_bytes;
+        @JsonField(name = "segment_size")
+        public int segment_size;
+        /**
+         * Sorted IDs of accounts can use this media
+         */
+        @JsonField(name = "owner_ids")
+        @Nullable
+        public String[] owner_ids;
+        /**
+         * Indices of segments acknowledged by server
+         */
+        @JsonField(name = "acked_segments")
+        @Nullable
+        public int[] acked_segments;
+        /**
+         * CRC32 of acknowledged segments, in the same order of {@link #acked_segments}
+         */
+        @JsonField(name = "acked_checksums")
+        @Nullable
+        public int[] acked_checksums;
+        @JsonField(name = "finalized")
+        public boolean finalized;
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            ParcelableMediaUpdate$UploadStateParcelablePlease.writeToParcel(this, dest, flags);
+        }
+
+        public static final Creator<UploadState> CREATOR = new Creator<UploadState>() {
+            @Override
+            public UploadState createFromParcel(Parcel source) {
+                UploadState target = new UploadState();
+                ParcelableMediaUpdate$UploadStateParcelablePlease.readFromParcel(target, source);
+                return target;
+            }
+
+            @Override
+            public UploadState[] newArray(int size) {
+                return new UploadState[size];
+            }
+        };
+    }
 }
\ No newline at end of file
@@ -553,7 +553,9 @@ public class ParcelableStatus implements Parcelable, Comparable<ParcelableStatus
             FilterFlags.QUOTE_NOT_AVAILABLE,
             FilterFlags.BLOCKING_USER,
             FilterFlags.BLOCKED_BY_USER,
-            FilterFlags.POSSIBLY_SENSITIVE
+            FilterFlags.POSSIBLY_SENSITIVE,
+            FilterFlags.HAS_MEDIA,
+            FilterFlags.MATCHED_FILTERS
     }, flag = true)
     @Retention(RetentionPolicy.SOURCE)
     public @interface FilterFlags {
@@ -584,5 +586,9 @@ public class ParcelableStatus implements Parcelable, Comparable<ParcelableStatus
          * Status (or quote) has media
          */
         long HAS_MEDIA = 0x10;
+        /**
+         * Status matched user defined filters (users, keywords, sources or links)
+         */
+        long MATCHED_FILTERS = 0x20;
     }
 }
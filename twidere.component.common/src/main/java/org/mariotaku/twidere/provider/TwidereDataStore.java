@@ -273,6 +273,21 @@ public interface TwidereDataStore {
 
         String EXTRAS = "extras";
 
+        /**
+         * Hash of other columns written by {@code UserCacheWriter}, set to null by other writes.<br>
+         * Not a part of {@link #COLUMNS}<br>
+         * Type: INTEGER
+         */
+        String CONTENT_HASH = "content_hash";
+
+        /**
+         * Time this user was last inserted, or found unchanged by {@code UserCacheWriter}. Users
+         * not seen for the longest time are evicted first.<br>
+         * Not a part of {@link #COLUMNS}<br>
+         * Type: INTEGER
+         */
+        String LAST_CACHED = "last_cached";
+
         String[] COLUMNS = ParcelableUserTableInfo.COLUMNS;
 
         String[] BASIC_COLUMNS = {_ID, USER_KEY, NAME, SCREEN_NAME, PROFILE_IMAGE_URL};
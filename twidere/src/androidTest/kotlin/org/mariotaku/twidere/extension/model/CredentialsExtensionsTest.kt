@@ -0,0 +1,104 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.extension.model
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.microblog.library.MicroBlog
+import org.mariotaku.microblog.library.twitter.TwitterUpload
+import org.mariotaku.twidere.annotation.AccountType
+import org.mariotaku.twidere.model.account.cred.OAuthCredentials
+import org.mariotaku.twidere.util.api.MicroBlogInstanceCache
+
+/**
+ * Checks instances are reused for same credentials, and prints time of creating an instance with
+ * and without cache to logcat.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+@RunWith(AndroidJUnit4::class)
+class CredentialsExtensionsTest {
+
+    @Test
+    fun testNewMicroBlogInstanceCache() {
+        val context = InstrumentationRegistry.getTargetContext()
+        val credentials = newCredentials("token1")
+        MicroBlogInstanceCache.invalidate()
+
+        val instance = credentials.newMicroBlogInstance(context, AccountType.TWITTER, MicroBlog::class.java)
+        Assert.assertSame(instance, credentials.newMicroBlogInstance(context, AccountType.TWITTER,
+                MicroBlog::class.java))
+        // Equal credentials of another object
+        Assert.assertSame(instance, newCredentials("token1").newMicroBlogInstance(context,
+                AccountType.TWITTER, MicroBlog::class.java))
+        // Different account, API class or account type
+        Assert.assertNotSame(instance, newCredentials("token2").newMicroBlogInstance(context,
+                AccountType.TWITTER, MicroBlog::class.java))
+        Assert.assertNotSame(instance, credentials.newMicroBlogInstance(context, AccountType.TWITTER,
+                TwitterUpload::class.java))
+        Assert.assertNotSame(instance, credentials.newMicroBlogInstance(context, AccountType.FANFOU,
+                MicroBlog::class.java))
+
+        MicroBlogInstanceCache.invalidate()
+        Assert.assertNotSame(instance, credentials.newMicroBlogInstance(context, AccountType.TWITTER,
+                MicroBlog::class.java))
+    }
+
+    @Test
+    fun benchmarkNewMicroBlogInstance() {
+        val context = InstrumentationRegistry.getTargetContext()
+        val credentials = newCredentials("token1")
+        // Warm up class loading and resources
+        credentials.newMicroBlogInstance(context, AccountType.TWITTER, MicroBlog::class.java)
+
+        var start = System.nanoTime()
+        repeat(REPEAT_COUNT) {
+            MicroBlogInstanceCache.invalidate()
+            credentials.newMicroBlogInstance(context, AccountType.TWITTER, MicroBlog::class.java)
+        }
+        val uncached = (System.nanoTime() - start) / 1000.0 / REPEAT_COUNT
+
+        start = System.nanoTime()
+        repeat(REPEAT_COUNT) {
+            credentials.newMicroBlogInstance(context, AccountType.TWITTER, MicroBlog::class.java)
+        }
+        val cached = (System.nanoTime() - start) / 1000.0 / REPEAT_COUNT
+
+        Log.i(LOGTAG, "newMicroBlogInstance: ${uncached}us -> ${cached}us per call")
+        Assert.assertTrue(cached < uncached)
+    }
+
+    private fun newCredentials(token: String) = OAuthCredentials().apply {
+        api_url_format = "https://[DOMAIN.]twitter.com/"
+        consumer_key = "consumer_key"
+        consumer_secret = "consumer_secret"
+        access_token = token
+        access_token_secret = "${token}_secret"
+    }
+
+    companion object {
+        private const val LOGTAG = "CredentialsExtensionsTest"
+        private const val REPEAT_COUNT = 500
+    }
+}
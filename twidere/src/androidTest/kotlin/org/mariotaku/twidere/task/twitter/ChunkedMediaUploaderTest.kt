@@ -0,0 +1,174 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.task.twitter
+
+import android.support.test.runner.AndroidJUnit4
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.microblog.library.MicroBlogException
+import org.mariotaku.microblog.library.twitter.TwitterUpload
+import org.mariotaku.microblog.library.twitter.model.MediaUploadResponse
+import org.mariotaku.microblog.library.twitter.model.NewMediaMetadata
+import org.mariotaku.microblog.library.twitter.model.ResponseCode
+import org.mariotaku.restfu.http.ContentType
+import org.mariotaku.restfu.http.mime.Body
+import org.mariotaku.restfu.http.mime.SimpleBody
+import org.mariotaku.twidere.model.ParcelableMediaUpdate.UploadState
+import org.mariotaku.twidere.util.JsonSerializer
+import java.io.ByteArrayInputStream
+import java.util.*
+
+/**
+ * Created by mariotaku on 2017/5/25.
+ */
+@RunWith(AndroidJUnit4::class)
+class ChunkedMediaUploaderTest {
+
+    private val segmentSize = 1024
+    private val owners = arrayOf("4223092274")
+    private val data = ByteArray(segmentSize * 10 + 100).apply { Random(0).nextBytes(this) }
+
+    @Test
+    fun testResume() {
+        val upload = MockUpload(failAtSegment = 6)
+        val uploader = ChunkedMediaUploader(upload, segmentSize, parallelism = 1)
+        var savedState: UploadState? = null
+        try {
+            uploader.upload(body(data), null, null, owners, null, listener { savedState = it })
+            Assert.fail("Upload should be interrupted")
+        } catch (e: MicroBlogException) {
+            // Expected
+        }
+        val state = savedState!!
+        Assert.assertFalse(state.finalized)
+        Assert.assertArrayEquals((0 until 6).toList().toIntArray(), state.acked_segments)
+
+        upload.failAtSegment = -1
+        var uploadedBytes = 0L
+        uploader.upload(body(data), null, null, owners, state, object : ChunkedMediaUploader.Listener {
+            override fun onStateChanged(state: UploadState) {
+                savedState = state
+            }
+
+            override fun onProgress(uploaded: Long, total: Long) {
+                Assert.assertEquals(data.size.toLong(), total)
+                uploadedBytes = uploaded
+            }
+        })
+        Assert.assertEquals(1, upload.initCount)
+        Assert.assertTrue(savedState!!.finalized)
+        Assert.assertEquals(data.size.toLong(), uploadedBytes)
+        // Only missing segments sent again
+        Assert.assertEquals(11, upload.appendCount)
+        Assert.assertArrayEquals(data, upload.assemble())
+    }
+
+    @Test
+    fun testParallel() {
+        val upload = MockUpload()
+        ChunkedMediaUploader(upload, segmentSize, parallelism = 4).upload(body(data), null, null,
+                owners, null, null)
+        Assert.assertEquals(11, upload.appendCount)
+        Assert.assertArrayEquals(data, upload.assemble())
+    }
+
+    @Test
+    fun testSourceChanged() {
+        val upload = MockUpload(failAtSegment = 4)
+        val uploader = ChunkedMediaUploader(upload, segmentSize, parallelism = 1)
+        var savedState: UploadState? = null
+        try {
+            uploader.upload(body(data), null, null, owners, null, listener { savedState = it })
+            Assert.fail("Upload should be interrupted")
+        } catch (e: MicroBlogException) {
+            // Expected
+        }
+        upload.failAtSegment = -1
+        val changed = data.copyOf().apply { this[0] = (this[0] + 1).toByte() }
+        try {
+            uploader.upload(body(changed), null, null, owners, savedState, null)
+            Assert.fail("Changed media shouldn't be resumed")
+        } catch (e: ChunkedMediaUploader.SourceChangedException) {
+            // Expected
+        }
+
+        // Media ID belongs to other accounts can't be used
+        Assert.assertFalse(ChunkedMediaUploader.canResume(savedState!!, arrayOf("783214")))
+    }
+
+    private fun body(bytes: ByteArray): Body {
+        return SimpleBody(ContentType.OCTET_STREAM, null, bytes.size.toLong(), ByteArrayInputStream(bytes))
+    }
+
+    private fun listener(saveState: (UploadState) -> Unit) = object : ChunkedMediaUploader.Listener {
+        override fun onStateChanged(state: UploadState) {
+            saveState(state)
+        }
+
+        override fun onProgress(uploaded: Long, total: Long) {
+        }
+    }
+
+    /**
+     * In-process implementation of chunked upload endpoints, keeps segments received
+     */
+    private class MockUpload(@Volatile var failAtSegment: Int = -1) : TwitterUpload {
+
+        private val segments = TreeMap<Int, ByteArray>()
+        var initCount = 0
+            private set
+        var appendCount = 0
+            private set
+
+        override fun initUploadMedia(mediaType: String, totalBytes: Long, mediaCategory: String?,
+                additionalOwners: Array<String>?): MediaUploadResponse {
+            initCount++
+            return response()
+        }
+
+        override fun appendUploadMedia(mediaId: String, segmentIndex: Int, media: Body): ResponseCode? {
+            if (segmentIndex == failAtSegment) throw MicroBlogException("Connection reset")
+            val bytes = media.stream().readBytes()
+            synchronized(segments) {
+                segments[segmentIndex] = bytes
+                appendCount++
+            }
+            return null
+        }
+
+        override fun finalizeUploadMedia(mediaId: String): MediaUploadResponse = response()
+
+        override fun getUploadMediaStatus(mediaId: String): MediaUploadResponse = response()
+
+        override fun uploadMedia(data: Body, additionalOwners: Array<String>?): MediaUploadResponse {
+            throw UnsupportedOperationException()
+        }
+
+        override fun createMetadata(metadata: NewMediaMetadata): ResponseCode? = null
+
+        fun assemble(): ByteArray = synchronized(segments) {
+            segments.values.fold(ByteArray(0)) { acc, bytes -> acc + bytes }
+        }
+
+        private fun response(): MediaUploadResponse = JsonSerializer.parse(
+                "{\"media_id\":\"1\",\"expires_after_secs\":86400}", MediaUploadResponse::class.java)
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util
+
+import android.accounts.AccountManager
+import android.os.SystemClock
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.model.util.AccountUtils
+
+/**
+ * Created by mariotaku on 2017/5/24.
+ */
+@RunWith(AndroidJUnit4::class)
+class AccountDetailsRegistryTest {
+
+    private val accountKey = UserKey("4223092274", "twitter.com")
+
+    @Before
+    fun setUp() {
+        TestAccountUtils.insertTestAccounts()
+        AccountDetailsRegistry.invalidate()
+    }
+
+    @After
+    fun tearDown() {
+        TestAccountUtils.removeTestAccounts()
+        AccountDetailsRegistry.invalidate()
+    }
+
+    @Test
+    fun testSnapshots() {
+        val am = AccountManager.get(InstrumentationRegistry.getTargetContext())
+        val first = AccountUtils.getAccountDetails(am, accountKey, true)!!
+        Assert.assertNotNull(first.credentials)
+        first.user.name = "Modified"
+        first.color = 0
+
+        val second = AccountUtils.getAccountDetails(am, accountKey, false)!!
+        Assert.assertNotSame(first, second)
+        Assert.assertNotEquals("Modified", second.user.name)
+        Assert.assertNull(second.credentials)
+        Assert.assertEquals(AccountUtils.loadAccountDetails(am, second.account, false).color,
+                second.color)
+    }
+
+    @Test
+    fun benchmarkColdWarm() {
+        val am = AccountManager.get(InstrumentationRegistry.getTargetContext())
+        val rounds = 100
+
+        var start = SystemClock.elapsedRealtime()
+        repeat(rounds) {
+            AccountDetailsRegistry.invalidate()
+            AccountUtils.getAccountDetails(am, accountKey, true)
+        }
+        val coldTime = SystemClock.elapsedRealtime() - start
+
+        start = SystemClock.elapsedRealtime()
+        repeat(rounds) {
+            AccountUtils.getAccountDetails(am, accountKey, true)
+        }
+        val warmTime = SystemClock.elapsedRealtime() - start
+
+        Log.d(LOGTAG, "$rounds getAccountDetails calls: cold ${coldTime}ms, warm ${warmTime}ms")
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util
+
+import android.support.test.runner.AndroidJUnit4
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Created by mariotaku on 2017/5/26.
+ */
+@RunWith(AndroidJUnit4::class)
+class EmojiTrieTest {
+
+    private val trie = EmojiTrie.Builder()
+            .add(intArrayOf(0x1f44d), 1) // Thumbs up
+            .add(intArrayOf(0x1f44d, 0x1f3fd), 2) // Thumbs up, medium skin tone
+            .add(intArrayOf(0x1f1ef, 0x1f1f5), 3) // Flag JP
+            .add(intArrayOf(0x0031, 0x20e3), 4) // Keycap 1
+            .add(intArrayOf(0x0031), 5)
+            .add(intArrayOf(0x1f469), 6) // Woman
+            .add(intArrayOf(0x1f469, 0x200d, 0x1f4bb), 7) // Woman technologist
+            .add(intArrayOf(0x2764), 8) // Heart
+            .build()
+
+    @Test
+    fun testMatch() {
+        Assert.assertEquals(8, trie.size)
+        assertMatch("👍", 0, 2, 1)
+        assertMatch("👍🏽", 0, 4, 2)
+        assertMatch("a🇯🇵b", 1, 5, 3)
+        assertMatch("1⃣", 0, 2, 4)
+        assertMatch("👩‍💻", 0, 5, 7)
+        // Variation selector not in package belongs to emoji before it
+        assertMatch("❤️", 0, 2, 8)
+        // Sequence not in package, falls back to first emoji
+        assertMatch("👩‍🚀", 0, 2, 6)
+        // Sequence cut by end of range
+        assertMatch("👍🏽", 0, 2, 1, end = 2)
+
+        // Digits alone are not emoji
+        Assert.assertFalse(trie.match("1", 0, 1, EmojiTrie.Match()))
+        Assert.assertFalse(trie.match("️", 0, 1, EmojiTrie.Match()))
+        Assert.assertFalse(trie.match("text", 0, 4, EmojiTrie.Match()))
+    }
+
+    private fun assertMatch(text: String, start: Int, expectedEnd: Int, expectedIdentifier: Int,
+            end: Int = text.length) {
+        val match = EmojiTrie.Match()
+        Assert.assertTrue(trie.match(text, start, end, match))
+        Assert.assertEquals(expectedEnd, match.end)
+        Assert.assertEquals(expectedIdentifier, match.identifier)
+    }
+}
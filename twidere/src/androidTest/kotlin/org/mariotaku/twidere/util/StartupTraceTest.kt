@@ -0,0 +1,67 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util
+
+import android.os.SystemClock
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.twidere.app.TwidereApplication
+
+/**
+ * Waits for all startup stages of this process, then prints durations of every stage and step to
+ * logcat, so startup regressions can be compared between builds.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+@RunWith(AndroidJUnit4::class)
+class StartupTraceTest {
+
+    @Test
+    fun benchmarkStartup() {
+        val app = TwidereApplication.getInstance(InstrumentationRegistry.getTargetContext())
+        val trace = app.startupTrace
+        val timeout = SystemClock.uptimeMillis() + STARTUP_TIMEOUT
+        while (!trace.isFinished && SystemClock.uptimeMillis() < timeout) {
+            SystemClock.sleep(100)
+        }
+        Assert.assertTrue("Startup not finished:\n$trace", trace.isFinished)
+
+        Log.i(LOGTAG, "Startup trace:\n$trace")
+        val stages = trace.all.filter { it.step == null }
+        Assert.assertEquals(StartupTrace.STAGES.toList(), stages.map { it.stage })
+        // Later stages never start before earlier ones finished
+        for (i in 1 until stages.size) {
+            val prev = stages[i - 1]
+            Assert.assertTrue("${stages[i].stage} started early", stages[i].start >= prev.start + prev.duration)
+        }
+        val critical = trace.all.filter { it.stage == StartupTrace.STAGE_CRITICAL }.mapNotNull { it.step }
+        Assert.assertFalse("auto_refresh" in critical)
+        Assert.assertFalse("default_features" in critical)
+    }
+
+    companion object {
+        private const val LOGTAG = "StartupTraceTest"
+        private const val STARTUP_TIMEOUT = 30000L
+    }
+}
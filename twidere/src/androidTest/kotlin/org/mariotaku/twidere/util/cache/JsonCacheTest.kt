@@ -0,0 +1,137 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.cache
+
+import android.os.SystemClock
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.model.ParcelableStatus
+import org.mariotaku.twidere.test.R
+import org.mariotaku.twidere.util.JsonSerializer
+import org.mariotaku.twidere.util.getJsonResource
+import java.io.File
+import java.io.RandomAccessFile
+
+/**
+ * Created by mariotaku on 2017/5/24.
+ */
+@RunWith(AndroidJUnit4::class)
+class JsonCacheTest {
+
+    private lateinit var cacheDir: File
+
+    private val statuses: List<ParcelableStatus> by lazy {
+        val resources = InstrumentationRegistry.getContext().resources
+        val templates = arrayOf(R.raw.parcelable_status_848051071444410368,
+                R.raw.parcelable_status_852737226718838790)
+        return@lazy (0 until 200).map { i ->
+            val status: ParcelableStatus = resources.getJsonResource(templates[i % templates.size])
+            status.id = (900000000000000000L - i).toString()
+            status.is_filtered = i % 10 == 0
+            return@map status
+        }
+    }
+
+    @Before
+    fun setUp() {
+        cacheDir = File(InstrumentationRegistry.getTargetContext().cacheDir, "json_cache_test")
+        cacheDir.deleteRecursively()
+    }
+
+    @After
+    fun tearDown() {
+        cacheDir.deleteRecursively()
+    }
+
+    @Test
+    fun testSnapshot() {
+        val cache = JsonCache(cacheDir)
+        cache.saveSnapshot("statuses", statuses) { if (it.is_filtered) 1 else 0 }
+        val snapshot = JsonCache(cacheDir).getSnapshot("statuses", ParcelableStatus.CREATOR)!!
+        Assert.assertEquals(statuses.size, snapshot.size)
+        statuses.forEachIndexed { i, status ->
+            Assert.assertEquals(if (status.is_filtered) 1 else 0, snapshot.getFlags(i))
+            Assert.assertEquals(JsonSerializer.serialize(status, ParcelableStatus::class.java),
+                    JsonSerializer.serialize(snapshot[i], ParcelableStatus::class.java))
+        }
+
+        // Unchanged list shouldn't be written again
+        val file = File(cacheDir, "statuses.0")
+        file.setLastModified(0)
+        cache.saveSnapshot("statuses", snapshot) { if (it.is_filtered) 1 else 0 }
+        Assert.assertEquals(0, file.lastModified())
+
+        snapshot[0].is_favorite = !snapshot[0].is_favorite
+        cache.saveSnapshot("statuses", snapshot) { if (it.is_filtered) 1 else 0 }
+        Assert.assertNotEquals(0, file.lastModified())
+    }
+
+    @Test
+    fun testCorruptedSnapshot() {
+        JsonCache(cacheDir).saveSnapshot("statuses", statuses)
+        val file = File(cacheDir, "statuses.0")
+        RandomAccessFile(file, "rw").use {
+            it.seek(it.length() - 1)
+            val last = it.read()
+            it.seek(it.length() - 1)
+            it.write(last.inv())
+        }
+        Assert.assertNull(JsonCache(cacheDir).getSnapshot("statuses", ParcelableStatus.CREATOR))
+        // Corrupted snapshot is removed
+        Assert.assertFalse(file.exists())
+
+        JsonCache(cacheDir).saveSnapshot("statuses", statuses)
+        RandomAccessFile(file, "rw").use { it.setLength(it.length() / 2) }
+        Assert.assertNull(JsonCache(cacheDir).getSnapshot("statuses", ParcelableStatus.CREATOR))
+    }
+
+    @Test
+    fun benchmarkColdStart() {
+        val firstPaintItems = 20
+        JsonCache(cacheDir).apply {
+            saveList("json", statuses, ParcelableStatus::class.java)
+            saveSnapshot("snapshot", statuses)
+        }
+
+        var start = SystemClock.elapsedRealtime()
+        val fromJson = JsonCache(cacheDir).getList("json", ParcelableStatus::class.java)!!
+        val jsonTime = SystemClock.elapsedRealtime() - start
+
+        start = SystemClock.elapsedRealtime()
+        val snapshot = JsonCache(cacheDir).getSnapshot("snapshot", ParcelableStatus.CREATOR)!!
+        snapshot.decode(0, firstPaintItems)
+        val firstPaintTime = SystemClock.elapsedRealtime() - start
+        snapshot.decode(firstPaintItems, snapshot.size)
+        val snapshotTime = SystemClock.elapsedRealtime() - start
+
+        Assert.assertEquals(fromJson.size, snapshot.size)
+        Log.d(LOGTAG, "Restored ${statuses.size} statuses, JSON: ${jsonTime}ms, snapshot: " +
+                "${snapshotTime}ms (first $firstPaintItems items in ${firstPaintTime}ms), " +
+                "file size JSON: ${File(cacheDir, "json.0").length()}, " +
+                "snapshot: ${File(cacheDir, "snapshot.0").length()}")
+    }
+}
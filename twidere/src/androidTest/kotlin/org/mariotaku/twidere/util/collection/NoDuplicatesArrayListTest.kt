@@ -0,0 +1,68 @@
+package org.mariotaku.twidere.util.collection
+
+import android.os.SystemClock
+import android.util.Log
+import org.junit.Assert
+import org.junit.Test
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.model.ParcelableStatus
+import org.mariotaku.twidere.model.UserKey
+import java.util.*
+
+/**
+ * Created by mariotaku on 2017/5/24.
+ */
+class NoDuplicatesArrayListTest {
+
+    @Test
+    fun testListContract() {
+        val list = NoDuplicatesArrayList<String>()
+        Assert.assertTrue(list.addAll(listOf("c", "a", "b", "a")))
+        Assert.assertEquals(listOf("c", "a", "b"), list)
+        Assert.assertFalse(list.add("b"))
+        list.add(0, "c")
+        Assert.assertEquals(3, list.size)
+
+        Collections.sort(list)
+        Assert.assertEquals(listOf("a", "b", "c"), list)
+        Assert.assertTrue("c" in list)
+
+        val iterator = list.iterator()
+        iterator.next()
+        iterator.remove()
+        Assert.assertFalse("a" in list)
+        Assert.assertTrue(list.add("a"))
+
+        Assert.assertTrue(list.removeAll(listOf("b", "x")))
+        Assert.assertEquals(listOf("c", "a"), list)
+        list.subList(0, 1).clear()
+        Assert.assertEquals(listOf("a"), list)
+        Assert.assertFalse("c" in list)
+        list.clear()
+        Assert.assertTrue(list.isEmpty())
+        Assert.assertFalse("a" in list)
+    }
+
+    @Test
+    fun benchmarkMergePages() {
+        val pageSize = 100
+        arrayOf(10, 50).forEach { pages ->
+            val list = NoDuplicatesArrayList<ParcelableStatus>()
+            val start = SystemClock.elapsedRealtime()
+            for (page in 0 until pages) {
+                // Pages overlap by one item, like load more does
+                val statuses = (0..pageSize).map { status((page * pageSize + it).toString()) }
+                list.removeAll(statuses)
+                list.addAll(statuses)
+            }
+            Log.d(LOGTAG, "Merged $pages pages, ${list.size} statuses in " +
+                    "${SystemClock.elapsedRealtime() - start}ms")
+            Assert.assertEquals(pages * pageSize + 1, list.size)
+        }
+    }
+
+    private fun status(id: String) = ParcelableStatus().apply {
+        this.id = id
+        account_key = UserKey("1", "twitter.com")
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.content
+
+import android.content.ContentValues
+import android.database.sqlite.SQLiteDatabase
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.twidere.Constants
+import org.mariotaku.twidere.provider.TwidereDataStore.Messages
+import org.mariotaku.twidere.provider.TwidereDataStore.Statuses
+import org.mariotaku.twidere.util.database.QueryPlanLogger
+
+/**
+ * Seeds a database with 50k statuses, then checks query plans and timings of hot queries with
+ * and without indices. Timings are printed to logcat.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+@RunWith(AndroidJUnit4::class)
+class TwidereSQLiteOpenHelperTest {
+
+    private val accounts = arrayOf("1@twitter.com", "2@twitter.com")
+
+    private val hotQueries = arrayOf(
+            // First page of home timeline
+            "SELECT * FROM ${Statuses.TABLE_NAME} WHERE ${Statuses.ACCOUNT_KEY} IN (?, ?) " +
+                    "ORDER BY ${Statuses.DEFAULT_SORT_ORDER} LIMIT 100" to accounts,
+            // Keyset page in the middle of timeline
+            "SELECT * FROM ${Statuses.TABLE_NAME} WHERE ${Statuses.ACCOUNT_KEY} IN (?, ?) AND " +
+                    "${Statuses.TIMESTAMP} < ? ORDER BY ${Statuses.DEFAULT_SORT_ORDER} LIMIT 100" to
+                    accounts + "${BASE_TIME + STATUSES_COUNT / 2 * 1000L}",
+            // Restore read position
+            "SELECT ${Statuses._ID} FROM ${Statuses.TABLE_NAME} WHERE ${Statuses.POSITION_KEY} <= ? " +
+                    "ORDER BY ${Statuses.DEFAULT_SORT_ORDER} LIMIT 1" to
+                    arrayOf("${BASE_TIME + STATUSES_COUNT / 3 * 1000L}"),
+            // Duplicate check in delete_old_statuses trigger
+            "SELECT ${Statuses._ID} FROM ${Statuses.TABLE_NAME} WHERE ${Statuses.ACCOUNT_KEY} = ? " +
+                    "AND ${Statuses.ID} = ?" to arrayOf(accounts[0], "${STATUSES_COUNT / 2}"),
+            // Newest status of account, used by refresh
+            "SELECT MAX(${Statuses.TIMESTAMP}) FROM ${Statuses.TABLE_NAME} WHERE " +
+                    "${Statuses.ACCOUNT_KEY} = ?" to arrayOf(accounts[1]),
+            // Messages in conversation
+            "SELECT * FROM ${Messages.TABLE_NAME} WHERE ${Messages.ACCOUNT_KEY} = ? AND " +
+                    "${Messages.CONVERSATION_ID} = ? ORDER BY ${Messages.SORT_ID} DESC" to
+                    arrayOf(accounts[0], "7")
+    )
+
+    @Test
+    fun testIndices() {
+        val context = InstrumentationRegistry.getTargetContext()
+        context.deleteDatabase(DATABASE_NAME)
+        val helper = TwidereSQLiteOpenHelper(context, DATABASE_NAME, Constants.DATABASES_VERSION)
+        val db = helper.writableDatabase
+        try {
+            seed(db)
+            hotQueries.forEach { (sql, args) ->
+                val plan = queryPlan(db, sql, args)
+                Assert.assertFalse("Full scan: $sql\n$plan", plan.any(QueryPlanLogger::isFullScan))
+            }
+            val indexed = hotQueries.map { (sql, args) -> measure(db, sql, args) }
+            TwidereSQLiteOpenHelper.INDICES.forEach { (name) ->
+                db.execSQL("DROP INDEX $name")
+            }
+            val unindexed = hotQueries.map { (sql, args) -> measure(db, sql, args) }
+            hotQueries.forEachIndexed { i, (sql) ->
+                Log.i(LOGTAG, "${unindexed[i]}ms -> ${indexed[i]}ms: $sql")
+            }
+        } finally {
+            helper.close()
+            context.deleteDatabase(DATABASE_NAME)
+        }
+    }
+
+    private fun seed(db: SQLiteDatabase) {
+        db.beginTransaction()
+        val values = ContentValues()
+        for (i in 0 until STATUSES_COUNT) {
+            values.clear()
+            val timestamp = BASE_TIME + i * 1000L
+            values.put(Statuses.ACCOUNT_KEY, accounts[i % accounts.size])
+            values.put(Statuses.ID, i.toString())
+            values.put(Statuses.SORT_ID, i.toLong())
+            values.put(Statuses.TIMESTAMP, timestamp)
+            values.put(Statuses.POSITION_KEY, timestamp)
+            values.put(Statuses.TEXT_PLAIN, "Status $i")
+            db.insert(Statuses.TABLE_NAME, null, values)
+        }
+        for (i in 0 until MESSAGES_COUNT) {
+            values.clear()
+            values.put(Messages.ACCOUNT_KEY, accounts[i % accounts.size])
+            values.put(Messages.CONVERSATION_ID, (i % 100).toString())
+            values.put(Messages.MESSAGE_ID, i.toString())
+            values.put(Messages.SORT_ID, i.toLong())
+            values.put(Messages.LOCAL_TIMESTAMP, BASE_TIME + i * 1000L)
+            db.insert(Messages.TABLE_NAME, null, values)
+        }
+        db.setTransactionSuccessful()
+        db.endTransaction()
+        db.execSQL("ANALYZE")
+    }
+
+    private fun queryPlan(db: SQLiteDatabase, sql: String, args: Array<String>): List<String> {
+        return db.rawQuery("EXPLAIN QUERY PLAN $sql", args).useCursor { cur ->
+            val result = ArrayList<String>()
+            val detailIdx = cur.getColumnIndex("detail")
+            cur.moveToFirst()
+            while (!cur.isAfterLast) {
+                result.add(cur.getString(detailIdx))
+                cur.moveToNext()
+            }
+            return@useCursor result
+        }
+    }
+
+    /**
+     * @return Average time in milliseconds of reading all rows
+     */
+    private fun measure(db: SQLiteDatabase, sql: String, args: Array<String>): Double {
+        val start = System.nanoTime()
+        repeat(REPEAT_COUNT) {
+            db.rawQuery(sql, args).useCursor { cur ->
+                while (cur.moveToNext()) {
+                    cur.getString(0)
+                }
+            }
+        }
+        return (System.nanoTime() - start) / 1000000.0 / REPEAT_COUNT
+    }
+
+    companion object {
+        private const val LOGTAG = "TwidereSQLiteOpenHelperTest"
+        private const val DATABASE_NAME = "test_indices.sqlite"
+        private const val STATUSES_COUNT = 50000
+        private const val MESSAGES_COUNT = 5000
+        private const val REPEAT_COUNT = 20
+        private const val BASE_TIME = 1495843200000L
+    }
+}
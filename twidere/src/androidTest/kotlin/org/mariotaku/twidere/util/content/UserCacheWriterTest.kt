@@ -0,0 +1,83 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.content
+
+import android.os.SystemClock
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.junit.After
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.sqliteqb.library.Expression
+import org.mariotaku.twidere.model.ParcelableUser
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.provider.TwidereDataStore.CachedUsers
+
+/**
+ * Created by mariotaku on 2017/5/27.
+ */
+@RunWith(AndroidJUnit4::class)
+class UserCacheWriterTest {
+
+    private val userKey = UserKey("user_cache_writer_test", "twitter.com")
+
+    @After
+    fun tearDown() {
+        val cr = InstrumentationRegistry.getTargetContext().contentResolver
+        cr.delete(CachedUsers.CONTENT_URI, Expression.equalsArgs(CachedUsers.USER_KEY).sql,
+                arrayOf(userKey.toString()))
+    }
+
+    @Test
+    fun testWriteUsers() {
+        val cr = InstrumentationRegistry.getTargetContext().contentResolver
+        val writer = UserCacheWriter(cr)
+
+        Assert.assertEquals(UserCacheWriter.Result(1, 0), writer.writeUsers(listOf(newUser("Test"))))
+        val firstCached = queryColumn(CachedUsers.LAST_CACHED)!!.toLong()
+        SystemClock.sleep(10)
+        // Same content, skipped but still renewed for housekeeping
+        Assert.assertEquals(UserCacheWriter.Result(0, 1), writer.writeUsers(listOf(newUser("Test"))))
+        Assert.assertTrue(queryColumn(CachedUsers.LAST_CACHED)!!.toLong() > firstCached)
+
+        Assert.assertEquals(UserCacheWriter.Result(1, 0), writer.writeUsers(listOf(newUser("Changed"))))
+        Assert.assertEquals("Changed", queryColumn(CachedUsers.NAME))
+    }
+
+    private fun queryColumn(column: String): String? {
+        val cr = InstrumentationRegistry.getTargetContext().contentResolver
+        return cr.query(CachedUsers.CONTENT_URI, arrayOf(column),
+                Expression.equalsArgs(CachedUsers.USER_KEY).sql, arrayOf(userKey.toString()),
+                null)?.useCursor { cur ->
+            if (cur.moveToFirst()) cur.getString(0) else null
+        }
+    }
+
+    private fun newUser(name: String): ParcelableUser {
+        val user = ParcelableUser()
+        user.key = userKey
+        user.name = name
+        user.screen_name = "user_cache_writer_test"
+        user.profile_image_url = "https://example.com/profile.png"
+        return user
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.database
+
+import android.content.ContentValues
+import android.database.sqlite.SQLiteDatabase
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.sqliteqb.library.Columns
+import org.mariotaku.sqliteqb.library.Expression
+import org.mariotaku.sqliteqb.library.OrderBy
+import org.mariotaku.twidere.Constants
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.provider.TwidereDataStore.CachedRelationships
+import org.mariotaku.twidere.provider.TwidereDataStore.CachedUsers
+import org.mariotaku.twidere.util.UserColorNameManager
+import org.mariotaku.twidere.util.content.TwidereSQLiteOpenHelper
+import java.util.*
+
+/**
+ * Seeds a database with 100k cached users, then checks suggestions from index are same as
+ * ranked `LIKE` query, before and after incremental updates. Query latencies are printed to
+ * logcat.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+@RunWith(AndroidJUnit4::class)
+class CachedUsersPrefixIndexTest {
+
+    private val accountKey = UserKey("1", "twitter.com")
+    private val random = Random(0x7573)
+
+    private lateinit var helper: TwidereSQLiteOpenHelper
+    private lateinit var db: SQLiteDatabase
+    private lateinit var index: CachedUsersPrefixIndex
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getTargetContext()
+        context.deleteDatabase(DATABASE_NAME)
+        helper = TwidereSQLiteOpenHelper(context, DATABASE_NAME, Constants.DATABASES_VERSION)
+        db = helper.writableDatabase
+        index = CachedUsersPrefixIndex(UserColorNameManager(context))
+        seed()
+    }
+
+    @After
+    fun tearDown() {
+        helper.close()
+        InstrumentationRegistry.getTargetContext().deleteDatabase(DATABASE_NAME)
+    }
+
+    @Test
+    fun testSuggest() {
+        PREFIXES.forEach { prefix ->
+            Assert.assertArrayEquals(prefix, likeQuery(prefix), suggest(prefix))
+        }
+    }
+
+    @Test
+    fun testIncrementalUpdates() {
+        // Load index first
+        suggest("a")
+
+        val inserted = Array(100) { i -> newUserValues(USERS_COUNT + i) }
+        inserted.forEach { db.insertWithOnConflict(CachedUsers.TABLE_NAME, null, it, SQLiteDatabase.CONFLICT_REPLACE) }
+        index.putUsers(inserted, true)
+
+        val updateWhere = "${CachedUsers._ID} % 7 = 0"
+        val updated = index.findUserKeys(db, updateWhere, null)!!
+        val values = ContentValues()
+        values.put(CachedUsers.NAME, "aaa updated")
+        values.put(CachedUsers.LAST_SEEN, System.currentTimeMillis())
+        db.update(CachedUsers.TABLE_NAME, values, updateWhere, null)
+        index.reloadUsers(db, updated)
+
+        val deleteWhere = "${CachedUsers._ID} % 11 = 0"
+        val deleted = index.findUserKeys(db, deleteWhere, null)!!
+        db.delete(CachedUsers.TABLE_NAME, deleteWhere, null)
+        index.removeUsers(deleted)
+
+        db.execSQL("UPDATE ${CachedRelationships.TABLE_NAME} SET ${CachedRelationships.FOLLOWING} = 1")
+        index.invalidateRelationships()
+
+        PREFIXES.forEach { prefix ->
+            Assert.assertArrayEquals(prefix, likeQuery(prefix), suggest(prefix))
+        }
+    }
+
+    @Test
+    fun benchmarkSuggest() {
+        // Load index first
+        suggest("a")
+
+        var start = System.nanoTime()
+        repeat(REPEAT_COUNT) { PREFIXES.forEach { likeQuery(it) } }
+        val like = (System.nanoTime() - start) / 1000000.0 / REPEAT_COUNT / PREFIXES.size
+
+        start = System.nanoTime()
+        repeat(REPEAT_COUNT) { PREFIXES.forEach { suggest(it) } }
+        val indexed = (System.nanoTime() - start) / 1000000.0 / REPEAT_COUNT / PREFIXES.size
+
+        start = System.nanoTime()
+        index.invalidate()
+        suggest("a")
+        val load = (System.nanoTime() - start) / 1000000.0
+
+        Log.i(LOGTAG, "Suggestions of $USERS_COUNT users: ${like}ms -> ${indexed}ms per query, " +
+                "index loaded in ${load}ms")
+        Assert.assertTrue(indexed < like)
+    }
+
+    private fun suggest(prefix: String): Array<String> {
+        return index.suggest(db, prefix, accountKey, null, null, false, LIMIT)
+    }
+
+    /**
+     * Ranked query used before index
+     */
+    private fun likeQuery(prefix: String): Array<String> {
+        val where = Expression.or(Expression.likeRaw(Columns.Column(CachedUsers.SCREEN_NAME), "?||'%'", "^"),
+                Expression.likeRaw(Columns.Column(CachedUsers.NAME), "?||'%'", "^"))
+        val orderBy = OrderBy(arrayOf(CachedUsers.SCORE, CachedUsers.LAST_SEEN, CachedUsers.SCREEN_NAME,
+                CachedUsers.NAME), booleanArrayOf(false, false, true, true))
+        val (sql, args) = CachedUsersQueryBuilder.withScore(arrayOf(CachedUsers.USER_KEY), where,
+                arrayOf(prefix, prefix), orderBy.sql, accountKey, null, null, LIMIT)
+        return db.rawQuery(sql.sql, args).useCursor { cur ->
+            val result = ArrayList<String>()
+            while (cur.moveToNext()) {
+                result.add(cur.getString(0))
+            }
+            return@useCursor result.toTypedArray()
+        }
+    }
+
+    private fun seed() {
+        db.beginTransaction()
+        for (i in 0 until USERS_COUNT) {
+            db.insert(CachedUsers.TABLE_NAME, null, newUserValues(i))
+            if (i % 10 == 0) {
+                val values = ContentValues()
+                values.put(CachedRelationships.ACCOUNT_KEY, accountKey.toString())
+                values.put(CachedRelationships.USER_KEY, UserKey(i.toString(), "twitter.com").toString())
+                values.put(CachedRelationships.FOLLOWING, random.nextBoolean())
+                values.put(CachedRelationships.FOLLOWED_BY, random.nextBoolean())
+                values.put(CachedRelationships.MUTING, i % 70 == 0)
+                db.insert(CachedRelationships.TABLE_NAME, null, values)
+            }
+        }
+        db.setTransactionSuccessful()
+        db.endTransaction()
+    }
+
+    private fun newUserValues(i: Int): ContentValues {
+        val values = ContentValues()
+        values.put(CachedUsers.USER_KEY, UserKey(i.toString(), "twitter.com").toString())
+        values.put(CachedUsers.SCREEN_NAME, "${randomWord()}$i")
+        values.put(CachedUsers.NAME, "${randomWord().capitalize()} ${randomWord().capitalize()}")
+        if (i % 5 != 0) {
+            values.put(CachedUsers.LAST_SEEN, BASE_TIME + random.nextInt(Int.MAX_VALUE))
+        }
+        values.put(CachedUsers.USER_TYPE, "twitter")
+        return values
+    }
+
+    private fun randomWord(): String {
+        val length = 3 + random.nextInt(6)
+        val sb = StringBuilder()
+        repeat(length) { sb.append('a' + random.nextInt(26)) }
+        return sb.toString()
+    }
+
+    companion object {
+        private const val LOGTAG = "CachedUsersPrefixIndexTest"
+        private const val DATABASE_NAME = "test_cached_users_index.sqlite"
+        private const val USERS_COUNT = 100000
+        private const val LIMIT = 20
+        private const val REPEAT_COUNT = 5
+        private const val BASE_TIME = 1495843200000L
+        private val PREFIXES = arrayOf("a", "Ma", "mar", "mario", "xyz", "qq", "aaa", "z", "1", "user")
+    }
+}
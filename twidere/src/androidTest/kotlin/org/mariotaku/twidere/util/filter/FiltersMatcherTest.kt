@@ -0,0 +1,137 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.filter
+
+import android.content.ContentValues
+import android.database.sqlite.SQLiteDatabase
+import android.os.SystemClock
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.sqliteqb.library.NewColumn
+import org.mariotaku.sqliteqb.library.SQLQueryBuilder
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.model.ParcelableStatus
+import org.mariotaku.twidere.model.SpanItem
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.provider.TwidereDataStore.Filters
+import org.mariotaku.twidere.util.InternalTwitterContentUtils
+import java.util.*
+
+/**
+ * Created by mariotaku on 2017/5/20.
+ */
+@RunWith(AndroidJUnit4::class)
+class FiltersMatcherTest {
+
+    @Test
+    fun testAhoCorasick() {
+        val matcher = AhoCorasickMatcher(listOf("he", "she", "hers", "Twidere"))
+        Assert.assertTrue(matcher.containsAny("ushers"))
+        Assert.assertTrue(matcher.containsAny("I love TWIDERE"))
+        Assert.assertFalse(matcher.containsAny("hxrs"))
+        Assert.assertFalse(matcher.containsAny(null))
+        Assert.assertTrue(AhoCorasickMatcher(listOf("")).containsAny("anything"))
+        Assert.assertFalse(AhoCorasickMatcher(emptyList()).containsAny("anything"))
+    }
+
+    @Test
+    fun testSameResultAsQuery() {
+        val db = createDatabase(100)
+        val compiled = FiltersMatcher.compile(db)
+        val random = Random(0)
+        repeat(1000) {
+            val status = randomStatus(random, 100)
+            Assert.assertEquals(InternalTwitterContentUtils.isFiltered(db, status, true),
+                    compiled.isFiltered(status))
+        }
+        db.close()
+    }
+
+    @Test
+    fun benchmarkAgainstQuery() {
+        arrayOf(10, 1000, 10000).forEach { rules ->
+            val db = createDatabase(rules)
+            val random = Random(0)
+            val statuses = Array(200) { randomStatus(random, rules) }
+
+            var start = SystemClock.elapsedRealtime()
+            statuses.forEach { InternalTwitterContentUtils.isFiltered(db, it, true) }
+            val queryTime = SystemClock.elapsedRealtime() - start
+
+            start = SystemClock.elapsedRealtime()
+            val compiled = FiltersMatcher.compile(db)
+            val compileTime = SystemClock.elapsedRealtime() - start
+
+            start = SystemClock.elapsedRealtime()
+            statuses.forEach { compiled.isFiltered(it) }
+            val matchTime = SystemClock.elapsedRealtime() - start
+
+            Log.d(LOGTAG, "$rules rules, ${statuses.size} statuses: query ${queryTime}ms, " +
+                    "compile ${compileTime}ms, match ${matchTime}ms")
+            db.close()
+        }
+    }
+
+    private fun createDatabase(rules: Int): SQLiteDatabase {
+        val db = SQLiteDatabase.create(null)
+        db.execSQL(createTable(Filters.Users.TABLE_NAME, Filters.Users.COLUMNS, Filters.Users.TYPES))
+        db.execSQL(createTable(Filters.Keywords.TABLE_NAME, Filters.Keywords.COLUMNS, Filters.Keywords.TYPES))
+        db.execSQL(createTable(Filters.Sources.TABLE_NAME, Filters.Sources.COLUMNS, Filters.Sources.TYPES))
+        db.execSQL(createTable(Filters.Links.TABLE_NAME, Filters.Links.COLUMNS, Filters.Links.TYPES))
+        db.beginTransaction()
+        for (i in 0 until rules) {
+            db.insert(Filters.Users.TABLE_NAME, null, ContentValues().apply {
+                put(Filters.Users.USER_KEY, "${i * 2}@twitter.com")
+            })
+            db.insert(Filters.Keywords.TABLE_NAME, null, ContentValues().apply {
+                put(Filters.VALUE, "Keyword${i * 2}x")
+            })
+            db.insert(Filters.Sources.TABLE_NAME, null, ContentValues().apply {
+                put(Filters.VALUE, "Client ${i * 2}")
+            })
+            db.insert(Filters.Links.TABLE_NAME, null, ContentValues().apply {
+                put(Filters.VALUE, "example${i * 2}.com")
+            })
+        }
+        db.setTransactionSuccessful()
+        db.endTransaction()
+        return db
+    }
+
+    private fun createTable(table: String, columns: Array<String>, types: Array<String>): String {
+        return SQLQueryBuilder.createTable(true, table)
+                .columns(*NewColumn.createNewColumns(columns, types))
+                .buildSQL()
+    }
+
+    private fun randomStatus(random: Random, rules: Int): ParcelableStatus {
+        // About a quarter of statuses hit each kind of rule
+        fun pick() = random.nextInt(rules * 8)
+        return ParcelableStatus().apply {
+            user_key = UserKey("${pick()}", "twitter.com")
+            text_plain = "Lorem ipsum dolor sit amet keyword${pick()}X, consectetur adipiscing elit"
+            spans = arrayOf(SpanItem().apply { link = "https://example${pick()}.com/path" })
+            source = "<a href=\"https://twitter.com\">Client ${pick()}</a>"
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.media
+
+import android.support.test.runner.AndroidJUnit4
+import com.squareup.pollexor.Thumbor
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Created by mariotaku on 2017/5/27.
+ */
+@RunWith(AndroidJUnit4::class)
+class ThumborWrapperTest {
+
+    @Test
+    fun testBucketSize() {
+        Assert.assertEquals(144, ThumborWrapper.bucketSize(144, 144, 3f))
+        Assert.assertEquals(288, ThumborWrapper.bucketSize(150, 100, 3f))
+        Assert.assertEquals(576, ThumborWrapper.bucketSize(540, 300, 3f))
+        Assert.assertEquals(96, ThumborWrapper.bucketSize(80, 80, 1f))
+        // Larger than any bucket
+        Assert.assertEquals(0, ThumborWrapper.bucketSize(2400, 1200, 3f))
+        // Glide's SIZE_ORIGINAL
+        Assert.assertEquals(0, ThumborWrapper.bucketSize(Int.MIN_VALUE, Int.MIN_VALUE, 3f))
+    }
+
+    @Test
+    fun testBuildUri() {
+        val wrapper = ThumborWrapper()
+        val url = "https://pbs.twimg.com/media/C_fake.jpg"
+        Assert.assertEquals(url, wrapper.buildUri(url, 144))
+
+        wrapper.thumbor = Thumbor.create("https://thumbor.example.com", "key")
+        val sized = wrapper.buildUri(url, 144, webp = true)
+        Assert.assertTrue(sized.contains("/fit-in/144x144/"))
+        Assert.assertTrue(sized.contains("format(webp)"))
+        Assert.assertSame(sized, wrapper.buildUri(url, 144, webp = true))
+        Assert.assertFalse(wrapper.buildUri(url).contains("fit-in"))
+
+        // Signed with new key after settings changed
+        wrapper.thumbor = Thumbor.create("https://thumbor.example.com", "another_key")
+        Assert.assertNotEquals(sized, wrapper.buildUri(url, 144, webp = true))
+    }
+}
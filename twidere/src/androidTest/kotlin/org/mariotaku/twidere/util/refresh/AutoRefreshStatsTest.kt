@@ -0,0 +1,75 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.refresh
+
+import android.support.test.runner.AndroidJUnit4
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.TimeUnit
+
+/**
+ * Created by mariotaku on 2017/5/27.
+ */
+@RunWith(AndroidJUnit4::class)
+class AutoRefreshStatsTest {
+
+    private val base = TimeUnit.MINUTES.toMillis(15)
+
+    @Test
+    fun testRateStretch() {
+        // Rate unknown yet
+        Assert.assertEquals(base, interval(null))
+        // Busy timeline gets enough items every refresh
+        Assert.assertEquals(base, interval(100f))
+        // 10 items per hour, stretched to an hour
+        Assert.assertEquals(base * 4, interval(10f))
+        // Stretched by rate at most 8 times
+        Assert.assertEquals(base * 8, interval(0.1f))
+        Assert.assertEquals(base * 8, interval(0f))
+    }
+
+    @Test
+    fun testErrorBackoff() {
+        Assert.assertEquals(base * 2, interval(null, errors = 1))
+        Assert.assertEquals(base * 4, interval(null, errors = 2))
+        Assert.assertEquals(base * 8, interval(null, errors = 3))
+        // Backoff is capped
+        Assert.assertEquals(base * 8, interval(null, errors = 10))
+    }
+
+    @Test
+    fun testMetered() {
+        Assert.assertEquals(base * 2, interval(null, metered = true))
+        Assert.assertEquals(base * 8, interval(10f, metered = true))
+    }
+
+    @Test
+    fun testMaxInterval() {
+        Assert.assertEquals(base * 16, interval(10f, errors = 2))
+        Assert.assertEquals(base * 16, interval(0f, errors = 10, metered = true))
+        // Refresh disabled
+        Assert.assertEquals(0L, AutoRefreshStats.intervalMillis(0, 0f, 10, true))
+    }
+
+    private fun interval(maxRate: Float?, errors: Int = 0, metered: Boolean = false): Long {
+        return AutoRefreshStats.intervalMillis(base, maxRate, errors, metered)
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.streaming
+
+import android.os.Debug
+import android.os.SystemClock
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mariotaku.microblog.library.twitter.callback.SimpleUserStreamCallback
+import org.mariotaku.microblog.library.twitter.model.*
+import org.mariotaku.microblog.library.util.CRLFByteLineReader
+import org.mariotaku.microblog.library.util.CRLFLineReader
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.test.R
+import org.mariotaku.twidere.util.JsonSerializer
+import java.io.ByteArrayInputStream
+import java.io.InputStreamReader
+import java.util.*
+
+/**
+ * Replays a recorded user stream, see `res/raw/user_stream_sample.txt`
+ *
+ * Created by mariotaku on 2017/5/23.
+ */
+@RunWith(AndroidJUnit4::class)
+class UserStreamCallbackTest {
+
+    private val fixture: ByteArray by lazy {
+        val context = InstrumentationRegistry.getContext()
+        return@lazy context.resources.openRawResource(R.raw.user_stream_sample).use { it.readBytes() }
+    }
+
+    @Test
+    fun testSameResultAsTwoPass() {
+        val expected = ArrayList<String>()
+        val reader = CRLFLineReader(InputStreamReader(ByteArrayInputStream(fixture), "UTF-8"))
+        reader.use {
+            for (line in generateSequence { reader.readLine() }) {
+                if (line.isEmpty()) continue
+                val obj = JsonSerializer.parse(line, TwitterStreamObject::class.java)
+                when (obj.determine()) {
+                    TwitterStreamObject.Type.STATUS -> {
+                        expected.add("status:${JsonSerializer.parse(line, Status::class.java).id}")
+                    }
+                    TwitterStreamObject.Type.FAVORITE -> {
+                        val event = JsonSerializer.parse(line, StatusTargetObjectEvent::class.java)
+                        expected.add("favorite:${event.source.id}:${event.targetObject.id}:${event.createdAt}")
+                    }
+                    TwitterStreamObject.Type.FOLLOW -> {
+                        val event = JsonSerializer.parse(line, StreamEvent::class.java)
+                        expected.add("follow:${event.source.id}:${event.target.id}")
+                    }
+                    TwitterStreamObject.Type.USER_LIST_MEMBER_ADDED -> {
+                        val event = JsonSerializer.parse(line, UserListTargetObjectEvent::class.java)
+                        expected.add("list_member_added:${event.targetObject.id}")
+                    }
+                    TwitterStreamObject.Type.DELETE -> {
+                        expected.add("delete:${obj.delete.status.id}")
+                    }
+                    TwitterStreamObject.Type.FRIENDS -> {
+                        expected.add("friends:${obj.friends.size}")
+                    }
+                    TwitterStreamObject.Type.LIMIT -> {
+                        expected.add("limit:${obj.limit.track}")
+                    }
+                }
+            }
+        }
+
+        val actual = ArrayList<String>()
+        replay(RecordingCallback(actual))
+        Assert.assertEquals(expected, actual)
+    }
+
+    @Test
+    fun benchmarkAgainstTwoPass() {
+        val rounds = 20
+
+        Debug.resetThreadAllocCount()
+        Debug.startAllocCounting()
+        var start = SystemClock.elapsedRealtime()
+        repeat(rounds) {
+            CRLFLineReader(InputStreamReader(ByteArrayInputStream(fixture), "UTF-8")).use { reader ->
+                for (line in generateSequence { reader.readLine() }) {
+                    if (line.isEmpty()) continue
+                    val obj = JsonSerializer.parse(line, TwitterStreamObject::class.java)
+                    if (obj.determine() == TwitterStreamObject.Type.STATUS) {
+                        JsonSerializer.parse(line, Status::class.java)
+                    }
+                }
+            }
+        }
+        val twoPassTime = SystemClock.elapsedRealtime() - start
+        Debug.stopAllocCounting()
+        val twoPassAllocSize = Debug.getThreadAllocSize()
+        val twoPassAllocCount = Debug.getThreadAllocCount()
+
+        val callback = RecordingCallback(null)
+        Debug.resetThreadAllocCount()
+        Debug.startAllocCounting()
+        start = SystemClock.elapsedRealtime()
+        repeat(rounds) {
+            replay(callback)
+        }
+        val singlePassTime = SystemClock.elapsedRealtime() - start
+        Debug.stopAllocCounting()
+        val singlePassAllocSize = Debug.getThreadAllocSize()
+        val singlePassAllocCount = Debug.getThreadAllocCount()
+
+        val megabytes = fixture.size * rounds / 1048576.0
+        Log.d(LOGTAG, String.format(Locale.US, "%.1f MiB stream, two pass: %dms (%.2f MiB/s), " +
+                "%d bytes in %d allocations", megabytes, twoPassTime, megabytes * 1000 / twoPassTime,
+                twoPassAllocSize, twoPassAllocCount))
+        Log.d(LOGTAG, String.format(Locale.US, "%.1f MiB stream, single pass: %dms (%.2f MiB/s), " +
+                "%d bytes in %d allocations", megabytes, singlePassTime,
+                megabytes * 1000 / singlePassTime, singlePassAllocSize, singlePassAllocCount))
+    }
+
+    private fun replay(callback: SimpleUserStreamCallback) {
+        val decoder = TwitterStreamDecoder()
+        CRLFByteLineReader(ByteArrayInputStream(fixture)).use { reader ->
+            while (true) {
+                val length = reader.readLine()
+                if (length < 0) break
+                if (length == 0) continue
+                callback.handleMessage(decoder, reader.line, 0, length)
+            }
+        }
+    }
+
+    private class RecordingCallback(val events: MutableList<String>?) : SimpleUserStreamCallback() {
+        override fun onStatus(status: Status): Boolean {
+            events?.add("status:${status.id}")
+            return true
+        }
+
+        override fun onFavorite(createdAt: Date, source: User, target: User, targetObject: Status): Boolean {
+            events?.add("favorite:${source.id}:${targetObject.id}:$createdAt")
+            return true
+        }
+
+        override fun onFollow(createdAt: Date, source: User, target: User): Boolean {
+            events?.add("follow:${source.id}:${target.id}")
+            return true
+        }
+
+        override fun onUserListMemberAddition(createdAt: Date, source: User, target: User, targetObject: UserList): Boolean {
+            events?.add("list_member_added:${targetObject.id}")
+            return true
+        }
+
+        override fun onStatusDeleted(event: DeletionEvent): Boolean {
+            events?.add("delete:${event.id}")
+            return true
+        }
+
+        override fun onFriendList(friendIds: Array<String>): Boolean {
+            events?.add("friends:${friendIds.size}")
+            return true
+        }
+
+        override fun onTrackLimitationNotice(numberOfLimitedStatuses: Int): Boolean {
+            events?.add("limit:$numberOfLimitedStatuses")
+            return true
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.text
+
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import com.twitter.Validator
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.*
+
+/**
+ * Compares [TweetLengthCounter] with [Validator.getTweetLength] after every edit of randomly
+ * typed, pasted and deleted text, and prints time of counting on every keystroke to logcat.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+@RunWith(AndroidJUnit4::class)
+class TweetLengthCounterTest {
+
+    private val validator = Validator()
+
+    private val fragments = arrayOf(
+            "hello", "Twidere", "lol", "a", ".", ",", "/", ":", "-", "_", "@", "#", "?", "!", "(", ")",
+            " ", " ", " ", "  ", "\n", "\t", "\r\n", "　", " ", "​",
+            "twitter.com", "www.example.com", "example.com/path?q=1&r=2#top", "http://", "https://",
+            "https://t.co/abcdEF1234", "t.co/xyz", "http://example.jp", "example.co.uk.", "a.b", "foo.bar.baz",
+            "https://github.com/TwidereProject/Twidere-Android/issues/1", "http://例え.テスト/パス",
+            "ftp://example.com", "example.com:8080/", "mailto:a@b.com", "@mariotaku", "#hashtag", "\$TWTR",
+            "日本語", "中文", "한국어", "Ελληνικά", "русский.рф", "😀", "👨‍👩‍👧", "🇯🇵",
+            "é", "́", "̧́", "Å", "가", "ᆨ", "ｔｗｉｔｔｅｒ．ｃｏｍ",
+            "‪", "‮", "\ud83d", "\ude00"
+    )
+
+    @Test
+    fun testTweetLength() {
+        val random = Random(0x7768)
+        repeat(SESSIONS_COUNT) {
+            val counter = TweetLengthCounter(validator)
+            val sb = StringBuilder()
+            repeat(EDITS_COUNT) {
+                edit(random, sb)
+                val text = sb.toString()
+                Assert.assertEquals(text, validator.getTweetLength(text), counter.getTweetLength(text))
+            }
+        }
+    }
+
+    @Test
+    fun testUnrelatedTexts() {
+        val random = Random(0x7769)
+        val counter = TweetLengthCounter(validator)
+        repeat(EDITS_COUNT) {
+            val sb = StringBuilder()
+            repeat(random.nextInt(20)) { sb.append(fragments[random.nextInt(fragments.size)]) }
+            val text = sb.toString()
+            Assert.assertEquals(text, validator.getTweetLength(text), counter.getTweetLength(text))
+        }
+    }
+
+    @Test
+    fun benchmarkTyping() {
+        val random = Random(0x776a)
+        val sb = StringBuilder()
+        while (sb.length < 2000) {
+            sb.append(fragments[random.nextInt(30)]).append(' ')
+        }
+        val text = sb.toString()
+
+        var start = System.nanoTime()
+        for (i in 1..text.length) {
+            validator.getTweetLength(text.substring(0, i))
+        }
+        val full = (System.nanoTime() - start) / 1000.0 / text.length
+
+        val counter = TweetLengthCounter(validator)
+        start = System.nanoTime()
+        for (i in 1..text.length) {
+            counter.getTweetLength(text.substring(0, i))
+        }
+        val incremental = (System.nanoTime() - start) / 1000.0 / text.length
+
+        Log.i(LOGTAG, "getTweetLength: ${full}us -> ${incremental}us per keystroke")
+        Assert.assertTrue(incremental < full)
+    }
+
+    private fun edit(random: Random, sb: StringBuilder) {
+        val position = random.nextInt(sb.length + 1)
+        when (random.nextInt(10)) {
+            in 0..4 -> {
+                // Type a character of a fragment
+                val fragment = fragments[random.nextInt(fragments.size)]
+                sb.insert(position, fragment[random.nextInt(fragment.length)])
+            }
+            in 5..6 -> {
+                // Paste some fragments
+                val paste = StringBuilder()
+                repeat(random.nextInt(5) + 1) { paste.append(fragments[random.nextInt(fragments.size)]) }
+                sb.insert(position, paste)
+            }
+            7 -> {
+                // Backspace
+                if (position > 0) sb.deleteCharAt(position - 1)
+            }
+            8 -> {
+                // Delete selection
+                sb.delete(position, Math.min(sb.length, position + random.nextInt(10)))
+            }
+            else -> {
+                // Replace selection
+                val fragment = fragments[random.nextInt(fragments.size)]
+                sb.replace(position, Math.min(sb.length, position + random.nextInt(10)), fragment)
+            }
+        }
+        if (sb.length > MAX_LENGTH) {
+            sb.setLength(MAX_LENGTH / 2)
+        }
+    }
+
+    companion object {
+        private const val LOGTAG = "TweetLengthCounterTest"
+        private const val SESSIONS_COUNT = 20
+        private const val EDITS_COUNT = 2000
+        private const val MAX_LENGTH = 1000
+    }
+}
@@ -25,6 +25,7 @@ import org.mariotaku.ktextension.HexColorFormat
 import org.mariotaku.ktextension.toHexColor
 import org.mariotaku.twidere.TwidereConstants.*
 import org.mariotaku.twidere.model.AccountDetails
+import org.mariotaku.twidere.util.AccountDetailsRegistry
 import org.mariotaku.twidere.util.JsonSerializer
 
 /**
@@ -42,4 +43,5 @@ fun Account.updateDetails(am: AccountManager, details: AccountDetails) {
     am.setUserData(this, ACCOUNT_USER_DATA_USER, JsonSerializer.serialize(details.user))
     am.setUserData(this, ACCOUNT_USER_DATA_EXTRAS, details.extras?.let { JsonSerializer.serialize(it) })
     am.setAuthToken(this, ACCOUNT_AUTH_TOKEN_TYPE, JsonSerializer.serialize(details.credentials))
+    AccountDetailsRegistry.invalidate()
 }
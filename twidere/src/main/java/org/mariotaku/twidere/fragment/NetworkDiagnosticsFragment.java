@@ -45,6 +45,7 @@ import org.mariotaku.twidere.util.DataStoreUtils;
 import org.mariotaku.twidere.util.MicroBlogAPIFactory;
 import org.mariotaku.twidere.util.dagger.DependencyHolder;
 import org.mariotaku.twidere.util.net.TwidereDns;
+import org.mariotaku.twidere.util.okhttp.TrafficClass;
 import org.xbill.DNS.ResolverConfig;
 
 import java.io.IOException;
@@ -168,6 +169,22 @@ public class NetworkDiagnosticsFragment extends BaseFragment {
             }
             publishProgress(LogText.LINEBREAK, LogText.LINEBREAK);
 
+            if (dns instanceof TwidereDns) {
+                publishProgress(new LogText("DNS cache"), LogText.LINEBREAK);
+                publishProgress(new LogText(String.valueOf(((TwidereDns) dns).getCacheStatistics())));
+                publishProgress(LogText.LINEBREAK, LogText.LINEBREAK);
+            }
+
+            publishProgress(new LogText("HTTP traffic"), LogText.LINEBREAK);
+            for (TrafficClass trafficClass : TrafficClass.values()) {
+                publishProgress(new LogText(String.valueOf(trafficClass.getStatistics())), LogText.LINEBREAK);
+            }
+            publishProgress(LogText.LINEBREAK);
+
+            publishProgress(new LogText("Auto refresh"), LogText.LINEBREAK);
+            publishProgress(new LogText(String.valueOf(holder.getAutoRefreshStats())));
+            publishProgress(LogText.LINEBREAK);
+
             for (UserKey accountKey : DataStoreUtils.INSTANCE.getAccountKeys(mContext)) {
                 final AccountDetails details = AccountUtils.getAccountDetails(AccountManager.get(mContext), accountKey, true);
                 final MicroBlog twitter = MicroBlogAPIFactory.getInstance(mContext, accountKey);
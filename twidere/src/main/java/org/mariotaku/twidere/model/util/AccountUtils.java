@@ -13,6 +13,7 @@ import org.mariotaku.twidere.extension.model.AccountExtensionsKt;
 import org.mariotaku.twidere.model.AccountDetails;
 import org.mariotaku.twidere.model.UserKey;
 import org.mariotaku.twidere.model.account.cred.Credentials;
+import org.mariotaku.twidere.util.AccountDetailsRegistry;
 import org.mariotaku.twidere.util.Utils;
 
 import java.util.Arrays;
@@ -48,15 +49,17 @@ public class AccountUtils {
 
     @Nullable
     public static Account findByAccountKey(@NonNull AccountManager am, @NonNull UserKey userKey) {
-        for (Account account : getAccounts(am)) {
-            if (userKey.equals(AccountExtensionsKt.getAccountKey(account, am))) {
-                return account;
-            }
-        }
-        return null;
+        return AccountDetailsRegistry.INSTANCE.findByAccountKey(am, userKey);
     }
 
     public static Account[] getAccounts(@NonNull AccountManager am) {
+        return AccountDetailsRegistry.INSTANCE.getAccounts(am);
+    }
+
+    /**
+     * Query {@link AccountManager} directly, use {@link #getAccounts(AccountManager)} instead
+     */
+    public static Account[] loadAccounts(@NonNull AccountManager am) {
         //noinspection MissingPermission
         return am.getAccountsByType(ACCOUNT_TYPE);
     }
@@ -100,6 +103,14 @@ public class AccountUtils {
     }
 
     public static AccountDetails getAccountDetails(@NonNull AccountManager am, @NonNull Account account, boolean getCredentials) {
+        return AccountDetailsRegistry.INSTANCE.getAccountDetails(am, account, getCredentials);
+    }
+
+    /**
+     * Read details from {@link AccountManager} directly, use
+     * {@link #getAccountDetails(AccountManager, Account, boolean)} instead
+     */
+    public static AccountDetails loadAccountDetails(@NonNull AccountManager am, @NonNull Account account, boolean getCredentials) {
         AccountDetails details = new AccountDetails();
         details.key = AccountExtensionsKt.getAccountKey(account, am);
         details.account = account;
@@ -184,7 +195,7 @@ public class AccountUtils {
 
     public static boolean hasAccountPermission(@NonNull AccountManager am) {
         try {
-            getAccounts(am);
+            loadAccounts(am);
         } catch (SecurityException e) {
             return false;
         }
@@ -4,6 +4,10 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import org.mariotaku.twidere.BuildConfig;
+import org.mariotaku.twidere.util.database.QueryPlanLogger;
 
 public class SQLiteDatabaseWrapper {
     private SQLiteDatabase mDatabase;
@@ -68,12 +72,18 @@ public class SQLiteDatabaseWrapper {
                         final String[] selectionArgs, final String groupBy, final String having, final String orderBy) {
         tryCreateDatabase();
         if (mDatabase == null) return null;
+        if (BuildConfig.DEBUG) {
+            explainQuery(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+        }
         return mDatabase.query(table, columns, selection, selectionArgs, groupBy, having, orderBy);
     }
 
     public Cursor rawQuery(final String sql, final String[] selectionArgs) {
         tryCreateDatabase();
         if (mDatabase == null) return null;
+        if (BuildConfig.DEBUG) {
+            QueryPlanLogger.explain(mDatabase, sql, selectionArgs);
+        }
         return mDatabase.rawQuery(sql, selectionArgs);
     }
 
@@ -91,12 +101,18 @@ public class SQLiteDatabaseWrapper {
     public Cursor query(boolean distinct, String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
         tryCreateDatabase();
         if (mDatabase == null) return null;
+        if (BuildConfig.DEBUG) {
+            explainQuery(distinct, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+        }
         return mDatabase.query(distinct, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
     }
 
     public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
         tryCreateDatabase();
         if (mDatabase == null) return null;
+        if (BuildConfig.DEBUG) {
+            explainQuery(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+        }
         return mDatabase.query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
     }
 
@@ -106,6 +122,14 @@ public class SQLiteDatabaseWrapper {
         return mDatabase.update(table, values, whereClause, whereArgs);
     }
 
+    private void explainQuery(boolean distinct, String table, String[] columns, String selection,
+                              String[] selectionArgs, String groupBy, String having, String orderBy,
+                              String limit) {
+        final String sql = SQLiteQueryBuilder.buildQueryString(distinct, table, columns, selection,
+                groupBy, having, orderBy, limit);
+        QueryPlanLogger.explain(mDatabase, sql, selectionArgs);
+    }
+
     private synchronized void tryCreateDatabase() {
         if (mLazyLoadCallback == null || mDatabase != null) return;
         mDatabase = mLazyLoadCallback.onCreateSQLiteDatabase();
@@ -19,47 +19,195 @@
 
 package org.mariotaku.twidere.util.collection;
 
+import android.support.annotation.NonNull;
+
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.RandomAccess;
+import java.util.Set;
 
-public class NoDuplicatesArrayList<E> extends ArrayList<E> {
+/**
+ * Insertion ordered list that ignores elements already in it.
+ * <p>
+ * Elements are indexed by {@link Object#hashCode()}, so {@link #contains(Object)}, {@link #add(Object)}
+ * and {@link #addAll(Collection)} take constant time per element instead of scanning the list.
+ * Elements must not change their {@code equals}/{@code hashCode} while in this list.
+ * <p>
+ * {@link #set(int, Object)} is not checked for duplicates, {@link java.util.Collections#sort(java.util.List)}
+ * relies on it.
+ */
+public class NoDuplicatesArrayList<E> extends AbstractList<E> implements RandomAccess {
 
-    private static final long serialVersionUID = -7277301117508689125L;
+    private final ArrayList<E> list;
+    /**
+     * Occurrences of each element, more than 1 only in the middle of reordering with {@link #set(int, Object)}
+     */
+    private final HashMap<Object, Integer> index;
 
     public NoDuplicatesArrayList() {
+        list = new ArrayList<>();
+        index = new HashMap<>();
     }
 
     public NoDuplicatesArrayList(final Collection<? extends E> collection) {
+        this(collection.size());
         addAll(collection);
     }
 
     public NoDuplicatesArrayList(final int capacity) {
-        super(capacity);
+        list = new ArrayList<>(capacity);
+        index = new HashMap<>(Math.max((int) (capacity / .75f) + 1, 16));
+    }
+
+    @Override
+    public E get(final int location) {
+        return list.get(location);
+    }
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return index.containsKey(o);
+    }
+
+    @Override
+    public int indexOf(final Object o) {
+        if (!index.containsKey(o)) return -1;
+        return list.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(final Object o) {
+        if (!index.containsKey(o)) return -1;
+        return list.lastIndexOf(o);
     }
 
     @Override
     public boolean add(final E e) {
         if (contains(e)) return false;
-        return super.add(e);
+        list.add(e);
+        increment(e);
+        modCount++;
+        return true;
     }
 
     @Override
     public void add(final int index, final E element) {
         if (contains(element)) return;
-        super.add(index, element);
+        list.add(index, element);
+        increment(element);
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(@NonNull final Collection<? extends E> collection) {
+        return addAll(list.size(), collection);
+    }
+
+    @Override
+    public boolean addAll(final int index, @NonNull final Collection<? extends E> collection) {
+        final ArrayList<E> copy = new ArrayList<>(collection.size());
+        for (E e : collection) {
+            // Also drops duplicates inside collection
+            if (contains(e)) continue;
+            copy.add(e);
+            increment(e);
+        }
+        if (copy.isEmpty()) return false;
+        list.addAll(index, copy);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public E set(final int location, final E object) {
+        final E old = list.set(location, object);
+        decrement(old);
+        increment(object);
+        return old;
+    }
+
+    @Override
+    public E remove(final int location) {
+        final E removed = list.remove(location);
+        decrement(removed);
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        final int idx = indexOf(o);
+        if (idx < 0) return false;
+        remove(idx);
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(@NonNull final Collection<?> collection) {
+        return batchRemove(collection, false);
+    }
+
+    @Override
+    public boolean retainAll(@NonNull final Collection<?> collection) {
+        return batchRemove(collection, true);
     }
 
     @Override
-    public boolean addAll(final Collection<? extends E> collection) {
-        final Collection<E> copy = new ArrayList<>(collection);
-        copy.removeAll(this);
-        return super.addAll(copy);
+    public void clear() {
+        list.clear();
+        index.clear();
+        modCount++;
     }
 
     @Override
-    public boolean addAll(final int index, final Collection<? extends E> collection) {
-        final Collection<E> copy = new ArrayList<>(collection);
-        copy.removeAll(this);
-        return super.addAll(index, copy);
+    protected void removeRange(final int fromIndex, final int toIndex) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            decrement(list.get(i));
+        }
+        list.subList(fromIndex, toIndex).clear();
+        modCount++;
+    }
+
+    /**
+     * Removes or retains matching elements in a single pass
+     */
+    private boolean batchRemove(final Collection<?> collection, final boolean retain) {
+        final Set<?> set = collection instanceof Set ? (Set<?>) collection : new HashSet<>(collection);
+        int w = 0;
+        final int size = list.size();
+        for (int r = 0; r < size; r++) {
+            final E e = list.get(r);
+            if (set.contains(e) == retain) {
+                list.set(w++, e);
+            } else {
+                decrement(e);
+            }
+        }
+        if (w == size) return false;
+        list.subList(w, size).clear();
+        modCount++;
+        return true;
+    }
+
+    private void increment(final E e) {
+        final Integer count = index.get(e);
+        index.put(e, count == null ? 1 : count + 1);
+    }
+
+    private void decrement(final E e) {
+        final Integer count = index.get(e);
+        if (count == null || count <= 1) {
+            index.remove(e);
+        } else {
+            index.put(e, count - 1);
+        }
     }
 }
@@ -101,6 +101,7 @@ import org.mariotaku.twidere.util.*
 import org.mariotaku.twidere.util.EditTextEnterHandler.EnterListener
 import org.mariotaku.twidere.util.dagger.GeneralComponent
 import org.mariotaku.twidere.util.premium.ExtraFeaturesService
+import org.mariotaku.twidere.util.text.TweetLengthCounter
 import org.mariotaku.twidere.util.view.SimpleTextWatcher
 import org.mariotaku.twidere.util.view.ViewAnimator
 import org.mariotaku.twidere.util.view.ViewProperties
@@ -131,6 +132,8 @@ class ComposeActivity : BaseActivity(), OnMenuItemClickListener, OnClickListener
     private lateinit var itemTouchHelper: ItemTouchHelper
     private lateinit var bottomMenuAnimator: ViewAnimator
     private val supportMenuInflater by lazy { SupportMenuInflater(this) }
+    private val textLengthCounter by lazy { TweetLengthCounter(validator) }
+    private val summaryLengthCounter by lazy { TweetLengthCounter(validator) }
 
     private val backTimeoutRunnable = Runnable { navigateBackPressed = false }
 
@@ -1581,25 +1584,25 @@ class ComposeActivity : BaseActivity(), OnMenuItemClickListener, OnClickListener
         val editable = editText.editableText ?: return
         var summaryLength = 0
         if (editSummary.visibility == View.VISIBLE) {
-            summaryLength = validator.getTweetLength(editSummary.string.orEmpty())
+            summaryLength = summaryLengthCounter.getTweetLength(editSummary.string.orEmpty())
         }
         val text = editable.toString()
         val textAndMentions = getTwitterReplyTextAndMentions(text)
         if (textAndMentions == null) {
             hintLabel.visibility = View.GONE
             editable.clearSpans(MentionColorSpan::class.java)
-            statusTextCount.textCount = summaryLength + validator.getTweetLength(text)
+            statusTextCount.textCount = summaryLength + textLengthCounter.getTweetLength(text)
         } else if (textAndMentions.replyToOriginalUser || replyToSelf) {
             hintLabel.visibility = View.GONE
             val mentionColor = ThemeUtils.getTextColorSecondary(this)
             editable.clearSpans(MentionColorSpan::class.java)
             editable.setSpan(MentionColorSpan(mentionColor), 0, textAndMentions.replyStartIndex,
                         Spannable.SPAN_EXCLUSIVE_EXCLUSIVE)
-            statusTextCount.textCount = summaryLength + validator.getTweetLength(textAndMentions.replyText)
+            statusTextCount.textCount = summaryLength + textLengthCounter.getTweetLength(textAndMentions.replyText)
         } else {
             hintLabel.visibility = View.VISIBLE
             editable.clearSpans(MentionColorSpan::class.java)
-            statusTextCount.textCount = summaryLength + validator.getTweetLength(textAndMentions.replyText)
+            statusTextCount.textCount = summaryLength + textLengthCounter.getTweetLength(textAndMentions.replyText)
         }
     }
 
@@ -1204,6 +1204,7 @@ class SignInActivity : BaseActivity(), OnClickListener, TextWatcher,
                 am.setUserData(account, k, v)
             }
             writeAuthToken(am, account)
+            AccountDetailsRegistry.invalidate()
         }
 
         fun addAccount(am: AccountManager, randomizeAccountName: Boolean): Account {
@@ -1226,6 +1227,7 @@ class SignInActivity : BaseActivity(), OnClickListener, TextWatcher,
             }
             am.setUserData(account, ACCOUNT_USER_DATA_POSITION, accountPosition.toString())
             writeAuthToken(am, account)
+            AccountDetailsRegistry.invalidate()
             return account
         }
 
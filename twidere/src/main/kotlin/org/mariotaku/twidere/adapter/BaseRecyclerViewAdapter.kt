@@ -33,10 +33,12 @@ import org.mariotaku.twidere.constant.showAbsoluteTimeKey
 import org.mariotaku.twidere.constant.textSizeKey
 import org.mariotaku.twidere.model.DefaultFeatures
 import org.mariotaku.twidere.util.AsyncTwitterWrapper
+import org.mariotaku.twidere.util.ExternalThemeManager
 import org.mariotaku.twidere.util.MultiSelectManager
 import org.mariotaku.twidere.util.ReadStateManager
 import org.mariotaku.twidere.util.UserColorNameManager
 import org.mariotaku.twidere.util.dagger.GeneralComponent
+import org.mariotaku.twidere.util.media.MediaPreloader
 import javax.inject.Inject
 
 /**
@@ -62,6 +64,10 @@ abstract class BaseRecyclerViewAdapter<VH : RecyclerView.ViewHolder>(
     lateinit var multiSelectManager: MultiSelectManager
     @Inject
     lateinit var defaultFeatures: DefaultFeatures
+    @Inject
+    lateinit var externalThemeManager: ExternalThemeManager
+    @Inject
+    lateinit var mediaPreloader: MediaPreloader
 
     override final val profileImageSize: String = context.getString(R.string.profile_image_size)
     override final val profileImageStyle: Int
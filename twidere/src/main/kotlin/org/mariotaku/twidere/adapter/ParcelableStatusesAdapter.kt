@@ -23,6 +23,7 @@ import android.content.Context
 import android.database.Cursor
 import android.database.CursorIndexOutOfBoundsException
 import android.support.v4.widget.Space
+import android.support.v7.util.ListUpdateCallback
 import android.support.v7.widget.RecyclerView
 import android.view.LayoutInflater
 import android.view.ViewGroup
@@ -40,15 +41,20 @@ import org.mariotaku.twidere.adapter.iface.IStatusesAdapter
 import org.mariotaku.twidere.annotation.PreviewStyle
 import org.mariotaku.twidere.constant.*
 import org.mariotaku.twidere.constant.SharedPreferenceConstants.KEY_DISPLAY_SENSITIVE_CONTENTS
+import org.mariotaku.twidere.loader.statuses.AbsRequestStatusesLoader.Companion.SNAPSHOT_FLAG_HIDDEN
+import org.mariotaku.twidere.loader.statuses.PagedStatusesLoader
 import org.mariotaku.twidere.model.ItemCounts
 import org.mariotaku.twidere.model.ObjectId
 import org.mariotaku.twidere.model.ParcelableStatus
 import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.model.timeline.TimelineFilter
 import org.mariotaku.twidere.provider.TwidereDataStore.Statuses
+import org.mariotaku.twidere.text.util.StatusTextCache
 import org.mariotaku.twidere.util.StatusAdapterLinkClickHandler
 import org.mariotaku.twidere.util.TwidereLinkify
+import org.mariotaku.twidere.util.UserColorNameManager
 import org.mariotaku.twidere.util.Utils
+import org.mariotaku.twidere.util.cache.ParcelableSnapshot
 import org.mariotaku.twidere.view.holder.EmptyViewHolder
 import org.mariotaku.twidere.view.holder.GapViewHolder
 import org.mariotaku.twidere.view.holder.LoadIndicatorViewHolder
@@ -79,8 +85,17 @@ abstract class ParcelableStatusesAdapter(
     final override val sensitiveContentEnabled: Boolean = preferences.getBoolean(KEY_DISPLAY_SENSITIVE_CONTENTS, false)
     private val showCardActions: Boolean = !preferences[hideCardActionsKey]
 
+    final override val statusTextCache: StatusTextCache
+
     private val gapLoadingIds: MutableSet<ObjectId> = HashSet()
 
+    private val nicknameChangedListener = object : UserColorNameManager.UserNicknameChangedListener {
+        override fun onUserNicknameChanged(userKey: UserKey, nick: String?) {
+            statusTextCache.invalidate()
+            notifyDataSetChanged()
+        }
+    }
+
     override var statusClickListener: IStatusViewHolder.StatusClickListener? = null
 
     override val gapClickListener: IGapSupportedAdapter.GapClickListener?
@@ -143,6 +158,11 @@ abstract class ParcelableStatusesAdapter(
         val handler = StatusAdapterLinkClickHandler<List<ParcelableStatus>>(context, preferences)
         twidereLinkify = TwidereLinkify(handler)
         handler.setAdapter(this)
+        statusTextCache = StatusTextCache(twidereLinkify, linkHighlightingStyle,
+                { externalThemeManager.emoji }) { accountKey, id ->
+            // Stays the same after items inserted, resolved in findStatusPosition
+            ParcelableStatus.calculateHashCode(accountKey, id).toLong()
+        }
         isShowInReplyTo = true
         setHasStableIds(true)
     }
@@ -171,32 +191,54 @@ abstract class ParcelableStatusesAdapter(
         return displayDataCount
     }
 
+    private inline fun updateDisplayPositions(size: Int, isHidden: (Int) -> Boolean) {
+        var filteredCount = 0
+        displayPositions = IntArray(size).apply {
+            for (i in 0 until size) {
+                if (isHidden(i)) {
+                    filteredCount++
+                } else {
+                    this[i - filteredCount] = i
+                }
+            }
+        }
+        displayDataCount = size - filteredCount
+    }
+
     override fun setData(data: List<ParcelableStatus>?): Boolean {
         var changed = true
+        val oldData = this.data
+        val oldHasHidden = oldData != null && displayDataCount != oldData.size
         if (data == null) {
             displayPositions = null
             displayDataCount = 0
         } else if (data is ObjectCursor) {
             displayPositions = null
             displayDataCount = data.size
+        } else if (data is ParcelableSnapshot.LazyList) {
+            // Use flags in snapshot index, so items won't be decoded here
+            updateDisplayPositions(data.size) { i ->
+                (data.getFlags(i) and SNAPSHOT_FLAG_HIDDEN) != 0
+            }
+            changed = this.data !== data
         } else {
-            var filteredCount = 0
-            displayPositions = IntArray(data.size).apply {
-                data.forEachIndexed { i, item ->
-                    if (!item.is_gap && item.is_filtered) {
-                        filteredCount++
-                    } else {
-                        this[i - filteredCount] = i
-                    }
-                }
+            updateDisplayPositions(data.size) { i ->
+                val item = data[i]
+                return@updateDisplayPositions !item.is_gap && item.is_filtered
             }
-            displayDataCount = data.size - filteredCount
             changed = this.data != data
         }
         this.data = data
         gapLoadingIds.clear()
         updateItemCount()
-        notifyDataSetChanged()
+        val diff = (data as? PagedStatusesLoader.Window)?.diff
+        if (diff != null && !oldHasHidden && displayDataCount == data.size
+                && (oldData as? PagedStatusesLoader.Window)?.id == data.diffBaseId) {
+            // Only rows changed in window get updated
+            diff.dispatchUpdatesTo(OffsetListUpdateCallback(statusStartIndex))
+        } else {
+            notifyDataSetChanged()
+        }
         return changed
     }
 
@@ -272,6 +314,15 @@ abstract class ParcelableStatusesAdapter(
         return showCardActions || showingActionCardId == getItemId(position)
     }
 
+    override fun findStatusPosition(linkExtraId: Long): Int {
+        // Links in cached text carry hash code of status, same as lower bits of item ID
+        return (0 until itemCount).firstOrNull {
+            val countIndex = getItemCountIndex(it, false)
+            (countIndex == ITEM_INDEX_STATUS || countIndex == ITEM_INDEX_PINNED_STATUS)
+                    && getItemId(it).toInt() == linkExtraId.toInt()
+        } ?: RecyclerView.NO_POSITION
+    }
+
     override fun showCardActions(position: Int) {
         if (showingActionCardId != RecyclerView.NO_ID) {
             val pos = findPositionByItemId(showingActionCardId)
@@ -311,6 +362,16 @@ abstract class ParcelableStatusesAdapter(
         throw IllegalStateException("Unknown view type " + viewType)
     }
 
+    override fun onAttachedToRecyclerView(recyclerView: RecyclerView) {
+        super.onAttachedToRecyclerView(recyclerView)
+        userColorNameManager.registerNicknameChangedListener(nicknameChangedListener)
+    }
+
+    override fun onDetachedFromRecyclerView(recyclerView: RecyclerView) {
+        userColorNameManager.unregisterNicknameChangedListener(nicknameChangedListener)
+        super.onDetachedFromRecyclerView(recyclerView)
+    }
+
     override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int) {
         when (holder.itemViewType) {
             VIEW_TYPE_STATUS -> {
@@ -318,6 +379,10 @@ abstract class ParcelableStatusesAdapter(
                 val status = getStatusInternal(position, countIndex = countIndex, reuse = true)
                 (holder as IStatusViewHolder).display(status, displayInReplyTo = isShowInReplyTo,
                         displayPinned = countIndex == ITEM_INDEX_PINNED_STATUS)
+                prefetchStatusText(position)
+                if (mediaPreviewEnabled) {
+                    mediaPreloader.preloadVideos(status)
+                }
             }
             VIEW_TYPE_FILTER_HEADER -> {
                 (holder as TimelineFilterHeaderViewHolder).display(timelineFilter!!)
@@ -466,6 +531,22 @@ abstract class ParcelableStatusesAdapter(
         throw IndexOutOfBoundsException("index: $position, valid range is $validStart..$validEnd")
     }
 
+    /**
+     * Prepare text of statuses near [position] in background, so they can be bound quickly when
+     * scrolled into view
+     */
+    private fun prefetchStatusText(position: Int) {
+        val start = Math.max(statusStartIndex, position - STATUS_TEXT_PREFETCH_DISTANCE)
+        val end = Math.min(statusStartIndex + getStatusCount(false) - 1,
+                position + STATUS_TEXT_PREFETCH_DISTANCE)
+        if (start > end) return
+        val statuses = (start..end).filter {
+            it != position && !isGapItem(it) && !statusTextCache.isPrepared(getAccountKey(it),
+                    getStatusId(it))
+        }.map { getStatus(it) }
+        statusTextCache.prefetch(statuses)
+    }
+
     private fun updateItemCount() {
         itemCounts[ITEM_INDEX_LOAD_START_INDICATOR] = if (ILoadMoreSupportAdapter.START in loadMoreIndicatorPosition) 1 else 0
         itemCounts[ITEM_INDEX_FILTER_HEADER] = if (timelineFilter != null) 1 else 0
@@ -474,6 +555,27 @@ abstract class ParcelableStatusesAdapter(
         itemCounts[ITEM_INDEX_LOAD_END_INDICATOR] = if (ILoadMoreSupportAdapter.END in loadMoreIndicatorPosition) 1 else 0
     }
 
+    /**
+     * Dispatches changes of status list to adapter positions
+     */
+    private inner class OffsetListUpdateCallback(val offset: Int) : ListUpdateCallback {
+        override fun onInserted(position: Int, count: Int) {
+            notifyItemRangeInserted(offset + position, count)
+        }
+
+        override fun onRemoved(position: Int, count: Int) {
+            notifyItemRangeRemoved(offset + position, count)
+        }
+
+        override fun onMoved(fromPosition: Int, toPosition: Int) {
+            notifyItemMoved(offset + fromPosition, offset + toPosition)
+        }
+
+        override fun onChanged(position: Int, count: Int, payload: Any?) {
+            notifyItemRangeChanged(offset + position, count, payload)
+        }
+    }
+
     companion object {
         const val VIEW_TYPE_STATUS = 2
         const val VIEW_TYPE_EMPTY = 3
@@ -484,6 +586,8 @@ abstract class ParcelableStatusesAdapter(
         const val ITEM_INDEX_PINNED_STATUS = 2
         const val ITEM_INDEX_STATUS = 3
         const val ITEM_INDEX_LOAD_END_INDICATOR = 4
+
+        private const val STATUS_TEXT_PREFETCH_DISTANCE = 8
     }
 
 
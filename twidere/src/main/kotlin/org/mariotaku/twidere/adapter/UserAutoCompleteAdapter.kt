@@ -32,10 +32,9 @@ import com.bumptech.glide.RequestManager
 import org.mariotaku.kpreferences.get
 import org.mariotaku.ktextension.spannable
 import org.mariotaku.library.objectcursor.ObjectCursor
-import org.mariotaku.sqliteqb.library.Columns
-import org.mariotaku.sqliteqb.library.Expression
 import org.mariotaku.sqliteqb.library.OrderBy
 import org.mariotaku.twidere.R
+import org.mariotaku.twidere.TwidereConstants.QUERY_PARAM_QUERY
 import org.mariotaku.twidere.constant.displayProfileImageKey
 import org.mariotaku.twidere.constant.profileImageStyleKey
 import org.mariotaku.twidere.extension.loadProfileImage
@@ -43,7 +42,6 @@ import org.mariotaku.twidere.model.ParcelableLiteUser
 import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.provider.TwidereDataStore.CachedUsers
 import org.mariotaku.twidere.util.UserColorNameManager
-import org.mariotaku.twidere.util.Utils
 import org.mariotaku.twidere.util.dagger.GeneralComponent
 import org.mariotaku.twidere.view.ProfileImageView
 import javax.inject.Inject
@@ -106,21 +104,15 @@ class UserAutoCompleteAdapter(
         if (TextUtils.isEmpty(constraint)) return null
         val filter = filterQueryProvider
         if (filter != null) return filter.runQuery(constraint)
-        val query = constraint.toString()
-        val queryEscaped = query.replace("_", "^_")
-        val nicknameKeys = Utils.getMatchedNicknameKeys(query, userColorNameManager)
-        val usersSelection = Expression.or(
-                Expression.likeRaw(Columns.Column(CachedUsers.SCREEN_NAME), "?||'%'", "^"),
-                Expression.likeRaw(Columns.Column(CachedUsers.NAME), "?||'%'", "^"),
-                Expression.inArgs(Columns.Column(CachedUsers.USER_KEY), nicknameKeys.size))
-        val selectionArgs = arrayOf(queryEscaped, queryEscaped, *nicknameKeys)
         val order = arrayOf(CachedUsers.LAST_SEEN, CachedUsers.SCORE, CachedUsers.SCREEN_NAME, CachedUsers.NAME)
         val ascending = booleanArrayOf(false, false, true, true)
         val orderBy = OrderBy(order, ascending)
+        // Users matching query are found by provider with prefix index
         val uri = Uri.withAppendedPath(CachedUsers.CONTENT_URI_WITH_SCORE, accountKey.toString())
+                .buildUpon().appendQueryParameter(QUERY_PARAM_QUERY, constraint.toString()).build()
         @SuppressLint("Recycle")
-        val cursor = context.contentResolver.query(uri, CachedUsers.COLUMNS, usersSelection.sql,
-                selectionArgs, orderBy.sql)
+        val cursor = context.contentResolver.query(uri, CachedUsers.COLUMNS, null, null,
+                orderBy.sql)
         return cursor
     }
 
@@ -3,6 +3,7 @@ package org.mariotaku.twidere.adapter.iface
 import org.mariotaku.twidere.annotation.PreviewStyle
 import org.mariotaku.twidere.model.ParcelableStatus
 import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.text.util.StatusTextCache
 import org.mariotaku.twidere.util.TwidereLinkify
 import org.mariotaku.twidere.view.holder.iface.IStatusViewHolder
 
@@ -21,6 +22,12 @@ interface IStatusesAdapter<in Data> : IContentAdapter, IGapSupportedAdapter {
 
     val twidereLinkify: TwidereLinkify
 
+    /**
+     * Prepared status texts, status view holders build text themselves if `null`
+     */
+    val statusTextCache: StatusTextCache?
+        get() = null
+
     val mediaPreviewEnabled: Boolean
 
     val nameFirst: Boolean
@@ -56,4 +63,10 @@ interface IStatusesAdapter<in Data> : IContentAdapter, IGapSupportedAdapter {
 
     fun findStatusById(accountKey: UserKey, statusId: String): ParcelableStatus?
 
+    /**
+     * @param linkExtraId Extra ID of links in status text, adapter position by default
+     * @return Adapter position of status, or `RecyclerView.NO_POSITION` if not found
+     */
+    fun findStatusPosition(linkExtraId: Long): Int = linkExtraId.toInt()
+
 }
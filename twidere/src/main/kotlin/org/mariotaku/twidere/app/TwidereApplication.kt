@@ -19,6 +19,9 @@
 
 package org.mariotaku.twidere.app
 
+import android.accounts.AccountManager
+import android.accounts.OnAccountsUpdateListener
+import android.app.Activity
 import android.app.Application
 import android.content.*
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener
@@ -27,10 +30,15 @@ import android.content.res.Configuration
 import android.database.sqlite.SQLiteDatabase
 import android.database.sqlite.SQLiteOpenHelper
 import android.net.ConnectivityManager
+import android.net.Uri
 import android.os.AsyncTask
+import android.os.Bundle
+import android.os.Handler
 import android.os.Looper
 import android.support.multidex.MultiDex
+import android.view.ViewTreeObserver
 import com.bumptech.glide.Glide
+import dagger.Lazy
 import nl.komponents.kovenant.task
 import okhttp3.Dns
 import org.apache.commons.lang3.concurrent.ConcurrentUtils
@@ -39,9 +47,10 @@ import org.mariotaku.commons.logansquare.LoganSquareMapperFinder
 import org.mariotaku.kpreferences.KPreferences
 import org.mariotaku.kpreferences.get
 import org.mariotaku.kpreferences.set
+import org.mariotaku.ktextension.addOnAccountsUpdatedListenerSafe
 import org.mariotaku.ktextension.isCurrentThreadCompat
 import org.mariotaku.ktextension.setLayoutDirectionCompat
-import org.mariotaku.mediaviewer.library.MediaDownloader
+import org.mariotaku.microblog.library.MicroBlog
 import org.mariotaku.restfu.http.RestHttpClient
 import org.mariotaku.twidere.BuildConfig
 import org.mariotaku.twidere.Constants
@@ -51,9 +60,11 @@ import org.mariotaku.twidere.activity.AssistLauncherActivity
 import org.mariotaku.twidere.activity.MainActivity
 import org.mariotaku.twidere.activity.MainHondaJOJOActivity
 import org.mariotaku.twidere.constant.*
+import org.mariotaku.twidere.extension.model.getEndpoint
 import org.mariotaku.twidere.extension.model.loadRemoteSettings
 import org.mariotaku.twidere.extension.model.save
 import org.mariotaku.twidere.model.DefaultFeatures
+import org.mariotaku.twidere.model.util.AccountUtils
 import org.mariotaku.twidere.receiver.ConnectivityStateReceiver
 import org.mariotaku.twidere.service.StreamingService
 import org.mariotaku.twidere.util.*
@@ -79,30 +90,31 @@ class TwidereApplication : Application(), Constants, OnSharedPreferenceChangeLis
 
     @Inject
     lateinit internal var activityTracker: ActivityTracker
+    // Below are only needed after first frame, created on first use
     @Inject
-    lateinit internal var restHttpClient: RestHttpClient
+    lateinit internal var restHttpClient: Lazy<RestHttpClient>
     @Inject
-    lateinit internal var dns: Dns
+    lateinit internal var dns: Lazy<Dns>
     @Inject
-    lateinit internal var mediaDownloader: MediaDownloader
+    lateinit internal var defaultFeatures: Lazy<DefaultFeatures>
     @Inject
-    lateinit internal var defaultFeatures: DefaultFeatures
+    lateinit internal var externalThemeManager: Lazy<ExternalThemeManager>
     @Inject
-    lateinit internal var externalThemeManager: ExternalThemeManager
+    lateinit internal var kPreferences: Lazy<KPreferences>
     @Inject
-    lateinit internal var kPreferences: KPreferences
+    lateinit internal var autoRefreshController: Lazy<AutoRefreshController>
     @Inject
-    lateinit internal var autoRefreshController: AutoRefreshController
+    lateinit internal var syncController: Lazy<SyncController>
     @Inject
-    lateinit internal var syncController: SyncController
+    lateinit internal var extraFeaturesService: Lazy<ExtraFeaturesService>
     @Inject
-    lateinit internal var extraFeaturesService: ExtraFeaturesService
+    lateinit internal var mediaPreloader: Lazy<MediaPreloader>
     @Inject
-    lateinit internal var mediaPreloader: MediaPreloader
+    lateinit internal var contentNotificationManager: Lazy<ContentNotificationManager>
     @Inject
-    lateinit internal var contentNotificationManager: ContentNotificationManager
-    @Inject
-    lateinit internal var thumbor: ThumborWrapper
+    lateinit internal var thumbor: Lazy<ThumborWrapper>
+
+    val startupTrace = StartupTrace()
 
     val sqLiteDatabase: SQLiteDatabase by lazy {
         StrictModeUtils.checkDiskIO()
@@ -130,30 +142,59 @@ class TwidereApplication : Application(), Constants, OnSharedPreferenceChangeLis
             StrictModeUtils.detectAllVmPolicy()
         }
         super.onCreate()
-        applyLanguageSettings()
-        startKovenant()
-        initializeAsyncTask()
-        initDebugMode()
-        initBugReport()
-
-        updateEasterEggIcon()
-
-        migrateUsageStatisticsPreferences()
-        GeneralComponent.get(this).inject(this)
-
-        autoRefreshController.appStarted()
-        syncController.appStarted()
-        extraFeaturesService.appStarted()
-
-        registerActivityLifecycleCallbacks(activityTracker)
-        registerReceiver(ConnectivityStateReceiver(), IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION))
+        startupTrace.runStage(StartupTrace.STAGE_CRITICAL) {
+            startupTrace.step("language") { applyLanguageSettings() }
+            startupTrace.step("kovenant") { startKovenant() }
+            startupTrace.step("async_task") { initializeAsyncTask() }
+            startupTrace.step("debug_mode") { initDebugMode() }
+            startupTrace.step("bug_report") { initBugReport() }
+            startupTrace.step("migrate_preferences") { migrateUsageStatisticsPreferences() }
+            startupTrace.step("account_details") { AccountDetailsRegistry.init(this) }
+            startupTrace.step("inject") { GeneralComponent.get(this).inject(this) }
+            registerActivityLifecycleCallbacks(activityTracker)
+        }
+        runAfterFirstFrame {
+            startupTrace.runStage(StartupTrace.STAGE_FIRST_FRAME, this::onFirstFrame)
+            Looper.myQueue().addIdleHandler {
+                startupTrace.runStage(StartupTrace.STAGE_IDLE, this::onIdle)
+                DebugLog.d(LOGTAG, "Startup trace:\n$startupTrace")
+                return@addIdleHandler false
+            }
+        }
+    }
 
-        listenExternalThemeChange()
+    /**
+     * Jobs needed soon but not by first activity
+     */
+    private fun onFirstFrame() {
+        startupTrace.step("auto_refresh") { autoRefreshController.get().appStarted() }
+        startupTrace.step("sync") { syncController.get().appStarted() }
+        startupTrace.step("connectivity_receiver") {
+            registerReceiver(ConnectivityStateReceiver(), IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION))
+        }
+        startupTrace.step("external_theme") { listenExternalThemeChange() }
+        startupTrace.step("accounts") { listenAccountsChange() }
+        startupTrace.step("easter_egg_icon") { updateEasterEggIcon() }
+    }
 
-        loadDefaultFeatures()
+    /**
+     * Jobs can wait until nothing else to do
+     */
+    private fun onIdle() {
+        startupTrace.step("extra_features") { extraFeaturesService.get().appStarted() }
+        startupTrace.step("default_features") { loadDefaultFeatures() }
+        startupTrace.step("analyzer") { Analyzer.preferencesChanged(sharedPreferences) }
+        startupTrace.step("data_sync") { DataSyncProvider.Factory.notifyUpdate(this) }
+    }
 
-        Analyzer.preferencesChanged(sharedPreferences)
-        DataSyncProvider.Factory.notifyUpdate(this)
+    /**
+     * Runs [action] once first resumed activity has drawn, or after [FIRST_FRAME_TIMEOUT] if
+     * process is started without activity (by a job, receiver or service)
+     */
+    private fun runAfterFirstFrame(action: () -> Unit) {
+        val watcher = FirstFrameWatcher(action)
+        registerActivityLifecycleCallbacks(watcher)
+        watcher.handler.postDelayed(watcher, FIRST_FRAME_TIMEOUT)
     }
 
     override fun onConfigurationChanged(newConfig: Configuration?) {
@@ -174,7 +215,7 @@ class TwidereApplication : Application(), Constants, OnSharedPreferenceChangeLis
     override fun onSharedPreferenceChanged(preferences: SharedPreferences, key: String) {
         when (key) {
             KEY_REFRESH_INTERVAL -> {
-                autoRefreshController.rescheduleAll()
+                autoRefreshController.get().reschedule()
             }
             KEY_ENABLE_PROXY, KEY_PROXY_HOST, KEY_PROXY_PORT, KEY_PROXY_TYPE, KEY_PROXY_USERNAME,
             KEY_PROXY_PASSWORD, KEY_CONNECTION_TIMEOUT, KEY_RETRY_ON_NETWORK_ISSUE -> {
@@ -188,16 +229,16 @@ class TwidereApplication : Application(), Constants, OnSharedPreferenceChangeLis
                 preferences[apiLastChangeKey] = System.currentTimeMillis()
             }
             KEY_EMOJI_SUPPORT -> {
-                externalThemeManager.reloadEmojiPreferences()
+                externalThemeManager.get().reloadEmojiPreferences()
             }
             KEY_THUMBOR_ENABLED, KEY_THUMBOR_ADDRESS, KEY_THUMBOR_SECURITY_KEY -> {
-                thumbor.reloadSettings(preferences)
+                thumbor.get().reloadSettings(preferences)
             }
             KEY_MEDIA_PRELOAD, KEY_PRELOAD_WIFI_ONLY -> {
-                mediaPreloader.reloadOptions(preferences)
+                mediaPreloader.get().reloadOptions(preferences)
             }
             KEY_NAME_FIRST, KEY_I_WANT_MY_STARS_BACK -> {
-                contentNotificationManager.updatePreferences()
+                contentNotificationManager.get().updatePreferences()
             }
             streamingEnabledKey.key, streamingPowerSavingKey.key,
             streamingNonMeteredNetworkKey.key -> {
@@ -228,19 +269,19 @@ class TwidereApplication : Application(), Constants, OnSharedPreferenceChangeLis
     }
 
     private fun loadDefaultFeatures() {
-        val lastUpdated = kPreferences[defaultFeatureLastUpdated]
+        val lastUpdated = kPreferences.get()[defaultFeatureLastUpdated]
         if (lastUpdated > 0 && TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis() - lastUpdated) < 12) {
             return
         }
         task {
-            defaultFeatures.loadRemoteSettings(restHttpClient)
+            defaultFeatures.get().loadRemoteSettings(restHttpClient.get())
         }.success {
-            defaultFeatures.save(sharedPreferences)
+            defaultFeatures.get().save(sharedPreferences)
             DebugLog.d(LOGTAG, "Loaded remote features")
         }.fail {
             DebugLog.w(LOGTAG, "Unable to load remote features", it)
         }.always {
-            kPreferences[defaultFeatureLastUpdated] = System.currentTimeMillis()
+            kPreferences.get()[defaultFeatureLastUpdated] = System.currentTimeMillis()
         }
     }
 
@@ -254,7 +295,7 @@ class TwidereApplication : Application(), Constants, OnSharedPreferenceChangeLis
             override fun onReceive(context: Context, intent: Intent) {
                 val uid = intent.getIntExtra(Intent.EXTRA_UID, -1)
                 val packages = packageManager.getPackagesForUid(uid)
-                val manager = externalThemeManager
+                val manager = externalThemeManager.get()
                 if (manager.emojiPackageName in packages) {
                     manager.reloadEmojiPreferences()
                 }
@@ -262,6 +303,27 @@ class TwidereApplication : Application(), Constants, OnSharedPreferenceChangeLis
         }, packageFilter)
     }
 
+    private fun listenAccountsChange() {
+        AccountManager.get(this).addOnAccountsUpdatedListenerSafe(OnAccountsUpdateListener {
+            updateDnsPinnedHosts()
+        }, updateImmediately = true)
+    }
+
+    private fun updateDnsPinnedHosts() {
+        val twidereDns = dns.get() as? TwidereDns ?: return
+        task {
+            val am = AccountManager.get(this)
+            return@task AccountUtils.getAllAccountDetails(am, true).mapNotNullTo(HashSet<String>()) {
+                val endpoint = it.credentials?.getEndpoint(MicroBlog::class.java) ?: return@mapNotNullTo null
+                return@mapNotNullTo Uri.parse(endpoint.url).host
+            }
+        }.success { hosts ->
+            twidereDns.setPinnedHosts(hosts)
+        }.fail {
+            DebugLog.w(LOGTAG, "Unable to load API hosts", it)
+        }
+    }
+
     private fun updateEasterEggIcon() {
         val pm = packageManager
         val main = ComponentName(this, MainActivity::class.java)
@@ -309,7 +371,7 @@ class TwidereApplication : Application(), Constants, OnSharedPreferenceChangeLis
     }
 
     private fun reloadDnsSettings() {
-        (dns as? TwidereDns)?.reloadDnsSettings()
+        (dns.get() as? TwidereDns)?.reloadDnsSettings()
     }
 
     private fun initializeAsyncTask() {
@@ -331,11 +393,51 @@ class TwidereApplication : Application(), Constants, OnSharedPreferenceChangeLis
         })
     }
 
+    private inner class FirstFrameWatcher(val action: () -> Unit) : Application.ActivityLifecycleCallbacks,
+            Runnable {
+
+        val handler = Handler(Looper.getMainLooper())
+        private var done = false
+
+        override fun run() {
+            if (done) return
+            done = true
+            handler.removeCallbacks(this)
+            unregisterActivityLifecycleCallbacks(this)
+            action()
+        }
+
+        override fun onActivityResumed(activity: Activity) {
+            val decorView = activity.window.decorView
+            decorView.viewTreeObserver.addOnPreDrawListener(object : ViewTreeObserver.OnPreDrawListener {
+                override fun onPreDraw(): Boolean {
+                    decorView.viewTreeObserver.removeOnPreDrawListener(this)
+                    // Posted message runs after this frame is drawn
+                    handler.post(this@FirstFrameWatcher)
+                    return true
+                }
+            })
+        }
+
+        override fun onActivityCreated(activity: Activity, savedInstanceState: Bundle?) {}
+
+        override fun onActivityStarted(activity: Activity) {}
+
+        override fun onActivityPaused(activity: Activity) {}
+
+        override fun onActivityStopped(activity: Activity) {}
+
+        override fun onActivitySaveInstanceState(activity: Activity, outState: Bundle?) {}
+
+        override fun onActivityDestroyed(activity: Activity) {}
+    }
+
     companion object {
 
         private val KEY_UCD_DATA_PROFILING = "ucd_data_profiling"
         private val KEY_SPICE_DATA_PROFILING = "spice_data_profiling"
         private val KEY_KEYBOARD_SHORTCUT_INITIALIZED = "keyboard_shortcut_initialized"
+        private const val FIRST_FRAME_TIMEOUT = 5000L
         var instance: TwidereApplication? = null
             private set
 
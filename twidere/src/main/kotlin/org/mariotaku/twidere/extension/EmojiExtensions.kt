@@ -28,6 +28,7 @@ import org.mariotaku.commons.text.get
 import org.mariotaku.twidere.text.style.EmojiSpan
 import org.mariotaku.twidere.text.util.EmojiEditableFactory
 import org.mariotaku.twidere.text.util.EmojiSpannableFactory
+import org.mariotaku.twidere.util.EmojiTrie
 import org.mariotaku.twidere.util.ExternalThemeManager
 
 /**
@@ -42,6 +43,47 @@ fun TextView.setupEmojiFactory() {
 
 fun ExternalThemeManager.Emoji.applyTo(text: Spannable, textStart: Int = 0, textLength: Int = text.length) {
     if (!isSupported) return
+    val trie = this.trie ?: return applyToByCodePoints(text, textStart, textLength)
+    val end = Math.min(textStart + textLength, text.length)
+    val match = EmojiTrie.Match()
+    var index = textStart
+    while (index < end) {
+        if (trie.match(text, index, end, match)) {
+            setEmojiSpan(text, index, match.end, match.identifier)
+            index = match.end
+        } else {
+            index += Character.charCount(Character.codePointAt(text, index))
+        }
+    }
+}
+
+/**
+ * Apply emoji to changed range only, extended so sequences across the boundary will be found
+ */
+fun ExternalThemeManager.Emoji.applyToChanged(text: Spannable, start: Int, count: Int) {
+    val trie = this.trie ?: return applyTo(text)
+    val changedStart = Math.max(0, start - trie.maxLength)
+    val changedEnd = Math.min(text.length, start + count + trie.maxLength)
+    applyTo(text, changedStart, changedEnd - changedStart)
+}
+
+private fun ExternalThemeManager.Emoji.setEmojiSpan(text: Spannable, start: Int, end: Int, identifier: Int) {
+    val spans = text.getSpans(start, end, EmojiSpan::class.java).filter {
+        text.getSpanStart(it) < end && text.getSpanEnd(it) > start
+    }
+    // Keep emoji already applied, or sequences partially overlapped with this one
+    if (spans.any { text.getSpanStart(it) < start || text.getSpanEnd(it) > end }) return
+    if (spans.any { text.getSpanStart(it) == start && text.getSpanEnd(it) == end }) return
+    // Shorter sequences applied before, e.g. a modifier typed after an emoji
+    spans.forEach { text.removeSpan(it) }
+    val drawable = getEmojiDrawable(identifier) ?: return
+    text.setSpan(EmojiSpan(drawable), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE)
+}
+
+/**
+ * Used before [ExternalThemeManager.Emoji.trie] is ready
+ */
+private fun ExternalThemeManager.Emoji.applyToByCodePoints(text: Spannable, textStart: Int, textLength: Int) {
     val array = CodePointArray(text)
     var arrayIdx = array.length() - 1
     while (arrayIdx >= 0) {
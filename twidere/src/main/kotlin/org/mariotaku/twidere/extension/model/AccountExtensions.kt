@@ -19,6 +19,7 @@ import org.mariotaku.twidere.model.account.TwitterAccountExtras
 import org.mariotaku.twidere.model.account.cred.*
 import org.mariotaku.twidere.model.util.AccountUtils
 import org.mariotaku.twidere.model.util.AccountUtils.ACCOUNT_USER_DATA_KEYS
+import org.mariotaku.twidere.util.AccountDetailsRegistry
 import org.mariotaku.twidere.util.JsonSerializer
 import org.mariotaku.twidere.util.ParseUtils
 import org.mariotaku.twidere.util.TwitterContentUtils
@@ -53,6 +54,7 @@ fun Account.getAccountKey(am: AccountManager): UserKey {
 
 fun Account.setAccountKey(am: AccountManager, accountKey: UserKey) {
     am.setUserData(this, ACCOUNT_USER_DATA_KEY, accountKey.toString())
+    AccountDetailsRegistry.invalidate()
 }
 
 fun Account.getAccountUser(am: AccountManager): ParcelableUser {
@@ -63,6 +65,7 @@ fun Account.getAccountUser(am: AccountManager): ParcelableUser {
 
 fun Account.setAccountUser(am: AccountManager, user: ParcelableUser) {
     am.setUserData(this, ACCOUNT_USER_DATA_USER, JsonSerializer.serialize(user))
+    AccountDetailsRegistry.invalidate()
 }
 
 @android.support.annotation.ColorInt
@@ -90,14 +93,17 @@ fun Account.isActivated(am: AccountManager): Boolean {
 
 fun Account.setActivated(am: AccountManager, activated: Boolean) {
     am.setUserData(this, ACCOUNT_USER_DATA_ACTIVATED, activated.toString())
+    AccountDetailsRegistry.invalidate()
 }
 
 fun Account.setColor(am: AccountManager, color: Int) {
     am.setUserData(this, ACCOUNT_USER_DATA_COLOR, toHexColor(color, format = HexColorFormat.RGB))
+    AccountDetailsRegistry.invalidate()
 }
 
 fun Account.setPosition(am: AccountManager, position: Int) {
     am.setUserData(this, ACCOUNT_USER_DATA_POSITION, position.toString())
+    AccountDetailsRegistry.invalidate()
 }
 
 fun Account.isOfficial(am: AccountManager, context: Context): Boolean {
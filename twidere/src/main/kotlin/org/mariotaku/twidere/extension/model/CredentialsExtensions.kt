@@ -32,6 +32,7 @@ import org.mariotaku.twidere.util.TwitterContentUtils
 import org.mariotaku.twidere.util.api.*
 import org.mariotaku.twidere.util.dagger.DependencyHolder
 import org.mariotaku.twidere.util.media.TwidereMediaDownloader
+import java.util.concurrent.TimeUnit
 
 /**
  * Creates [MicroBlog] instances
@@ -138,9 +139,14 @@ fun Credentials.getEndpoint(cls: Class<*>): Endpoint {
     return Endpoint(endpointUrl)
 }
 
+/**
+ * Instances are cached by [MicroBlogInstanceCache], it's cheap to call this for every request
+ */
 fun <T> Credentials.newMicroBlogInstance(context: Context, @AccountType accountType: String? = null,
         cls: Class<T>): T {
-    return newMicroBlogInstance(context, getEndpoint(cls), getAuthorization(cls), accountType, cls)
+    return MicroBlogInstanceCache.get(this, accountType, cls) {
+        newMicroBlogInstance(context, getEndpoint(cls), getAuthorization(cls), accountType, cls)
+    }
 }
 
 fun <T> newMicroBlogInstance(context: Context, endpoint: Endpoint, auth: Authorization,
@@ -156,22 +162,18 @@ fun <T> newMicroBlogInstance(context: Context, endpoint: Endpoint, auth: Authori
     var extraRequestParams: Map<String, String>? = null
     when (cls) {
         TwitterUpload::class.java -> {
-            val conf = HttpClientFactory.HttpClientConfiguration(holder.preferences)
             // Use longer timeout for uploading
-            conf.readTimeoutSecs = 30
-            conf.writeTimeoutSecs = 30
-            conf.connectionTimeoutSecs = 60
-            val uploadHttpClient = HttpClientFactory.createRestHttpClient(conf, holder.dns,
-                    holder.connectionPool, holder.cache)
-            factory.setHttpClient(uploadHttpClient)
+            factory.setHttpClient(HttpClientFactory.deriveRestHttpClient(holder.restHttpClient) {
+                readTimeout(30, TimeUnit.SECONDS)
+                writeTimeout(30, TimeUnit.SECONDS)
+                connectTimeout(60, TimeUnit.SECONDS)
+            })
         }
         TwitterUserStream::class.java, FanfouStream::class.java, MastodonStreaming::class.java -> {
-            val conf = HttpClientFactory.HttpClientConfiguration(holder.preferences)
             // Use longer read timeout for streaming
-            conf.readTimeoutSecs = 300
-            val streamHttpClient = HttpClientFactory.createRestHttpClient(conf, holder.dns,
-                    holder.connectionPool, holder.cache)
-            factory.setHttpClient(streamHttpClient)
+            factory.setHttpClient(HttpClientFactory.deriveRestHttpClient(holder.restHttpClient) {
+                readTimeout(300, TimeUnit.SECONDS)
+            })
         }
         else -> {
             factory.setHttpClient(holder.restHttpClient)
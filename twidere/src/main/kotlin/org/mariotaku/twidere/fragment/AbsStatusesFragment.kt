@@ -295,19 +295,7 @@ abstract class AbsStatusesFragment : AbsContentListRecyclerViewFragment<Parcelab
             lastReadViewTop = layoutManager.findViewByPosition(lastReadPosition)?.top ?: 0
             loadMore = statusRange.endInclusive in 0..lastVisibleItemPosition
         } else if (rememberPosition) {
-            val syncManager = timelineSyncManager
-            val positionTag = this.readPositionTag
-            val syncTag = this.timelineSyncTag
-            val currentTag = this.currentReadPositionTag
-
-            if (syncManager != null && positionTag != null && syncTag != null &&
-                    syncPreferences.isSyncEnabled(SyncTaskRunner.SYNC_TYPE_TIMELINE_POSITIONS)) {
-                lastReadId = syncManager.peekPosition(positionTag, syncTag)
-            }
-            if (lastReadId <= 0 && currentTag != null) {
-                lastReadId = readStateManager.getPosition(currentTag)
-            }
-
+            lastReadId = getSavedReadPosition()
             lastReadViewTop = 0
         }
         // 2. Change adapter data
@@ -346,6 +334,9 @@ abstract class AbsStatusesFragment : AbsContentListRecyclerViewFragment<Parcelab
             } else {
                 layoutManager.scrollToPositionWithOffset(restorePosition, lastReadViewTop - layoutManager.paddingTop)
             }
+        } else if (wasAtTop && !readFromBottom && !loadMore) {
+            // Items inserted above by partial updates are not visible otherwise (pull refresh)
+            layoutManager.scrollToPosition(0)
         }
 
         if (loader is IExtendedLoader) {
@@ -354,6 +345,25 @@ abstract class AbsStatusesFragment : AbsContentListRecyclerViewFragment<Parcelab
         onStatusesLoaded(loader, data)
     }
 
+    /**
+     * @return Position saved by 'remember position' feature, synced position preferred, or -1
+     */
+    protected fun getSavedReadPosition(): Long {
+        val syncManager = timelineSyncManager
+        val positionTag = this.readPositionTag
+        val syncTag = this.timelineSyncTag
+        val currentTag = this.currentReadPositionTag
+        var position: Long = -1
+        if (syncManager != null && positionTag != null && syncTag != null &&
+                syncPreferences.isSyncEnabled(SyncTaskRunner.SYNC_TYPE_TIMELINE_POSITIONS)) {
+            position = syncManager.peekPosition(positionTag, syncTag)
+        }
+        if (position <= 0 && currentTag != null) {
+            position = readStateManager.getPosition(currentTag)
+        }
+        return position
+    }
+
     override fun onLoaderReset(loader: Loader<List<ParcelableStatus>?>) {
         if (loader is IExtendedLoader) {
             loader.fromUser = false
@@ -22,11 +22,9 @@ package org.mariotaku.twidere.fragment
 import android.accounts.AccountManager
 import android.accounts.OnAccountsUpdateListener
 import android.content.Context
-import android.database.ContentObserver
 import android.database.Cursor
 import android.net.Uri
 import android.os.Bundle
-import android.os.Handler
 import android.support.v4.content.Loader
 import android.widget.Toast
 import com.squareup.otto.Subscribe
@@ -44,7 +42,6 @@ import org.mariotaku.twidere.model.*
 import org.mariotaku.twidere.model.event.*
 import org.mariotaku.twidere.model.pagination.SinceMaxPagination
 import org.mariotaku.twidere.provider.TwidereDataStore.Activities
-import org.mariotaku.twidere.provider.TwidereDataStore.Filters
 import org.mariotaku.twidere.task.twitter.GetStatusesTask
 import org.mariotaku.twidere.util.DataStoreUtils
 import org.mariotaku.twidere.util.DataStoreUtils.getTableNameByUri
@@ -68,8 +65,6 @@ abstract class CursorActivitiesFragment : AbsActivitiesFragment() {
 
     protected abstract val isFilterEnabled: Boolean
 
-    private var contentObserver: ContentObserver? = null
-
     private val accountListener: OnAccountsUpdateListener = OnAccountsUpdateListener {
         reloadActivities()
     }
@@ -79,24 +74,12 @@ abstract class CursorActivitiesFragment : AbsActivitiesFragment() {
 
     override fun onStart() {
         super.onStart()
-        if (contentObserver == null) {
-            contentObserver = object : ContentObserver(Handler()) {
-                override fun onChange(selfChange: Boolean) {
-                    reloadActivities()
-                }
-            }
-            context.contentResolver.registerContentObserver(Filters.CONTENT_URI, true, contentObserver)
-        }
         AccountManager.get(context).addOnAccountsUpdatedListenerSafe(accountListener, updateImmediately = false)
         updateRefreshState()
         reloadActivities()
     }
 
     override fun onStop() {
-        if (contentObserver != null) {
-            context.contentResolver.unregisterContentObserver(contentObserver)
-            contentObserver = null
-        }
         AccountManager.get(context).removeOnAccountsUpdatedListenerSafe(accountListener)
         super.onStop()
     }
@@ -22,15 +22,15 @@ package org.mariotaku.twidere.fragment
 import android.accounts.AccountManager
 import android.accounts.OnAccountsUpdateListener
 import android.content.Context
-import android.database.ContentObserver
 import android.net.Uri
 import android.os.Bundle
-import android.os.Handler
 import android.support.v4.content.Loader
+import android.support.v7.widget.RecyclerView
 import android.widget.Toast
 import com.bumptech.glide.Glide
 import com.squareup.otto.Subscribe
 import kotlinx.android.synthetic.main.fragment_content_recyclerview.*
+import org.mariotaku.kpreferences.get
 import org.mariotaku.ktextension.*
 import org.mariotaku.sqliteqb.library.Columns.Column
 import org.mariotaku.sqliteqb.library.Expression
@@ -39,14 +39,14 @@ import org.mariotaku.twidere.adapter.ListParcelableStatusesAdapter
 import org.mariotaku.twidere.adapter.iface.ILoadMoreSupportAdapter
 import org.mariotaku.twidere.adapter.iface.ILoadMoreSupportAdapter.IndicatorPosition
 import org.mariotaku.twidere.constant.IntentConstants.EXTRA_FROM_USER
-import org.mariotaku.twidere.loader.ExtendedObjectCursorLoader
+import org.mariotaku.twidere.constant.rememberPositionKey
+import org.mariotaku.twidere.loader.statuses.PagedStatusesLoader
 import org.mariotaku.twidere.model.ParameterizedExpression
 import org.mariotaku.twidere.model.ParcelableStatus
 import org.mariotaku.twidere.model.RefreshTaskParam
 import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.model.event.*
 import org.mariotaku.twidere.model.pagination.SinceMaxPagination
-import org.mariotaku.twidere.provider.TwidereDataStore.Filters
 import org.mariotaku.twidere.provider.TwidereDataStore.Statuses
 import org.mariotaku.twidere.task.twitter.GetStatusesTask
 import org.mariotaku.twidere.util.DataStoreUtils
@@ -76,31 +76,35 @@ abstract class CursorStatusesFragment : AbsStatusesFragment() {
     abstract val notificationType: Int
     abstract val contentUri: Uri
 
-    private var contentObserver: ContentObserver? = null
     private val accountListener: OnAccountsUpdateListener = OnAccountsUpdateListener {
         reloadStatuses()
     }
 
-    override fun onStart() {
-        super.onStart()
-        if (contentObserver == null) {
-            contentObserver = object : ContentObserver(Handler()) {
-                override fun onChange(selfChange: Boolean) {
-                    reloadStatuses()
-                }
+    private val pagePrefetchListener = object : RecyclerView.OnScrollListener() {
+        override fun onScrolled(recyclerView: RecyclerView?, dx: Int, dy: Int) {
+            if (dy <= 0) return
+            val loader = statusesLoader ?: return
+            if (!loader.hasMoreInDatabase) return
+            val statusEnd = adapter.statusStartIndex + adapter.getStatusCount(raw = false)
+            if (layoutManager.findLastVisibleItemPosition() >= statusEnd - PagedStatusesLoader.PAGE_SIZE / 2) {
+                loader.loadNextPage()
             }
-            context.contentResolver.registerContentObserver(Filters.CONTENT_URI, true, contentObserver)
         }
+    }
+
+    override fun onActivityCreated(savedInstanceState: Bundle?) {
+        super.onActivityCreated(savedInstanceState)
+        recyclerView.addOnScrollListener(pagePrefetchListener)
+    }
+
+    override fun onStart() {
+        super.onStart()
         AccountManager.get(context).addOnAccountsUpdatedListenerSafe(accountListener, updateImmediately = false)
         updateRefreshState()
         reloadStatuses()
     }
 
     override fun onStop() {
-        if (contentObserver != null) {
-            context.contentResolver.unregisterContentObserver(contentObserver)
-            contentObserver = null
-        }
         AccountManager.get(context).removeOnAccountsUpdatedListenerSafe(accountListener)
         super.onStop()
     }
@@ -113,7 +117,6 @@ abstract class CursorStatusesFragment : AbsStatusesFragment() {
     override fun onCreateStatusesLoader(context: Context, args: Bundle, fromUser: Boolean): Loader<List<ParcelableStatus>?> {
         val uri = contentUri
         val table = DataStoreUtils.getTableNameByUri(uri)!!
-        val sortOrder = Statuses.DEFAULT_SORT_ORDER
         val accountKeys = this.accountKeys
         val accountWhere = Expression.inArgs(Column(Statuses.ACCOUNT_KEY), accountKeys.size)
         val filterWhere = getFiltersWhere(table)
@@ -124,15 +127,12 @@ abstract class CursorStatusesFragment : AbsStatusesFragment() {
             where = accountWhere
         }
         adapter.showAccountsColor = accountKeys.size > 1
-        val projection = Statuses.COLUMNS
         val selectionArgs = Array(accountKeys.size) {
             accountKeys[it].toString()
         }
         val expression = processWhere(where, selectionArgs)
-        return ExtendedObjectCursorLoader(context, ParcelableStatus::class.java, uri, projection,
-                expression.sql, expression.parameters, sortOrder, fromUser).apply {
-            isUseCache = false
-        }
+        return PagedStatusesLoader(context, uri, expression.sql, expression.parameters,
+                anchorPositionKey, fromUser)
     }
 
     override fun createMessageBusCallback(): Any {
@@ -155,6 +155,12 @@ abstract class CursorStatusesFragment : AbsStatusesFragment() {
     override fun onLoadMoreContents(@IndicatorPosition position: Long) {
         // Only supports load from end, skip START flag
         if (ILoadMoreSupportAdapter.START in position) return
+        val loader = statusesLoader
+        if (position != 0L && loader != null && loader.hasMoreInDatabase) {
+            // Statuses not loaded yet are still in database
+            loader.loadNextPage()
+            return
+        }
         super.onLoadMoreContents(position)
         if (position == 0L) return
         getStatuses(object : RefreshTaskParam {
@@ -206,6 +212,24 @@ abstract class CursorStatusesFragment : AbsStatusesFragment() {
         }
     }
 
+    /**
+     * Position key window should cover, current position if statuses were loaded
+     */
+    private val anchorPositionKey: Long
+        get() {
+            if (adapter.getStatusCount(raw = false) > 0) {
+                val position = layoutManager.findLastVisibleItemPosition()
+                if (position >= 0 && adapter.isStatus(position)) {
+                    return adapter.getStatusPositionKey(position)
+                }
+            }
+            if (!preferences[rememberPositionKey]) return -1
+            return getSavedReadPosition()
+        }
+
+    private val statusesLoader: PagedStatusesLoader?
+        get() = loaderManager.getLoader<List<ParcelableStatus>?>(loaderId) as? PagedStatusesLoader
+
     protected fun getFiltersWhere(table: String): Expression? {
         if (!isFilterEnabled) return null
         return buildStatusFilterWhereClause(preferences, table, null)
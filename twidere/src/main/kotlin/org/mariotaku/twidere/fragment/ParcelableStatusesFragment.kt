@@ -46,6 +46,7 @@ import org.mariotaku.twidere.model.pagination.Pagination
 import org.mariotaku.twidere.model.pagination.SinceMaxPagination
 import org.mariotaku.twidere.util.Utils
 import java.util.*
+import java.util.concurrent.CopyOnWriteArrayList
 
 /**
  * Created by mariotaku on 14/12/3.
@@ -202,8 +203,11 @@ abstract class ParcelableStatusesFragment : AbsStatusesFragment() {
         }
         if (list is MutableList) {
             list.removeAll(dataToRemove)
+            adapterData = list
+        } else {
+            // Restored snapshot is read-only, replace it with a copy
+            adapterData = CopyOnWriteArrayList(list.filterNot { it in dataToRemove })
         }
-        adapterData = list
     }
 
     fun replaceStatusStates(status: ParcelableStatus?) {
@@ -70,8 +70,11 @@ import org.mariotaku.twidere.model.ParcelableMedia
 import org.mariotaku.twidere.model.util.AccountUtils
 import org.mariotaku.twidere.provider.CacheProvider
 import org.mariotaku.twidere.task.SaveFileTask
+import org.mariotaku.twidere.util.HttpClientFactory
 import org.mariotaku.twidere.util.dagger.GeneralComponent
 import org.mariotaku.twidere.util.media.TwidereMediaDownloader
+import org.mariotaku.twidere.util.media.VideoCache
+import org.mariotaku.twidere.util.okhttp.TrafficClass
 import java.io.InputStream
 import javax.inject.Inject
 
@@ -87,10 +90,10 @@ class ExoPlayerPageFragment : MediaViewerFragment(), IBaseFragment<ExoPlayerPage
     internal lateinit var dataSourceFactory: DataSource.Factory
 
     @Inject
-    internal lateinit var extractorsFactory: ExtractorsFactory
+    internal lateinit var videoCache: VideoCache
 
     @Inject
-    internal lateinit var okHttpClient: OkHttpClient
+    internal lateinit var extractorsFactory: ExtractorsFactory
 
     private lateinit var mainHandler: Handler
 
@@ -306,7 +309,8 @@ class ExoPlayerPageFragment : MediaViewerFragment(), IBaseFragment<ExoPlayerPage
         }
 
         val uri = media?.getDownloadUri() ?: return
-        val factory = AuthDelegatingDataSourceFactory(uri, account, dataSourceFactory)
+        val factory = videoCache.dataSourceFactory(AuthDelegatingDataSourceFactory(uri, account,
+                dataSourceFactory))
         val uriSource = ExtractorMediaSource(uri, factory, extractorsFactory, null, null)
         if (isLoopEnabled) {
             playerView.player.prepare(LoopingMediaSource(uriSource))
@@ -337,7 +341,8 @@ class ExoPlayerPageFragment : MediaViewerFragment(), IBaseFragment<ExoPlayerPage
 
     fun getRequestFileInfo(): RequestFileInfo? {
         val uri = media?.getDownloadUri() ?: return null
-        return RequestFileInfo(uri, account, okHttpClient)
+        // Created on demand, so it follows proxy and timeout settings changed after injection
+        return RequestFileInfo(uri, account, HttpClientFactory.createClient(context, TrafficClass.VIDEO))
     }
 
     class AuthDelegatingDataSourceFactory(
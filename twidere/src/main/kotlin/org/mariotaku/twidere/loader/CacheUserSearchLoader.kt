@@ -2,10 +2,11 @@ package org.mariotaku.twidere.loader
 
 import android.annotation.SuppressLint
 import android.content.Context
+import android.net.Uri
 import org.mariotaku.library.objectcursor.ObjectCursor
 import org.mariotaku.microblog.library.twitter.model.Paging
-import org.mariotaku.sqliteqb.library.Columns
-import org.mariotaku.sqliteqb.library.Expression
+import org.mariotaku.twidere.TwidereConstants.EXTRA_ACCOUNT_TYPE
+import org.mariotaku.twidere.TwidereConstants.QUERY_PARAM_QUERY
 import org.mariotaku.twidere.loader.users.UserSearchLoader
 import org.mariotaku.twidere.model.AccountDetails
 import org.mariotaku.twidere.model.ParcelableUser
@@ -13,12 +14,8 @@ import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.model.pagination.PaginatedArrayList
 import org.mariotaku.twidere.model.pagination.PaginatedList
 import org.mariotaku.twidere.provider.TwidereDataStore.CachedUsers
-import org.mariotaku.twidere.util.UserColorNameManager
-import org.mariotaku.twidere.util.Utils
-import org.mariotaku.twidere.util.dagger.GeneralComponent
 import java.text.Collator
 import java.util.*
-import javax.inject.Inject
 
 class CacheUserSearchLoader(
         context: Context,
@@ -28,13 +25,6 @@ class CacheUserSearchLoader(
         private val fromCache: Boolean,
         fromUser: Boolean
 ) : UserSearchLoader(context, accountKey, query, null, fromUser) {
-    @Inject
-    internal lateinit var userColorNameManager: UserColorNameManager
-
-    init {
-        GeneralComponent.get(context).inject(this)
-    }
-
     override fun getUsers(details: AccountDetails, paging: Paging): PaginatedList<ParcelableUser> {
         if (query.isEmpty() || !fromNetwork) return PaginatedArrayList()
         return super.getUsers(details, paging)
@@ -42,16 +32,12 @@ class CacheUserSearchLoader(
 
     override fun processUsersData(details: AccountDetails, list: MutableList<ParcelableUser>) {
         if (query.isEmpty() || !fromCache) return
-        val queryEscaped = query.replace("_", "^_")
-        val nicknameKeys = Utils.getMatchedNicknameKeys(query, userColorNameManager)
-        val selection = Expression.and(Expression.equalsArgs(Columns.Column(CachedUsers.USER_TYPE)),
-                Expression.or(Expression.likeRaw(Columns.Column(CachedUsers.SCREEN_NAME), "?||'%'", "^"),
-                        Expression.likeRaw(Columns.Column(CachedUsers.NAME), "?||'%'", "^"),
-                        Expression.inArgs(Columns.Column(CachedUsers.USER_KEY), nicknameKeys.size)))
-        val selectionArgs = arrayOf(details.type, queryEscaped, queryEscaped, *nicknameKeys)
+        // Users matching query are found by provider with prefix index
+        val uri = Uri.withAppendedPath(CachedUsers.CONTENT_URI_WITH_SCORE, details.key.toString())
+                .buildUpon().appendQueryParameter(QUERY_PARAM_QUERY, query)
+                .appendQueryParameter(EXTRA_ACCOUNT_TYPE, details.type).build()
         @SuppressLint("Recycle")
-        val c = context.contentResolver.query(CachedUsers.CONTENT_URI, CachedUsers.BASIC_COLUMNS,
-                selection.sql, selectionArgs, null)!!
+        val c = context.contentResolver.query(uri, CachedUsers.BASIC_COLUMNS, null, null, null)!!
         val i = ObjectCursor.indicesFrom(c, ParcelableUser::class.java)
         c.moveToFirst()
         while (!c.isAfterLast) {
@@ -22,15 +22,14 @@ package org.mariotaku.twidere.loader.statuses
 import android.accounts.AccountManager
 import android.content.Context
 import android.content.SharedPreferences
-import android.database.sqlite.SQLiteDatabase
 import android.support.annotation.WorkerThread
+import nl.komponents.kovenant.task
 import org.mariotaku.kpreferences.get
 import org.mariotaku.microblog.library.MicroBlogException
 import org.mariotaku.microblog.library.twitter.model.Paging
 import org.mariotaku.microblog.library.twitter.model.Status
 import org.mariotaku.twidere.R
 import org.mariotaku.twidere.TwidereConstants.LOGTAG
-import org.mariotaku.twidere.app.TwidereApplication
 import org.mariotaku.twidere.constant.loadItemLimitKey
 import org.mariotaku.twidere.extension.model.api.applyLoadLimit
 import org.mariotaku.twidere.loader.iface.IPaginationLoader
@@ -47,7 +46,9 @@ import org.mariotaku.twidere.task.twitter.GetStatusesTask
 import org.mariotaku.twidere.util.DebugLog
 import org.mariotaku.twidere.util.UserColorNameManager
 import org.mariotaku.twidere.util.cache.JsonCache
+import org.mariotaku.twidere.util.cache.ParcelableSnapshot
 import org.mariotaku.twidere.util.dagger.GeneralComponent
+import org.mariotaku.twidere.util.filter.FiltersMatcher
 import java.io.IOException
 import java.util.*
 import java.util.concurrent.CopyOnWriteArrayList
@@ -88,13 +89,15 @@ abstract class AbsRequestStatusesLoader(
     lateinit var preferences: SharedPreferences
     @Inject
     lateinit var userColorNameManager: UserColorNameManager
+    @Inject
+    lateinit var filtersMatcher: FiltersMatcher
 
     private val exceptionRef = AtomicReference<MicroBlogException?>()
 
-    private val cachedData: List<ParcelableStatus>?
+    private val cachedData: ParcelableSnapshot.LazyList<ParcelableStatus>?
         get() {
             val key = serializationKey ?: return null
-            return jsonCache.getList(key, ParcelableStatus::class.java)
+            return jsonCache.getSnapshot(key, ParcelableStatus.CREATOR)
         }
 
     private val serializationKey: String?
@@ -113,14 +116,17 @@ abstract class AbsRequestStatusesLoader(
 
         if (isFirstLoad && tabPosition >= 0) {
             val cached = cachedData
-            if (cached != null) {
-                data.addAll(cached)
-                if (comparator != null) {
-                    Collections.sort(data, comparator)
-                } else {
-                    Collections.sort(data)
+            // Snapshot is saved sorted, decode visible items now and the rest in background
+            if (cached != null && cached.decode(0, FIRST_PAINT_ITEMS)) {
+                task {
+                    if (!cached.decode(FIRST_PAINT_ITEMS, cached.size)) {
+                        removeCachedData()
+                    }
                 }
-                return ListResponse.getListInstance(CopyOnWriteArrayList(data))
+                return ListResponse.getListInstance(cached)
+            } else if (cached != null) {
+                // Can't be decoded, load from network instead
+                removeCachedData()
             }
         }
         if (!fromUser) return ListResponse.getListInstance(data)
@@ -146,10 +152,12 @@ abstract class AbsRequestStatusesLoader(
             if (minIdx == -1 || status < statuses[minIdx]) {
                 minIdx = i
             }
-            if (deleteStatus(data, status.id)) {
+            if (status in data) {
                 rowsDeleted++
             }
         }
+        // Replace loaded statuses with new ones, in a single pass
+        data.removeAll(statuses)
 
         // Insert a gap.
         val deletedOldGap = rowsDeleted > 0 && statuses.foundInPagination()
@@ -170,8 +178,7 @@ abstract class AbsRequestStatusesLoader(
             data.addAll(statuses)
         }
 
-        val db = TwidereApplication.getInstance(context).sqLiteDatabase
-        data.forEach { it.is_filtered = shouldFilterStatus(db, it) }
+        data.forEach { it.is_filtered = shouldFilterStatus(it) }
 
         if (comparator != null) {
             data.sortWith(comparator!!)
@@ -188,7 +195,7 @@ abstract class AbsRequestStatusesLoader(
     }
 
     @WorkerThread
-    protected abstract fun shouldFilterStatus(database: SQLiteDatabase, status: ParcelableStatus): Boolean
+    protected abstract fun shouldFilterStatus(status: ParcelableStatus): Boolean
 
 
     protected open fun processPaging(paging: Paging, details: AccountDetails, loadItemLimit: Int) {
@@ -213,7 +220,9 @@ abstract class AbsRequestStatusesLoader(
         val databaseItemLimit = preferences[loadItemLimitKey]
         try {
             val statuses = data.subList(0, Math.min(databaseItemLimit, data.size))
-            jsonCache.saveList(key, statuses, ParcelableStatus::class.java)
+            jsonCache.saveSnapshot(key, statuses) {
+                if (!it.is_gap && it.is_filtered) SNAPSHOT_FLAG_HIDDEN else 0
+            }
         } catch (e: Exception) {
             // Ignore
             if (e !is IOException) {
@@ -223,7 +232,19 @@ abstract class AbsRequestStatusesLoader(
 
     }
 
+    private fun removeCachedData() {
+        val key = serializationKey ?: return
+        jsonCache.remove(key)
+    }
+
     companion object {
+        /**
+         * Snapshot flag of statuses hidden from timeline
+         */
+        const val SNAPSHOT_FLAG_HIDDEN = 1
+
+        private const val FIRST_PAINT_ITEMS = 20
+
         inline fun <R> List<Status>.mapMicroBlogToPaginated(transform: (Status) -> R): PaginatedList<R> {
             val result = mapTo(PaginatedArrayList(size), transform)
             result.nextPage = SinceMaxPagination().apply { maxId = lastOrNull()?.id }
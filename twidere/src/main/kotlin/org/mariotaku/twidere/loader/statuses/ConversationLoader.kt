@@ -20,11 +20,11 @@
 package org.mariotaku.twidere.loader.statuses
 
 import android.content.Context
-import android.database.sqlite.SQLiteDatabase
 import android.support.annotation.WorkerThread
 import org.attoparser.config.ParseConfiguration
 import org.attoparser.dom.DOMMarkupParser
 import org.mariotaku.commons.parcel.ParcelUtils
+import org.mariotaku.library.objectcursor.ObjectCursor
 import org.mariotaku.microblog.library.MicroBlog
 import org.mariotaku.microblog.library.MicroBlogException
 import org.mariotaku.microblog.library.mastodon.Mastodon
@@ -48,7 +48,9 @@ import org.mariotaku.twidere.model.pagination.PaginatedList
 import org.mariotaku.twidere.model.pagination.Pagination
 import org.mariotaku.twidere.model.pagination.SinceMaxPagination
 import org.mariotaku.twidere.model.util.ParcelableStatusUtils
-import org.mariotaku.twidere.util.InternalTwitterContentUtils
+import org.mariotaku.twidere.provider.TwidereDataStore.CachedStatuses
+import org.mariotaku.twidere.util.DataStoreUtils
+import org.mariotaku.twidere.util.content.ContentResolverUtils
 import java.text.ParseException
 import java.util.*
 
@@ -123,14 +125,14 @@ class ConversationLoader(
     }
 
     @WorkerThread
-    override fun shouldFilterStatus(database: SQLiteDatabase, status: ParcelableStatus): Boolean {
-        return InternalTwitterContentUtils.isFiltered(database, status, false)
+    override fun shouldFilterStatus(status: ParcelableStatus): Boolean {
+        return filtersMatcher.isFiltered(status)
     }
 
     @Throws(MicroBlogException::class)
     private fun showConversationCompat(twitter: MicroBlog, details: AccountDetails,
             status: ParcelableStatus, loadReplies: Boolean): PaginatedList<ParcelableStatus> {
-        val statuses = ArrayList<Status>()
+        val statuses = ArrayList<ParcelableStatus>()
         val pagination = this.pagination as? SinceMaxPagination
         val maxId = pagination?.maxId
         val sinceId = pagination?.sinceId
@@ -139,25 +141,30 @@ class ConversationLoader(
         val noSinceMaxId = maxId == null && sinceId == null
 
         var nextPagination: Pagination? = null
+        // Statuses fetched from network, cached for next time
+        val fetched = ArrayList<ParcelableStatus>()
 
         // Load conversations
         if (maxId != null && maxSortId < status.sort_id || noSinceMaxId) {
             var inReplyToId: String? = maxId ?: status.in_reply_to_status_id
             var count = 0
             while (inReplyToId != null && count < 10) {
-                val item = twitter.showStatus(inReplyToId)
-                inReplyToId = item.inReplyToStatusId
+                val item = DataStoreUtils.findStatusInDatabases(context, details.key, inReplyToId)
+                        ?: fetchStatus(twitter, details, inReplyToId)?.also { fetched.add(it) }
+                        ?: break
+                inReplyToId = item.in_reply_to_status_id
                 statuses.add(item)
                 count++
             }
         }
         if (loadReplies || noSinceMaxId || sinceId != null && sinceSortId > status.sort_id) {
+            val replies = ArrayList<Status>()
             // Load replies
             var repliesLoaded = false
             try {
                 if (details.type == AccountType.TWITTER) {
                     if (noSinceMaxId) {
-                        statuses.addAll(loadTwitterWebReplies(details, twitter))
+                        replies.addAll(loadTwitterWebReplies(details, twitter))
                     }
                     repliesLoaded = true
                 }
@@ -179,19 +186,43 @@ class ConversationLoader(
                     if (firstId != null) {
                         nextPagination = SinceMaxPagination.sinceId(firstId, 0)
                     }
-                    queryResult.filterTo(statuses) { it.inReplyToStatusId == status.id }
+                    queryResult.filterTo(replies) { it.inReplyToStatusId == status.id }
                 } catch (e: MicroBlogException) {
                     // Ignore for now
                 }
             }
+            val parcelableReplies = replies.map { it.toParcelable(details, profileImageSize) }
+            statuses.addAll(parcelableReplies)
+            fetched.addAll(parcelableReplies)
         }
-        return statuses.mapTo(PaginatedArrayList()) {
-            it.toParcelable(details, profileImageSize)
-        }.apply {
+        cacheStatuses(fetched)
+        return statuses.mapTo(PaginatedArrayList(statuses.size)) { it }.apply {
             this.nextPage = nextPagination
         }
     }
 
+    /**
+     * Ancestors are only known one at a time, from `in_reply_to_status_id` of the previous one.
+     * Twitter uses `statuses/lookup`, which omits deleted or protected statuses instead of
+     * failing whole conversation.
+     *
+     * @return null if status is not available
+     */
+    @Throws(MicroBlogException::class)
+    private fun fetchStatus(twitter: MicroBlog, details: AccountDetails, id: String): ParcelableStatus? {
+        if (details.type == AccountType.TWITTER) {
+            return twitter.lookupStatuses(arrayOf(id)).firstOrNull()?.toParcelable(details, profileImageSize)
+        }
+        return twitter.showStatus(id).toParcelable(details, profileImageSize)
+    }
+
+    private fun cacheStatuses(statuses: List<ParcelableStatus>) {
+        if (statuses.isEmpty()) return
+        val creator = ObjectCursor.valuesCreatorFrom(ParcelableStatus::class.java)
+        ContentResolverUtils.bulkInsert(context.contentResolver, CachedStatuses.CONTENT_URI,
+                statuses.map { creator.create(it) })
+    }
+
     private fun loadTwitterWebReplies(details: AccountDetails, twitter: MicroBlog): List<Status> {
         val web = details.newMicroBlogInstance(context, TwitterWeb::class.java)
         val page = web.getStatusPage(status.user_screen_name, status.id).page
@@ -20,7 +20,6 @@
 package org.mariotaku.twidere.loader.statuses
 
 import android.content.Context
-import android.database.sqlite.SQLiteDatabase
 import android.support.annotation.WorkerThread
 import org.mariotaku.ktextension.isNullOrEmpty
 import org.mariotaku.microblog.library.MicroBlog
@@ -37,7 +36,6 @@ import org.mariotaku.twidere.model.AccountDetails
 import org.mariotaku.twidere.model.ParcelableStatus
 import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.model.pagination.PaginatedList
-import org.mariotaku.twidere.util.InternalTwitterContentUtils
 
 open class MediaStatusesSearchLoader(
         context: Context,
@@ -60,9 +58,9 @@ open class MediaStatusesSearchLoader(
     }
 
     @WorkerThread
-    override fun shouldFilterStatus(database: SQLiteDatabase, status: ParcelableStatus): Boolean {
+    override fun shouldFilterStatus(status: ParcelableStatus): Boolean {
         if (status.media.isNullOrEmpty()) return true
-        return InternalTwitterContentUtils.isFiltered(database, status, true)
+        return filtersMatcher.isFiltered(status)
     }
 
     override fun processPaging(paging: Paging, details: AccountDetails, loadItemLimit: Int) {
@@ -20,7 +20,6 @@
 package org.mariotaku.twidere.loader.statuses
 
 import android.content.Context
-import android.database.sqlite.SQLiteDatabase
 import android.support.annotation.WorkerThread
 import org.mariotaku.ktextension.isNullOrEmpty
 import org.mariotaku.microblog.library.MicroBlog
@@ -40,7 +39,6 @@ import org.mariotaku.twidere.model.ParcelableStatus
 import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.model.pagination.PaginatedList
 import org.mariotaku.twidere.util.DataStoreUtils
-import org.mariotaku.twidere.util.InternalTwitterContentUtils
 
 class MediaTimelineLoader(
         context: Context,
@@ -78,10 +76,10 @@ class MediaTimelineLoader(
     }
 
     @WorkerThread
-    override fun shouldFilterStatus(database: SQLiteDatabase, status: ParcelableStatus): Boolean {
+    override fun shouldFilterStatus(status: ParcelableStatus): Boolean {
         if (status.media.isNullOrEmpty()) return false
         val retweetUserKey = status.user_key.takeIf { status.is_retweet }
-        return !isMyTimeline && InternalTwitterContentUtils.isFiltered(database, retweetUserKey,
+        return !isMyTimeline && filtersMatcher.isFiltered(retweetUserKey,
                 status.text_plain, status.quoted_text_plain, status.spans, status.quoted_spans,
                 status.source, status.quoted_source, null, status.quoted_user_key)
     }
@@ -0,0 +1,282 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.loader.statuses
+
+import android.content.Context
+import android.database.ContentObserver
+import android.database.Cursor
+import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import android.support.annotation.UiThread
+import android.support.v4.content.FixedAsyncTaskLoader
+import android.support.v7.util.DiffUtil
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.library.objectcursor.ObjectCursor
+import org.mariotaku.twidere.TwidereConstants.QUERY_PARAM_LIMIT
+import org.mariotaku.twidere.loader.iface.IExtendedLoader
+import org.mariotaku.twidere.model.ParcelableStatus
+import org.mariotaku.twidere.provider.TwidereDataStore.Statuses
+import java.util.*
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Loads statuses in database page by page, instead of querying whole table on every change.
+ *
+ * Pages are queried by keyset of sort order (`timestamp`, `sort_id`, `id`, `_id`), so a page
+ * costs the same wherever it is. Window starts from newest status and covers position to restore
+ * ([anchorPositionKey]), then grows by [loadNextPage]. When table changes, only range of loaded
+ * window is queried again, and new window is diffed against old one, see [Window.diff].
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+class PagedStatusesLoader(
+        context: Context,
+        private val uri: Uri,
+        private val selection: String?,
+        private val selectionArgs: Array<String>?,
+        private val anchorPositionKey: Long = -1,
+        override var fromUser: Boolean
+) : FixedAsyncTaskLoader<List<ParcelableStatus>?>(context), IExtendedLoader {
+
+    /**
+     * Rows after loaded window exist in database
+     */
+    val hasMoreInDatabase: Boolean
+        get() = window?.hasMore ?: false
+
+    @Volatile
+    private var window: Window? = null
+    /** Rows requested by [loadNextPage] */
+    @Volatile
+    private var requestedSize: Int = 0
+    /** Increased on every change notification, compared with [Window.changeCount] */
+    private val changeCount = AtomicInteger()
+    private var observerRegistered = false
+
+    private val observer = object : ContentObserver(Handler(Looper.getMainLooper())) {
+        override fun deliverSelfNotifications() = true
+
+        override fun onChange(selfChange: Boolean) {
+            changeCount.incrementAndGet()
+            onContentChanged()
+        }
+    }
+
+    override fun loadInBackground(): List<ParcelableStatus>? {
+        val previous = window
+        val changes = changeCount.get()
+        val rows: MutableList<Row>
+        val targetSize: Int
+        if (previous == null || previous.rows.isEmpty()) {
+            rows = loadAnchorRange()
+            targetSize = Math.max(requestedSize, rows.size + PAGE_SIZE)
+        } else if (previous.changeCount != changes) {
+            // Range invalidation, rows inserted or updated inside window are picked up
+            rows = queryRows(notAfter(previous.rows.last()), null)
+            targetSize = Math.max(requestedSize, rows.size)
+        } else {
+            rows = ArrayList(previous.rows)
+            targetSize = Math.max(requestedSize, rows.size)
+        }
+        val hasMore = appendRows(rows, targetSize - rows.size)
+        val diff = previous?.let { DiffUtil.calculateDiff(RowsDiffCallback(it.rows, rows), false) }
+        return Window(rows, hasMore, changes, previous?.id ?: -1, diff)
+    }
+
+    /* Runs on the UI thread */
+    override fun deliverResult(data: List<ParcelableStatus>?) {
+        if (isReset) return
+        window = data as Window?
+        if (isStarted) {
+            super.deliverResult(data)
+        }
+    }
+
+    /**
+     * Load next page from database, does nothing if all rows were loaded
+     */
+    @UiThread
+    fun loadNextPage() {
+        val current = window ?: return
+        if (!current.hasMore) return
+        val size = current.size + PAGE_SIZE
+        if (size <= requestedSize) return
+        requestedSize = size
+        forceLoad()
+    }
+
+    override fun onStartLoading() {
+        if (!observerRegistered) {
+            context.contentResolver.registerContentObserver(uri, true, observer)
+            observerRegistered = true
+        }
+        window?.let { deliverResult(it) }
+        if (takeContentChanged() || window == null) {
+            forceLoad()
+        }
+    }
+
+    override fun onStopLoading() {
+        cancelLoad()
+    }
+
+    override fun onReset() {
+        super.onReset()
+        onStopLoading()
+        if (observerRegistered) {
+            context.contentResolver.unregisterContentObserver(observer)
+            observerRegistered = false
+        }
+        window = null
+    }
+
+    /**
+     * Rows from newest one to [anchorPositionKey], capped to [MAX_ANCHOR_RANGE]
+     */
+    private fun loadAnchorRange(): MutableList<Row> {
+        if (anchorPositionKey <= 0) return ArrayList()
+        val anchor = queryRows("${Statuses.POSITION_KEY} <= ?", arrayOf(anchorPositionKey.toString()),
+                1).firstOrNull() ?: return ArrayList()
+        return queryRows(notAfter(anchor), MAX_ANCHOR_RANGE)
+    }
+
+    /**
+     * @return true if more rows exist after appended ones
+     */
+    private fun appendRows(rows: MutableList<Row>, count: Int): Boolean {
+        val limit = Math.max(count, 0)
+        // One more row to see whether there are more
+        val page = rows.lastOrNull()?.let { queryRows(after(it), limit + 1) } ?: queryRows(null, null, limit + 1)
+        rows.addAll(page.subList(0, Math.min(limit, page.size)))
+        return page.size > limit
+    }
+
+    private fun queryRows(keyset: Pair<String, Array<String>>, limit: Int?): MutableList<Row> {
+        return queryRows(keyset.first, keyset.second, limit)
+    }
+
+    private fun queryRows(where: String?, whereArgs: Array<String>?, limit: Int?): MutableList<Row> {
+        val querySelection = when {
+            where == null -> selection
+            selection == null -> where
+            else -> "($selection) AND ($where)"
+        }
+        val queryArgs = arrayOf(*(selectionArgs ?: emptyArray()), *(whereArgs ?: emptyArray()))
+        val queryUri = if (limit != null) {
+            uri.buildUpon().appendQueryParameter(QUERY_PARAM_LIMIT, limit.toString()).build()
+        } else {
+            uri
+        }
+        val result = ArrayList<Row>()
+        context.contentResolver.query(queryUri, Statuses.COLUMNS, querySelection, queryArgs,
+                SORT_ORDER)?.useCursor { cur ->
+            val indices = ObjectCursor.indicesFrom(cur, ParcelableStatus::class.java)
+            cur.moveToFirst()
+            while (!cur.isAfterLast) {
+                result.add(Row(indices.newObject(cur), cur.rowHash()))
+                cur.moveToNext()
+            }
+        }
+        return result
+    }
+
+    /**
+     * Immutable window of statuses
+     */
+    class Window internal constructor(
+            internal val rows: List<Row>,
+            val hasMore: Boolean,
+            internal val changeCount: Int,
+            /** [id] of window [diff] was computed against */
+            val diffBaseId: Int,
+            /** Changes from window [diffBaseId], item positions are positions in list */
+            val diff: DiffUtil.DiffResult?
+    ) : AbstractList<ParcelableStatus>() {
+
+        val id = nextWindowId.incrementAndGet()
+
+        override val size: Int
+            get() = rows.size
+
+        override fun get(index: Int): ParcelableStatus = rows[index].status
+    }
+
+    internal class Row(val status: ParcelableStatus, val contentHash: Long)
+
+    /**
+     * Items are same status if account and ID equal, contents are compared by hash of columns
+     */
+    private class RowsDiffCallback(val oldRows: List<Row>, val newRows: List<Row>) : DiffUtil.Callback() {
+        override fun getOldListSize() = oldRows.size
+
+        override fun getNewListSize() = newRows.size
+
+        override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+            return oldRows[oldItemPosition].status == newRows[newItemPosition].status
+        }
+
+        override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean {
+            return oldRows[oldItemPosition].contentHash == newRows[newItemPosition].contentHash
+        }
+    }
+
+    companion object {
+        const val PAGE_SIZE = 100
+        /** Max rows loaded to restore position */
+        const val MAX_ANCHOR_RANGE = 1000
+
+        private val SORT_ORDER = "${Statuses.DEFAULT_SORT_ORDER}, ${Statuses._ID} DESC"
+        /** Rows after key in [SORT_ORDER] */
+        private val AFTER_KEY = "${Statuses.TIMESTAMP} < ? OR (${Statuses.TIMESTAMP} = ? AND " +
+                "(${Statuses.SORT_ID} < ? OR (${Statuses.SORT_ID} = ? AND " +
+                "(${Statuses.ID} < ? OR (${Statuses.ID} = ? AND ${Statuses._ID} < ?)))))"
+
+        private val nextWindowId = AtomicInteger()
+
+        private fun after(row: Row): Pair<String, Array<String>> {
+            return Pair(AFTER_KEY, row.keyArgs())
+        }
+
+        private fun notAfter(row: Row): Pair<String, Array<String>> {
+            return Pair("NOT ($AFTER_KEY)", row.keyArgs())
+        }
+
+        private fun Row.keyArgs(): Array<String> {
+            val timestamp = status.timestamp.toString()
+            val sortId = status.sort_id.toString()
+            return arrayOf(timestamp, timestamp, sortId, sortId, status.id, status.id, status._id.toString())
+        }
+
+        private fun Cursor.rowHash(): Long {
+            var hash = 1125899906842597L
+            for (i in 0 until columnCount) {
+                hash = 31 * hash + when (getType(i)) {
+                    Cursor.FIELD_TYPE_INTEGER -> getLong(i)
+                    Cursor.FIELD_TYPE_FLOAT -> java.lang.Double.doubleToLongBits(getDouble(i))
+                    Cursor.FIELD_TYPE_STRING -> getString(i).hashCode().toLong()
+                    Cursor.FIELD_TYPE_BLOB -> Arrays.hashCode(getBlob(i)).toLong()
+                    else -> 0L
+                }
+            }
+            return hash
+        }
+    }
+}
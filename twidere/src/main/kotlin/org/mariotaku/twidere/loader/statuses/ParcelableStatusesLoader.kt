@@ -46,18 +46,6 @@ abstract class ParcelableStatusesLoader(
         return data.any { TextUtils.equals(it.id, statusId) }
     }
 
-    protected fun deleteStatus(statuses: MutableList<ParcelableStatus>?, statusId: String): Boolean {
-        if (statuses == null || statuses.isEmpty()) return false
-        var result = false
-        for (i in statuses.indices.reversed()) {
-            if (TextUtils.equals(statuses[i].id, statusId)) {
-                statuses.removeAt(i)
-                result = true
-            }
-        }
-        return result
-    }
-
     override fun onStartLoading() {
         forceLoad()
     }
@@ -20,7 +20,6 @@
 package org.mariotaku.twidere.loader.statuses
 
 import android.content.Context
-import android.database.sqlite.SQLiteDatabase
 import android.support.annotation.WorkerThread
 import android.text.TextUtils
 import okhttp3.HttpUrl
@@ -51,7 +50,6 @@ import org.mariotaku.twidere.model.AccountDetails
 import org.mariotaku.twidere.model.ParcelableStatus
 import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.model.timeline.UserTimelineFilter
-import org.mariotaku.twidere.util.InternalTwitterContentUtils
 import org.mariotaku.twidere.util.JsonSerializer
 import org.mariotaku.twidere.util.dagger.DependencyHolder
 import java.io.IOException
@@ -91,7 +89,7 @@ class UserTimelineLoader(
     }
 
     @WorkerThread
-    override fun shouldFilterStatus(database: SQLiteDatabase, status: ParcelableStatus): Boolean {
+    override fun shouldFilterStatus(status: ParcelableStatus): Boolean {
         if (timelineFilter != null) {
             if (status.is_retweet && !timelineFilter.isIncludeRetweets) {
                 return true
@@ -100,7 +98,7 @@ class UserTimelineLoader(
         if (accountKey != null && userKey != null && TextUtils.equals(accountKey.id, userKey.id))
             return false
         val retweetUserKey = status.user_key.takeIf { status.is_retweet }
-        return InternalTwitterContentUtils.isFiltered(database, retweetUserKey, status.text_plain,
+        return filtersMatcher.isFiltered(retweetUserKey, status.text_plain,
                 status.quoted_text_plain, status.spans, status.quoted_spans, status.source,
                 status.quoted_source, null, status.quoted_user_key)
     }
@@ -75,8 +75,9 @@ abstract class AbsRequestUsersLoader(
         }
 
         var pos = data.size
+        val loadedKeys = data.mapTo(HashSet()) { it.key }
         for (user in users) {
-            if (hasId(user.key)) {
+            if (user.key in loadedKeys) {
                 continue
             }
             user.position = pos.toLong()
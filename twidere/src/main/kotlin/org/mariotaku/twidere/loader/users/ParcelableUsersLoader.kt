@@ -23,7 +23,6 @@ import android.content.Context
 import android.support.v4.content.FixedAsyncTaskLoader
 import org.mariotaku.twidere.loader.iface.IExtendedLoader
 import org.mariotaku.twidere.model.ParcelableUser
-import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.util.collection.NoDuplicatesArrayList
 import java.util.*
 
@@ -45,8 +44,4 @@ abstract class ParcelableUsersLoader(
         forceLoad()
     }
 
-    protected fun hasId(key: UserKey): Boolean {
-        return data.indices.any { data[it].key == key }
-    }
-
 }
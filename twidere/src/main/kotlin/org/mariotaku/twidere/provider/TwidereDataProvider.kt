@@ -51,7 +51,10 @@ import org.mariotaku.twidere.model.event.UnreadCountUpdatedEvent
 import org.mariotaku.twidere.provider.TwidereDataStore.*
 import org.mariotaku.twidere.util.*
 import org.mariotaku.twidere.util.SQLiteDatabaseWrapper.LazyLoadCallback
+import org.mariotaku.twidere.util.content.DatabaseHousekeeper
+import org.mariotaku.twidere.util.content.UserCacheWriter
 import org.mariotaku.twidere.util.dagger.GeneralComponent
+import org.mariotaku.twidere.util.database.CachedUsersPrefixIndex
 import org.mariotaku.twidere.util.database.CachedUsersQueryBuilder
 import org.mariotaku.twidere.util.database.SuggestionsCursorCreator
 import java.util.concurrent.Executor
@@ -79,6 +82,8 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
     lateinit internal var permissionsManager: PermissionsManager
     @Inject
     lateinit internal var contentNotificationManager: ContentNotificationManager
+    @Inject
+    lateinit internal var cachedUsersPrefixIndex: CachedUsersPrefixIndex
 
     private lateinit var databaseWrapper: SQLiteDatabaseWrapper
     private lateinit var backgroundExecutor: Executor
@@ -179,6 +184,12 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
                     return c
                 }
                 VIRTUAL_TABLE_ID_CACHED_USERS_WITH_SCORE -> {
+                    if (uri.getQueryParameter(QUERY_PARAM_QUERY) != null) {
+                        val c = SuggestionsCursorCreator.forCachedUsers(databaseWrapper,
+                                cachedUsersPrefixIndex, uri, projection, sortOrder)
+                        c?.setNotificationUri(context.contentResolver, CachedUsers.CONTENT_URI)
+                        return c
+                    }
                     val accountKey = UserKey.valueOf(uri.lastPathSegment)
                     val accountHost = uri.getQueryParameter(EXTRA_ACCOUNT_HOST)
                     val accountType = uri.getQueryParameter(EXTRA_ACCOUNT_TYPE)
@@ -205,11 +216,11 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
                 }
                 VIRTUAL_TABLE_ID_SUGGESTIONS_AUTO_COMPLETE -> {
                     return SuggestionsCursorCreator.forAutoComplete(databaseWrapper,
-                            userColorNameManager, uri, projection)
+                            cachedUsersPrefixIndex, uri, projection)
                 }
                 VIRTUAL_TABLE_ID_SUGGESTIONS_SEARCH -> {
                     return SuggestionsCursorCreator.forSearch(databaseWrapper,
-                            userColorNameManager, uri, projection)
+                            cachedUsersPrefixIndex, uri, projection)
                 }
                 VIRTUAL_TABLE_ID_NULL -> {
                     return null
@@ -229,8 +240,9 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
                 }
             }
             if (table == null) return null
+            val limit = uri.getQueryParameter(QUERY_PARAM_LIMIT)
             val c = databaseWrapper.query(table, projection, selection, selectionArgs,
-                    null, null, sortOrder)
+                    null, null, sortOrder, limit)
             c?.setNotificationUri(context.contentResolver, uri)
             return c
         } catch (e: SQLException) {
@@ -284,7 +296,9 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
                 databaseWrapper.delete(CachedUsers.TABLE_NAME, null, null)
                 databaseWrapper.delete(CachedStatuses.TABLE_NAME, null, null)
                 databaseWrapper.delete(CachedHashtags.TABLE_NAME, null, null)
-                databaseWrapper.execSQL("VACUUM")
+                cachedUsersPrefixIndex.invalidate()
+                // VACUUM needs extra space as large as the database, which we don't have
+                DatabaseHousekeeper.incrementalVacuum(databaseWrapper.sqLiteDatabase)
                 return true
             }
         } catch (ee: SQLException) {
@@ -302,7 +316,8 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
         if (table != null && valuesArray.isNotEmpty()) {
             databaseWrapper.beginTransaction()
             if (tableId == TABLE_ID_CACHED_USERS) {
-                for (values in valuesArray) {
+                for (item in valuesArray) {
+                    val values = prepareCachedUserValues(item)
                     val where = Expression.equalsArgs(CachedUsers.USER_KEY)
                     databaseWrapper.update(table, values, where.sql, arrayOf(values.getAsString(CachedUsers.USER_KEY)))
                     newIds[result++] = databaseWrapper.insertWithOnConflict(table, null,
@@ -333,6 +348,9 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
             databaseWrapper.setTransactionSuccessful()
             databaseWrapper.endTransaction()
         }
+        if (tableId == TABLE_ID_CACHED_USERS) {
+            cachedUsersPrefixIndex.putUsers(valuesArray, true)
+        }
         if (result > 0) {
             onDatabaseUpdated(tableId, uri)
         }
@@ -349,7 +367,9 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
             }
             else -> {
                 val table = DataStoreUtils.getTableNameById(tableId) ?: return 0
+                val deletedUserKeys = findCachedUserKeys(tableId, selection, selectionArgs)
                 val result = databaseWrapper.delete(table, selection, selectionArgs)
+                deletedUserKeys?.let { cachedUsersPrefixIndex.removeUsers(it) }
                 if (result > 0) {
                     onDatabaseUpdated(tableId, uri)
                 }
@@ -366,13 +386,15 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
         var rowId: Long = -1
         when (tableId) {
             TABLE_ID_CACHED_USERS -> {
-                if (values != null) {
+                val userValues = values?.let(this::prepareCachedUserValues)
+                if (userValues != null) {
                     val where = Expression.equalsArgs(CachedUsers.USER_KEY)
-                    val whereArgs = arrayOf(values.getAsString(CachedUsers.USER_KEY))
-                    databaseWrapper.update(table, values, where.sql, whereArgs)
+                    val whereArgs = arrayOf(userValues.getAsString(CachedUsers.USER_KEY))
+                    databaseWrapper.update(table, userValues, where.sql, whereArgs)
                 }
-                rowId = databaseWrapper.insertWithOnConflict(table, null, values,
+                rowId = databaseWrapper.insertWithOnConflict(table, null, userValues,
                         SQLiteDatabase.CONFLICT_IGNORE)
+                cachedUsersPrefixIndex.putUsers(arrayOf(userValues), false)
             }
             TABLE_ID_SEARCH_HISTORY -> {
                 if (values != null) {
@@ -432,15 +454,48 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
         val tableId = DataStoreUtils.getTableId(uri)
         val table = DataStoreUtils.getTableNameById(tableId)
         var result = 0
+        val touchOnly = tableId == TABLE_ID_CACHED_USERS && values != null && values.size() == 1
+                && values.containsKey(CachedUsers.LAST_CACHED)
+        val updateValues = if (tableId == TABLE_ID_CACHED_USERS && values != null && !touchOnly) {
+            invalidateContentHash(values)
+        } else {
+            values
+        }
+        // Touching users doesn't change what's indexed
+        val updatedUserKeys = if (touchOnly) null else findCachedUserKeys(tableId, selection, selectionArgs)
         if (table != null) {
-            result = databaseWrapper.update(table, values, selection, selectionArgs)
+            result = databaseWrapper.update(table, updateValues, selection, selectionArgs)
         }
+        updatedUserKeys?.let { cachedUsersPrefixIndex.reloadUsers(databaseWrapper.sqLiteDatabase, it) }
         if (result > 0) {
             onDatabaseUpdated(tableId, uri)
         }
         return result
     }
 
+    /**
+     * Rows written without hash may differ from what [UserCacheWriter] wrote last time
+     *
+     * @return [values] if it has hash, otherwise a copy with hash cleared
+     */
+    private fun invalidateContentHash(values: ContentValues): ContentValues {
+        if (values.containsKey(CachedUsers.CONTENT_HASH)) return values
+        val copy = ContentValues(values)
+        copy.putNull(CachedUsers.CONTENT_HASH)
+        return copy
+    }
+
+    /**
+     * Inserted users are marked as just cached, so they won't be evicted first by housekeeping
+     */
+    private fun prepareCachedUserValues(values: ContentValues): ContentValues {
+        val result = invalidateContentHash(values)
+        if (result.containsKey(CachedUsers.LAST_CACHED)) return result
+        val copy = if (result === values) ContentValues(values) else result
+        copy.put(CachedUsers.LAST_CACHED, System.currentTimeMillis())
+        return copy
+    }
+
     private fun notifyContentObserver(uri: Uri) {
         if (!uri.getBooleanQueryParameter(QUERY_PARAM_NOTIFY_CHANGE, true)) return
         handler.post {
@@ -453,10 +508,25 @@ class TwidereDataProvider : ContentProvider(), LazyLoadCallback {
     }
 
     private fun onDatabaseUpdated(tableId: Int, uri: Uri?) {
+        if (tableId == TABLE_ID_CACHED_RELATIONSHIPS) {
+            cachedUsersPrefixIndex.invalidateRelationships()
+        }
         if (uri == null) return
         notifyContentObserver(uri)
     }
 
+    /**
+     * Finds cached users going to be updated or deleted, so [cachedUsersPrefixIndex] can follow
+     *
+     * @return Null if [tableId] is not cached users, or index is not loaded
+     */
+    private fun findCachedUserKeys(tableId: Int, selection: String?, selectionArgs: Array<String>?): Array<String>? {
+        if (tableId != TABLE_ID_CACHED_USERS) return null
+        databaseWrapper.prepare()
+        return cachedUsersPrefixIndex.findUserKeys(databaseWrapper.sqLiteDatabase, selection,
+                selectionArgs)
+    }
+
     private fun onItemDeleted(uri: Uri, tableId: Int) {
     }
 
@@ -26,6 +26,7 @@ import android.net.ConnectivityManager
 import android.support.v4.net.ConnectivityManagerCompat
 import org.mariotaku.twidere.service.StreamingService
 import org.mariotaku.twidere.util.dagger.DependencyHolder
+import org.mariotaku.twidere.util.net.TwidereDns
 
 class ConnectivityStateReceiver : BroadcastReceiver() {
 
@@ -36,6 +37,8 @@ class ConnectivityStateReceiver : BroadcastReceiver() {
         val isNetworkMetered = ConnectivityManagerCompat.isActiveNetworkMetered(cm)
         val holder = DependencyHolder.get(context)
         holder.mediaPreloader.isNetworkMetered = isNetworkMetered
+        // Answers may differ between networks
+        (holder.dns as? TwidereDns)?.clearCache()
         StreamingService.startOrStopService(appContext)
     }
 
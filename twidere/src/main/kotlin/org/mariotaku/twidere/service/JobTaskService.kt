@@ -27,7 +27,6 @@ import android.os.Build
 import android.util.Log
 import org.mariotaku.kpreferences.KPreferences
 import org.mariotaku.twidere.TwidereConstants.LOGTAG
-import org.mariotaku.twidere.annotation.AutoRefreshType
 import org.mariotaku.twidere.constant.autoRefreshCompatibilityModeKey
 import org.mariotaku.twidere.util.Analyzer
 import org.mariotaku.twidere.util.TaskServiceRunner
@@ -84,6 +83,7 @@ class JobTaskService : JobService() {
         const val JOB_ID_REFRESH_HOME_TIMELINE = 1
         const val JOB_ID_REFRESH_NOTIFICATIONS = 2
         const val JOB_ID_REFRESH_DIRECT_MESSAGES = 3
+        const val JOB_ID_REFRESH_ALL = 4
         const val JOB_ID_REFRESH_FILTERS_SUBSCRIPTIONS = 19
         const val JOB_ID_SYNC_DRAFTS = 21
         const val JOB_ID_SYNC_FILTERS = 22
@@ -91,23 +91,17 @@ class JobTaskService : JobService() {
         const val JOB_ID_SYNC_USER_COLORS = 24
 
         val JOB_IDS_REFRESH = intArrayOf(JOB_ID_REFRESH_HOME_TIMELINE, JOB_ID_REFRESH_NOTIFICATIONS,
-                JOB_ID_REFRESH_DIRECT_MESSAGES)
+                JOB_ID_REFRESH_DIRECT_MESSAGES, JOB_ID_REFRESH_FILTERS_SUBSCRIPTIONS, JOB_ID_REFRESH_ALL)
         val JOB_IDS_SYNC = intArrayOf(JOB_ID_SYNC_DRAFTS, JOB_ID_SYNC_FILTERS,
                 JOB_ID_SYNC_USER_NICKNAMES, JOB_ID_SYNC_USER_COLORS)
 
-        fun getRefreshJobId(@AutoRefreshType type: String): Int = when (type) {
-            AutoRefreshType.HOME_TIMELINE -> JOB_ID_REFRESH_HOME_TIMELINE
-            AutoRefreshType.INTERACTIONS_TIMELINE -> JOB_ID_REFRESH_NOTIFICATIONS
-            AutoRefreshType.DIRECT_MESSAGES -> JOB_ID_REFRESH_DIRECT_MESSAGES
-            else -> 0
-        }
-
         @TaskServiceRunner.Action
         fun getTaskAction(jobId: Int): String? = when (jobId) {
             JOB_ID_REFRESH_HOME_TIMELINE -> TaskServiceRunner.ACTION_REFRESH_HOME_TIMELINE
             JOB_ID_REFRESH_NOTIFICATIONS -> TaskServiceRunner.ACTION_REFRESH_NOTIFICATIONS
             JOB_ID_REFRESH_DIRECT_MESSAGES -> TaskServiceRunner.ACTION_REFRESH_DIRECT_MESSAGES
             JOB_ID_REFRESH_FILTERS_SUBSCRIPTIONS -> TaskServiceRunner.ACTION_REFRESH_FILTERS_SUBSCRIPTIONS
+            JOB_ID_REFRESH_ALL -> TaskServiceRunner.ACTION_REFRESH_ALL
             JOB_ID_SYNC_DRAFTS -> TaskServiceRunner.ACTION_SYNC_DRAFTS
             JOB_ID_SYNC_FILTERS -> TaskServiceRunner.ACTION_SYNC_FILTERS
             JOB_ID_SYNC_USER_NICKNAMES -> TaskServiceRunner.ACTION_SYNC_USER_NICKNAMES
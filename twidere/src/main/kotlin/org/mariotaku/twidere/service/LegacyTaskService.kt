@@ -25,11 +25,7 @@ import android.os.IBinder
 import android.util.Log
 import org.mariotaku.kpreferences.get
 import org.mariotaku.twidere.TwidereConstants.LOGTAG
-import org.mariotaku.twidere.annotation.AutoRefreshType
 import org.mariotaku.twidere.constant.autoRefreshCompatibilityModeKey
-import org.mariotaku.twidere.util.TaskServiceRunner.Companion.ACTION_REFRESH_DIRECT_MESSAGES
-import org.mariotaku.twidere.util.TaskServiceRunner.Companion.ACTION_REFRESH_HOME_TIMELINE
-import org.mariotaku.twidere.util.TaskServiceRunner.Companion.ACTION_REFRESH_NOTIFICATIONS
 import org.mariotaku.twidere.util.dagger.GeneralComponent
 
 class LegacyTaskService : BaseService() {
@@ -58,15 +54,4 @@ class LegacyTaskService : BaseService() {
         return START_NOT_STICKY
     }
 
-
-    companion object {
-
-        fun getRefreshAction(@AutoRefreshType type: String): String? = when (type) {
-            AutoRefreshType.HOME_TIMELINE -> ACTION_REFRESH_HOME_TIMELINE
-            AutoRefreshType.INTERACTIONS_TIMELINE -> ACTION_REFRESH_NOTIFICATIONS
-            AutoRefreshType.DIRECT_MESSAGES -> ACTION_REFRESH_DIRECT_MESSAGES
-            else -> null
-        }
-
-    }
 }
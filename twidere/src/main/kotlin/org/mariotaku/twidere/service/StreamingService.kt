@@ -3,6 +3,7 @@ package org.mariotaku.twidere.service
 import android.accounts.AccountManager
 import android.accounts.OnAccountsUpdateListener
 import android.app.PendingIntent
+import android.content.ContentValues
 import android.content.Context
 import android.content.Intent
 import android.os.Handler
@@ -16,7 +17,6 @@ import org.mariotaku.abstask.library.TaskStarter
 import org.mariotaku.kpreferences.get
 import org.mariotaku.ktextension.addOnAccountsUpdatedListenerSafe
 import org.mariotaku.ktextension.removeOnAccountsUpdatedListenerSafe
-import org.mariotaku.ktextension.toLongOr
 import org.mariotaku.ktextension.toNulls
 import org.mariotaku.library.objectcursor.ObjectCursor
 import org.mariotaku.microblog.library.MicroBlogException
@@ -46,16 +46,23 @@ import org.mariotaku.twidere.util.IntentUtils
 import org.mariotaku.twidere.util.Utils
 import org.mariotaku.twidere.util.dagger.DependencyHolder
 import org.mariotaku.twidere.util.dagger.GeneralComponent
+import org.mariotaku.twidere.util.filter.FiltersMatcher
+import org.mariotaku.twidere.util.streaming.StreamingBatchWriter
 import org.mariotaku.twidere.util.streaming.TwitterTimelineStreamCallback
 import java.util.*
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
+import javax.inject.Inject
 
 class StreamingService : BaseService() {
 
+    @Inject
+    lateinit var filtersMatcher: FiltersMatcher
+
     internal lateinit var threadPoolExecutor: ExecutorService
     internal lateinit var handler: Handler
+    internal lateinit var batchWriter: StreamingBatchWriter
 
     private val submittedTasks: MutableMap<UserKey, StreamingRunnable<*>> = WeakHashMap()
 
@@ -72,6 +79,7 @@ class StreamingService : BaseService() {
                 .namingPattern("twidere-streaming-%d")
                 .priority(Thread.NORM_PRIORITY - 1).build())
         handler = Handler(Looper.getMainLooper())
+        batchWriter = StreamingBatchWriter(contentResolver)
         AccountManager.get(this).addOnAccountsUpdatedListenerSafe(accountChangeObserver, updateImmediately = false)
     }
 
@@ -83,6 +91,7 @@ class StreamingService : BaseService() {
             v.cancel()
         }
         threadPoolExecutor.shutdown()
+        batchWriter.close()
         submittedTasks.clear()
         removeNotification()
         AccountManager.get(this).removeOnAccountsUpdatedListenerSafe(accountChangeObserver)
@@ -258,6 +267,7 @@ class StreamingService : BaseService() {
             private var interactionsInsertGap = false
 
             private var lastActivityAboutMe: ParcelableActivity? = null
+            private var lastActivityAboutMeValues: ContentValues? = null
 
             override fun onConnected(): Boolean {
                 homeInsertGap = true
@@ -284,10 +294,11 @@ class StreamingService : BaseService() {
 
                 lastStatusTimestamps[0] = parcelableStatus.position_key
                 lastStatusTimestamps[1] = parcelableStatus.inserted_date
+                filtersMatcher.updateFilterFlag(parcelableStatus)
 
                 val values = ObjectCursor.valuesCreatorFrom(ParcelableStatus::class.java)
                         .create(parcelableStatus)
-                context.contentResolver.insert(Statuses.CONTENT_URI, values)
+                batchWriter.insert(Statuses.CONTENT_URI, values)
                 homeInsertGap = false
                 return true
             }
@@ -315,7 +326,7 @@ class StreamingService : BaseService() {
                     val curActivity = activity.toParcelable(account, insertGap, profileImageSize)
                     curActivity.account_color = account.color
                     curActivity.position_key = curActivity.timestamp
-                    var updateId = -1L
+                    var merged = false
                     if (curActivity.action !in Activity.Action.MENTION_ACTIONS) {
                         /* Merge two activities if:
                          * * Not mention/reply/quote
@@ -329,36 +340,39 @@ class StreamingService : BaseService() {
                             } else if (curActivity.isSameSources(lastActivity)) {
                                 curActivity.prependTargets(lastActivity)
                                 curActivity.prependTargetObjects(lastActivity)
-                                updateId = lastActivity._id
+                                merged = true
                             } else if (curActivity.isSameTarget(lastActivity)) {
                                 curActivity.prependSources(lastActivity)
                                 curActivity.prependTargets(lastActivity)
-                                updateId = lastActivity._id
+                                merged = true
                             } else if (curActivity.isSameTargetObject(lastActivity)) {
                                 curActivity.prependSources(lastActivity)
                                 curActivity.prependTargets(lastActivity)
-                                updateId = lastActivity._id
+                                merged = true
                             }
-                            if (updateId > 0) {
+                            if (merged) {
                                 curActivity.min_position = lastActivity.min_position
                                 curActivity.min_sort_position = lastActivity.min_sort_position
                             }
                         }
                     }
+                    filtersMatcher.updateFilterFlag(curActivity)
                     val values = ObjectCursor.valuesCreatorFrom(ParcelableActivity::class.java)
                             .create(curActivity)
-                    val resolver = context.contentResolver
-                    if (updateId > 0) {
-                        val where = Expression.equals(Activities._ID, updateId).sql
-                        resolver.update(Activities.AboutMe.CONTENT_URI, values, where, null)
-                        curActivity._id = updateId
+                    val lastActivity = this.lastActivityAboutMe
+                    val lastValues = this.lastActivityAboutMeValues
+                    if (merged && lastActivity != null && lastValues != null) {
+                        // Row id is unknown until batch flushed, so locate merged row by its key
+                        val where = Expression.and(Expression.equalsArgs(Activities.ACCOUNT_KEY),
+                                Expression.equalsArgs(Activities.ID)).sql
+                        val whereArgs = arrayOf(lastActivity.account_key.toString(), lastActivity.id)
+                        batchWriter.replace(Activities.AboutMe.CONTENT_URI, lastValues, values,
+                                where, whereArgs)
                     } else {
-                        val uri = resolver.insert(Activities.AboutMe.CONTENT_URI, values)
-                        if (uri != null) {
-                            curActivity._id = uri.lastPathSegment.toLongOr(-1L)
-                        }
+                        batchWriter.insert(Activities.AboutMe.CONTENT_URI, values)
                     }
                     lastActivityAboutMe = curActivity
+                    lastActivityAboutMeValues = values
                 }
                 return true
             }
@@ -397,7 +411,7 @@ class StreamingService : BaseService() {
                 val deleteWhere = Expression.and(Expression.likeRaw(Columns.Column(Statuses.ACCOUNT_KEY), "'%@'||?"),
                         Expression.equalsArgs(Columns.Column(Statuses.ID))).sql
                 val deleteWhereArgs = arrayOf(account.key.host, event.id)
-                context.contentResolver.delete(Statuses.CONTENT_URI, deleteWhere, deleteWhereArgs)
+                batchWriter.delete(Statuses.CONTENT_URI, deleteWhere, deleteWhereArgs)
                 return true
             }
 
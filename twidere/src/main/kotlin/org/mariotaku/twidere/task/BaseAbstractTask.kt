@@ -12,6 +12,7 @@ import org.mariotaku.twidere.util.ErrorInfoStore
 import org.mariotaku.twidere.util.ReadStateManager
 import org.mariotaku.twidere.util.UserColorNameManager
 import org.mariotaku.twidere.util.dagger.GeneralComponent
+import org.mariotaku.twidere.util.filter.FiltersMatcher
 import org.mariotaku.twidere.util.media.MediaPreloader
 import org.mariotaku.twidere.util.premium.ExtraFeaturesService
 import org.mariotaku.twidere.util.schedule.StatusScheduleProvider
@@ -55,6 +56,8 @@ abstract class BaseAbstractTask<Params, Result, Callback>(val context: Context)
     lateinit var syncPreferences: SyncPreferences
     @Inject
     lateinit var timelineSyncManagerFactory: TimelineSyncManager.Factory
+    @Inject
+    lateinit var filtersMatcher: FiltersMatcher
 
     val scheduleProvider: StatusScheduleProvider?
         get() = scheduleProviderFactory.newInstance(context)
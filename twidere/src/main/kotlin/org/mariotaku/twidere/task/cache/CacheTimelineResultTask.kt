@@ -1,21 +1,15 @@
 package org.mariotaku.twidere.task.cache
 
-import android.annotation.SuppressLint
 import android.content.Context
-import android.support.v4.util.ArraySet
 import org.mariotaku.ktextension.ContentValues
 import org.mariotaku.ktextension.set
-import org.mariotaku.sqliteqb.library.Expression
-import org.mariotaku.twidere.extension.bulkInsert
-import org.mariotaku.twidere.extension.model.applyTo
-import org.mariotaku.twidere.extension.model.relationship
-import org.mariotaku.twidere.extension.queryAll
-import org.mariotaku.twidere.model.ParcelableRelationship
-import org.mariotaku.twidere.model.ParcelableUser
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
 import org.mariotaku.twidere.model.task.GetTimelineResult
-import org.mariotaku.twidere.provider.TwidereDataStore.*
+import org.mariotaku.twidere.provider.TwidereDataStore.CachedHashtags
 import org.mariotaku.twidere.task.BaseAbstractTask
+import org.mariotaku.twidere.util.DebugLog
 import org.mariotaku.twidere.util.content.ContentResolverUtils
+import org.mariotaku.twidere.util.content.UserCacheWriter
 
 class CacheTimelineResultTask(
         context: Context,
@@ -29,27 +23,18 @@ class CacheTimelineResultTask(
         val users = result.users
         val hashtags = result.hashtags
 
-        cr.bulkInsert(CachedUsers.CONTENT_URI, users, ParcelableUser::class.java)
+        val writer = UserCacheWriter(cr)
+        val usersResult = writer.writeUsers(users)
         ContentResolverUtils.bulkInsert(cr, CachedHashtags.CONTENT_URI, hashtags.map {
             ContentValues { this[CachedHashtags.NAME] = it.substringAfter("#") }
         })
 
         if (cacheRelationship) {
-            val selectionArgsList = users.mapTo(mutableListOf(account.key.toString())) {
-                it.key.toString()
-            }
-            @SuppressLint("Recycle")
-            val localRelationships = cr.queryAll(CachedRelationships.CONTENT_URI, CachedRelationships.COLUMNS,
-                    Expression.and(Expression.equalsArgs(CachedRelationships.ACCOUNT_KEY),
-                            Expression.inArgs(CachedRelationships.USER_KEY, users.size)).sql,
-                    selectionArgsList.toTypedArray(), null, ParcelableRelationship::class.java)
-            val relationships = users.mapTo(ArraySet<ParcelableRelationship>()) { user ->
-                val userKey = user.key
-                return@mapTo localRelationships.find {
-                    it.user_key == userKey
-                }?.apply { user.applyTo(this) } ?: user.relationship
-            }
-            cr.bulkInsert(CachedRelationships.CONTENT_URI, relationships, ParcelableRelationship::class.java)
+            val relationshipsResult = writer.writeRelationships(account.key, users)
+            DebugLog.d(LOGTAG, "Cached timeline of ${account.key}, users: $usersResult, " +
+                    "relationships: $relationshipsResult")
+        } else {
+            DebugLog.d(LOGTAG, "Cached timeline of ${account.key}, users: $usersResult")
         }
     }
 
@@ -0,0 +1,283 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.task.twitter
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory
+import org.mariotaku.microblog.library.MicroBlogException
+import org.mariotaku.microblog.library.twitter.TwitterUpload
+import org.mariotaku.microblog.library.twitter.model.MediaUploadResponse
+import org.mariotaku.restfu.http.ContentType
+import org.mariotaku.restfu.http.mime.Body
+import org.mariotaku.restfu.http.mime.SimpleBody
+import org.mariotaku.twidere.model.ParcelableMediaUpdate.UploadState
+import java.io.ByteArrayInputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.InputStream
+import java.io.InterruptedIOException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+import java.util.zip.CRC32
+
+/**
+ * Twitter chunked media upload, with up to [parallelism] segments appended at the same time.
+ *
+ * An [UploadState] is reported after every acknowledged segment, pass it back to continue an
+ * interrupted upload. Acknowledged segments are read again and compared by CRC32 instead of being
+ * sent, [SourceChangedException] will be thrown if they don't match.
+ *
+ * Created by mariotaku on 2017/5/25.
+ */
+class ChunkedMediaUploader(
+        private val upload: TwitterUpload,
+        private val segmentSize: Int = DEFAULT_SEGMENT_SIZE,
+        private val parallelism: Int = DEFAULT_PARALLELISM,
+        private val executor: ExecutorService = segmentExecutor
+) {
+
+    /**
+     * @param ownerIds Additional owners sent to server
+     * @param owners All accounts can use uploaded media, used to check if [resumeState] applies
+     */
+    @Throws(IOException::class, MicroBlogException::class)
+    fun upload(body: Body, mediaCategory: String?, ownerIds: Array<String>?, owners: Array<String>,
+            resumeState: UploadState?, listener: Listener?): MediaUploadResponse {
+        val length = body.length()
+        val segments = ((length + segmentSize - 1) / segmentSize).toInt()
+        val progress: Progress
+        if (resumeState != null && canResume(resumeState, owners) && !resumeState.finalized
+                && resumeState.total_bytes == length && resumeState.segment_size == segmentSize) {
+            progress = Progress(resumeState, segments)
+        } else {
+            val response = upload.initUploadMedia(body.contentType().contentType, length,
+                    mediaCategory, ownerIds)
+            val expiresAfterSecs = response.expiresAfterSecs.takeIf { it > 0 } ?: DEFAULT_EXPIRES_AFTER_SECS
+            val state = UploadState().apply {
+                this.media_id = response.id
+                this.expires_at = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expiresAfterSecs)
+                this.total_bytes = length
+                this.segment_size = segmentSize
+                this.owner_ids = owners
+            }
+            progress = Progress(state, segments)
+            listener?.onStateChanged(progress.snapshot(false))
+        }
+        appendSegments(body.stream(), length, segments, progress, listener)
+
+        var response = upload.finalizeUploadMedia(progress.mediaId)
+        var info: MediaUploadResponse.ProcessingInfo? = response.processingInfo
+        while (info != null && shouldWaitForProcess(info)) {
+            val checkAfterSecs = info.checkAfterSecs
+            if (checkAfterSecs <= 0) {
+                break
+            }
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(checkAfterSecs))
+            } catch (e: InterruptedException) {
+                break
+            }
+
+            response = upload.getUploadMediaStatus(response.id)
+            info = response.processingInfo
+        }
+        if (info != null && MediaUploadResponse.ProcessingInfo.State.FAILED == info.state) {
+            val exception = MicroBlogException()
+            val errorInfo = info.error
+            if (errorInfo != null) {
+                exception.errors = arrayOf(errorInfo)
+            }
+            throw exception
+        }
+        listener?.onStateChanged(progress.snapshot(true))
+        return response
+    }
+
+    @Throws(IOException::class, MicroBlogException::class)
+    private fun appendSegments(stream: InputStream, length: Long, segments: Int, progress: Progress,
+            listener: Listener?) {
+        val permits = Semaphore(parallelism)
+        val failure = AtomicReference<Throwable>()
+        val futures = ArrayList<Future<*>>()
+        val crc = CRC32()
+        try {
+            for (segmentIndex in 0 until segments) {
+                val segmentLength = Math.min(segmentSize.toLong(), length - segmentIndex.toLong() * segmentSize).toInt()
+                val bytes = ByteArray(segmentLength)
+                stream.readFully(bytes)
+                crc.reset()
+                crc.update(bytes)
+                val checksum = crc.value.toInt()
+                val ackedChecksum = progress.ackedChecksum(segmentIndex)
+                if (ackedChecksum != null) {
+                    if (ackedChecksum != checksum) throw SourceChangedException()
+                    progress.verified(segmentLength, listener)
+                    continue
+                }
+                permits.acquire()
+                if (failure.get() != null) {
+                    permits.release()
+                    break
+                }
+                futures.add(executor.submit(Runnable {
+                    try {
+                        upload.appendUploadMedia(progress.mediaId, segmentIndex, SimpleBody(
+                                ContentType.OCTET_STREAM, null, segmentLength.toLong(),
+                                ByteArrayInputStream(bytes)))
+                        progress.acked(segmentIndex, checksum, segmentLength, listener)
+                    } catch (e: Throwable) {
+                        failure.compareAndSet(null, e)
+                    } finally {
+                        permits.release()
+                    }
+                }))
+            }
+            // Every task catches its own error
+            futures.forEach { it.get() }
+        } catch (e: InterruptedException) {
+            futures.forEach { it.cancel(true) }
+            throw InterruptedIOException()
+        } catch (e: Exception) {
+            futures.forEach { it.cancel(true) }
+            throw e
+        }
+        val error = failure.get() ?: return
+        when (error) {
+            is MicroBlogException -> throw error
+            is IOException -> throw error
+            else -> throw IOException(error)
+        }
+    }
+
+    private fun InputStream.readFully(bytes: ByteArray) {
+        var offset = 0
+        while (offset < bytes.size) {
+            val read = read(bytes, offset, bytes.size - offset)
+            if (read < 0) throw EOFException()
+            offset += read
+        }
+    }
+
+    private class Progress(base: UploadState, segments: Int) {
+
+        val mediaId: String = base.media_id
+        private val expiresAt = base.expires_at
+        private val totalBytes = base.total_bytes
+        private val segmentSize = base.segment_size
+        private val ownerIds = base.owner_ids
+        private val checksums = arrayOfNulls<Int>(segments)
+        private var uploadedBytes = 0L
+
+        init {
+            val ackedChecksums = base.acked_checksums
+            base.acked_segments?.forEachIndexed { i, segment ->
+                // Segments without checksums will be sent again
+                val checksum = ackedChecksums?.getOrNull(i) ?: return@forEachIndexed
+                if (segment in 0 until segments) {
+                    checksums[segment] = checksum
+                }
+            }
+        }
+
+        @Synchronized
+        fun ackedChecksum(segmentIndex: Int): Int? = checksums[segmentIndex]
+
+        fun verified(length: Int, listener: Listener?) {
+            val uploaded = synchronized(this) {
+                uploadedBytes += length
+                uploadedBytes
+            }
+            listener?.onProgress(uploaded, totalBytes)
+        }
+
+        /**
+         * Listener is called outside of lock, so other segments won't wait for it (e.g. saving
+         * state to database). States may arrive out of order, an older one only makes resumed
+         * upload send a few acked segments again.
+         */
+        fun acked(segmentIndex: Int, checksum: Int, length: Int, listener: Listener?) {
+            val (state, uploaded) = synchronized(this) {
+                checksums[segmentIndex] = checksum
+                uploadedBytes += length
+                Pair(snapshot(false), uploadedBytes)
+            }
+            listener?.onStateChanged(state)
+            listener?.onProgress(uploaded, totalBytes)
+        }
+
+        @Synchronized
+        fun snapshot(finalized: Boolean): UploadState {
+            val acked = checksums.indices.filter { checksums[it] != null }
+            return UploadState().also {
+                it.media_id = mediaId
+                it.expires_at = expiresAt
+                it.total_bytes = totalBytes
+                it.segment_size = segmentSize
+                it.owner_ids = ownerIds
+                it.acked_segments = acked.toIntArray()
+                it.acked_checksums = IntArray(acked.size) { i -> checksums[acked[i]]!! }
+                it.finalized = finalized
+            }
+        }
+    }
+
+    interface Listener {
+        /**
+         * Called from upload threads, with state can be saved for resuming
+         */
+        fun onStateChanged(state: UploadState)
+
+        fun onProgress(uploaded: Long, total: Long)
+    }
+
+    /**
+     * Media content differs from what previous upload sent, upload should start over
+     */
+    class SourceChangedException : IOException()
+
+    companion object {
+        const val DEFAULT_SEGMENT_SIZE = 512 * 1024 // 512 KiB
+        const val DEFAULT_PARALLELISM = 3
+        /** Used when server doesn't tell expiry of media ID */
+        private const val DEFAULT_EXPIRES_AFTER_SECS = 3600L
+
+        private val segmentExecutor = Executors.newFixedThreadPool(4, BasicThreadFactory.Builder()
+                .namingPattern("twidere-upload-segment-%d").daemon(true).build())
+
+        /**
+         * @return true if media ID in [state] is not expired and can be used by [owners]
+         */
+        fun canResume(state: UploadState, owners: Array<String>): Boolean {
+            if (state.media_id == null) return false
+            if (System.currentTimeMillis() >= state.expires_at) return false
+            return state.owner_ids?.contentEquals(owners) ?: false
+        }
+
+        private fun shouldWaitForProcess(info: MediaUploadResponse.ProcessingInfo): Boolean {
+            when (info.state) {
+                MediaUploadResponse.ProcessingInfo.State.PENDING, MediaUploadResponse.ProcessingInfo.State.IN_PROGRESS -> return true
+                else -> return false
+            }
+        }
+    }
+}
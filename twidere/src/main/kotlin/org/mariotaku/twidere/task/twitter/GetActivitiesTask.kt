@@ -31,6 +31,7 @@ import org.mariotaku.twidere.util.DebugLog
 import org.mariotaku.twidere.util.ErrorInfoStore
 import org.mariotaku.twidere.util.UriUtils
 import org.mariotaku.twidere.util.content.ContentResolverUtils
+import org.mariotaku.twidere.util.refresh.AccountsRefreshRunner
 import org.mariotaku.twidere.util.sync.SyncTaskRunner
 import org.mariotaku.twidere.util.sync.TimelineSyncManager
 import java.util.*
@@ -51,7 +52,9 @@ abstract class GetActivitiesTask(
         if (param.shouldAbort) return emptyList()
         val accountKeys = param.accountKeys.takeIf { it.isNotEmpty() } ?: return emptyList()
         val loadItemLimit = preferences[loadItemLimitKey]
-        val result = accountKeys.mapIndexed { i, accountKey ->
+        val result = AccountsRefreshRunner.run<Pair<GetTimelineResult<ParcelableActivity>?, Exception?>>(
+                javaClass.simpleName, accountKeys.size) { i ->
+            val accountKey = accountKeys[i]
             val noItemsBefore = DataStoreUtils.getActivitiesCount(context, contentUri, accountKey) <= 0
             val credentials = AccountUtils.getAccountDetails(AccountManager.get(context), accountKey,
                     true) ?: throw AccountNotFoundException()
@@ -72,13 +75,15 @@ abstract class GetActivitiesTask(
             // We should delete old activities has intersection with new items
             try {
                 val timelineResult = getActivities(credentials, paging)
-                val storeResult = storeActivities(credentials, timelineResult.data, sinceId, maxId,
-                        loadItemLimit, noItemsBefore, false)
-                errorInfoStore.remove(errorInfoKey, accountKey)
-                if (storeResult != 0) {
-                    throw GetStatusesTask.GetTimelineException(storeResult)
+                return@run store@ {
+                    val storeResult = storeActivities(credentials, timelineResult.data, sinceId, maxId,
+                            loadItemLimit, noItemsBefore, false)
+                    errorInfoStore.remove(errorInfoKey, accountKey)
+                    if (storeResult != 0) {
+                        return@store Pair(null, GetStatusesTask.GetTimelineException(storeResult))
+                    }
+                    return@store Pair(timelineResult, null)
                 }
-                return@mapIndexed Pair(timelineResult, null)
             } catch (e: MicroBlogException) {
                 DebugLog.w(LOGTAG, tr = e)
                 if (e.errorCode == 220) {
@@ -86,9 +91,7 @@ abstract class GetActivitiesTask(
                 } else if (e.isCausedByNetworkIssue) {
                     errorInfoStore[errorInfoKey, accountKey] = ErrorInfoStore.CODE_NETWORK_ERROR
                 }
-                return@mapIndexed Pair(null, e)
-            } catch (e: GetStatusesTask.GetTimelineException) {
-                return@mapIndexed Pair(null, e)
+                return@run { Pair(null, e) }
             }
         }
         val manager = timelineSyncManagerFactory.get()
@@ -105,7 +108,7 @@ abstract class GetActivitiesTask(
         val exception = results.firstOrNull { it.second != null }?.second
         bus.post(GetActivitiesTaskEvent(contentUri, false, exception))
         GetStatusesTask.cacheItems(context, results)
-        handler?.invoke(true)
+        handler?.invoke(exception == null)
     }
 
     @UiThread
@@ -151,6 +154,7 @@ abstract class GetActivitiesTask(
                 }
 
                 activity.inserted_date = System.currentTimeMillis()
+                filtersMatcher.updateFilterFlag(activity)
                 valuesList.add(ObjectCursor.valuesCreatorFrom(ParcelableActivity::class.java)
                         .create(activity))
             }
@@ -36,6 +36,7 @@ import org.mariotaku.twidere.util.DebugLog
 import org.mariotaku.twidere.util.ErrorInfoStore
 import org.mariotaku.twidere.util.UriUtils
 import org.mariotaku.twidere.util.content.ContentResolverUtils
+import org.mariotaku.twidere.util.refresh.AccountsRefreshRunner
 import org.mariotaku.twidere.util.sync.SyncTaskRunner
 import org.mariotaku.twidere.util.sync.TimelineSyncManager
 
@@ -55,7 +56,9 @@ abstract class GetStatusesTask(
         if (param.shouldAbort) return emptyList()
         val accountKeys = param.accountKeys.takeIf { it.isNotEmpty() } ?: return emptyList()
         val loadItemLimit = preferences[loadItemLimitKey]
-        val result = accountKeys.mapIndexed { i, accountKey ->
+        val result = AccountsRefreshRunner.run<Pair<GetTimelineResult<ParcelableStatus>?, Exception?>>(
+                javaClass.simpleName, accountKeys.size) { i ->
+            val accountKey = accountKeys[i]
             try {
                 val account = AccountUtils.getAccountDetails(AccountManager.get(context),
                         accountKey, true) ?: throw AccountNotFoundException()
@@ -82,14 +85,16 @@ abstract class GetStatusesTask(
                     }
                 }
                 val timelineResult = getStatuses(account, paging)
-                val storeResult = storeStatus(account, timelineResult.data, sinceId, maxId,
-                        sinceSortId, maxSortId, loadItemLimit, false)
-                // TODO cache related data and preload
-                errorInfoStore.remove(errorInfoKey, accountKey.id)
-                if (storeResult != 0) {
-                    throw GetTimelineException(storeResult)
+                return@run store@ {
+                    val storeResult = storeStatus(account, timelineResult.data, sinceId, maxId,
+                            sinceSortId, maxSortId, loadItemLimit, false)
+                    // TODO cache related data and preload
+                    errorInfoStore.remove(errorInfoKey, accountKey.id)
+                    if (storeResult != 0) {
+                        return@store Pair(null, GetTimelineException(storeResult))
+                    }
+                    return@store Pair(timelineResult, null)
                 }
-                return@mapIndexed Pair(timelineResult, null)
             } catch (e: MicroBlogException) {
                 DebugLog.w(LOGTAG, tr = e)
                 if (e.isCausedByNetworkIssue) {
@@ -97,9 +102,7 @@ abstract class GetStatusesTask(
                 } else if (e.statusCode == 401) {
                     // Unauthorized
                 }
-                return@mapIndexed Pair(null, e)
-            } catch (e: GetTimelineException) {
-                return@mapIndexed Pair(null, e)
+                return@run { Pair(null, e) }
             }
         }
         val manager = timelineSyncManagerFactory.get()
@@ -116,7 +119,7 @@ abstract class GetStatusesTask(
         val exception = results.firstOrNull { it.second != null }?.second
         bus.post(GetStatusesTaskEvent(contentUri, false, exception))
         cacheItems(context, results)
-        handler?.invoke(true)
+        handler?.invoke(exception == null)
     }
 
 
@@ -154,6 +157,7 @@ abstract class GetStatusesTask(
                         sortDiff, i, statuses.size)
                 status.inserted_date = System.currentTimeMillis()
                 mediaPreloader.preloadStatus(status)
+                filtersMatcher.updateFilterFlag(status)
                 values[i] = creator.create(status)
                 if (minIdx == -1 || status < statuses[minIdx]) {
                     minIdx = i
@@ -9,6 +9,7 @@ import android.graphics.Point
 import android.media.MediaMetadataRetriever
 import android.net.Uri
 import android.os.Build
+import android.os.SystemClock
 import android.support.annotation.UiThread
 import android.support.annotation.WorkerThread
 import android.support.media.ExifInterface
@@ -17,6 +18,7 @@ import android.webkit.MimeTypeMap
 import com.twitter.Validator
 import net.ypresto.androidtranscoder.MediaTranscoder
 import net.ypresto.androidtranscoder.format.MediaFormatStrategyPresets
+import org.apache.commons.lang3.concurrent.BasicThreadFactory
 import org.mariotaku.ktextension.*
 import org.mariotaku.library.objectcursor.ObjectCursor
 import org.mariotaku.microblog.library.MicroBlog
@@ -26,13 +28,11 @@ import org.mariotaku.microblog.library.mastodon.Mastodon
 import org.mariotaku.microblog.library.mastodon.model.Attachment
 import org.mariotaku.microblog.library.twitter.TwitterUpload
 import org.mariotaku.microblog.library.twitter.model.ErrorInfo
-import org.mariotaku.microblog.library.twitter.model.MediaUploadResponse
 import org.mariotaku.microblog.library.twitter.model.NewMediaMetadata
 import org.mariotaku.microblog.library.twitter.model.StatusUpdate
 import org.mariotaku.restfu.http.ContentType
 import org.mariotaku.restfu.http.mime.Body
 import org.mariotaku.restfu.http.mime.FileBody
-import org.mariotaku.restfu.http.mime.SimpleBody
 import org.mariotaku.sqliteqb.library.Expression
 import org.mariotaku.twidere.R
 import org.mariotaku.twidere.TwidereConstants.*
@@ -62,7 +62,10 @@ import java.io.File
 import java.io.FileNotFoundException
 import java.io.IOException
 import java.util.*
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.FutureTask
 
 /**
  * Update status
@@ -120,7 +123,7 @@ class UpdateStatusTask(
 
         val result: UpdateStatusResult
         try {
-            uploadMedia(uploader, update, info, pendingUpdate)
+            uploadMedia(uploader, update, info, pendingUpdate, draftId)
             shortenStatus(shortener, update, pendingUpdate)
 
             if (info != null) {
@@ -173,12 +176,13 @@ class UpdateStatusTask(
     private fun uploadMedia(uploader: MediaUploaderInterface?,
             update: ParcelableStatusUpdate,
             info: ScheduleInfo?,
-            pendingUpdate: PendingStatusUpdate) {
+            pendingUpdate: PendingStatusUpdate,
+            draftId: Long) {
         stateCallback.onStartUploadingMedia()
         if (uploader != null) {
             uploadMediaWithExtension(uploader, update, pendingUpdate)
         } else if (info == null) {
-            uploadMediaWithDefaultProvider(update, pendingUpdate)
+            uploadMediaWithDefaultProvider(update, pendingUpdate, draftId)
         }
     }
 
@@ -350,9 +354,11 @@ class UpdateStatusTask(
      * Calling Twitter's upload method. This method sets multiple owner for bandwidth saving
      */
     @Throws(UploadException::class)
-    private fun uploadMediaWithDefaultProvider(update: ParcelableStatusUpdate, pendingUpdate: PendingStatusUpdate) {
+    private fun uploadMediaWithDefaultProvider(update: ParcelableStatusUpdate,
+            pendingUpdate: PendingStatusUpdate, draftId: Long) {
         // Return empty array if no media attached
         if (update.media.isNullOrEmpty()) return
+        val uploadCallback = DraftUploadCallback(context, draftId, update.media, stateCallback)
         val ownersList = update.accounts.filter {
             AccountType.TWITTER == it.type
         }.map(AccountDetails::key)
@@ -369,7 +375,7 @@ class UpdateStatusTask(
                         mediaIds = pendingUpdate.sharedMediaIds
                     } else {
                         val (ids, deleteOnSuccess, deleteAlways) = uploadMicroBlogMediaShared(context,
-                                upload, account, update.media, null, ownerIds, true, stateCallback)
+                                upload, account, update.media, null, ownerIds, true, uploadCallback)
                         mediaIds = ids
                         deleteOnSuccess.addAllTo(pendingUpdate.deleteOnSuccess)
                         deleteAlways.addAllTo(pendingUpdate.deleteAlways)
@@ -651,9 +657,71 @@ class UpdateStatusTask(
         @WorkerThread
         fun onStartUploadingMedia()
 
+        /**
+         * Media are uploaded in parallel, [current] and [total] are summed over all of them
+         *
+         * @param index Index of media made this progress
+         */
         @WorkerThread
         fun onUploadingProgressChanged(index: Int, current: Long, total: Long)
 
+        /**
+         * Called from upload threads, [state] should be saved with media so upload can be resumed
+         */
+        @WorkerThread
+        fun onUploadStateChanged(index: Int, state: ParcelableMediaUpdate.UploadState?) {
+        }
+
+    }
+
+    /**
+     * Saves upload states to draft
+     */
+    private class DraftUploadCallback(
+            val context: Context,
+            val draftId: Long,
+            val media: Array<ParcelableMediaUpdate>,
+            callback: UploadCallback
+    ) : UploadCallback by callback {
+
+        override fun onUploadStateChanged(index: Int, state: ParcelableMediaUpdate.UploadState?) {
+            synchronized(this) {
+                media[index].upload_state = state
+                val values = ContentValues()
+                values.put(Drafts.MEDIA, JsonSerializer.serialize(media, ParcelableMediaUpdate::class.java))
+                val where = Expression.equals(Drafts._ID, draftId).sql
+                context.contentResolver.update(UriUtils.appendQueryParameters(Drafts.CONTENT_URI,
+                        QUERY_PARAM_NOTIFY_CHANGE, false), values, where, null)
+            }
+        }
+    }
+
+    /**
+     * Sums progress of media uploading in parallel
+     */
+    private class UploadProgress(count: Int, private val callback: UploadCallback?) {
+        private val start = SystemClock.elapsedRealtime()
+        private val current = LongArray(count)
+        private val total = LongArray(count)
+
+        fun update(index: Int, position: Long, length: Long) {
+            val sumCurrent: Long
+            val sumTotal: Long
+            synchronized(this) {
+                current[index] = position
+                total[index] = length
+                sumCurrent = current.sum()
+                sumTotal = total.sum()
+            }
+            callback?.onUploadingProgressChanged(index, sumCurrent, sumTotal)
+        }
+
+        fun logThroughput() {
+            val bytes = synchronized(this) { current.sum() }
+            val time = SystemClock.elapsedRealtime() - start
+            DebugLog.d(LOGTAG, "Uploaded ${current.size} media, $bytes bytes in ${time}ms " +
+                    "(${if (time > 0) bytes * 1000 / time else 0} B/s)")
+        }
     }
 
     data class SizeLimit(
@@ -697,93 +765,150 @@ class UpdateStatusTask(
 
     companion object {
 
-        private val BULK_SIZE = 512 * 1024// 512 Kib
+        private const val MAX_PARALLEL_MEDIA = 2
+
+        private val mediaExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_MEDIA,
+                BasicThreadFactory.Builder().namingPattern("twidere-upload-media-%d").daemon(true).build())
 
         @Throws(UploadException::class)
         fun uploadMicroBlogMediaShared(context: Context, upload: TwitterUpload,
                 account: AccountDetails, media: Array<ParcelableMediaUpdate>,
                 mediaCategory: String? = null, ownerIds: Array<String>?, chucked: Boolean,
                 callback: UploadCallback?): SharedMediaUploadResult {
-            val deleteOnSuccess = ArrayList<MediaDeletionItem>()
-            val deleteAlways = ArrayList<MediaDeletionItem>()
-            val mediaIds = media.mapIndexedToArray { index, media ->
-                val resp: MediaUploadResponse
-                //noinspection TryWithIdenticalCatches
-                var body: MediaStreamBody? = null
-                try {
-                    val sizeLimit = account.mediaSizeLimit
-                    body = getBodyFromMedia(context, media, sizeLimit, chucked,
-                            ContentLengthInputStream.ReadListener { length, position ->
-                                callback?.onUploadingProgressChanged(index, position, length)
-                            })
-                    if (chucked) {
-                        resp = uploadMediaChucked(upload, body.body, mediaCategory, ownerIds)
-                    } else {
-                        resp = upload.uploadMedia(body.body, ownerIds)
+            val progress = UploadProgress(media.size, callback)
+            val uploader = ChunkedMediaUploader(upload)
+            // Everyone can use the media, used to check if previous upload could be resumed
+            val owners = (ownerIds.orEmpty() + account.key.id).distinct().sorted().toTypedArray()
+            val result = uploadMediaParallel(media) { index, item, deleteOnSuccess, deleteAlways ->
+                val resumeState = item.upload_state?.takeIf {
+                    chucked && ChunkedMediaUploader.canResume(it, owners)
+                }
+                val mediaId: String
+                if (resumeState != null && resumeState.finalized) {
+                    // Uploaded by previous attempt, skip reading media at all
+                    val deletionItem = UriMediaDeletionItem(Uri.parse(item.uri))
+                    if (item.delete_always) {
+                        deleteAlways.add(deletionItem)
+                    } else if (item.delete_on_success) {
+                        deleteOnSuccess.add(deletionItem)
+                    }
+                    mediaId = resumeState.media_id
+                } else if (chucked) {
+                    val listener = object : ChunkedMediaUploader.Listener {
+                        override fun onStateChanged(state: ParcelableMediaUpdate.UploadState) {
+                            callback?.onUploadStateChanged(index, state)
+                        }
+
+                        override fun onProgress(uploaded: Long, total: Long) {
+                            progress.update(index, uploaded, total)
+                        }
+                    }
+                    mediaId = try {
+                        uploadMediaBody(context, account, item, null, deleteOnSuccess, deleteAlways) {
+                            uploader.upload(it, mediaCategory, ownerIds, owners, resumeState, listener).id
+                        }
+                    } catch (e: ChunkedMediaUploader.SourceChangedException) {
+                        // Media changed since last attempt (transcoded again etc.), start over
+                        callback?.onUploadStateChanged(index, null)
+                        uploadMediaBody(context, account, item, null, deleteOnSuccess, deleteAlways) {
+                            uploader.upload(it, mediaCategory, ownerIds, owners, null, listener).id
+                        }
                     }
-                } catch (e: IOException) {
-                    throw UploadException(e).apply {
-                        this.deleteAlways = deleteAlways
+                } else {
+                    val readListener = ContentLengthInputStream.ReadListener { length, position ->
+                        progress.update(index, position, length)
                     }
-                } catch (e: MicroBlogException) {
-                    throw UploadException(e).apply {
-                        this.deleteAlways = deleteAlways
+                    mediaId = uploadMediaBody(context, account, item, readListener, deleteOnSuccess,
+                            deleteAlways) {
+                        upload.uploadMedia(it, ownerIds).id
                     }
-                } finally {
-                    body?.close()
                 }
-                body?.deleteOnSuccess?.addAllTo(deleteOnSuccess)
-                body?.deleteAlways?.addAllTo(deleteAlways)
-                if (media.alt_text?.isNotEmpty() ?: false) {
+                if (item.alt_text?.isNotEmpty() ?: false) {
                     try {
-                        upload.createMetadata(NewMediaMetadata(resp.id, media.alt_text))
+                        upload.createMetadata(NewMediaMetadata(mediaId, item.alt_text))
                     } catch (e: MicroBlogException) {
                         // Ignore
                     }
                 }
-                return@mapIndexedToArray resp.id
+                return@uploadMediaParallel mediaId
             }
-            return SharedMediaUploadResult(mediaIds, deleteOnSuccess, deleteAlways)
+            progress.logThroughput()
+            return result
         }
 
         @Throws(UploadException::class)
         fun uploadMastodonMedia(context: Context, mastodon: Mastodon,
                 account: AccountDetails, media: Array<ParcelableMediaUpdate>,
                 chucked: Boolean, callback: UploadCallback?): SharedMediaUploadResult {
-            val deleteOnSuccess = ArrayList<MediaDeletionItem>()
-            val deleteAlways = ArrayList<MediaDeletionItem>()
-            val mediaIds = media.mapIndexedToArray { index, media ->
-                val resp: Attachment
-                //noinspection TryWithIdenticalCatches
-                var body: MediaStreamBody? = null
+            val progress = UploadProgress(media.size, callback)
+            val result = uploadMediaParallel(media) { index, item, deleteOnSuccess, deleteAlways ->
+                val readListener = ContentLengthInputStream.ReadListener { length, position ->
+                    progress.update(index, position, length)
+                }
+                return@uploadMediaParallel uploadMediaBody(context, account, item, readListener,
+                        deleteOnSuccess, deleteAlways, chucked) {
+                    mastodon.uploadMediaAttachment(it).id
+                }
+            }
+            progress.logThroughput()
+            return result
+        }
+
+        /**
+         * Uploads up to [MAX_PARALLEL_MEDIA] media at the same time
+         *
+         * @param action Uploads media, adds files should be deleted to lists given
+         */
+        @Throws(UploadException::class)
+        private fun uploadMediaParallel(media: Array<ParcelableMediaUpdate>,
+                action: (Int, ParcelableMediaUpdate, MutableList<MediaDeletionItem>,
+                        MutableList<MediaDeletionItem>) -> String): SharedMediaUploadResult {
+            val deleteOnSuccess = Array(media.size) { ArrayList<MediaDeletionItem>() }
+            val deleteAlways = Array(media.size) { Collections.synchronizedList(ArrayList<MediaDeletionItem>()) }
+            val futures = media.mapIndexed { index, item ->
+                val callable = Callable { action(index, item, deleteOnSuccess[index], deleteAlways[index]) }
+                // Don't switch threads for single media
+                if (media.size == 1) FutureTask(callable).apply { run() } else mediaExecutor.submit(callable)
+            }
+            var error: Throwable? = null
+            val ids = futures.map { future ->
+                if (error != null) return@map null
                 try {
-                    val sizeLimit = account.mediaSizeLimit
-                    body = getBodyFromMedia(context, media, sizeLimit, chucked,
-                            ContentLengthInputStream.ReadListener { length, position ->
-                                callback?.onUploadingProgressChanged(index, position, length)
-                            })
-                    resp = mastodon.uploadMediaAttachment(body.body)
-                } catch (e: IOException) {
-                    throw UploadException(e).apply {
-                        this.deleteAlways = deleteAlways
-                    }
-                } catch (e: MicroBlogException) {
-                    throw UploadException(e).apply {
-                        this.deleteAlways = deleteAlways
-                    }
-                } finally {
-                    body?.close()
+                    return@map future.get()
+                } catch (e: ExecutionException) {
+                    error = e.cause ?: e
+                } catch (e: InterruptedException) {
+                    error = e
+                }
+                futures.forEach { it.cancel(true) }
+                return@map null
+            }
+            val allDeleteAlways = deleteAlways.flatMap { synchronized(it) { it.toList() } }
+            error?.let { e ->
+                throw (e as? UploadException ?: UploadException(e)).apply {
+                    this.deleteAlways = allDeleteAlways
                 }
-                body?.deleteOnSuccess?.addAllTo(deleteOnSuccess)
-                body?.deleteAlways?.addAllTo(deleteAlways)
-                return@mapIndexedToArray resp.id
             }
-            return SharedMediaUploadResult(mediaIds, deleteOnSuccess, deleteAlways)
+            return SharedMediaUploadResult(ids.requireNoNulls().toTypedArray(),
+                    deleteOnSuccess.flatMap { it }, allDeleteAlways)
+        }
+
+        @Throws(IOException::class, MicroBlogException::class)
+        private fun <R> uploadMediaBody(context: Context, account: AccountDetails,
+                media: ParcelableMediaUpdate, readListener: ContentLengthInputStream.ReadListener?,
+                deleteOnSuccess: MutableList<MediaDeletionItem>,
+                deleteAlways: MutableList<MediaDeletionItem>, chucked: Boolean = true,
+                action: (Body) -> R): R {
+            val body = getBodyFromMedia(context, media, account.mediaSizeLimit, chucked, readListener)
+            body.deleteAlways?.addAllTo(deleteAlways)
+            val result = body.use { action(it.body) }
+            body.deleteOnSuccess?.addAllTo(deleteOnSuccess)
+            return result
         }
 
         @Throws(IOException::class)
         fun getBodyFromMedia(context: Context, media: ParcelableMediaUpdate, sizeLimit: SizeLimit? = null,
-                chucked: Boolean, readListener: ContentLengthInputStream.ReadListener): MediaStreamBody {
+                chucked: Boolean, readListener: ContentLengthInputStream.ReadListener?): MediaStreamBody {
             return getBodyFromMedia(context, Uri.parse(media.uri), media.type, media.delete_always,
                     media.delete_on_success, sizeLimit, chucked, readListener)
         }
@@ -839,54 +964,6 @@ class UpdateStatusTask(
         }
 
 
-        @Throws(IOException::class, MicroBlogException::class)
-        private fun uploadMediaChucked(upload: TwitterUpload, body: Body,
-                mediaCategory: String? = null, ownerIds: Array<String>?): MediaUploadResponse {
-            val mediaType = body.contentType().contentType
-            val length = body.length()
-            val stream = body.stream()
-            var response = upload.initUploadMedia(mediaType, length, mediaCategory, ownerIds)
-            val segments = if (length == 0L) 0 else (length / BULK_SIZE + 1).toInt()
-            for (segmentIndex in 0..segments - 1) {
-                val currentBulkSize = Math.min(BULK_SIZE.toLong(), length - segmentIndex * BULK_SIZE).toInt()
-                val bulk = SimpleBody(ContentType.OCTET_STREAM, null, currentBulkSize.toLong(),
-                        stream)
-                upload.appendUploadMedia(response.id, segmentIndex, bulk)
-            }
-            response = upload.finalizeUploadMedia(response.id)
-            var info: MediaUploadResponse.ProcessingInfo? = response.processingInfo
-            while (info != null && shouldWaitForProcess(info)) {
-                val checkAfterSecs = info.checkAfterSecs
-                if (checkAfterSecs <= 0) {
-                    break
-                }
-                try {
-                    Thread.sleep(TimeUnit.SECONDS.toMillis(checkAfterSecs))
-                } catch (e: InterruptedException) {
-                    break
-                }
-
-                response = upload.getUploadMediaStatus(response.id)
-                info = response.processingInfo
-            }
-            if (info != null && MediaUploadResponse.ProcessingInfo.State.FAILED == info.state) {
-                val exception = MicroBlogException()
-                val errorInfo = info.error
-                if (errorInfo != null) {
-                    exception.errors = arrayOf(errorInfo)
-                }
-                throw exception
-            }
-            return response
-        }
-
-        private fun shouldWaitForProcess(info: MediaUploadResponse.ProcessingInfo): Boolean {
-            when (info.state) {
-                MediaUploadResponse.ProcessingInfo.State.PENDING, MediaUploadResponse.ProcessingInfo.State.IN_PROGRESS -> return true
-                else -> return false
-            }
-        }
-
         private fun imageStream(
                 context: Context,
                 resolver: ContentResolver,
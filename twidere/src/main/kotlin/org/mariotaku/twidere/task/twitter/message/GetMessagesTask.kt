@@ -57,6 +57,7 @@ import org.mariotaku.twidere.task.BaseAbstractTask
 import org.mariotaku.twidere.util.DataStoreUtils
 import org.mariotaku.twidere.util.UriUtils
 import org.mariotaku.twidere.util.content.ContentResolverUtils
+import org.mariotaku.twidere.util.refresh.AccountsRefreshRunner
 import java.util.*
 
 /**
@@ -65,31 +66,37 @@ import java.util.*
 
 class GetMessagesTask(
         context: Context
-) : BaseAbstractTask<GetMessagesTask.RefreshMessagesTaskParam, Unit, (Boolean) -> Unit>(context) {
+) : BaseAbstractTask<GetMessagesTask.RefreshMessagesTaskParam, Boolean, (Boolean) -> Unit>(context) {
 
     private val profileImageSize = context.getString(R.string.profile_image_size)
 
-    override fun doLongOperation(param: RefreshMessagesTaskParam) {
+    /**
+     * @return false if any account failed
+     */
+    override fun doLongOperation(param: RefreshMessagesTaskParam): Boolean {
         val accountKeys = param.accountKeys
         val am = android.accounts.AccountManager.get(context)
-        accountKeys.forEachIndexed { i, accountKey ->
+        return AccountsRefreshRunner.run(javaClass.simpleName, accountKeys.size) { i ->
             val details = try {
-                getAccountDetails(am, accountKey, true) ?: return@forEachIndexed
+                getAccountDetails(am, accountKeys[i], true) ?: return@run { true }
             } catch (e: LoganSquareMapperFinder.ClassLoaderDeadLockException) {
-                return
+                return@run { false }
             }
             val microBlog = details.newMicroBlogInstance(context, cls = MicroBlog::class.java)
             val messages = try {
                 getMessages(microBlog, details, param, i)
             } catch (e: MicroBlogException) {
-                return@forEachIndexed
+                return@run { false }
             }
-            storeMessages(context, messages, details, param.showNotification)
-        }
+            return@run {
+                storeMessages(context, messages, details, param.showNotification)
+                true
+            }
+        }.all { it }
     }
 
-    override fun afterExecute(callback: ((Boolean) -> Unit)?, result: Unit) {
-        callback?.invoke(true)
+    override fun afterExecute(callback: ((Boolean) -> Unit)?, result: Boolean) {
+        callback?.invoke(result)
         bus.post(GetMessagesTaskEvent(Messages.CONTENT_URI, params?.taskTag, false, null))
     }
 
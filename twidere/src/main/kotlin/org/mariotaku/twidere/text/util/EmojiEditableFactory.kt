@@ -24,6 +24,7 @@ import android.text.Spanned
 import android.text.TextWatcher
 import android.widget.TextView
 import org.mariotaku.twidere.extension.applyTo
+import org.mariotaku.twidere.extension.applyToChanged
 import org.mariotaku.twidere.text.SafeSpannableStringBuilder
 import org.mariotaku.twidere.util.ExternalThemeManager
 import org.mariotaku.twidere.util.dagger.GeneralComponent
@@ -52,7 +53,7 @@ class EmojiEditableFactory(textView: TextView) : Editable.Factory() {
 
             override fun onTextChanged(s: CharSequence, start: Int, before: Int, count: Int) {
                 if (count <= 0) return
-                emoji?.applyTo(editable)
+                emoji?.applyToChanged(editable, start, count)
             }
 
             override fun afterTextChanged(s: Editable) {
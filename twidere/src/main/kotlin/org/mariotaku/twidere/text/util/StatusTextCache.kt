@@ -0,0 +1,177 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.text.util
+
+import android.os.Handler
+import android.os.Looper
+import android.support.annotation.UiThread
+import android.text.SpannableStringBuilder
+import android.util.LruCache
+import org.apache.commons.lang3.concurrent.BasicThreadFactory
+import org.mariotaku.twidere.constant.SharedPreferenceConstants.VALUE_LINK_HIGHLIGHT_OPTION_CODE_NONE
+import org.mariotaku.twidere.extension.applyTo
+import org.mariotaku.twidere.extension.model.applyTo
+import org.mariotaku.twidere.model.ParcelableStatus
+import org.mariotaku.twidere.model.SpanItem
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.util.ExternalThemeManager
+import org.mariotaku.twidere.util.TwidereLinkify
+import java.util.*
+import java.util.concurrent.Executors
+
+/**
+ * Status text with spans, links and emoji applied, prepared in background before binding.
+ *
+ * Texts are keyed by status and emoji package in use, link spans carry [linkExtraId] of status
+ * instead of adapter position, so inserting items won't invalidate cached texts. Text size and
+ * link highlight style recreate activities when changed, so they're fixed for a cache owned by an
+ * adapter. Other changes shown in statuses (e.g. nicknames) should call [invalidate].
+ *
+ * Created by mariotaku on 2017/5/26.
+ */
+class StatusTextCache(
+        private val linkify: TwidereLinkify,
+        @TwidereLinkify.HighlightStyle private val linkHighlightingStyle: Int,
+        private val emoji: () -> ExternalThemeManager.Emoji?,
+        /** Extra ID of links in status text, resolved back to status when link clicked */
+        private val linkExtraId: (accountKey: UserKey, id: String) -> Long
+) {
+
+    private val cache = object : LruCache<Key, PreparedText>(MAX_CACHED_CHARS) {
+        override fun sizeOf(key: Key, value: PreparedText): Int {
+            return value.text.length + (value.quotedText?.length ?: 0) + 1
+        }
+    }
+    /** Keys being prepared in background, accessed from UI thread only */
+    private val pending = HashSet<Key>()
+    /** Increased on invalidation, so results prepared before won't be saved */
+    @Volatile
+    private var generation = 0
+
+    @UiThread
+    fun get(status: ParcelableStatus): PreparedText {
+        val source = Source(status, emoji())
+        cache.get(source.key)?.let { return it }
+        return prepare(source).also {
+            cache.put(source.key, it)
+        }
+    }
+
+    /**
+     * @return true if text is cached or being prepared
+     */
+    @UiThread
+    fun isPrepared(accountKey: UserKey, id: String): Boolean {
+        val key = Key(accountKey, id, emoji())
+        return key in pending || cache.get(key) != null
+    }
+
+    /**
+     * Prepare text of statuses which will be displayed soon
+     *
+     * @param statuses Fields of statuses are read immediately
+     */
+    @UiThread
+    fun prefetch(statuses: Iterable<ParcelableStatus>) {
+        val emoji = emoji()
+        val sources = statuses.mapNotNull { status ->
+            val source = Source(status, emoji)
+            if (source.key in pending || cache.get(source.key) != null) return@mapNotNull null
+            return@mapNotNull source
+        }
+        if (sources.isEmpty()) return
+        sources.mapTo(pending) { it.key }
+        val gen = generation
+        executor.execute {
+            sources.forEach { source ->
+                val prepared = prepare(source)
+                if (gen == generation) {
+                    cache.put(source.key, prepared)
+                }
+            }
+            handler.post { sources.forEach { pending.remove(it.key) } }
+        }
+    }
+
+    @UiThread
+    fun invalidate() {
+        generation++
+        cache.evictAll()
+    }
+
+    private fun prepare(source: Source): PreparedText {
+        val text: CharSequence
+        val quotedText: CharSequence?
+        if (linkHighlightingStyle != VALUE_LINK_HIGHLIGHT_OPTION_CODE_NONE) {
+            text = source.buildText(source.text, source.spans)
+            quotedText = source.quotedText?.let { source.buildText(it, source.quotedSpans) }
+        } else {
+            text = source.text
+            quotedText = source.quotedText
+        }
+        return PreparedText(text.trimToDisplay(source.displayEnd),
+                quotedText?.trimToDisplay(source.quotedDisplayEnd))
+    }
+
+    private fun Source.buildText(text: String, spans: Array<SpanItem>?): CharSequence {
+        return SpannableStringBuilder.valueOf(text).apply {
+            spans?.applyTo(this)
+            linkify.applyAllLinks(this, accountKey, linkExtraId(accountKey, id), sensitive,
+                    linkHighlightingStyle, skipLinksInText)
+            emoji?.applyTo(this)
+        }
+    }
+
+    private fun CharSequence.trimToDisplay(displayEnd: Int): CharSequence {
+        if (displayEnd != -1 && displayEnd <= length) return subSequence(0, displayEnd)
+        return this
+    }
+
+    class PreparedText(val text: CharSequence, val quotedText: CharSequence?)
+
+    private data class Key(val accountKey: UserKey, val id: String, val emoji: ExternalThemeManager.Emoji?)
+
+    /**
+     * Fields needed to build text, status objects may be reused by adapter so they're copied
+     */
+    private class Source(status: ParcelableStatus, val emoji: ExternalThemeManager.Emoji?) {
+        val key = Key(status.account_key, status.id, emoji)
+        val accountKey: UserKey = status.account_key
+        val id: String = status.id
+        val text: String = status.text_unescaped.orEmpty()
+        val spans: Array<SpanItem>? = status.spans
+        val displayEnd = status.extras?.display_text_range?.getOrNull(1) ?: -1
+        val quotedText: String? = status.quoted_text_unescaped
+        val quotedSpans: Array<SpanItem>? = status.quoted_spans
+        val quotedDisplayEnd = status.extras?.quoted_display_text_range?.getOrNull(1) ?: -1
+        val sensitive = status.is_possibly_sensitive
+        val skipLinksInText = status.extras?.support_entities ?: false
+    }
+
+    companion object {
+        /** Total chars of cached texts */
+        private const val MAX_CACHED_CHARS = 256 * 1024
+
+        private val handler = Handler(Looper.getMainLooper())
+        private val executor = Executors.newSingleThreadExecutor(BasicThreadFactory.Builder()
+                .namingPattern("twidere-status-text-%d").daemon(true)
+                .priority(Thread.MIN_PRIORITY).build())
+    }
+}
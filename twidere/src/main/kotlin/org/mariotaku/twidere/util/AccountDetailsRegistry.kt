@@ -0,0 +1,124 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util
+
+import android.accounts.Account
+import android.accounts.AccountManager
+import android.accounts.OnAccountsUpdateListener
+import android.content.Context
+import org.mariotaku.commons.parcel.ParcelUtils
+import org.mariotaku.ktextension.addOnAccountsUpdatedListenerSafe
+import org.mariotaku.twidere.extension.model.getAccountKey
+import org.mariotaku.twidere.model.AccountDetails
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.model.util.AccountUtils
+
+/**
+ * Process wide cache of accounts and [AccountDetails], so lookups don't go through
+ * [AccountManager] binder calls and JSON parsing every time.
+ *
+ * Cleared when accounts added/removed (via [OnAccountsUpdateListener]) or any account data written
+ * by this process (via [invalidate]). Callers always get their own copy of cached details.
+ *
+ * Created by mariotaku on 2017/5/24.
+ */
+object AccountDetailsRegistry {
+
+    private val lock = Any()
+    /** Increased on every invalidation, so results loaded before it won't be cached */
+    private var generation = 0
+    private var accounts: Array<Account>? = null
+    private val accountsByKey = HashMap<UserKey, Account>()
+    private val details = HashMap<Account, AccountDetails>()
+
+    private val accountsUpdateListener = OnAccountsUpdateListener { invalidate() }
+
+    fun init(context: Context) {
+        AccountManager.get(context.applicationContext).addOnAccountsUpdatedListenerSafe(
+                accountsUpdateListener, updateImmediately = false)
+    }
+
+    fun invalidate() {
+        synchronized(lock) {
+            generation++
+            accounts = null
+            accountsByKey.clear()
+            details.clear()
+        }
+    }
+
+    fun getAccounts(am: AccountManager): Array<Account> {
+        val gen = synchronized(lock) {
+            accounts?.let { return it.copyOf() }
+            return@synchronized generation
+        }
+        val loaded = AccountUtils.loadAccounts(am)
+        synchronized(lock) {
+            if (gen == generation) {
+                accounts = loaded
+            }
+        }
+        return loaded.copyOf()
+    }
+
+    fun findByAccountKey(am: AccountManager, accountKey: UserKey): Account? {
+        val gen = synchronized(lock) {
+            accountsByKey[accountKey]?.let { return it }
+            // All keys are loaded at once, so a complete map means not found
+            val cachedAccounts = accounts
+            if (cachedAccounts != null && accountsByKey.size == cachedAccounts.size) return null
+            return@synchronized generation
+        }
+        val loaded = HashMap<UserKey, Account>()
+        getAccounts(am).forEach { loaded[it.getAccountKey(am)] = it }
+        synchronized(lock) {
+            if (gen == generation) {
+                accountsByKey.putAll(loaded)
+            }
+        }
+        return loaded[accountKey]
+    }
+
+    fun getAccountDetails(am: AccountManager, account: Account, getCredentials: Boolean): AccountDetails {
+        val gen = synchronized(lock) {
+            val cached = details[account]
+            if (cached != null && (!getCredentials || cached.credentials != null)) {
+                return snapshot(cached, getCredentials)
+            }
+            return@synchronized generation
+        }
+        val loaded = AccountUtils.loadAccountDetails(am, account, getCredentials)
+        synchronized(lock) {
+            // Don't replace details with credentials
+            if (gen == generation && (loaded.credentials != null || details[account]?.credentials == null)) {
+                details[account] = loaded
+            }
+        }
+        return snapshot(loaded, getCredentials)
+    }
+
+    private fun snapshot(details: AccountDetails, getCredentials: Boolean): AccountDetails {
+        val copy = ParcelUtils.clone(details)
+        if (!getCredentials) {
+            copy.credentials = null
+        }
+        return copy
+    }
+}
@@ -56,6 +56,7 @@ fun migrateAccounts(am: AccountManager, db: SQLiteDatabase) {
         }
     } finally {
         cur.close()
+        AccountDetailsRegistry.invalidate()
     }
 }
 
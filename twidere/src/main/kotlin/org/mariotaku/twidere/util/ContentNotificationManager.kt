@@ -56,7 +56,7 @@ import org.mariotaku.twidere.provider.TwidereDataStore.*
 import org.mariotaku.twidere.provider.TwidereDataStore.Messages.Conversations
 import org.mariotaku.twidere.receiver.NotificationReceiver
 import org.mariotaku.twidere.service.LengthyOperationsService
-import org.mariotaku.twidere.util.database.FilterQueryBuilder
+import org.mariotaku.twidere.util.filter.FiltersMatcher
 import org.oshkimaadziig.george.androidutils.SpanFormatter
 import java.io.IOException
 
@@ -68,7 +68,8 @@ class ContentNotificationManager(
         val activityTracker: ActivityTracker,
         val userColorNameManager: UserColorNameManager,
         val notificationManager: NotificationManagerWrapper,
-        val preferences: SharedPreferences
+        val preferences: SharedPreferences,
+        val filtersMatcher: FiltersMatcher
 ) {
 
     private var nameFirst: Boolean = false
@@ -205,7 +206,7 @@ class ContentNotificationManager(
                 if (pref.isNotificationMentionsOnly && activity.action !in Activity.Action.MENTION_ACTIONS) {
                     return@forEachRow false
                 }
-                if (FilterQueryBuilder.isFiltered(cr, activity)) {
+                if (filtersMatcher.isFiltered(activity)) {
                     return@forEachRow false
                 }
                 val sources = ParcelableActivityUtils.filterSources(activity.sources_lite,
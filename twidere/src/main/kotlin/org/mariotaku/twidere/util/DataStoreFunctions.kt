@@ -36,47 +36,8 @@ import java.io.IOException
 
 fun buildStatusFilterWhereClause(preferences: SharedPreferences, table: String,
         extraSelection: Expression?): Expression {
-    val filteredUsersQuery = SQLQueryBuilder
-            .select(Column(Table(Filters.Users.TABLE_NAME), Filters.Users.USER_KEY))
-            .from(Tables(Filters.Users.TABLE_NAME))
-            .build()
-    val filteredUsersWhere = Expression.or(
-            Expression.`in`(Column(Table(table), Statuses.USER_KEY), filteredUsersQuery),
-            Expression.`in`(Column(Table(table), Statuses.RETWEETED_BY_USER_KEY), filteredUsersQuery),
-            Expression.`in`(Column(Table(table), Statuses.QUOTED_USER_KEY), filteredUsersQuery)
-    )
-    val filteredIdsQueryBuilder = SQLQueryBuilder
-            .select(Column(Table(table), Statuses._ID))
-            .from(Tables(table))
-            .where(filteredUsersWhere)
-            .union()
-            .select(Columns(Column(Table(table), Statuses._ID)))
-            .from(Tables(table, Filters.Sources.TABLE_NAME))
-            .where(Expression.or(
-                    Expression.likeRaw(Column(Table(table), Statuses.SOURCE),
-                            "'%>'||" + Filters.Sources.TABLE_NAME + "." + Filters.Sources.VALUE + "||'</a>%'"),
-                    Expression.likeRaw(Column(Table(table), Statuses.QUOTED_SOURCE),
-                            "'%>'||" + Filters.Sources.TABLE_NAME + "." + Filters.Sources.VALUE + "||'</a>%'")
-            ))
-            .union()
-            .select(Columns(Column(Table(table), Statuses._ID)))
-            .from(Tables(table, Filters.Keywords.TABLE_NAME))
-            .where(Expression.or(
-                    Expression.likeRaw(Column(Table(table), Statuses.TEXT_PLAIN),
-                            "'%'||" + Filters.Keywords.TABLE_NAME + "." + Filters.Keywords.VALUE + "||'%'"),
-                    Expression.likeRaw(Column(Table(table), Statuses.QUOTED_TEXT_PLAIN),
-                            "'%'||" + Filters.Keywords.TABLE_NAME + "." + Filters.Keywords.VALUE + "||'%'")
-            ))
-            .union()
-            .select(Columns(Column(Table(table), Statuses._ID)))
-            .from(Tables(table, Filters.Links.TABLE_NAME))
-            .where(Expression.or(
-                    Expression.likeRaw(Column(Table(table), Statuses.SPANS),
-                            "'%'||" + Filters.Links.TABLE_NAME + "." + Filters.Links.VALUE + "||'%'"),
-                    Expression.likeRaw(Column(Table(table), Statuses.QUOTED_SPANS),
-                            "'%'||" + Filters.Links.TABLE_NAME + "." + Filters.Links.VALUE + "||'%'")
-            ))
-    var filterFlags: Long = 0
+    // Verdict of user defined filters is computed when inserting, see FiltersMatcher
+    var filterFlags: Long = FilterFlags.MATCHED_FILTERS
     if (preferences[filterUnavailableQuoteStatusesKey]) {
         filterFlags = filterFlags or FilterFlags.QUOTE_NOT_AVAILABLE
     }
@@ -85,10 +46,7 @@ fun buildStatusFilterWhereClause(preferences: SharedPreferences, table: String,
     }
 
     val filterExpression = Expression.or(
-            Expression.and(
-                    Expression("(${Statuses.FILTER_FLAGS} & $filterFlags) == 0"),
-                    Expression.notIn(Column(Table(table), Statuses._ID), filteredIdsQueryBuilder.build())
-            ),
+            Expression("(${Statuses.FILTER_FLAGS} & $filterFlags) == 0"),
             Expression.equals(Column(Table(table), Statuses.IS_GAP), 1)
     )
     if (extraSelection != null) {
@@ -26,10 +26,8 @@ import android.database.Cursor
 import android.net.Uri
 import android.os.Bundle
 import android.os.Parcelable
-import android.provider.BaseColumns
 import android.support.annotation.WorkerThread
 import android.text.TextUtils
-import org.mariotaku.kpreferences.get
 import org.mariotaku.ktextension.mapToArray
 import org.mariotaku.ktextension.useCursor
 import org.mariotaku.library.objectcursor.ObjectCursor
@@ -39,17 +37,17 @@ import org.mariotaku.microblog.library.mastodon.Mastodon
 import org.mariotaku.microblog.library.twitter.model.Activity
 import org.mariotaku.sqliteqb.library.*
 import org.mariotaku.sqliteqb.library.Columns.Column
-import org.mariotaku.sqliteqb.library.query.SQLSelectQuery
 import org.mariotaku.twidere.R
 import org.mariotaku.twidere.TwidereConstants.*
 import org.mariotaku.twidere.annotation.AccountType
+import org.mariotaku.twidere.app.TwidereApplication
 import org.mariotaku.twidere.constant.IntentConstants
-import org.mariotaku.twidere.constant.databaseItemLimitKey
 import org.mariotaku.twidere.extension.model.*
 import org.mariotaku.twidere.extension.model.api.mastodon.toParcelable
 import org.mariotaku.twidere.extension.model.api.toParcelable
 import org.mariotaku.twidere.extension.rawQuery
 import org.mariotaku.twidere.model.*
+import org.mariotaku.twidere.model.ParcelableStatus.FilterFlags
 import org.mariotaku.twidere.model.tab.extra.HomeTabExtras
 import org.mariotaku.twidere.model.tab.extra.InteractionsTabExtras
 import org.mariotaku.twidere.model.tab.extra.TabExtras
@@ -58,6 +56,7 @@ import org.mariotaku.twidere.provider.TwidereDataStore
 import org.mariotaku.twidere.provider.TwidereDataStore.*
 import org.mariotaku.twidere.provider.TwidereDataStore.Messages.Conversations
 import org.mariotaku.twidere.util.content.ContentResolverUtils
+import org.mariotaku.twidere.util.content.DatabaseHousekeeper
 import java.io.IOException
 import java.util.*
 
@@ -459,48 +458,9 @@ object DataStoreUtils {
     }
 
     fun buildActivityFilterWhereClause(table: String, extraSelection: Expression?): Expression {
-        val filteredUsersQuery = SQLQueryBuilder
-                .select(Column(Table(Filters.Users.TABLE_NAME), Filters.Users.USER_KEY))
-                .from(Tables(Filters.Users.TABLE_NAME))
-                .build()
-        val filteredUsersWhere = Expression.or(
-                Expression.`in`(Column(Table(table), Activities.USER_KEY), filteredUsersQuery),
-                Expression.`in`(Column(Table(table), Activities.RETWEETED_BY_USER_KEY), filteredUsersQuery),
-                Expression.`in`(Column(Table(table), Activities.QUOTED_USER_KEY), filteredUsersQuery)
-        )
-        val filteredIdsQueryBuilder = SQLQueryBuilder
-                .select(Column(Table(table), Activities._ID))
-                .from(Tables(table))
-                .where(filteredUsersWhere)
-                .union()
-                .select(Columns(Column(Table(table), Activities._ID)))
-                .from(Tables(table, Filters.Sources.TABLE_NAME))
-                .where(Expression.or(
-                        Expression.likeRaw(Column(Table(table), Activities.SOURCE),
-                                "'%>'||${Filters.Sources.TABLE_NAME}.${Filters.Sources.VALUE}||'</a>%'"),
-                        Expression.likeRaw(Column(Table(table), Activities.QUOTED_SOURCE),
-                                "'%>'||${Filters.Sources.TABLE_NAME}.${Filters.Sources.VALUE}||'</a>%'")
-                ))
-                .union()
-                .select(Columns(Column(Table(table), Activities._ID)))
-                .from(Tables(table, Filters.Keywords.TABLE_NAME))
-                .where(Expression.or(
-                        Expression.likeRaw(Column(Table(table), Activities.TEXT_PLAIN),
-                                "'%'||${Filters.Keywords.TABLE_NAME}.${Filters.Keywords.VALUE}||'%'"),
-                        Expression.likeRaw(Column(Table(table), Activities.QUOTED_TEXT_PLAIN),
-                                "'%'||${Filters.Keywords.TABLE_NAME}.${Filters.Keywords.VALUE}||'%'")
-                ))
-                .union()
-                .select(Columns(Column(Table(table), Activities._ID)))
-                .from(Tables(table, Filters.Links.TABLE_NAME))
-                .where(Expression.or(
-                        Expression.likeRaw(Column(Table(table), Activities.SPANS),
-                                "'%'||${Filters.Links.TABLE_NAME}.${Filters.Links.VALUE}||'%'"),
-                        Expression.likeRaw(Column(Table(table), Activities.QUOTED_SPANS),
-                                "'%'||${Filters.Links.TABLE_NAME}.${Filters.Links.VALUE}||'%'")
-                ))
+        // Verdict of user defined filters is computed when inserting, see FiltersMatcher
         val filterExpression = Expression.or(
-                Expression.notIn(Column(Table(table), Activities._ID), filteredIdsQueryBuilder.build()),
+                Expression("(${Activities.FILTER_FLAGS} & ${FilterFlags.MATCHED_FILTERS}) == 0"),
                 Expression.equals(Column(Table(table), Activities.IS_GAP), 1)
         )
         if (extraSelection != null) {
@@ -558,58 +518,9 @@ object DataStoreUtils {
         return AccountUtils.getAccounts(AccountManager.get(context)).isNotEmpty()
     }
 
-    @Synchronized fun cleanDatabasesByItemLimit(context: Context) {
-        val resolver = context.contentResolver
-        val preferences = context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE)
-        val itemLimit = preferences[databaseItemLimitKey]
-
-        for (accountKey in getAccountKeys(context)) {
-            // Clean statuses.
-            for (uri in STATUSES_URIS) {
-                if (CachedStatuses.CONTENT_URI == uri) {
-                    continue
-                }
-                val table = getTableNameByUri(uri)
-                val qb = SQLSelectQuery.Builder()
-                qb.select(Column(Statuses._ID))
-                        .from(Tables(table))
-                        .where(Expression.equalsArgs(Statuses.ACCOUNT_KEY))
-                        .orderBy(OrderBy(Statuses.POSITION_KEY, false))
-                        .limit(itemLimit)
-                val where = Expression.and(
-                        Expression.notIn(Column(Statuses._ID), qb.build()),
-                        Expression.equalsArgs(Statuses.ACCOUNT_KEY)
-                )
-                val whereArgs = arrayOf(accountKey.toString(), accountKey.toString())
-                resolver.delete(uri, where.sql, whereArgs)
-            }
-            for (uri in ACTIVITIES_URIS) {
-                val table = getTableNameByUri(uri)
-                val qb = SQLSelectQuery.Builder()
-                qb.select(Column(Activities._ID))
-                        .from(Tables(table))
-                        .where(Expression.equalsArgs(Activities.ACCOUNT_KEY))
-                        .orderBy(OrderBy(Activities.TIMESTAMP, false))
-                        .limit(itemLimit)
-                val where = Expression.and(
-                        Expression.notIn(Column(Activities._ID), qb.build()),
-                        Expression.equalsArgs(Activities.ACCOUNT_KEY)
-                )
-                val whereArgs = arrayOf(accountKey.toString(), accountKey.toString())
-                resolver.delete(uri, where.sql, whereArgs)
-            }
-        }
-        // Clean cached values.
-        for (uri in CACHE_URIS) {
-            val table = getTableNameByUri(uri) ?: continue
-            val qb = SQLSelectQuery.Builder()
-            qb.select(Column(BaseColumns._ID))
-                    .from(Tables(table))
-                    .orderBy(OrderBy(BaseColumns._ID, false))
-                    .limit(itemLimit * 20)
-            val where = Expression.notIn(Column(BaseColumns._ID), qb.build())
-            resolver.delete(uri, where.sql, null)
-        }
+    fun cleanDatabasesByItemLimit(context: Context) {
+        val db = TwidereApplication.getInstance(context).sqLiteDatabase
+        DatabaseHousekeeper(context, db).run(getAccountKeys(context))
     }
 
     fun isFilteringUser(context: Context, userKey: UserKey): Boolean {
@@ -0,0 +1,161 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util
+
+import android.content.res.Resources
+import android.util.SparseArray
+
+/**
+ * Code point sequences of emoji package, mapped to their resource identifiers.
+ *
+ * Created by mariotaku on 2017/5/26.
+ */
+class EmojiTrie private constructor(
+        private val root: Node,
+        /** Longest sequence in chars, variation selectors included */
+        val maxLength: Int,
+        val size: Int
+) {
+
+    /**
+     * Finds the longest emoji sequence starts at [start]. Variation selectors not in package are
+     * treated as part of the sequence before them.
+     *
+     * @return true if found, result will be set to [match]
+     */
+    fun match(text: CharSequence, start: Int, end: Int, match: Match): Boolean {
+        var node = root
+        var index = start
+        var length = 0
+        var matchedEnd = -1
+        var matchedIdentifier = 0
+        while (index < end) {
+            val codePoint = Character.codePointAt(text, index)
+            val next = node.children?.get(codePoint)
+            if (next == null) {
+                if (codePoint != VARIATION_SELECTOR || node === root) break
+                index++
+                if (matchedEnd == index - 1) {
+                    matchedEnd = index
+                }
+                continue
+            }
+            node = next
+            index += Character.charCount(codePoint)
+            length++
+            // Letters and digits are only emoji in sequences, like keycaps
+            if (node.identifier != 0 && (length > 1 || !Character.isLetterOrDigit(codePoint))) {
+                matchedEnd = index
+                matchedIdentifier = node.identifier
+            }
+        }
+        if (matchedEnd < 0) return false
+        match.end = matchedEnd
+        match.identifier = matchedIdentifier
+        return true
+    }
+
+    class Match {
+        var end: Int = -1
+        var identifier: Int = 0
+    }
+
+    private class Node {
+        var identifier: Int = 0
+        var children: SparseArray<Node>? = null
+
+        fun getOrPut(codePoint: Int): Node {
+            val children = this.children ?: SparseArray<Node>(4).also { this.children = it }
+            return children.get(codePoint) ?: Node().also { children.put(codePoint, it) }
+        }
+    }
+
+    class Builder {
+        private val root = Node()
+        private var maxLength = 0
+        private var size = 0
+
+        fun add(codePoints: IntArray, identifier: Int): Builder {
+            if (codePoints.isEmpty()) return this
+            var node = root
+            var length = 0
+            codePoints.forEach {
+                node = node.getOrPut(it)
+                length += Character.charCount(it) + 1
+            }
+            if (node.identifier == 0) {
+                size++
+            }
+            node.identifier = identifier
+            maxLength = Math.max(maxLength, length)
+            return this
+        }
+
+        fun build(): EmojiTrie = EmojiTrie(root, maxLength, size)
+    }
+
+    companion object {
+        private const val VARIATION_SELECTOR = 0xfe0f
+        private const val NAME_PREFIX = "emoji_u"
+        /** Resources commonly exist in emoji packages, used to find out type ID */
+        private val PROBE_NAMES = arrayOf("emoji_u1f600", "emoji_u263a", "emoji_u2764", "emoji_u00a9")
+        /** Stop enumerating after this number of unused IDs */
+        private const val MAX_MISSING_ENTRIES = 64
+
+        /**
+         * Enumerates every `emoji_u*` resource of [type] in the package. Resource IDs are formatted
+         * as `0xPPTTEEEE`, so we can walk through entries once type ID is known.
+         *
+         * @return null if type ID can't be found
+         */
+        fun build(resources: Resources, type: String, packageName: String): EmojiTrie? {
+            val probe = PROBE_NAMES.asSequence().map {
+                resources.getIdentifier(it, type, packageName)
+            }.firstOrNull { it != 0 } ?: return null
+            val typeId = probe and 0xffff0000.toInt()
+            val builder = Builder()
+            var missing = 0
+            var entry = 0
+            while (missing < MAX_MISSING_ENTRIES && entry <= 0xffff) {
+                val identifier = typeId or entry++
+                val name = try {
+                    resources.getResourceEntryName(identifier)
+                } catch (e: Resources.NotFoundException) {
+                    missing++
+                    continue
+                }
+                missing = 0
+                val codePoints = parseName(name) ?: continue
+                builder.add(codePoints, identifier)
+            }
+            return builder.build()
+        }
+
+        private fun parseName(name: String): IntArray? {
+            if (!name.startsWith(NAME_PREFIX)) return null
+            val segments = name.substring(NAME_PREFIX.length).split('_')
+            return try {
+                IntArray(segments.size) { Integer.parseInt(segments[it], 16) }
+            } catch (e: NumberFormatException) {
+                null
+            }
+        }
+    }
+}
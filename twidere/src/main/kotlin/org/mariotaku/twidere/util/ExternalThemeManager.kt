@@ -27,6 +27,7 @@ import android.content.res.Resources
 import android.graphics.drawable.Drawable
 import android.support.v4.content.res.ResourcesCompat
 import android.util.LruCache
+import nl.komponents.kovenant.task
 import org.mariotaku.twidere.constant.SharedPreferenceConstants.KEY_EMOJI_SUPPORT
 
 /**
@@ -70,10 +71,28 @@ class ExternalThemeManager(private val context: Context, private val preferences
     class Emoji(context: Context, private val packageName: String) {
         private var useMipmap: Boolean = false
         private var resources: Resources? = null
-        private val identifierCache = LruCache<IntArray, Int>(512)
+        /** Used before [trie] built, keyed by resource name */
+        private val identifierCache = LruCache<String, Int>(512)
+        private val drawableCache = object : LruCache<Int, CachedDrawable>(DRAWABLE_CACHE_SIZE) {
+            override fun sizeOf(key: Int, value: CachedDrawable) = value.size
+        }
+
+        /**
+         * All emoji in package, built in background. Null if not ready yet or type ID not found
+         */
+        @Volatile
+        var trie: EmojiTrie? = null
+            private set
 
         init {
             initResources(context, packageName)
+            val resources = this.resources
+            if (resources != null) {
+                val type = if (useMipmap) "mipmap" else "drawable"
+                task {
+                    trie = EmojiTrie.build(resources, type, packageName)
+                }
+            }
         }
 
         private fun initResources(context: Context, packageName: String?) {
@@ -97,31 +116,47 @@ class ExternalThemeManager(private val context: Context, private val preferences
 
         fun getEmojiDrawableFor(vararg codePoints: Int): Drawable? {
             val resources = resources ?: return null
-            val cached = identifierCache.get(codePoints)
-            if (cached == null) {
-                val sb = StringBuilder("emoji_u")
-                for (i in codePoints.indices) {
-                    if (i != 0) {
-                        sb.append("_")
-                    }
-                    val hex = Integer.toHexString(codePoints[i])
-                    for (j in 0 until 4 - hex.length) {
-                        sb.append("0")
-                    }
-                    sb.append(hex)
+            val sb = StringBuilder("emoji_u")
+            for (i in codePoints.indices) {
+                if (i != 0) {
+                    sb.append("_")
+                }
+                val hex = Integer.toHexString(codePoints[i])
+                for (j in 0 until 4 - hex.length) {
+                    sb.append("0")
                 }
-                val identifier = resources.getIdentifier(sb.toString(),
-                        if (useMipmap) "mipmap" else "drawable", packageName)
-                identifierCache.put(codePoints, identifier)
-                if (identifier == 0) return null
-                return ResourcesCompat.getDrawable(resources, identifier, null)
-            } else if (cached != 0) {
-                return ResourcesCompat.getDrawable(resources, cached, null)
+                sb.append(hex)
+            }
+            val name = sb.toString()
+            val identifier = identifierCache.get(name) ?: resources.getIdentifier(name,
+                    if (useMipmap) "mipmap" else "drawable", packageName).also {
+                identifierCache.put(name, it)
             }
-            return null
+            if (identifier == 0) return null
+            return getEmojiDrawable(identifier)
+        }
+
+        /**
+         * @param identifier Resource identifier from [trie]
+         */
+        fun getEmojiDrawable(identifier: Int): Drawable? {
+            val resources = resources ?: return null
+            drawableCache.get(identifier)?.let { return it.state.newDrawable(resources) }
+            val drawable = ResourcesCompat.getDrawable(resources, identifier, null) ?: return null
+            val state = drawable.constantState ?: return drawable
+            val size = Math.max(1, drawable.intrinsicWidth) * Math.max(1, drawable.intrinsicHeight) * 4
+            drawableCache.put(identifier, CachedDrawable(state, size))
+            return drawable
         }
 
         val isSupported: Boolean
             get() = resources != null
+
+        private class CachedDrawable(val state: Drawable.ConstantState, val size: Int)
+
+        companion object {
+            /** Estimated bitmap bytes of cached drawables */
+            private const val DRAWABLE_CACHE_SIZE = 4 * 1024 * 1024
+        }
     }
 }
@@ -14,8 +14,10 @@ import org.mariotaku.restfu.http.RestHttpClient
 import org.mariotaku.restfu.okhttp3.OkHttpRestClient
 import org.mariotaku.twidere.constant.SharedPreferenceConstants.*
 import org.mariotaku.twidere.constant.cacheSizeLimitKey
+import org.mariotaku.twidere.util.api.MicroBlogInstanceCache
 import org.mariotaku.twidere.util.dagger.DependencyHolder
 import org.mariotaku.twidere.util.net.TLSSocketFactory
+import org.mariotaku.twidere.util.okhttp.TrafficClass
 import java.io.IOException
 import java.net.InetSocketAddress
 import java.net.Proxy
@@ -32,11 +34,28 @@ import javax.net.ssl.X509TrustManager
  */
 object HttpClientFactory {
 
-    fun createRestHttpClient(conf: HttpClientConfiguration, dns: Dns, connectionPool: ConnectionPool,
-            cache: Cache): RestHttpClient {
+    /**
+     * Creates client with network configurations, other clients should be derived from it with
+     * [TrafficClass.newClientBuilder] so they share the same settings
+     */
+    fun createRootClient(conf: HttpClientConfiguration, dns: Dns, connectionPool: ConnectionPool,
+            cache: Cache): OkHttpClient {
         val builder = OkHttpClient.Builder()
         initOkHttpClient(conf, builder, dns, connectionPool, cache)
-        return OkHttpRestClient(builder.build())
+        return builder.build()
+    }
+
+    fun createRestHttpClient(root: OkHttpClient): RestHttpClient {
+        return OkHttpRestClient(TrafficClass.API.newClientBuilder(root).build())
+    }
+
+    /**
+     * Derives client from [base] with different options (e.g. timeouts), connection pool and
+     * concurrency limit are shared
+     */
+    fun deriveRestHttpClient(base: RestHttpClient, configure: OkHttpClient.Builder.() -> Unit): RestHttpClient {
+        val client = (base as? OkHttpRestClient)?.client ?: return base
+        return OkHttpRestClient(client.newBuilder().apply(configure).build())
     }
 
     fun initOkHttpClient(conf: HttpClientConfiguration, builder: OkHttpClient.Builder, dns: Dns,
@@ -52,13 +71,25 @@ object HttpClientFactory {
         DebugModeUtils.initForOkHttpClient(builder)
     }
 
+    /**
+     * Creates client of [trafficClass] with current network configurations, for requests made
+     * outside of long-living clients (e.g. saving media)
+     */
+    fun createClient(context: Context, trafficClass: TrafficClass): OkHttpClient {
+        return trafficClass.newClientBuilder(createRootClient(DependencyHolder.get(context))).build()
+    }
+
     fun reloadConnectivitySettings(context: Context) {
         val holder = DependencyHolder.get(context)
         val client = holder.restHttpClient as? OkHttpRestClient ?: return
-        val builder = OkHttpClient.Builder()
-        initOkHttpClient(HttpClientConfiguration(holder.preferences), builder, holder.dns,
+        client.client = TrafficClass.API.newClientBuilder(createRootClient(holder)).build()
+        // Derived clients of cached instances still use old settings
+        MicroBlogInstanceCache.invalidate()
+    }
+
+    private fun createRootClient(holder: DependencyHolder): OkHttpClient {
+        return createRootClient(HttpClientConfiguration(holder.preferences), holder.dns,
                 holder.connectionPool, holder.cache)
-        client.client = builder.build()
     }
 
     /**
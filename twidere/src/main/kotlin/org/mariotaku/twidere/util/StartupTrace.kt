@@ -0,0 +1,119 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util
+
+import android.support.annotation.StringDef
+import java.util.*
+
+/**
+ * Records how long every stage of application startup, and every step in it took.
+ *
+ * Stages run in order of [STAGE_CRITICAL] (in `Application.onCreate`, blocks first activity),
+ * [STAGE_FIRST_FRAME] (after first activity drawn) and [STAGE_IDLE] (main thread idle after
+ * that). Times are in milliseconds since trace created.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+class StartupTrace {
+
+    private val startTime = System.nanoTime()
+    private val records = ArrayList<Record>()
+    private var currentStage: String? = null
+
+    /**
+     * Whether [STAGE_IDLE] finished, so all records are in
+     */
+    val isFinished: Boolean
+        @Synchronized get() = records.any { it.stage == STAGE_IDLE && it.step == null }
+
+    val all: List<Record>
+        @Synchronized get() = records.toList()
+
+    fun runStage(@Stage stage: String, action: () -> Unit) {
+        val start = System.nanoTime()
+        currentStage = stage
+        try {
+            action()
+        } finally {
+            currentStage = null
+            add(Record(stage, null, millisSinceStart(start), millis(System.nanoTime() - start)))
+        }
+    }
+
+    fun <T> step(name: String, action: () -> T): T {
+        val stage = currentStage ?: return action()
+        val start = System.nanoTime()
+        try {
+            return action()
+        } finally {
+            add(Record(stage, name, millisSinceStart(start), millis(System.nanoTime() - start)))
+        }
+    }
+
+    /**
+     * @return Duration of stage, or -1 if not finished
+     */
+    @Synchronized
+    fun stageDuration(@Stage stage: String): Double {
+        return records.firstOrNull { it.stage == stage && it.step == null }?.duration ?: -1.0
+    }
+
+    @Synchronized
+    override fun toString(): String {
+        val sb = StringBuilder()
+        STAGES.forEach { stage ->
+            val stageRecord = records.firstOrNull { it.stage == stage && it.step == null } ?: return@forEach
+            sb.append("$stage: +${format(stageRecord.start)}ms, ${format(stageRecord.duration)}ms\n")
+            records.filter { it.stage == stage && it.step != null }.forEach { record ->
+                sb.append("  ${record.step}: ${format(record.duration)}ms\n")
+            }
+        }
+        return sb.toString()
+    }
+
+    @Synchronized
+    private fun add(record: Record) {
+        records.add(record)
+    }
+
+    private fun millisSinceStart(time: Long) = millis(time - startTime)
+
+    private fun millis(nanos: Long) = nanos / 1000000.0
+
+    private fun format(millis: Double) = String.format(Locale.US, "%.2f", millis)
+
+    /**
+     * @param step Name of step, null for whole stage
+     * @param start Start time since trace created
+     */
+    data class Record(@Stage val stage: String, val step: String?, val start: Double, val duration: Double)
+
+    @StringDef(STAGE_CRITICAL, STAGE_FIRST_FRAME, STAGE_IDLE)
+    @Retention(AnnotationRetention.SOURCE)
+    annotation class Stage
+
+    companion object {
+        const val STAGE_CRITICAL = "critical"
+        const val STAGE_FIRST_FRAME = "post_first_frame"
+        const val STAGE_IDLE = "idle"
+
+        val STAGES = arrayOf(STAGE_CRITICAL, STAGE_FIRST_FRAME, STAGE_IDLE)
+    }
+}
@@ -41,7 +41,9 @@ class StatusAdapterLinkClickHandler<D>(context: Context, preferences: SharedPref
     override fun openMedia(accountKey: UserKey, extraId: Long, sensitive: Boolean,
             link: String, start: Int, end: Int) {
         if (extraId == RecyclerView.NO_POSITION.toLong()) return
-        val status = adapter!!.getStatus(extraId.toInt())
+        val position = adapter!!.findStatusPosition(extraId)
+        if (position == RecyclerView.NO_POSITION) return
+        val status = adapter!!.getStatus(position)
         val media = ParcelableMediaUtils.getAllMedia(status)
         val current = StatusLinkClickHandler.findByLink(media, link)
         if (current != null && current.open_browser) {
@@ -53,8 +55,13 @@ class StatusAdapterLinkClickHandler<D>(context: Context, preferences: SharedPref
     }
 
     override fun isMedia(link: String, extraId: Long): Boolean {
-        if (extraId != RecyclerView.NO_POSITION.toLong()) {
-            val status = adapter!!.getStatus(extraId.toInt())
+        val position = if (extraId != RecyclerView.NO_POSITION.toLong()) {
+            adapter!!.findStatusPosition(extraId)
+        } else {
+            RecyclerView.NO_POSITION
+        }
+        if (position != RecyclerView.NO_POSITION) {
+            val status = adapter!!.getStatus(position)
             val media = ParcelableMediaUtils.getAllMedia(status)
             val current = StatusLinkClickHandler.findByLink(media, link)
             if (current != null) return !current.open_browser
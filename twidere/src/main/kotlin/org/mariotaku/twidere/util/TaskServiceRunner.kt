@@ -2,15 +2,25 @@ package org.mariotaku.twidere.util
 
 import android.content.Context
 import android.content.SharedPreferences
+import android.database.DatabaseUtils
+import android.os.SystemClock
 import android.support.annotation.StringDef
+import android.support.annotation.WorkerThread
 import android.util.Log
 import com.squareup.otto.Bus
+import nl.komponents.kovenant.task
+import nl.komponents.kovenant.ui.alwaysUi
+import nl.komponents.kovenant.ui.failUi
+import nl.komponents.kovenant.ui.successUi
 import org.mariotaku.abstask.library.AbstractTask
 import org.mariotaku.abstask.library.TaskStarter
 import org.mariotaku.kpreferences.get
 import org.mariotaku.ktextension.mapToArray
 import org.mariotaku.ktextension.toNulls
+import org.mariotaku.ktextension.useCursor
 import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.annotation.AutoRefreshType
+import org.mariotaku.twidere.app.TwidereApplication
 import org.mariotaku.twidere.constant.IntentConstants.INTENT_PACKAGE_PREFIX
 import org.mariotaku.twidere.constant.dataSyncProviderInfoKey
 import org.mariotaku.twidere.constant.stopAutoRefreshWhenBatteryLowKey
@@ -20,11 +30,14 @@ import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.model.pagination.Pagination
 import org.mariotaku.twidere.model.pagination.SinceMaxPagination
 import org.mariotaku.twidere.provider.TwidereDataStore.Activities
+import org.mariotaku.twidere.provider.TwidereDataStore.Messages
 import org.mariotaku.twidere.provider.TwidereDataStore.Statuses
 import org.mariotaku.twidere.task.filter.RefreshFiltersSubscriptionsTask
 import org.mariotaku.twidere.task.twitter.GetActivitiesAboutMeTask
 import org.mariotaku.twidere.task.twitter.GetHomeTimelineTask
 import org.mariotaku.twidere.task.twitter.message.GetMessagesTask
+import org.mariotaku.twidere.util.refresh.AutoRefreshController
+import org.mariotaku.twidere.util.refresh.AutoRefreshStats
 
 /**
  * Created by mariotaku on 2017/1/6.
@@ -34,7 +47,9 @@ class TaskServiceRunner(
         val context: Context,
         val preferences: SharedPreferences,
         val activityTracker: ActivityTracker,
-        val bus: Bus
+        val bus: Bus,
+        val autoRefreshController: AutoRefreshController,
+        val autoRefreshStats: AutoRefreshStats
 ) {
 
     fun runTask(@Action action: String, callback: (Boolean) -> Unit): Boolean {
@@ -47,6 +62,9 @@ class TaskServiceRunner(
                 TaskStarter.execute(task)
                 return true
             }
+            ACTION_REFRESH_ALL -> {
+                return refreshAll(callback)
+            }
             ACTION_SYNC_DRAFTS, ACTION_SYNC_FILTERS, ACTION_SYNC_USER_NICKNAMES, ACTION_SYNC_USER_COLORS -> {
                 val runner = preferences[dataSyncProviderInfoKey]?.newSyncTaskRunner(context) ?: return false
                 return runner.runTask(action, callback)
@@ -101,8 +119,114 @@ class TaskServiceRunner(
         return null
     }
 
+    /**
+     * Runs all auto refresh tasks one after another in a single wakeup, so their requests share
+     * connections of the same HTTP client. New rows of every timeline are counted afterwards,
+     * and interval of next refresh is adjusted by [AutoRefreshController.adjustInterval].
+     */
+    private fun refreshAll(callback: (Boolean) -> Unit): Boolean {
+        val actions = ArrayList<String>(ACTIONS_REFRESH.asList())
+        if (autoRefreshStats.isFiltersSubscriptionsRefreshDue) {
+            actions.add(ACTION_REFRESH_FILTERS_SUBSCRIPTIONS)
+        }
+        val tasks = actions.mapNotNull { action -> createRefreshTask(action)?.let { Pair(action, it) } }
+        if (tasks.isEmpty()) return false
+        val start = SystemClock.elapsedRealtime()
+        val results = ArrayList<Triple<String, Long, Boolean>>()
+
+        fun finish(newestItems: Map<String, Map<String, Long>>) {
+            task {
+                val newItems = countNewRows(newestItems)
+                val taskResults = results.map { (action, duration, success) ->
+                    val type = getRefreshType(action)
+                    val items = newItems[type]?.values?.sum() ?: 0
+                    AutoRefreshStats.TaskResult(type ?: AutoRefreshStats.TASK_FILTERS_SUBSCRIPTIONS,
+                            duration, items, success)
+                }
+                autoRefreshStats.recordRefresh(taskResults, newItems, SystemClock.elapsedRealtime() - start)
+                DebugLog.d(LOGTAG, "Auto refresh finished: $taskResults")
+            }.alwaysUi {
+                callback(results.all { it.third })
+                // Job must be finished before rescheduling, or it will be stopped
+                autoRefreshController.adjustInterval()
+            }
+        }
+
+        fun runNext(index: Int, newestItems: Map<String, Map<String, Long>>) {
+            if (index >= tasks.size) {
+                finish(newestItems)
+                return
+            }
+            val (action, refreshTask) = tasks[index]
+            val taskStart = SystemClock.elapsedRealtime()
+            refreshTask.callback = { success ->
+                results.add(Triple(action, SystemClock.elapsedRealtime() - taskStart, success))
+                runNext(index + 1, newestItems)
+            }
+            TaskStarter.execute(refreshTask)
+        }
+
+        task {
+            return@task REFRESH_TABLES.mapValues { (_, table) -> newestItems(table) }
+        }.successUi { newestItems ->
+            runNext(0, newestItems)
+        }.failUi {
+            callback(false)
+        }
+        return true
+    }
+
+    /**
+     * @return Newest position of items in [table] by account key
+     */
+    @WorkerThread
+    private fun newestItems(table: RefreshTable): Map<String, Long> {
+        val db = TwidereApplication.getInstance(context).sqLiteDatabase
+        val result = HashMap<String, Long>()
+        db.rawQuery("SELECT ${Statuses.ACCOUNT_KEY}, MAX(${table.orderColumn}) FROM ${table.name} " +
+                "GROUP BY ${Statuses.ACCOUNT_KEY}", null).useCursor { cur ->
+            cur.moveToFirst()
+            while (!cur.isAfterLast) {
+                result[cur.getString(0)] = cur.getLong(1)
+                cur.moveToNext()
+            }
+        }
+        return result
+    }
+
+    /**
+     * Items are compared by position instead of row ID, refresh tasks delete and insert again
+     * items they already have (e.g. the one used as `since_id`), they're not new.
+     *
+     * @param newestItems Newest positions before refresh, returned by [newestItems]
+     * @return Items newer than [newestItems] of every account with auto refresh enabled,
+     * grouped by [AutoRefreshType]
+     */
+    @WorkerThread
+    private fun countNewRows(newestItems: Map<String, Map<String, Long>>): Map<String, Map<UserKey, Int>> {
+        val db = TwidereApplication.getInstance(context).sqLiteDatabase
+        val accountPrefs = AccountPreferences.getAccountPreferences(context, preferences,
+                DataStoreUtils.getAccountKeys(context)).filter(AccountPreferences::isAutoRefreshEnabled)
+        return REFRESH_TABLES.mapValues { (type, table) ->
+            val newest = newestItems[type].orEmpty()
+            fun count(accountKey: UserKey): Int {
+                val key = accountKey.toString()
+                return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM ${table.name} WHERE " +
+                        "${Statuses.ACCOUNT_KEY} = ? AND ${table.orderColumn} > ?",
+                        arrayOf(key, (newest[key] ?: Long.MIN_VALUE).toString())).toInt()
+            }
+            return@mapValues accountPrefs.filter {
+                when (type) {
+                    AutoRefreshType.HOME_TIMELINE -> it.isAutoRefreshHomeTimelineEnabled
+                    AutoRefreshType.INTERACTIONS_TIMELINE -> it.isAutoRefreshMentionsEnabled
+                    else -> it.isAutoRefreshDirectMessagesEnabled
+                }
+            }.associate { Pair(it.accountKey, count(it.accountKey)) }
+        }
+    }
+
     @StringDef(ACTION_REFRESH_HOME_TIMELINE, ACTION_REFRESH_NOTIFICATIONS, ACTION_REFRESH_DIRECT_MESSAGES,
-            ACTION_REFRESH_FILTERS_SUBSCRIPTIONS, ACTION_SYNC_DRAFTS, ACTION_SYNC_FILTERS,
+            ACTION_REFRESH_FILTERS_SUBSCRIPTIONS, ACTION_REFRESH_ALL, ACTION_SYNC_DRAFTS, ACTION_SYNC_FILTERS,
             ACTION_SYNC_USER_NICKNAMES, ACTION_SYNC_USER_COLORS)
     @Retention(AnnotationRetention.SOURCE)
     annotation class Action
@@ -138,6 +262,11 @@ class TaskServiceRunner(
         const val ACTION_REFRESH_DIRECT_MESSAGES = INTENT_PACKAGE_PREFIX + "REFRESH_DIRECT_MESSAGES"
         @Action
         const val ACTION_REFRESH_FILTERS_SUBSCRIPTIONS = INTENT_PACKAGE_PREFIX + "REFRESH_FILTERS_SUBSCRIPTIONS"
+        /**
+         * Refresh all timelines, and filters subscriptions if they're due
+         */
+        @Action
+        const val ACTION_REFRESH_ALL = INTENT_PACKAGE_PREFIX + "REFRESH_ALL"
         @Action
         const val ACTION_SYNC_DRAFTS = INTENT_PACKAGE_PREFIX + "SYNC_DRAFTS"
         @Action
@@ -149,9 +278,34 @@ class TaskServiceRunner(
 
         val ACTIONS_SYNC = arrayOf(ACTION_SYNC_DRAFTS, ACTION_SYNC_FILTERS, ACTION_SYNC_USER_COLORS,
                 ACTION_SYNC_USER_NICKNAMES)
+        val ACTIONS_REFRESH = arrayOf(ACTION_REFRESH_HOME_TIMELINE, ACTION_REFRESH_NOTIFICATIONS,
+                ACTION_REFRESH_DIRECT_MESSAGES)
+
+        /**
+         * Tables new items of each [AutoRefreshType] are inserted to
+         */
+        private val REFRESH_TABLES = mapOf(
+                AutoRefreshType.HOME_TIMELINE to RefreshTable(Statuses.TABLE_NAME, Statuses.SORT_ID),
+                AutoRefreshType.INTERACTIONS_TIMELINE to RefreshTable(Activities.AboutMe.TABLE_NAME,
+                        Activities.TIMESTAMP),
+                AutoRefreshType.DIRECT_MESSAGES to RefreshTable(Messages.TABLE_NAME, Messages.SORT_ID)
+        )
+
+        @AutoRefreshType
+        fun getRefreshType(@Action action: String): String? = when (action) {
+            ACTION_REFRESH_HOME_TIMELINE -> AutoRefreshType.HOME_TIMELINE
+            ACTION_REFRESH_NOTIFICATIONS -> AutoRefreshType.INTERACTIONS_TIMELINE
+            ACTION_REFRESH_DIRECT_MESSAGES -> AutoRefreshType.DIRECT_MESSAGES
+            else -> null
+        }
     }
 
     data class SyncFinishedEvent(val syncType: String, val success: Boolean)
 
+    /**
+     * @param orderColumn Column increases with newer items
+     */
+    private data class RefreshTable(val name: String, val orderColumn: String)
+
 }
 
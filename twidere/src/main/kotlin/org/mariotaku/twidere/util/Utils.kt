@@ -290,14 +290,6 @@ object Utils {
         return number.toLocalizedString(locale)
     }
 
-    fun getMatchedNicknameKeys(str: String, manager: UserColorNameManager): Array<String> {
-        if (str.isEmpty()) return emptyArray()
-        return manager.nicknames.filter { (_, value) ->
-            val valueStr = value?.toString()?.takeIf(String::isNotEmpty) ?: return@filter false
-            return@filter valueStr.startsWith(str, ignoreCase = true)
-        }.map { it.key }.toTypedArray()
-    }
-
     fun getOriginalTwitterProfileImage(url: String): String {
         val matcher = PATTERN_TWITTER_PROFILE_IMAGES.matcher(url)
         if (matcher.matches())
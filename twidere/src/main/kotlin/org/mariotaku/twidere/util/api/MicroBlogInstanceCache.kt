@@ -0,0 +1,90 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.api
+
+import android.util.LruCache
+import org.mariotaku.twidere.model.account.cred.BasicCredentials
+import org.mariotaku.twidere.model.account.cred.Credentials
+import org.mariotaku.twidere.model.account.cred.OAuth2Credentials
+import org.mariotaku.twidere.model.account.cred.OAuthCredentials
+
+/**
+ * Caches API instances created from account credentials, so building `RestAPIFactory`, proxy
+ * and extra headers (which looks up official key type) happens once per account and API class,
+ * instead of every request.
+ *
+ * Key contains every credentials field used by endpoint and authorization, so instances of
+ * changed credentials are never reused. Instances of upload and streaming classes hold HTTP
+ * clients derived from the shared one, they must be dropped by [invalidate] when connectivity
+ * settings change.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+object MicroBlogInstanceCache {
+
+    private const val MAX_SIZE = 32
+
+    private val cache = LruCache<String, Any>(MAX_SIZE)
+
+    fun <T> get(credentials: Credentials, accountType: String?, cls: Class<T>, create: () -> T): T {
+        val key = credentials.cacheKey(accountType, cls)
+        @Suppress("UNCHECKED_CAST")
+        val cached = cache.get(key) as T?
+        if (cached != null) return cached
+        val instance = create()
+        cache.put(key, instance as Any)
+        return instance
+    }
+
+    fun invalidate() {
+        cache.evictAll()
+    }
+
+    private fun Credentials.cacheKey(accountType: String?, cls: Class<*>): String {
+        val sb = StringBuilder()
+        sb.append(cls.name).append('\n')
+        sb.append(accountType).append('\n')
+        sb.append(api_url_format).append('\n')
+        sb.append(no_version_suffix).append('\n')
+        when (this) {
+            is OAuthCredentials -> {
+                sb.append("oauth\n")
+                sb.append(consumer_key).append('\n')
+                sb.append(consumer_secret).append('\n')
+                sb.append(access_token).append('\n')
+                sb.append(access_token_secret).append('\n')
+                sb.append(same_oauth_signing_url)
+            }
+            is OAuth2Credentials -> {
+                sb.append("oauth2\n")
+                sb.append(access_token)
+            }
+            is BasicCredentials -> {
+                sb.append("basic\n")
+                sb.append(username).append('\n')
+                sb.append(password)
+            }
+            else -> {
+                sb.append(javaClass.name)
+            }
+        }
+        return sb.toString()
+    }
+}
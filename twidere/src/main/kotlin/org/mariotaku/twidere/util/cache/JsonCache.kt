@@ -19,6 +19,7 @@
 
 package org.mariotaku.twidere.util.cache
 
+import android.os.Parcelable
 import com.bumptech.glide.disklrucache.DiskLruCache
 import org.mariotaku.twidere.BuildConfig
 import org.mariotaku.twidere.util.JsonSerializer
@@ -59,4 +60,45 @@ class JsonCache(val cacheDir: File) {
             editor.abortUnlessCommitted()
         }
     }
+
+    /**
+     * @return Saved snapshot, or null if not available. Snapshots written by another build or
+     * corrupted are removed.
+     */
+    fun <T : Parcelable> getSnapshot(key: String, creator: Parcelable.Creator<T>): ParcelableSnapshot.LazyList<T>? {
+        val value = cache?.get(key) ?: return null
+        val file = value.getFile(0) ?: return null
+        val snapshot = ParcelableSnapshot.read(file, creator)
+        if (snapshot == null) {
+            remove(key)
+        }
+        return snapshot
+    }
+
+    /**
+     * Saves [list] as [ParcelableSnapshot], nothing will be written if content not changed
+     *
+     * @param flagsOf Flags of item, read by [ParcelableSnapshot.LazyList.getFlags]
+     */
+    fun <T : Parcelable> saveSnapshot(key: String, list: List<T>, flagsOf: (T) -> Int = { 0 }) {
+        val cache = this.cache ?: return
+        val items = ParcelableSnapshot.marshall(list, flagsOf)
+        val current = cache.get(key)?.getFile(0)
+        if (current != null && ParcelableSnapshot.sameContent(current, items)) return
+        val editor = cache.edit(key) ?: return
+        try {
+            editor.getFile(0)?.let { ParcelableSnapshot.write(it, items) }
+            editor.commit()
+        } finally {
+            editor.abortUnlessCommitted()
+        }
+    }
+
+    fun remove(key: String) {
+        try {
+            cache?.remove(key)
+        } catch (e: IOException) {
+            // Ignore
+        }
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.cache
+
+import android.os.Build
+import android.os.Parcel
+import android.os.Parcelable
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.RandomAccess
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.zip.CRC32
+
+/**
+ * Binary snapshot of a [Parcelable] list, each item stored as marshalled [Parcel].
+ *
+ * Layout: header (magic, version, SDK level, build fingerprint), item count, index entries of
+ * (offset, length, crc, flags) for every item, then item data. Offsets are relative to item count.
+ * Marshalled parcels aren't portable across platform builds, so snapshots written by another
+ * build are treated as missing, and every entry is checked against its CRC before use.
+ *
+ * Created by mariotaku on 2017/5/24.
+ */
+object ParcelableSnapshot {
+
+    private const val MAGIC = 0x54575350 // "TWSP"
+    private const val VERSION = 2
+    private const val INDEX_OFFSET = 4
+    private const val ENTRY_SIZE = 16
+
+    private val fingerprint: ByteArray by lazy { Build.FINGERPRINT.orEmpty().toByteArray(Charsets.UTF_8) }
+
+    /**
+     * @return Snapshot in [file], or null if it's missing, written by another build or corrupted
+     */
+    fun <T : Parcelable> read(file: File, creator: Parcelable.Creator<T>): LazyList<T>? {
+        val buffer = map(file) ?: return null
+        if (!verify(buffer)) return null
+        return LazyList(buffer, buffer.getInt(0), creator)
+    }
+
+    fun <T : Parcelable> marshall(list: List<T>, flagsOf: (T) -> Int): Items {
+        val data = arrayOfNulls<ByteArray>(list.size)
+        val crcs = IntArray(list.size)
+        val flags = IntArray(list.size)
+        val crc = CRC32()
+        list.forEachIndexed { i, item ->
+            val parcel = Parcel.obtain()
+            val bytes = try {
+                item.writeToParcel(parcel, 0)
+                parcel.marshall()
+            } finally {
+                parcel.recycle()
+            }
+            crc.reset()
+            crc.update(bytes)
+            data[i] = bytes
+            crcs[i] = crc.value.toInt()
+            flags[i] = flagsOf(item)
+        }
+        @Suppress("UNCHECKED_CAST")
+        return Items(data as Array<ByteArray>, crcs, flags)
+    }
+
+    /**
+     * @return true if [file] is a snapshot with exactly the same items
+     */
+    fun sameContent(file: File, items: Items): Boolean {
+        val buffer = map(file) ?: return false
+        val count = buffer.getInt(0)
+        if (count != items.size) return false
+        for (i in 0 until count) {
+            val entry = INDEX_OFFSET + i * ENTRY_SIZE
+            if (buffer.getInt(entry + 4) != items.data[i].size) return false
+            if (buffer.getInt(entry + 8) != items.crcs[i]) return false
+            if (buffer.getInt(entry + 12) != items.flags[i]) return false
+        }
+        return true
+    }
+
+    @Throws(IOException::class)
+    fun write(file: File, items: Items) {
+        DataOutputStream(BufferedOutputStream(FileOutputStream(file))).use { os ->
+            os.writeInt(MAGIC)
+            os.writeInt(VERSION)
+            os.writeInt(Build.VERSION.SDK_INT)
+            os.writeInt(fingerprint.size)
+            os.write(fingerprint)
+            os.writeInt(items.size)
+            var offset = INDEX_OFFSET + items.size * ENTRY_SIZE
+            for (i in 0 until items.size) {
+                val length = items.data[i].size
+                os.writeInt(offset)
+                os.writeInt(length)
+                os.writeInt(items.crcs[i])
+                os.writeInt(items.flags[i])
+                offset += length
+            }
+            items.data.forEach { os.write(it) }
+        }
+    }
+
+    /**
+     * @return Buffer starting at item count, or null if header doesn't match current build
+     */
+    private fun map(file: File): ByteBuffer? {
+        val buffer = try {
+            FileInputStream(file).channel.use { it.map(FileChannel.MapMode.READ_ONLY, 0, it.size()) }
+        } catch (e: IOException) {
+            return null
+        }
+        val headerSize = 16 + fingerprint.size
+        if (buffer.capacity() < headerSize + INDEX_OFFSET) return null
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return null
+        if (buffer.getInt(8) != Build.VERSION.SDK_INT || buffer.getInt(12) != fingerprint.size) return null
+        for (i in fingerprint.indices) {
+            if (buffer.get(16 + i) != fingerprint[i]) return null
+        }
+        buffer.position(headerSize)
+        val body = buffer.slice()
+        val count = body.getInt(0)
+        if (count < 0 || INDEX_OFFSET + count.toLong() * ENTRY_SIZE > body.capacity()) return null
+        return body
+    }
+
+    /**
+     * Checks bounds and CRC of every entry, so a truncated or corrupted file won't be decoded
+     */
+    private fun verify(body: ByteBuffer): Boolean {
+        val count = body.getInt(0)
+        val dataStart = INDEX_OFFSET + count.toLong() * ENTRY_SIZE
+        val view = body.duplicate()
+        val crc = CRC32()
+        var bytes = ByteArray(0)
+        for (i in 0 until count) {
+            val entry = INDEX_OFFSET + i * ENTRY_SIZE
+            val offset = body.getInt(entry)
+            val length = body.getInt(entry + 4)
+            if (offset < dataStart || length < 0 || offset.toLong() + length > body.capacity()) {
+                return false
+            }
+            if (bytes.size < length) {
+                bytes = ByteArray(length)
+            }
+            view.position(offset)
+            view.get(bytes, 0, length)
+            crc.reset()
+            crc.update(bytes, 0, length)
+            if (crc.value.toInt() != body.getInt(entry + 8)) return false
+        }
+        return true
+    }
+
+    class Items internal constructor(
+            internal val data: Array<ByteArray>,
+            internal val crcs: IntArray,
+            internal val flags: IntArray
+    ) {
+        val size: Int get() = data.size
+    }
+
+    /**
+     * Read-only list backed by a mapped snapshot, items are decoded on first access.
+     */
+    class LazyList<T : Parcelable> internal constructor(
+            private val buffer: ByteBuffer,
+            override val size: Int,
+            private val creator: Parcelable.Creator<T>
+    ) : AbstractList<T>(), RandomAccess {
+
+        private val items = AtomicReferenceArray<T>(size)
+
+        override fun get(index: Int): T {
+            items.get(index)?.let { return it }
+            val decoded = decodeAt(index)
+            if (items.compareAndSet(index, null, decoded)) return decoded
+            return items.get(index)
+        }
+
+        /**
+         * @return Flags saved along with the item, available without decoding it
+         */
+        fun getFlags(index: Int): Int {
+            if (index !in 0 until size) throw IndexOutOfBoundsException("Index: $index, Size: $size")
+            return buffer.getInt(INDEX_OFFSET + index * ENTRY_SIZE + 12)
+        }
+
+        /**
+         * Decode items in range [start, end) ahead of use
+         *
+         * @return false if any item can't be decoded, snapshot should be discarded then
+         */
+        fun decode(start: Int, end: Int): Boolean {
+            try {
+                for (i in start until Math.min(end, size)) {
+                    get(i)
+                }
+            } catch (e: RuntimeException) {
+                // Unmarshalling throws all kinds of runtime exceptions on incompatible data
+                return false
+            }
+            return true
+        }
+
+        private fun decodeAt(index: Int): T {
+            if (index !in 0 until size) throw IndexOutOfBoundsException("Index: $index, Size: $size")
+            val entry = INDEX_OFFSET + index * ENTRY_SIZE
+            // Bounds were checked in read()
+            val bytes = ByteArray(buffer.getInt(entry + 4))
+            // Position of the shared buffer is never changed, so duplicates are safe to use
+            val view = buffer.duplicate()
+            view.position(buffer.getInt(entry))
+            view.get(bytes)
+            val parcel = Parcel.obtain()
+            try {
+                parcel.unmarshall(bytes, 0, bytes.size)
+                parcel.setDataPosition(0)
+                return creator.createFromParcel(parcel)
+            } finally {
+                parcel.recycle()
+            }
+        }
+    }
+}
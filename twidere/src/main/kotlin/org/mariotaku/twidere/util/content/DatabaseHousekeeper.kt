@@ -0,0 +1,254 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.content
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.database.DatabaseUtils
+import android.database.SQLException
+import android.database.sqlite.SQLiteDatabase
+import android.net.Uri
+import android.os.SystemClock
+import android.provider.BaseColumns
+import org.mariotaku.kpreferences.get
+import org.mariotaku.kpreferences.set
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.TwidereConstants.SHARED_PREFERENCES_NAME
+import org.mariotaku.twidere.constant.databaseItemLimitKey
+import org.mariotaku.twidere.constant.fullVacuumFailedTimeKey
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.provider.TwidereDataStore.*
+import org.mariotaku.twidere.util.DebugLog
+import org.mariotaku.twidere.util.dagger.DependencyHolder
+import java.util.concurrent.TimeUnit
+
+/**
+ * Trims timelines and caches in small batches, so other writers are only blocked for a short
+ * time, then returns free pages to file system with `incremental_vacuum`.
+ *
+ * Timelines keep newest `itemLimit` rows of each account, found with position indices. Cache
+ * tables keep `itemLimit * 20` rows. Users not seen (interacted with, or cached from a timeline)
+ * for the longest time are evicted first, other caches evict oldest inserted rows first.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+class DatabaseHousekeeper(
+        private val context: Context,
+        private val db: SQLiteDatabase
+) {
+
+    fun run(accountKeys: Array<UserKey>): Result = synchronized(DatabaseHousekeeper::class.java) {
+        val preferences = context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE)
+        val itemLimit = preferences[databaseItemLimitKey]
+        val changedUris = LinkedHashSet<Uri>()
+        var deletedRows = 0
+
+        fun Int.changed(uri: Uri): Int {
+            if (this > 0) changedUris.add(uri)
+            return this
+        }
+
+        accountKeys.forEach { accountKey ->
+            deletedRows += trimAccount(Statuses.TABLE_NAME, Statuses.POSITION_KEY, accountKey,
+                    itemLimit).changed(Statuses.CONTENT_URI)
+            deletedRows += trimAccount(Activities.AboutMe.TABLE_NAME, Activities.TIMESTAMP, accountKey,
+                    itemLimit).changed(Activities.AboutMe.CONTENT_URI)
+        }
+        val cacheLimit = itemLimit * 20
+        val prefixIndex = DependencyHolder.get(context).cachedUsersPrefixIndex
+        deletedRows += trimCache(CachedUsers.TABLE_NAME, USERS_EVICT_VALUE, cacheLimit,
+                CachedUsers.USER_KEY) { userKeys ->
+            // Only remove trimmed users, so index won't be loaded again on next query
+            prefixIndex.removeUsers(userKeys)
+        }.changed(CachedUsers.CONTENT_URI)
+        deletedRows += trimCache(CachedStatuses.TABLE_NAME, BaseColumns._ID, cacheLimit)
+                .changed(CachedStatuses.CONTENT_URI)
+        deletedRows += trimCache(CachedHashtags.TABLE_NAME, BaseColumns._ID, cacheLimit)
+                .changed(CachedHashtags.CONTENT_URI)
+        deletedRows += trimCache(CachedTrends.Local.TABLE_NAME, BaseColumns._ID, cacheLimit)
+                .changed(CachedTrends.Local.CONTENT_URI)
+
+        changedUris.forEach { context.contentResolver.notifyChange(it, null) }
+
+        val reclaimedPages = vacuum(preferences)
+        val result = Result(deletedRows, reclaimedPages, db.pageSize)
+        DebugLog.d(LOGTAG, "Database housekeeping finished: $result")
+        return result
+    }
+
+    /**
+     * Deletes rows of account after newest [itemLimit] ones in order of [orderColumn]
+     */
+    private fun trimAccount(table: String, orderColumn: String, accountKey: UserKey, itemLimit: Int): Int {
+        val accountArgs = arrayOf(accountKey.toString())
+        val cutoff = db.rawQuery("SELECT $orderColumn FROM $table WHERE ${Statuses.ACCOUNT_KEY} = ? " +
+                "ORDER BY $orderColumn DESC LIMIT 1 OFFSET $itemLimit", accountArgs).useCursor { cur ->
+            if (cur.moveToFirst()) cur.getLong(0) else null
+        } ?: return 0
+        val where = "${Statuses.ACCOUNT_KEY} = ? AND $orderColumn <= ?"
+        return deleteInBatches(table, where, accountArgs + cutoff.toString(), null, Int.MAX_VALUE)
+    }
+
+    /**
+     * Deletes rows with least [evictValue] (then `_id`) until there are [limit] rows left. Last row
+     * to delete is found once, so the table isn't sorted again for every batch.
+     */
+    private fun trimCache(table: String, evictValue: String, limit: Int, keyColumn: String? = null,
+            onDeleted: ((Array<String>) -> Unit)? = null): Int {
+        val excess = DatabaseUtils.queryNumEntries(db, table) - limit
+        if (excess <= 0) return 0
+        val (cutoff, cutoffId) = db.rawQuery("SELECT $evictValue, ${BaseColumns._ID} FROM $table " +
+                "ORDER BY $evictValue, ${BaseColumns._ID} LIMIT 1 OFFSET ${excess - 1}", null).useCursor { cur ->
+            if (cur.moveToFirst()) Pair(cur.getLong(0), cur.getLong(1)) else null
+        } ?: return 0
+        // Values are inlined, expressions have no affinity, so text arguments won't be compared as numbers
+        val where = "$evictValue < $cutoff OR ($evictValue = $cutoff AND ${BaseColumns._ID} <= $cutoffId)"
+        return deleteInBatches(table, where, null, null, excess.toInt(), keyColumn, onDeleted)
+    }
+
+    /**
+     * @param keyColumn Column read from rows before they're deleted, passed to [onDeleted] after
+     * each batch
+     */
+    private fun deleteInBatches(table: String, where: String?, whereArgs: Array<String>?,
+            orderBy: String?, maxCount: Int, keyColumn: String? = null,
+            onDeleted: ((Array<String>) -> Unit)? = null): Int {
+        var total = 0
+        while (total < maxCount) {
+            val batchSize = Math.min(maxCount - total, BATCH_SIZE)
+            val select = StringBuilder("SELECT ${BaseColumns._ID} FROM $table")
+            if (where != null) select.append(" WHERE ").append(where)
+            if (orderBy != null) select.append(" ORDER BY ").append(orderBy)
+            select.append(" LIMIT ").append(batchSize)
+            val deleted = if (keyColumn != null && onDeleted != null) {
+                deleteBatch(table, select.toString(), whereArgs, keyColumn, onDeleted)
+            } else {
+                db.delete(table, "${BaseColumns._ID} IN ($select)", whereArgs)
+            }
+            total += deleted
+            if (deleted < batchSize) break
+            // Let other writers in
+            SystemClock.sleep(BATCH_INTERVAL)
+        }
+        return total
+    }
+
+    private fun deleteBatch(table: String, select: String, whereArgs: Array<String>?,
+            keyColumn: String, onDeleted: (Array<String>) -> Unit): Int {
+        val keys: Array<String>
+        val deleted: Int
+        db.beginTransaction()
+        try {
+            keys = db.rawQuery("SELECT $keyColumn FROM $table WHERE ${BaseColumns._ID} IN ($select)",
+                    whereArgs).useCursor { cur ->
+                val result = ArrayList<String>(cur.count)
+                while (cur.moveToNext()) {
+                    result.add(cur.getString(0))
+                }
+                return@useCursor result.toTypedArray()
+            }
+            deleted = db.delete(table, "${BaseColumns._ID} IN ($select)", whereArgs)
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+        onDeleted(keys)
+        return deleted
+    }
+
+    /**
+     * @return Pages returned to file system
+     */
+    private fun vacuum(preferences: SharedPreferences): Int {
+        if (autoVacuumMode(db) != AUTO_VACUUM_INCREMENTAL) {
+            // Databases created before incremental vacuum was enabled need a full VACUUM once,
+            // it rewrites whole database, so don't retry soon if it failed (e.g. disk is full)
+            val lastFailed = preferences[fullVacuumFailedTimeKey]
+            if (lastFailed > 0 && System.currentTimeMillis() - lastFailed < FULL_VACUUM_RETRY_INTERVAL) {
+                return 0
+            }
+            val pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)
+            try {
+                db.execSQL("PRAGMA auto_vacuum = INCREMENTAL")
+                db.execSQL("VACUUM")
+            } catch (e: SQLException) {
+                DebugLog.w(LOGTAG, "Unable to enable incremental vacuum", e)
+                preferences[fullVacuumFailedTimeKey] = System.currentTimeMillis()
+                return 0
+            }
+            return (pageCount - DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)).toInt()
+        }
+        var reclaimed = 0
+        while (true) {
+            val freePages = freelistCount(db)
+            if (freePages <= 0) break
+            incrementalVacuum(db, Math.min(freePages, VACUUM_STEP_PAGES))
+            val freed = freePages - freelistCount(db)
+            if (freed <= 0) break
+            reclaimed += freed
+            SystemClock.sleep(BATCH_INTERVAL)
+        }
+        return reclaimed
+    }
+
+    /**
+     * @param deletedRows Rows deleted from timelines and caches
+     * @param reclaimedPages Pages returned to file system
+     */
+    data class Result(val deletedRows: Int, val reclaimedPages: Int, val pageSize: Long) {
+        override fun toString(): String {
+            return "$deletedRows rows deleted, $reclaimedPages pages (${reclaimedPages * pageSize} bytes) reclaimed"
+        }
+    }
+
+    companion object {
+        private const val BATCH_SIZE = 200
+        private const val BATCH_INTERVAL = 20L
+        private const val VACUUM_STEP_PAGES = 256
+        private const val AUTO_VACUUM_INCREMENTAL = 2L
+        private val FULL_VACUUM_RETRY_INTERVAL = TimeUnit.DAYS.toMillis(1)
+        /**
+         * Least recent of last interaction and last cached time first, `NULL`s are treated as
+         * never. Rows renewed by `UserCacheWriter` keep their rowid, so it's only a tie breaker.
+         */
+        private val USERS_EVICT_VALUE = "MAX(IFNULL(${CachedUsers.LAST_SEEN}, 0), " +
+                "IFNULL(${CachedUsers.LAST_CACHED}, 0))"
+
+        fun autoVacuumMode(db: SQLiteDatabase): Long {
+            return DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null)
+        }
+
+        /**
+         * Returns free pages to file system, unlike `VACUUM` this doesn't need extra space, so it
+         * works when disk is full. No-op if incremental vacuum is not enabled.
+         *
+         * @param pages Pages to return, 0 for all free pages
+         */
+        fun incrementalVacuum(db: SQLiteDatabase, pages: Int = 0) {
+            // Each step of statement frees a page, so read cursor till end
+            db.rawQuery("PRAGMA incremental_vacuum($pages)", null).useCursor { it.count }
+        }
+
+        private fun freelistCount(db: SQLiteDatabase): Int {
+            return DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null).toInt()
+        }
+    }
+}
@@ -24,7 +24,6 @@ import android.content.ContentValues
 import android.content.Context
 import android.database.sqlite.SQLiteDatabase
 import android.database.sqlite.SQLiteOpenHelper
-import android.os.Build
 import org.mariotaku.kpreferences.get
 import org.mariotaku.library.objectcursor.ObjectCursor
 import org.mariotaku.sqliteqb.library.*
@@ -48,6 +47,14 @@ class TwidereSQLiteOpenHelper(
         version: Int
 ) : SQLiteOpenHelper(context, name, null, version) {
 
+    private val cachedUsersColumns = CachedUsers.COLUMNS + CachedUsers.CONTENT_HASH + CachedUsers.LAST_CACHED
+    private val cachedUsersTypes = CachedUsers.TYPES + TYPE_INT + TYPE_INT
+
+    override fun onConfigure(db: SQLiteDatabase) {
+        // Takes effect on new databases, existing ones are converted by DatabaseHousekeeper
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL")
+    }
+
     override fun onCreate(db: SQLiteDatabase) {
         db.beginTransaction()
         db.execSQL(createTable(Statuses.TABLE_NAME, Statuses.COLUMNS, Statuses.TYPES, true))
@@ -57,7 +64,7 @@ class TwidereSQLiteOpenHelper(
         db.endTransaction()
 
         db.beginTransaction()
-        db.execSQL(createTable(CachedUsers.TABLE_NAME, CachedUsers.COLUMNS, CachedUsers.TYPES, true,
+        db.execSQL(createTable(CachedUsers.TABLE_NAME, cachedUsersColumns, cachedUsersTypes, true,
                 createConflictReplaceConstraint(CachedUsers.USER_KEY)))
         db.execSQL(createTable(CachedStatuses.TABLE_NAME, CachedStatuses.COLUMNS, CachedStatuses.TYPES, true))
         db.execSQL(createTable(CachedTrends.Local.TABLE_NAME, CachedTrends.Local.COLUMNS, CachedTrends.Local.TYPES,
@@ -129,8 +136,11 @@ class TwidereSQLiteOpenHelper(
     }
 
     private fun createIndices(db: SQLiteDatabase) {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return
-        db.execSQL(createIndex("statuses_index", Statuses.TABLE_NAME, arrayOf(Statuses.ACCOUNT_KEY), true))
+        // Replaced by statuses_account_key_id_index
+        db.execSQL(SQLQueryBuilder.dropIndex(true, "statuses_index").sql)
+        INDICES.forEach { (name, table, columns) ->
+            db.execSQL(createIndex(name, table, columns, true))
+        }
     }
 
     private fun createTriggers(db: SQLiteDatabase) {
@@ -230,7 +240,7 @@ class TwidereSQLiteOpenHelper(
         safeUpgrade(db, Activities.AboutMe.TABLE_NAME, Activities.AboutMe.COLUMNS,
                 Activities.AboutMe.TYPES, true, null)
         migrateDrafts(db)
-        safeUpgrade(db, CachedUsers.TABLE_NAME, CachedUsers.COLUMNS, CachedUsers.TYPES, true, null,
+        safeUpgrade(db, CachedUsers.TABLE_NAME, cachedUsersColumns, cachedUsersTypes, true, null,
                 createConflictReplaceConstraint(CachedUsers.USER_KEY))
         safeUpgrade(db, CachedStatuses.TABLE_NAME, CachedStatuses.COLUMNS, CachedStatuses.TYPES, true, null)
         safeUpgrade(db, CachedHashtags.TABLE_NAME, CachedHashtags.COLUMNS, CachedHashtags.TYPES, true, null)
@@ -328,4 +338,39 @@ class TwidereSQLiteOpenHelper(
         return Constraint.unique("unique_message_conversations", Columns(Conversations.ACCOUNT_KEY,
                 Conversations.CONVERSATION_ID), OnConflict.REPLACE)
     }
+
+    companion object {
+
+        /**
+         * Indices for sort orders and lookups on hot paths, (name, table, columns)
+         */
+        val INDICES = arrayOf(
+                // Duplicate status triggers and status lookups
+                Triple("statuses_account_key_id_index", Statuses.TABLE_NAME,
+                        arrayOf(Statuses.ACCOUNT_KEY, Statuses.ID)),
+                Triple("cached_statuses_account_key_id_index", CachedStatuses.TABLE_NAME,
+                        arrayOf(CachedStatuses.ACCOUNT_KEY, CachedStatuses.ID)),
+                // Timeline sort order
+                Triple("statuses_timestamp_index", Statuses.TABLE_NAME,
+                        arrayOf(Statuses.TIMESTAMP, Statuses.SORT_ID, Statuses.ID)),
+                // Newest/oldest status of each account
+                Triple("statuses_account_key_timestamp_index", Statuses.TABLE_NAME,
+                        arrayOf(Statuses.ACCOUNT_KEY, Statuses.TIMESTAMP)),
+                // Read positions
+                Triple("statuses_position_key_index", Statuses.TABLE_NAME,
+                        arrayOf(Statuses.POSITION_KEY)),
+                // Trimming timeline of each account
+                Triple("statuses_account_key_position_key_index", Statuses.TABLE_NAME,
+                        arrayOf(Statuses.ACCOUNT_KEY, Statuses.POSITION_KEY)),
+                Triple("activities_timestamp_index", Activities.AboutMe.TABLE_NAME,
+                        arrayOf(Activities.TIMESTAMP)),
+                Triple("activities_account_key_timestamp_index", Activities.AboutMe.TABLE_NAME,
+                        arrayOf(Activities.ACCOUNT_KEY, Activities.TIMESTAMP)),
+                // Messages in conversation, sorted by sort ID or local timestamp
+                Triple("messages_conversation_sort_id_index", Messages.TABLE_NAME,
+                        arrayOf(Messages.ACCOUNT_KEY, Messages.CONVERSATION_ID, Messages.SORT_ID)),
+                Triple("messages_conversation_local_timestamp_index", Messages.TABLE_NAME,
+                        arrayOf(Messages.ACCOUNT_KEY, Messages.CONVERSATION_ID, Messages.LOCAL_TIMESTAMP))
+        )
+    }
 }
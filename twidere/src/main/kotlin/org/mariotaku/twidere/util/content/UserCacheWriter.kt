@@ -0,0 +1,178 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.content
+
+import android.content.ContentResolver
+import android.content.ContentValues
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.library.objectcursor.ObjectCursor
+import org.mariotaku.sqliteqb.library.Expression
+import org.mariotaku.twidere.TwidereConstants.QUERY_PARAM_NOTIFY_CHANGE
+import org.mariotaku.twidere.extension.model.applyTo
+import org.mariotaku.twidere.extension.model.relationship
+import org.mariotaku.twidere.extension.queryAll
+import org.mariotaku.twidere.model.ParcelableRelationship
+import org.mariotaku.twidere.model.ParcelableUser
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.provider.TwidereDataStore.CachedRelationships
+import org.mariotaku.twidere.provider.TwidereDataStore.CachedUsers
+import org.mariotaku.twidere.util.UriUtils
+import java.util.*
+
+/**
+ * Writes users and relationships to cache, rows have same content with cached ones are skipped.
+ *
+ * Users are compared by [CachedUsers.CONTENT_HASH] saved along with them, relationships are
+ * compared with cached rows directly since they are small. Skipped users only have
+ * [CachedUsers.LAST_CACHED] renewed, so they won't be evicted by housekeeping before users seen
+ * earlier.
+ *
+ * Created by mariotaku on 2017/5/26.
+ */
+class UserCacheWriter(private val cr: ContentResolver) {
+
+    fun writeUsers(users: Collection<ParcelableUser>): Result {
+        if (users.isEmpty()) return Result(0, 0)
+        val creator = ObjectCursor.valuesCreatorFrom(ParcelableUser::class.java)
+        // Same user appears many times in a timeline, the last one wins
+        val valuesMap = LinkedHashMap<String, ContentValues>()
+        users.forEach { valuesMap[it.key.toString()] = creator.create(it) }
+        val cachedHashes = queryContentHashes(valuesMap.keys)
+        val now = System.currentTimeMillis()
+        val changed = ArrayList<ContentValues>()
+        val unchangedKeys = ArrayList<String>()
+        valuesMap.forEach { (key, values) ->
+            val hash = values.contentHash()
+            if (cachedHashes[key] == hash) {
+                unchangedKeys.add(key)
+                return@forEach
+            }
+            values.put(CachedUsers.CONTENT_HASH, hash)
+            values.put(CachedUsers.LAST_CACHED, now)
+            changed.add(values)
+        }
+        ContentResolverUtils.bulkInsert(cr, CachedUsers.CONTENT_URI, changed)
+        touchUsers(unchangedKeys, now)
+        return Result(changed.size, unchangedKeys.size)
+    }
+
+    fun writeRelationships(accountKey: UserKey, users: Collection<ParcelableUser>): Result {
+        if (users.isEmpty()) return Result(0, 0)
+        val creator = ObjectCursor.valuesCreatorFrom(ParcelableRelationship::class.java)
+        val usersMap = LinkedHashMap<UserKey, ParcelableUser>()
+        users.forEach { usersMap[it.key] = it }
+        val cached = queryRelationships(accountKey, usersMap.keys)
+        val changed = ArrayList<ContentValues>()
+        usersMap.forEach { (key, user) ->
+            val relationship = cached[key]
+            if (relationship == null) {
+                changed.add(creator.create(user.relationship))
+                return@forEach
+            }
+            val cachedValues = creator.create(relationship)
+            user.applyTo(relationship)
+            val values = creator.create(relationship)
+            if (values != cachedValues) {
+                changed.add(values)
+            }
+        }
+        ContentResolverUtils.bulkInsert(cr, CachedRelationships.CONTENT_URI, changed)
+        return Result(changed.size, usersMap.size - changed.size)
+    }
+
+    private fun touchUsers(keys: Collection<String>, time: Long) {
+        val values = ContentValues()
+        values.put(CachedUsers.LAST_CACHED, time)
+        // Content not changed, observers needn't know
+        val uri = UriUtils.appendQueryParameters(CachedUsers.CONTENT_URI, QUERY_PARAM_NOTIFY_CHANGE, false)
+        keys.chunkedForSelection().forEach { chunk ->
+            val where = Expression.inArgs(CachedUsers.USER_KEY, chunk.size).sql
+            cr.update(uri, values, where, chunk.toTypedArray())
+        }
+    }
+
+    private fun queryContentHashes(keys: Collection<String>): Map<String, Long> {
+        val result = HashMap<String, Long>()
+        val projection = arrayOf(CachedUsers.USER_KEY, CachedUsers.CONTENT_HASH)
+        keys.chunkedForSelection().forEach { chunk ->
+            val where = Expression.inArgs(CachedUsers.USER_KEY, chunk.size).sql
+            cr.query(CachedUsers.CONTENT_URI, projection, where, chunk.toTypedArray(), null)?.useCursor { cur ->
+                cur.moveToFirst()
+                while (!cur.isAfterLast) {
+                    if (!cur.isNull(1)) {
+                        result[cur.getString(0)] = cur.getLong(1)
+                    }
+                    cur.moveToNext()
+                }
+            }
+        }
+        return result
+    }
+
+    private fun queryRelationships(accountKey: UserKey, keys: Collection<UserKey>): Map<UserKey, ParcelableRelationship> {
+        val result = HashMap<UserKey, ParcelableRelationship>()
+        keys.chunkedForSelection().forEach { chunk ->
+            val where = Expression.and(Expression.equalsArgs(CachedRelationships.ACCOUNT_KEY),
+                    Expression.inArgs(CachedRelationships.USER_KEY, chunk.size)).sql
+            val whereArgs = arrayOf(accountKey.toString()) + chunk.map(UserKey::toString)
+            cr.queryAll(CachedRelationships.CONTENT_URI, CachedRelationships.COLUMNS, where,
+                    whereArgs, null, ParcelableRelationship::class.java).forEach {
+                result[it.user_key] = it
+            }
+        }
+        return result
+    }
+
+    /**
+     * Rows written and skipped
+     */
+    data class Result(val written: Int, val skipped: Int) {
+        override fun toString(): String = "$written written, $skipped skipped"
+    }
+
+    companion object {
+        /** Keeps selection args below SQLite limit of 999 */
+        private const val MAX_SELECTION_ARGS = 500
+
+        private fun <T> Collection<T>.chunkedForSelection(): List<List<T>> {
+            val list = toList()
+            return (0 until list.size step MAX_SELECTION_ARGS).map {
+                list.subList(it, Math.min(it + MAX_SELECTION_ARGS, list.size))
+            }
+        }
+
+        /**
+         * Stable hash of values, independent to key order and process
+         */
+        internal fun ContentValues.contentHash(): Long {
+            var hash = 1125899906842597L
+            keySet().sorted().forEach { key ->
+                val value = get(key)
+                hash = 31 * hash + key.hashCode()
+                hash = 31 * hash + when (value) {
+                    null -> 0
+                    is ByteArray -> Arrays.hashCode(value)
+                    else -> value.hashCode()
+                }
+            }
+            return hash
+        }
+    }
+}
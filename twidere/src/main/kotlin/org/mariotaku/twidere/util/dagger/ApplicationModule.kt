@@ -53,13 +53,18 @@ import org.mariotaku.twidere.model.DefaultFeatures
 import org.mariotaku.twidere.util.*
 import org.mariotaku.twidere.util.cache.DiskLRUFileCache
 import org.mariotaku.twidere.util.cache.JsonCache
+import org.mariotaku.twidere.util.database.CachedUsersPrefixIndex
+import org.mariotaku.twidere.util.filter.FiltersMatcher
 import org.mariotaku.twidere.util.gifshare.GifShareProvider
 import org.mariotaku.twidere.util.media.MediaPreloader
 import org.mariotaku.twidere.util.media.ThumborWrapper
 import org.mariotaku.twidere.util.media.TwidereMediaDownloader
+import org.mariotaku.twidere.util.media.VideoCache
 import org.mariotaku.twidere.util.net.TwidereDns
+import org.mariotaku.twidere.util.okhttp.TrafficClass
 import org.mariotaku.twidere.util.premium.ExtraFeaturesService
 import org.mariotaku.twidere.util.refresh.AutoRefreshController
+import org.mariotaku.twidere.util.refresh.AutoRefreshStats
 import org.mariotaku.twidere.util.refresh.JobSchedulerAutoRefreshController
 import org.mariotaku.twidere.util.refresh.LegacyAutoRefreshController
 import org.mariotaku.twidere.util.schedule.StatusScheduleProvider
@@ -121,6 +126,12 @@ class ApplicationModule(private val context: Context) {
         return UserColorNameManager(context)
     }
 
+    @Provides
+    @Singleton
+    fun cachedUsersPrefixIndex(userColorNameManager: UserColorNameManager): CachedUsersPrefixIndex {
+        return CachedUsersPrefixIndex(userColorNameManager)
+    }
+
     @Provides
     @Singleton
     fun multiSelectManager(): MultiSelectManager {
@@ -129,10 +140,8 @@ class ApplicationModule(private val context: Context) {
 
     @Provides
     @Singleton
-    fun restHttpClient(prefs: SharedPreferences, dns: Dns,
-            connectionPool: ConnectionPool, cache: Cache): RestHttpClient {
-        val conf = HttpClientFactory.HttpClientConfiguration(prefs)
-        return HttpClientFactory.createRestHttpClient(conf, dns, connectionPool, cache)
+    fun restHttpClient(client: OkHttpClient): RestHttpClient {
+        return HttpClientFactory.createRestHttpClient(client)
     }
 
     @Provides
@@ -170,14 +179,22 @@ class ApplicationModule(private val context: Context) {
     @Singleton
     fun contentNotificationManager(activityTracker: ActivityTracker, userColorNameManager: UserColorNameManager,
             notificationManagerWrapper: NotificationManagerWrapper,
-            preferences: SharedPreferences): ContentNotificationManager {
-        return ContentNotificationManager(context, activityTracker, userColorNameManager, notificationManagerWrapper, preferences)
+            preferences: SharedPreferences, filtersMatcher: FiltersMatcher): ContentNotificationManager {
+        return ContentNotificationManager(context, activityTracker, userColorNameManager,
+                notificationManagerWrapper, preferences, filtersMatcher)
+    }
+
+    @Provides
+    @Singleton
+    fun filtersMatcher(): FiltersMatcher {
+        return FiltersMatcher(context)
     }
 
     @Provides
     @Singleton
-    fun mediaLoaderWrapper(preferences: SharedPreferences): MediaPreloader {
-        val preloader = MediaPreloader(context)
+    fun mediaLoaderWrapper(preferences: SharedPreferences, videoCache: VideoCache,
+            thumbor: ThumborWrapper): MediaPreloader {
+        val preloader = MediaPreloader(context, videoCache, thumbor)
         preloader.reloadOptions(preferences)
         val cm = context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
         preloader.isNetworkMetered = ConnectivityManagerCompat.isActiveNetworkMetered(cm)
@@ -230,11 +247,17 @@ class ApplicationModule(private val context: Context) {
 
     @Provides
     @Singleton
-    fun autoRefreshController(kPreferences: KPreferences): AutoRefreshController {
+    fun autoRefreshController(kPreferences: KPreferences, autoRefreshStats: AutoRefreshStats): AutoRefreshController {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && !kPreferences[autoRefreshCompatibilityModeKey]) {
-            return JobSchedulerAutoRefreshController(context, kPreferences)
+            return JobSchedulerAutoRefreshController(context, kPreferences, autoRefreshStats)
         }
-        return LegacyAutoRefreshController(context, kPreferences)
+        return LegacyAutoRefreshController(context, kPreferences, autoRefreshStats)
+    }
+
+    @Provides
+    @Singleton
+    fun autoRefreshStats(): AutoRefreshStats {
+        return AutoRefreshStats(context)
     }
 
     @Provides
@@ -254,9 +277,10 @@ class ApplicationModule(private val context: Context) {
 
     @Provides
     @Singleton
-    fun taskCreator(preferences: SharedPreferences, activityTracker: ActivityTracker,
-            bus: Bus): TaskServiceRunner {
-        return TaskServiceRunner(context, preferences, activityTracker, bus)
+    fun taskCreator(preferences: SharedPreferences, activityTracker: ActivityTracker, bus: Bus,
+            autoRefreshController: AutoRefreshController, autoRefreshStats: AutoRefreshStats): TaskServiceRunner {
+        return TaskServiceRunner(context, preferences, activityTracker, bus, autoRefreshController,
+                autoRefreshStats)
     }
 
     @Provides
@@ -289,32 +313,41 @@ class ApplicationModule(private val context: Context) {
         return context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
     }
 
+    /**
+     * Root client, clients for different kinds of traffic are derived from it
+     */
     @Provides
+    @Singleton
     fun okHttpClient(preferences: SharedPreferences, dns: Dns, connectionPool: ConnectionPool,
             cache: Cache): OkHttpClient {
         val conf = HttpClientFactory.HttpClientConfiguration(preferences)
-        val builder = OkHttpClient.Builder()
-        HttpClientFactory.initOkHttpClient(conf, builder, dns, connectionPool, cache)
-        return builder.build()
+        return HttpClientFactory.createRootClient(conf, dns, connectionPool, cache)
     }
 
     @Provides
     @Singleton
-    fun dataSourceFactory(preferences: SharedPreferences, dns: Dns, connectionPool: ConnectionPool,
-            cache: Cache): DataSource.Factory {
-        val conf = HttpClientFactory.HttpClientConfiguration(preferences)
-        val builder = OkHttpClient.Builder()
-        HttpClientFactory.initOkHttpClient(conf, builder, dns, connectionPool, cache)
+    fun dataSourceFactory(client: OkHttpClient): DataSource.Factory {
+        val builder = TrafficClass.VIDEO.newClientBuilder(client)
+        // Videos are cached by VideoCache, which supports range requests
+        builder.cache(null)
         val userAgent = UserAgentUtils.getDefaultUserAgentStringSafe(context)
         return OkHttpDataSourceFactory(builder.build(), userAgent, null)
     }
 
+    @Provides
+    @Singleton
+    fun videoCache(preferences: SharedPreferences, dataSourceFactory: DataSource.Factory): VideoCache {
+        val cacheSize = cacheSizeLimit(preferences) / 3
+        return VideoCache(getCacheDir("video", cacheSize), cacheSize, dataSourceFactory)
+    }
+
     @Provides
     @Singleton
     fun cache(preferences: SharedPreferences): Cache {
-        val cacheSizeMB = preferences.getInt(KEY_CACHE_SIZE_LIMIT, 300).coerceIn(100..500)
-        // Convert to bytes
-        return Cache(getCacheDir("network", cacheSizeMB * 1048576L), cacheSizeMB * 1048576L)
+        // A third of the limit is taken by video cache
+        val sizeLimit = cacheSizeLimit(preferences)
+        val cacheSize = sizeLimit - sizeLimit / 3
+        return Cache(getCacheDir("network", cacheSize), cacheSize)
     }
 
     @Provides
@@ -359,6 +392,12 @@ class ApplicationModule(private val context: Context) {
         return MastodonApplicationRegistry(context)
     }
 
+    private fun cacheSizeLimit(preferences: SharedPreferences): Long {
+        val cacheSizeMB = preferences.getInt(KEY_CACHE_SIZE_LIMIT, 300).coerceIn(100..500)
+        // Convert to bytes
+        return cacheSizeMB * 1048576L
+    }
+
     private fun getCacheDir(dirName: String, sizeInBytes: Long): File {
         return Utils.getExternalCacheDir(context, dirName, sizeInBytes) ?:
                 Utils.getInternalCacheDir(context, dirName)
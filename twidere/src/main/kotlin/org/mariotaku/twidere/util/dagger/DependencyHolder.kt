@@ -25,6 +25,7 @@ import com.twitter.Validator
 import okhttp3.Cache
 import okhttp3.ConnectionPool
 import okhttp3.Dns
+import okhttp3.OkHttpClient
 import org.mariotaku.kpreferences.KPreferences
 import org.mariotaku.restfu.http.RestHttpClient
 import org.mariotaku.twidere.model.DefaultFeatures
@@ -32,8 +33,10 @@ import org.mariotaku.twidere.util.ActivityTracker
 import org.mariotaku.twidere.util.ExternalThemeManager
 import org.mariotaku.twidere.util.ReadStateManager
 import org.mariotaku.twidere.util.UserColorNameManager
+import org.mariotaku.twidere.util.database.CachedUsersPrefixIndex
 import org.mariotaku.twidere.util.media.MediaPreloader
 import org.mariotaku.twidere.util.media.ThumborWrapper
+import org.mariotaku.twidere.util.refresh.AutoRefreshStats
 import org.mariotaku.twidere.util.sync.TimelineSyncManager
 import javax.inject.Inject
 
@@ -69,6 +72,9 @@ class DependencyHolder internal constructor(context: Context) {
     lateinit var cache: Cache
         internal set
     @Inject
+    lateinit var okHttpClient: OkHttpClient
+        internal set
+    @Inject
     lateinit var defaultFeatures: DefaultFeatures
         internal set
     @Inject
@@ -86,6 +92,12 @@ class DependencyHolder internal constructor(context: Context) {
     @Inject
     lateinit var timelineSyncManagerFactory: TimelineSyncManager.Factory
         internal set
+    @Inject
+    lateinit var autoRefreshStats: AutoRefreshStats
+        internal set
+    @Inject
+    lateinit var cachedUsersPrefixIndex: CachedUsersPrefixIndex
+        internal set
 
     init {
         GeneralComponent.get(context).inject(this)
@@ -34,7 +34,6 @@ import org.mariotaku.twidere.fragment.BasePreferenceFragment
 import org.mariotaku.twidere.fragment.ThemedPreferenceDialogFragmentCompat
 import org.mariotaku.twidere.fragment.filter.FilteredUsersFragment
 import org.mariotaku.twidere.fragment.media.ExoPlayerPageFragment
-import org.mariotaku.twidere.loader.CacheUserSearchLoader
 import org.mariotaku.twidere.loader.DefaultAPIConfigLoader
 import org.mariotaku.twidere.loader.ParcelableStatusLoader
 import org.mariotaku.twidere.loader.ParcelableUserLoader
@@ -138,8 +137,6 @@ interface GeneralComponent {
 
     fun inject(preference: PremiumEntryPreferenceCategory)
 
-    fun inject(loader: CacheUserSearchLoader)
-
     fun inject(loader: BaseUserListsLoader)
 
     fun inject(controller: PremiumDashboardActivity.ExtraFeatureViewController)
@@ -0,0 +1,307 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.database
+
+import android.content.ContentValues
+import android.database.sqlite.SQLiteDatabase
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.sqliteqb.library.Columns
+import org.mariotaku.sqliteqb.library.Expression
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.provider.TwidereDataStore.CachedRelationships
+import org.mariotaku.twidere.provider.TwidereDataStore.CachedUsers
+import org.mariotaku.twidere.util.UserColorNameManager
+import java.util.*
+
+/**
+ * In-memory prefix index of screen names, names and nicknames of cached users, used by user
+ * suggestions instead of `LIKE ?||'%'`, which can't use any index and scans whole table.
+ *
+ * Lower-cased terms are kept in a sorted list, users matching a prefix are found with binary
+ * search, then ranked by relationship score and last seen time. Index is loaded from database
+ * on first query, then updated by [TwidereDataProvider][org.mariotaku.twidere.provider.TwidereDataProvider]
+ * on every write of cached users, and by nickname changes. Writes it can't follow (like dropping
+ * caches when disk is full) should call [invalidate].
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+class CachedUsersPrefixIndex(private val userColorNameManager: UserColorNameManager) {
+
+    private val terms = ArrayList<Term>()
+    private val users = HashMap<String, User>()
+    private val nicknames = HashMap<String, String>()
+    /**
+     * Scores of users by account key, loaded on demand
+     */
+    private val relationshipScores = HashMap<String, Map<String, Int>>()
+    private var loaded = false
+
+    private val nicknameChangedListener = object : UserColorNameManager.UserNicknameChangedListener {
+        override fun onUserNicknameChanged(userKey: UserKey, nick: String?) {
+            synchronized(this@CachedUsersPrefixIndex) {
+                if (!loaded) return
+                setNickname(userKey.toString(), nick)
+            }
+        }
+    }
+
+    init {
+        userColorNameManager.registerNicknameChangedListener(nicknameChangedListener)
+    }
+
+    /**
+     * @param query Prefix of screen name, name or nickname, case insensitive
+     * @param recentFirst Rank users by last seen time first, otherwise by relationship score
+     * @return Keys of best [limit] users matching [query]
+     */
+    @Synchronized
+    fun suggest(db: SQLiteDatabase, query: String, accountKey: UserKey?, accountHost: String?,
+            accountType: String?, recentFirst: Boolean, limit: Int = DEFAULT_LIMIT): Array<String> {
+        if (query.isEmpty()) return emptyArray()
+        ensureLoaded(db)
+        val prefix = query.toLowerCase(Locale.ROOT)
+        val matched = HashSet<String>()
+        var i = lowerBound(prefix)
+        while (i < terms.size && terms[i].text.startsWith(prefix)) {
+            matched.add(terms[i].userKey)
+            i++
+        }
+        val scores = if (accountKey != null) {
+            relationshipScores.getOrPut(accountKey.toString()) { loadScores(db, accountKey) }
+        } else {
+            emptyMap<String, Int>()
+        }
+        val comparator = if (recentFirst) {
+            compareByDescending<Candidate> { it.user.lastSeen }.thenByDescending { it.score }
+        } else {
+            compareByDescending<Candidate> { it.score }.thenByDescending { it.user.lastSeen }
+        }.thenBy { it.user.screenName }.thenBy { it.user.name }
+        // Keeps best candidates, worst one on top
+        val queue = PriorityQueue<Candidate>(limit + 1, Collections.reverseOrder(comparator))
+        matched.forEach { key ->
+            val user = users[key] ?: return@forEach
+            if (accountType != null && accountType != user.type) return@forEach
+            if (accountHost != null && !key.endsWith("@$accountHost", ignoreCase = true)) return@forEach
+            queue.add(Candidate(user, scores[key] ?: 0))
+            if (queue.size > limit) {
+                queue.poll()
+            }
+        }
+        return queue.sortedWith(comparator).map { it.user.key }.toTypedArray()
+    }
+
+    /**
+     * Applies inserted rows to index
+     *
+     * @param replace Whether rows were replaced, otherwise existing rows were updated with values
+     */
+    @Synchronized
+    fun putUsers(valuesArray: Array<out ContentValues?>, replace: Boolean) {
+        if (!loaded) return
+        valuesArray.forEach { values ->
+            if (values == null) return@forEach
+            val key = values.getAsString(CachedUsers.USER_KEY) ?: return@forEach
+            val old = users[key]
+            fun <T> value(column: String, get: (String) -> T?, oldValue: T?): T? {
+                return if (replace || values.containsKey(column)) get(column) else oldValue
+            }
+            val user = User(key, value(CachedUsers.SCREEN_NAME, values::getAsString, old?.screenName),
+                    value(CachedUsers.NAME, values::getAsString, old?.name),
+                    value(CachedUsers.LAST_SEEN, values::getAsLong, old?.lastSeen) ?: Long.MIN_VALUE,
+                    value(CachedUsers.USER_TYPE, values::getAsString, old?.type))
+            putUser(user)
+        }
+    }
+
+    /**
+     * Call before updating or deleting cached users, rows affected are reloaded by
+     * [reloadUsers] or removed by [removeUsers] after that
+     *
+     * @return Keys of users matching [selection], or null if index is not loaded
+     */
+    @Synchronized
+    fun findUserKeys(db: SQLiteDatabase, selection: String?, selectionArgs: Array<String>?): Array<String>? {
+        if (!loaded) return null
+        return db.query(CachedUsers.TABLE_NAME, arrayOf(CachedUsers.USER_KEY), selection,
+                selectionArgs, null, null, null).useCursor { cur ->
+            val result = ArrayList<String>(cur.count)
+            while (cur.moveToNext()) {
+                result.add(cur.getString(0))
+            }
+            return@useCursor result.toTypedArray()
+        }
+    }
+
+    @Synchronized
+    fun reloadUsers(db: SQLiteDatabase, userKeys: Array<String>) {
+        if (!loaded) return
+        removeUsers(userKeys)
+        (0 until userKeys.size step MAX_SELECTION_ARGS).forEach { start ->
+            val chunk = userKeys.copyOfRange(start, Math.min(start + MAX_SELECTION_ARGS, userKeys.size))
+            val where = Expression.inArgs(Columns.Column(CachedUsers.USER_KEY), chunk.size)
+            queryUsers(db, where.sql, chunk, this::putUser)
+        }
+    }
+
+    @Synchronized
+    fun removeUsers(userKeys: Array<String>) {
+        if (!loaded) return
+        userKeys.forEach { key ->
+            val old = users.remove(key) ?: return@forEach
+            removeTerm(old.screenName, key)
+            removeTerm(old.name, key)
+        }
+    }
+
+    /**
+     * Index will be loaded again on next query
+     */
+    @Synchronized
+    fun invalidate() {
+        loaded = false
+        terms.clear()
+        users.clear()
+        nicknames.clear()
+        relationshipScores.clear()
+    }
+
+    /**
+     * Call after relationships changed, scores will be loaded again on next query
+     */
+    @Synchronized
+    fun invalidateRelationships() {
+        relationshipScores.clear()
+    }
+
+    private fun ensureLoaded(db: SQLiteDatabase) {
+        if (loaded) return
+        invalidate()
+        queryUsers(db, null, null) { user ->
+            users[user.key] = user
+            user.screenName?.let { terms.add(Term(it.toLowerCase(Locale.ROOT), user.key)) }
+            user.name?.let { terms.add(Term(it.toLowerCase(Locale.ROOT), user.key)) }
+        }
+        userColorNameManager.nicknames.forEach { (key, value) ->
+            val nickname = value?.toString()?.takeIf(String::isNotEmpty) ?: return@forEach
+            val term = nickname.toLowerCase(Locale.ROOT)
+            nicknames[key] = term
+            terms.add(Term(term, key))
+        }
+        terms.sort()
+        loaded = true
+    }
+
+    private fun queryUsers(db: SQLiteDatabase, selection: String?, selectionArgs: Array<String>?,
+            action: (User) -> Unit) {
+        val projection = arrayOf(CachedUsers.USER_KEY, CachedUsers.SCREEN_NAME, CachedUsers.NAME,
+                CachedUsers.LAST_SEEN, CachedUsers.USER_TYPE)
+        db.query(CachedUsers.TABLE_NAME, projection, selection, selectionArgs, null, null,
+                null).useCursor { cur ->
+            while (cur.moveToNext()) {
+                val lastSeen = if (cur.isNull(3)) Long.MIN_VALUE else cur.getLong(3)
+                action(User(cur.getString(0), cur.getString(1), cur.getString(2), lastSeen,
+                        cur.getString(4)))
+            }
+        }
+    }
+
+    private fun loadScores(db: SQLiteDatabase, accountKey: UserKey): Map<String, Int> {
+        val where = Expression.equalsArgs(CachedRelationships.ACCOUNT_KEY)
+        val projection = arrayOf(CachedRelationships.USER_KEY, CachedUsersQueryBuilder.scoreExpr)
+        return db.query(CachedRelationships.TABLE_NAME, projection, where.sql,
+                arrayOf(accountKey.toString()), null, null, null).useCursor { cur ->
+            val result = HashMap<String, Int>(cur.count)
+            while (cur.moveToNext()) {
+                result[cur.getString(0)] = cur.getInt(1)
+            }
+            return@useCursor result
+        }
+    }
+
+    private fun putUser(user: User) {
+        users.put(user.key, user)?.let { old ->
+            removeTerm(old.screenName, old.key)
+            removeTerm(old.name, old.key)
+        }
+        addTerm(user.screenName, user.key)
+        addTerm(user.name, user.key)
+    }
+
+    private fun setNickname(userKey: String, nickname: String?) {
+        nicknames.remove(userKey)?.let { removeTerm(it, userKey) }
+        val term = nickname?.takeIf(String::isNotEmpty)?.toLowerCase(Locale.ROOT) ?: return
+        nicknames[userKey] = term
+        addTerm(term, userKey)
+    }
+
+    private fun addTerm(text: String?, userKey: String) {
+        if (text == null) return
+        val term = Term(text.toLowerCase(Locale.ROOT), userKey)
+        val index = Collections.binarySearch(terms, term)
+        terms.add(if (index < 0) -index - 1 else index, term)
+    }
+
+    private fun removeTerm(text: String?, userKey: String) {
+        if (text == null) return
+        val index = Collections.binarySearch(terms, Term(text.toLowerCase(Locale.ROOT), userKey))
+        if (index >= 0) {
+            terms.removeAt(index)
+        }
+    }
+
+    /**
+     * @return Index of first term not less than [prefix]
+     */
+    private fun lowerBound(prefix: String): Int {
+        var low = 0
+        var high = terms.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (terms[mid].text < prefix) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        return low
+    }
+
+    private class Term(val text: String, val userKey: String) : Comparable<Term> {
+        override fun compareTo(other: Term): Int {
+            val result = text.compareTo(other.text)
+            if (result != 0) return result
+            return userKey.compareTo(other.userKey)
+        }
+    }
+
+    /**
+     * @param lastSeen [Long.MIN_VALUE] if never seen, so they come last like `NULL`s in SQLite
+     */
+    private class User(val key: String, val screenName: String?, val name: String?,
+            val lastSeen: Long, val type: String?)
+
+    private class Candidate(val user: User, val score: Int)
+
+    companion object {
+        const val DEFAULT_LIMIT = 100
+        /** Keeps selection args below SQLite limit of 999 */
+        private const val MAX_SELECTION_ARGS = 500
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.database
+
+import android.database.SQLException
+import android.database.sqlite.SQLiteDatabase
+import android.util.LruCache
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.twidere.util.DebugLog
+
+/**
+ * Dumps `EXPLAIN QUERY PLAN` of queries in debug builds, so full table scans and temporary
+ * sorting show up in logcat. Every distinct SQL is explained once.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+object QueryPlanLogger {
+
+    private const val LOGTAG = "Twidere.QueryPlan"
+
+    private val explained = LruCache<String, Boolean>(256)
+
+    @JvmStatic
+    fun explain(db: SQLiteDatabase, sql: String, args: Array<String>?) {
+        if (explained.put(sql, true) != null) return
+        val details = try {
+            db.rawQuery("EXPLAIN QUERY PLAN $sql", args)?.useCursor { cur ->
+                val detailIdx = cur.getColumnIndex("detail")
+                val list = ArrayList<String>()
+                cur.moveToFirst()
+                while (!cur.isAfterLast) {
+                    list.add(cur.getString(detailIdx))
+                    cur.moveToNext()
+                }
+                return@useCursor list
+            } ?: return
+        } catch (e: SQLException) {
+            DebugLog.w(LOGTAG, "Unable to explain $sql", e)
+            return
+        }
+        val message = "$sql\n${details.joinToString("\n") { "  $it" }}"
+        if (details.any(this::isFullScan)) {
+            DebugLog.w(LOGTAG, "Full scan: $message")
+        } else {
+            DebugLog.d(LOGTAG, message)
+        }
+    }
+
+    /**
+     * `SCAN TABLE statuses` reads every row, `SCAN TABLE statuses USING INDEX` walks an index
+     * in order instead
+     */
+    fun isFullScan(detail: String): Boolean {
+        return detail.startsWith("SCAN TABLE") && " USING " !in detail
+    }
+}
@@ -30,8 +30,6 @@ import org.mariotaku.twidere.TwidereConstants.*
 import org.mariotaku.twidere.model.UserKey
 import org.mariotaku.twidere.provider.TwidereDataStore.*
 import org.mariotaku.twidere.util.SQLiteDatabaseWrapper
-import org.mariotaku.twidere.util.UserColorNameManager
-import org.mariotaku.twidere.util.Utils
 import java.util.regex.Pattern
 
 /**
@@ -92,7 +90,7 @@ object SuggestionsCursorCreator {
             Suggestions.VALUE to Columns.Column(CachedHashtags.NAME, Suggestions.VALUE).sql
     )
 
-    fun forSearch(db: SQLiteDatabaseWrapper, manager: UserColorNameManager,
+    fun forSearch(db: SQLiteDatabaseWrapper, index: CachedUsersPrefixIndex,
             uri: Uri, projection: Array<String>?): Cursor? {
         val nonNullProjection = projection ?: Suggestions.COLUMNS
         val query = uri.getQueryParameter(QUERY_PARAM_QUERY) ?: return null
@@ -114,14 +112,14 @@ object SuggestionsCursorCreator {
                     cursors.add(getScreenNameCursor(nonNullProjection, screenName))
                 }
             }
-            cursors.add(getUsersCursor(db, manager, nonNullProjection, accountKey, filterHost,
-                    filterType, query, queryTrimmed))
+            cursors.add(getUsersCursor(db, index, nonNullProjection, accountKey, filterHost,
+                    filterType, query.substringAfter("@")))
         }
         return MergeCursor(cursors.toTypedArray())
     }
 
 
-    fun forAutoComplete(db: SQLiteDatabaseWrapper, manager: UserColorNameManager,
+    fun forAutoComplete(db: SQLiteDatabaseWrapper, index: CachedUsersPrefixIndex,
             uri: Uri, projection: Array<String>?): Cursor? {
         val nonNullProjection = projection ?: Suggestions.COLUMNS
         val query = uri.getQueryParameter(QUERY_PARAM_QUERY) ?: return null
@@ -133,16 +131,15 @@ object SuggestionsCursorCreator {
         val queryEscaped = query.replace("_", "^_")
         when (type) {
             Suggestions.AutoComplete.TYPE_USERS -> {
-                val nicknameKeys = Utils.getMatchedNicknameKeys(query, manager)
-                val where = Expression.or(Expression.inArgs(Columns.Column(CachedUsers.USER_KEY), nicknameKeys.size),
-                        Expression.likeRaw(Columns.Column(CachedUsers.SCREEN_NAME), "?||'%'", "^"),
-                        Expression.likeRaw(Columns.Column(CachedUsers.NAME), "?||'%'", "^"))
-                val whereArgs = nicknameKeys + queryEscaped + queryEscaped
+                db.prepare()
+                val userKeys = index.suggest(db.sqLiteDatabase, query, accountKey, accountHost,
+                        accountType, false)
+                val where = Expression.inArgs(Columns.Column(CachedUsers.USER_KEY), userKeys.size)
                 val orderBy = arrayOf(CachedUsers.SCORE, CachedUsers.LAST_SEEN, CachedUsers.SCREEN_NAME, CachedUsers.NAME)
                 val ascending = booleanArrayOf(false, false, true, true)
                 val mappedProjection = nonNullProjection.mapToArray { autoCompleteUsersProjectionMap[it]!! }
                 val (sql, bindingArgs) = CachedUsersQueryBuilder.withScore(mappedProjection,
-                        where, whereArgs, OrderBy(orderBy, ascending).sql, accountKey, accountHost,
+                        where, userKeys, OrderBy(orderBy, ascending).sql, accountKey, accountHost,
                         accountType, 0)
                 return db.rawQuery(sql.sql, bindingArgs)
             }
@@ -157,16 +154,31 @@ object SuggestionsCursorCreator {
         }
     }
 
-    private fun getUsersCursor(db: SQLiteDatabaseWrapper, manager: UserColorNameManager,
+    /**
+     * Cached users with score matching [QUERY_PARAM_QUERY] of [uri], recently seen users first
+     */
+    fun forCachedUsers(db: SQLiteDatabaseWrapper, index: CachedUsersPrefixIndex, uri: Uri,
+            projection: Array<String>?, sortOrder: String?): Cursor? {
+        val query = uri.getQueryParameter(QUERY_PARAM_QUERY) ?: return null
+        val accountKey = UserKey.valueOf(uri.lastPathSegment)
+        val accountHost = uri.getQueryParameter(EXTRA_ACCOUNT_HOST)
+        val accountType = uri.getQueryParameter(EXTRA_ACCOUNT_TYPE)
+        db.prepare()
+        val userKeys = index.suggest(db.sqLiteDatabase, query, accountKey, accountHost,
+                accountType, true)
+        val where = Expression.inArgs(Columns.Column(CachedUsers.USER_KEY), userKeys.size)
+        val (sql, bindingArgs) = CachedUsersQueryBuilder.withScore(projection, where, userKeys,
+                sortOrder, accountKey, accountHost, accountType, 0)
+        return db.rawQuery(sql.sql, bindingArgs)
+    }
+
+    private fun getUsersCursor(db: SQLiteDatabaseWrapper, index: CachedUsersPrefixIndex,
             projection: Array<String>, accountKey: UserKey, filterHost: String?, filterType: String?,
-            query: String, queryTrimmed: String): Cursor {
-        val nicknameKeys = Utils.getMatchedNicknameKeys(query, manager)
-        val usersSelection = Expression.or(
-                Expression.inArgs(Columns.Column(CachedUsers.USER_KEY), nicknameKeys.size),
-                Expression.likeRaw(Columns.Column(CachedUsers.SCREEN_NAME), "?||'%'", "^"),
-                Expression.likeRaw(Columns.Column(CachedUsers.NAME), "?||'%'", "^")
-        )
-        val selectionArgs = nicknameKeys + queryTrimmed + queryTrimmed
+            query: String): Cursor {
+        db.prepare()
+        val selectionArgs = index.suggest(db.sqLiteDatabase, query, accountKey, filterHost,
+                filterType, true)
+        val usersSelection = Expression.inArgs(Columns.Column(CachedUsers.USER_KEY), selectionArgs.size)
         val order = arrayOf(CachedUsers.LAST_SEEN, CachedUsers.SCORE, CachedUsers.SCREEN_NAME, CachedUsers.NAME)
         val ascending = booleanArrayOf(false, false, true, true)
         val orderBy = OrderBy(order, ascending)
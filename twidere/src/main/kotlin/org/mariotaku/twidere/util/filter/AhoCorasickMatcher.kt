@@ -0,0 +1,128 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.filter
+
+import java.util.*
+
+/**
+ * Immutable multi-pattern substring matcher, answers "does text contain any of the patterns"
+ * in a single pass regardless of pattern count.
+ *
+ * Matching is case insensitive for ASCII letters only, same as SQLite `LIKE`.
+ */
+class AhoCorasickMatcher(patterns: Iterable<String>) {
+
+    /** Sorted outgoing characters of each state */
+    private val keys: Array<CharArray>
+    /** Target states, same order as [keys] */
+    private val targets: Array<IntArray>
+    private val fail: IntArray
+    private val terminal: BooleanArray
+    /** Empty pattern matches everything, like `LIKE '%%'` */
+    private val matchesEmpty: Boolean
+
+    val isEmpty: Boolean
+        get() = !matchesEmpty && terminal.size <= 1
+
+    init {
+        val trie = arrayListOf(TreeMap<Char, Int>())
+        val terminals = arrayListOf(false)
+        var hasEmpty = false
+        patterns.forEach { pattern ->
+            if (pattern.isEmpty()) {
+                hasEmpty = true
+                return@forEach
+            }
+            var state = 0
+            for (ch in pattern) {
+                val c = fold(ch)
+                state = trie[state][c] ?: run {
+                    trie.add(TreeMap())
+                    terminals.add(false)
+                    val created = trie.size - 1
+                    trie[state][c] = created
+                    return@run created
+                }
+            }
+            terminals[state] = true
+        }
+        matchesEmpty = hasEmpty
+        keys = Array(trie.size) { trie[it].keys.toCharArray() }
+        targets = Array(trie.size) { trie[it].values.toIntArray() }
+        terminal = terminals.toBooleanArray()
+        fail = IntArray(trie.size)
+
+        // Breadth first, so failure state of parent is always computed before child
+        val queue = IntArray(trie.size)
+        var head = 0
+        var tail = 0
+        targets[0].forEach { queue[tail++] = it }
+        while (head < tail) {
+            val state = queue[head++]
+            val stateKeys = keys[state]
+            val stateTargets = targets[state]
+            for (i in stateKeys.indices) {
+                val c = stateKeys[i]
+                val child = stateTargets[i]
+                var f = fail[state]
+                while (f != 0 && next(f, c) < 0) {
+                    f = fail[f]
+                }
+                fail[child] = next(f, c).coerceAtLeast(0)
+                terminal[child] = terminal[child] || terminal[fail[child]]
+                queue[tail++] = child
+            }
+        }
+    }
+
+    fun containsAny(text: CharSequence?): Boolean {
+        if (text == null) return false
+        if (matchesEmpty) return true
+        if (terminal.size <= 1) return false
+        var state = 0
+        for (i in 0 until text.length) {
+            val c = fold(text[i])
+            while (true) {
+                val next = next(state, c)
+                if (next >= 0) {
+                    state = next
+                    break
+                }
+                if (state == 0) break
+                state = fail[state]
+            }
+            if (terminal[state]) return true
+        }
+        return false
+    }
+
+    private fun next(state: Int, c: Char): Int {
+        val idx = Arrays.binarySearch(keys[state], c)
+        if (idx < 0) return -1
+        return targets[state][idx]
+    }
+
+    companion object {
+        private fun fold(c: Char): Char {
+            if (c in 'A'..'Z') return c + ('a' - 'A')
+            return c
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.filter
+
+import android.database.sqlite.SQLiteDatabase
+import android.support.annotation.WorkerThread
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.library.objectcursor.ObjectCursor
+import org.mariotaku.sqliteqb.library.Expression
+import org.mariotaku.twidere.model.ParcelableStatus
+import org.mariotaku.twidere.model.ParcelableStatus.FilterFlags
+import org.mariotaku.twidere.provider.TwidereDataStore.Statuses
+
+/**
+ * Re-evaluates [FilterFlags.MATCHED_FILTERS] of stored rows after filter rules changed.
+ * Only rows whose verdict actually changed are written back.
+ *
+ * Created by mariotaku on 2017/5/21.
+ */
+object FilterFlagsUpdater {
+
+    private val projection = arrayOf(Statuses._ID, Statuses.USER_KEY, Statuses.TEXT_PLAIN,
+            Statuses.QUOTED_TEXT_PLAIN, Statuses.SPANS, Statuses.QUOTED_SPANS, Statuses.SOURCE,
+            Statuses.QUOTED_SOURCE, Statuses.RETWEETED_BY_USER_KEY, Statuses.QUOTED_USER_KEY,
+            Statuses.FILTER_FLAGS)
+
+    /**
+     * @param table Table with same columns as [Statuses], e.g. statuses or activities
+     * @return Number of rows updated
+     */
+    @WorkerThread
+    fun update(db: SQLiteDatabase, table: String, compiled: FiltersMatcher.Compiled): Int {
+        val matched = ArrayList<Long>()
+        val unmatched = ArrayList<Long>()
+        db.query(table, projection, null, null, null, null, null)?.useCursor { cur ->
+            val indices = ObjectCursor.indicesFrom(cur, ParcelableStatus::class.java)
+            cur.moveToFirst()
+            while (!cur.isAfterLast) {
+                val status = indices.newObject(cur)
+                val wasMatched = (status.filter_flags and FilterFlags.MATCHED_FILTERS) != 0L
+                val isMatched = compiled.isFiltered(status)
+                if (isMatched && !wasMatched) {
+                    matched.add(status._id)
+                } else if (!isMatched && wasMatched) {
+                    unmatched.add(status._id)
+                }
+                cur.moveToNext()
+            }
+        }
+        if (matched.isEmpty() && unmatched.isEmpty()) return 0
+        db.beginTransaction()
+        try {
+            setFlag(db, table, matched, true)
+            setFlag(db, table, unmatched, false)
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+        return matched.size + unmatched.size
+    }
+
+    private fun setFlag(db: SQLiteDatabase, table: String, ids: List<Long>, set: Boolean) {
+        val flagExpr = if (set) {
+            "${Statuses.FILTER_FLAGS} | ${FilterFlags.MATCHED_FILTERS}"
+        } else {
+            "${Statuses.FILTER_FLAGS} & ~${FilterFlags.MATCHED_FILTERS}"
+        }
+        // Stay well below SQLITE_MAX_VARIABLE_NUMBER
+        for (start in 0 until ids.size step 500) {
+            val chunk = ids.subList(start, Math.min(start + 500, ids.size))
+            val where = Expression.inArgs(Statuses._ID, chunk.size).sql
+            val args = Array<Any>(chunk.size) { chunk[it] }
+            db.execSQL("UPDATE $table SET ${Statuses.FILTER_FLAGS} = $flagExpr WHERE $where", args)
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.filter
+
+import android.content.Context
+import android.database.ContentObserver
+import android.database.sqlite.SQLiteDatabase
+import android.os.Handler
+import android.os.Looper
+import android.support.annotation.WorkerThread
+import org.mariotaku.ktextension.useCursor
+import org.mariotaku.twidere.TwidereConstants.FILTER_FLAGS_PREFERENCES_NAME
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.app.TwidereApplication
+import org.mariotaku.twidere.model.ParcelableStatus
+import org.mariotaku.twidere.model.ParcelableStatus.FilterFlags
+import org.mariotaku.twidere.model.SpanItem
+import org.mariotaku.twidere.model.UserKey
+import org.mariotaku.twidere.provider.TwidereDataStore.Activities
+import org.mariotaku.twidere.provider.TwidereDataStore.Filters
+import org.mariotaku.twidere.provider.TwidereDataStore.Statuses
+import org.mariotaku.twidere.util.DebugLog
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * In-memory replacement of [org.mariotaku.twidere.util.database.FilterQueryBuilder].
+ *
+ * Filter tables are compiled into a [Compiled] snapshot on first use, and compiled again only
+ * after something under [Filters.CONTENT_URI] changed.
+ *
+ * Verdicts of stored statuses and activities are kept in [FilterFlags.MATCHED_FILTERS], set by
+ * writers with [updateFilterFlag] and re-evaluated by [FilterFlagsUpdater] once rules changed.
+ *
+ * Created by mariotaku on 2017/5/20.
+ */
+class FiltersMatcher(private val context: Context) {
+
+    private val version = AtomicInteger(0)
+    @Volatile
+    private var compiled: Compiled? = null
+    private var compiledVersion = -1
+
+    private val handler = Handler(Looper.getMainLooper())
+    private val executor = Executors.newSingleThreadExecutor()
+    private val preferences = context.getSharedPreferences(FILTER_FLAGS_PREFERENCES_NAME,
+            Context.MODE_PRIVATE)
+
+    private val updateFlagsRunnable = Runnable {
+        executor.execute { updateFilterFlags() }
+    }
+
+    private val observer = object : ContentObserver(null) {
+        override fun onChange(selfChange: Boolean) {
+            version.incrementAndGet()
+            // Filter subscriptions change a lot of rows at once, wait for them to settle
+            handler.removeCallbacks(updateFlagsRunnable)
+            handler.postDelayed(updateFlagsRunnable, 1000)
+        }
+    }
+
+    init {
+        context.contentResolver.registerContentObserver(Filters.CONTENT_URI, true, observer)
+        // Rules may changed before last update finished, or rows are from previous versions
+        executor.execute {
+            if (preferences.getString(KEY_SIGNATURE, null) != current.signature) {
+                updateFilterFlags()
+            }
+        }
+    }
+
+    val current: Compiled
+        @WorkerThread
+        get() {
+            val currentVersion = version.get()
+            compiled?.takeIf { compiledVersion == currentVersion }?.let { return it }
+            synchronized(this) {
+                compiled?.takeIf { compiledVersion == currentVersion }?.let { return it }
+                val db = TwidereApplication.getInstance(context).sqLiteDatabase
+                val result = compile(db)
+                compiledVersion = currentVersion
+                compiled = result
+                return result
+            }
+        }
+
+    @WorkerThread
+    fun isFiltered(status: ParcelableStatus): Boolean {
+        return current.isFiltered(status)
+    }
+
+    /**
+     * Set or clear [FilterFlags.MATCHED_FILTERS], call this before writing status to database
+     */
+    @WorkerThread
+    fun updateFilterFlag(status: ParcelableStatus) {
+        if (isFiltered(status)) {
+            status.filter_flags = status.filter_flags or FilterFlags.MATCHED_FILTERS
+        } else {
+            status.filter_flags = status.filter_flags and FilterFlags.MATCHED_FILTERS.inv()
+        }
+    }
+
+    @WorkerThread
+    fun isFiltered(userKey: UserKey?, textPlain: String?, quotedTextPlain: String?,
+            spans: Array<SpanItem>?, quotedSpans: Array<SpanItem>?, source: String?,
+            quotedSource: String?, retweetedByKey: UserKey?, quotedUserKey: UserKey?): Boolean {
+        return current.isFiltered(userKey, textPlain, quotedTextPlain, spans, quotedSpans, source,
+                quotedSource, retweetedByKey, quotedUserKey)
+    }
+
+    @WorkerThread
+    private fun updateFilterFlags() {
+        val compiled = current
+        val db = TwidereApplication.getInstance(context).sqLiteDatabase
+        val statusesUpdated = FilterFlagsUpdater.update(db, Statuses.TABLE_NAME, compiled)
+        val activitiesUpdated = FilterFlagsUpdater.update(db, Activities.AboutMe.TABLE_NAME, compiled)
+        preferences.edit().putString(KEY_SIGNATURE, compiled.signature).apply()
+        DebugLog.d(LOGTAG, "Filter flags updated: $statusesUpdated statuses, " +
+                "$activitiesUpdated activities")
+        // Rows are updated directly, so we have to notify by ourselves
+        val cr = context.contentResolver
+        if (statusesUpdated > 0) {
+            cr.notifyChange(Statuses.CONTENT_URI, null)
+        }
+        if (activitiesUpdated > 0) {
+            cr.notifyChange(Activities.AboutMe.CONTENT_URI, null)
+        }
+    }
+
+    /**
+     * Immutable, thread safe snapshot of filter rules.
+     *
+     * Gives same result as `FilterQueryBuilder.isFilteredQuery`, except that `%` and `_` in
+     * rule values are matched literally instead of as `LIKE` wildcards.
+     */
+    class Compiled(
+            private val userKeys: Set<String>,
+            keywords: List<String>,
+            links: List<String>,
+            sources: List<String>
+    ) {
+        private val keywordsMatcher = AhoCorasickMatcher(keywords)
+        private val linksMatcher = AhoCorasickMatcher(links)
+        // Same as `LIKE '%>'||value||'</a>%'`
+        private val sourcesMatcher = AhoCorasickMatcher(sources.map { ">$it</a>" })
+
+        val isEmpty: Boolean
+            get() = userKeys.isEmpty() && keywordsMatcher.isEmpty && linksMatcher.isEmpty
+                    && sourcesMatcher.isEmpty
+
+        /**
+         * Changes when any rule changes, regardless of row order
+         */
+        val signature: String = "${userKeys.hashCode()}:${keywords.toSet().hashCode()}:" +
+                "${links.toSet().hashCode()}:${sources.toSet().hashCode()}"
+
+        fun isFiltered(status: ParcelableStatus): Boolean {
+            return isFiltered(status.user_key, status.text_plain, status.quoted_text_plain,
+                    status.spans, status.quoted_spans, status.source, status.quoted_source,
+                    status.retweeted_by_user_key, status.quoted_user_key)
+        }
+
+        fun isFiltered(userKey: UserKey?, textPlain: String?, quotedTextPlain: String?,
+                spans: Array<SpanItem>?, quotedSpans: Array<SpanItem>?, source: String?,
+                quotedSource: String?, retweetedByKey: UserKey?, quotedUserKey: UserKey?): Boolean {
+            if (isEmpty) return false
+            if (userKeys.isNotEmpty()) {
+                if (userKey != null && userKey.toString() in userKeys) return true
+                if (retweetedByKey != null && retweetedByKey.toString() in userKeys) return true
+                if (quotedUserKey != null && quotedUserKey.toString() in userKeys) return true
+            }
+            if (keywordsMatcher.containsAny(textPlain)) return true
+            if (keywordsMatcher.containsAny(quotedTextPlain)) return true
+            if (!linksMatcher.isEmpty) {
+                if (linksMatcher.containsAny(spans?.flattenLinks())) return true
+                if (linksMatcher.containsAny(quotedSpans?.flattenLinks())) return true
+            }
+            if (sourcesMatcher.containsAny(source)) return true
+            if (sourcesMatcher.containsAny(quotedSource)) return true
+            return false
+        }
+
+        private fun Array<SpanItem>.flattenLinks(): String {
+            val sb = StringBuilder()
+            for (span in this) {
+                sb.append(span.link)
+                sb.append(' ')
+            }
+            return sb.toString()
+        }
+
+    }
+
+    companion object {
+
+        private const val KEY_SIGNATURE = "signature"
+
+        @WorkerThread
+        fun compile(db: SQLiteDatabase): Compiled {
+            val userKeys = HashSet<String>()
+            db.query(Filters.Users.TABLE_NAME, arrayOf(Filters.Users.USER_KEY), null, null,
+                    null, null, null)?.useCursor { cur ->
+                cur.moveToFirst()
+                while (!cur.isAfterLast) {
+                    cur.getString(0)?.let { userKeys.add(it) }
+                    cur.moveToNext()
+                }
+            }
+            return Compiled(userKeys, db.queryValues(Filters.Keywords.TABLE_NAME),
+                    db.queryValues(Filters.Links.TABLE_NAME), db.queryValues(Filters.Sources.TABLE_NAME))
+        }
+
+        private fun SQLiteDatabase.queryValues(table: String): List<String> {
+            val list = ArrayList<String>()
+            query(table, arrayOf(Filters.VALUE), null, null, null, null, null)?.useCursor { cur ->
+                cur.moveToFirst()
+                while (!cur.isAfterLast) {
+                    cur.getString(0)?.let { list.add(it) }
+                    cur.moveToNext()
+                }
+            }
+            return list
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.glide
+
+import android.content.Context
+import com.bumptech.glide.integration.okhttp3.OkHttpStreamFetcher
+import com.bumptech.glide.load.data.DataFetcher
+import com.bumptech.glide.load.model.*
+import okhttp3.OkHttpClient
+import org.mariotaku.twidere.util.media.ThumborWrapper
+import java.io.InputStream
+
+/**
+ * Passes target size to [TwidereGlideModule.ThumborModifier] with a header, so Thumbor can
+ * scale images down before sending them.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+class ThumborUrlLoader(
+        val context: Context,
+        val client: OkHttpClient
+) : ModelLoader<GlideUrl, InputStream> {
+
+    private val density = context.resources.displayMetrics.density
+
+    override fun getResourceFetcher(model: GlideUrl, width: Int, height: Int): DataFetcher<InputStream> {
+        val size = ThumborWrapper.bucketSize(width, height, density)
+        if (size <= 0) return OkHttpStreamFetcher(client, model)
+        val headersBuilder = LazyHeaders.Builder()
+        model.headers.forEach { (key, value) -> headersBuilder.addHeader(key, value) }
+        headersBuilder.addHeader(HEADER_THUMBOR_SIZE, size.toString())
+        return OkHttpStreamFetcher(client, GlideUrl(model.toStringUrl(), headersBuilder.build()))
+    }
+
+    class Factory(val client: OkHttpClient) : ModelLoaderFactory<GlideUrl, InputStream> {
+        override fun build(context: Context, factories: GenericLoaderFactory) = ThumborUrlLoader(context, client)
+
+        override fun teardown() {}
+    }
+
+    companion object {
+        const val HEADER_THUMBOR_SIZE = "X-Twidere-Thumbor-Size"
+    }
+
+}
@@ -23,20 +23,25 @@ import android.content.Context
 import android.os.Build
 import com.bumptech.glide.Glide
 import com.bumptech.glide.GlideBuilder
-import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader
 import com.bumptech.glide.load.model.GlideUrl
 import com.bumptech.glide.module.GlideModule
-import okhttp3.OkHttpClient
+import okhttp3.Interceptor
 import okhttp3.Request
+import okhttp3.Response
+import org.mariotaku.twidere.BuildConfig
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
 import org.mariotaku.twidere.model.media.AuthenticatedUri
 import org.mariotaku.twidere.model.media.NoThumborUrl
-import org.mariotaku.twidere.util.HttpClientFactory
+import org.mariotaku.twidere.util.DebugLog
 import org.mariotaku.twidere.util.UserAgentUtils
 import org.mariotaku.twidere.util.dagger.DependencyHolder
 import org.mariotaku.twidere.util.glide.NoThumborUrlLoader.Companion.HEADER_NO_THUMBOR
+import org.mariotaku.twidere.util.glide.ThumborUrlLoader.Companion.HEADER_THUMBOR_SIZE
 import org.mariotaku.twidere.util.media.ThumborWrapper
 import org.mariotaku.twidere.util.okhttp.ModifyRequestInterceptor
+import org.mariotaku.twidere.util.okhttp.TrafficClass
 import java.io.InputStream
+import java.util.*
 
 class TwidereGlideModule : GlideModule {
     override fun applyOptions(context: Context, builder: GlideBuilder) {
@@ -45,18 +50,19 @@ class TwidereGlideModule : GlideModule {
 
     override fun registerComponents(context: Context, glide: Glide) {
         val holder = DependencyHolder.get(context)
-        val builder = OkHttpClient.Builder()
-        val conf = HttpClientFactory.HttpClientConfiguration(holder.preferences)
+        val builder = TrafficClass.IMAGE.newClientBuilder(holder.okHttpClient)
         val thumbor = holder.thumbor
-        HttpClientFactory.initOkHttpClient(conf, builder, holder.dns, holder.connectionPool, holder.cache)
         val userAgent = try {
             UserAgentUtils.getDefaultUserAgentStringSafe(context)
         } catch (e: Exception) {
             null
         }
         builder.addInterceptor(ModifyRequestInterceptor(ThumborModifier(thumbor), UserAgentModifier(userAgent)))
+        if (BuildConfig.DEBUG) {
+            builder.addNetworkInterceptor(TransferStatsInterceptor())
+        }
         val client = builder.build()
-        glide.register(GlideUrl::class.java, InputStream::class.java, OkHttpUrlLoader.Factory(client))
+        glide.register(GlideUrl::class.java, InputStream::class.java, ThumborUrlLoader.Factory(client))
         glide.register(AuthenticatedUri::class.java, InputStream::class.java, AuthenticatedUriLoader.Factory(client))
         glide.register(NoThumborUrl::class.java, InputStream::class.java, NoThumborUrlLoader.Factory(client))
     }
@@ -64,6 +70,8 @@ class TwidereGlideModule : GlideModule {
     class ThumborModifier(val thumbor: ThumborWrapper) : ModifyRequestInterceptor.RequestModifier {
 
         override fun modify(original: Request, builder: Request.Builder): Boolean {
+            val size = original.header(HEADER_THUMBOR_SIZE)?.toIntOrNull() ?: 0
+            builder.removeHeader(HEADER_THUMBOR_SIZE)
             if (!thumbor.available) return false
             // Since Thumbor doesn't support Authorization header, disable for requests with authorization
             if (original.header("Authorization") != null) {
@@ -73,8 +81,12 @@ class TwidereGlideModule : GlideModule {
                 builder.removeHeader(HEADER_NO_THUMBOR)
                 return false
             }
-            builder.url(thumbor.buildUri(original.url().toString()))
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            val url = original.url()
+            // WebP with transparency requires Android 4.2, and GIFs shouldn't lose animation
+            val webp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                    && !url.encodedPath().endsWith(".gif", ignoreCase = true)
+            builder.url(thumbor.buildUri(url.toString(), size, webp))
+            if (webp) {
                 builder.header("Accept", "image/webp, */*")
             }
             return true
@@ -82,6 +94,38 @@ class TwidereGlideModule : GlideModule {
 
     }
 
+    /**
+     * Logs bytes transferred for images grouped by requested Thumbor size, debug builds only
+     */
+    class TransferStatsInterceptor : Interceptor {
+
+        private val stats = TreeMap<String, LongArray>()
+        private var requests = 0
+
+        override fun intercept(chain: Interceptor.Chain): Response {
+            val response = chain.proceed(chain.request())
+            val length = response.body()?.contentLength() ?: -1
+            if (length < 0) return response
+            val group = fitInPattern.find(response.request().url().encodedPath())?.groupValues?.get(1) ?: "original"
+            synchronized(stats) {
+                val groupStats = stats.getOrPut(group) { LongArray(2) }
+                groupStats[0]++
+                groupStats[1] += length
+                if (++requests % REPORT_INTERVAL == 0) {
+                    DebugLog.d(LOGTAG, stats.entries.joinToString(prefix = "Image transfer: ") { (k, v) ->
+                        "$k: ${v[0]} requests, ${v[1] / 1024} KiB"
+                    })
+                }
+            }
+            return response
+        }
+
+        companion object {
+            private const val REPORT_INTERVAL = 50
+            private val fitInPattern = Regex("/fit-in/(\\d+x\\d+)/")
+        }
+    }
+
     class UserAgentModifier(val userAgent: String?) : ModifyRequestInterceptor.RequestModifier {
 
         override fun modify(original: Request, builder: Request.Builder): Boolean {
@@ -21,18 +21,20 @@ package org.mariotaku.twidere.util.media
 
 import android.content.Context
 import android.content.SharedPreferences
+import android.net.Uri
 import com.bumptech.glide.Glide
 import com.bumptech.glide.request.target.Target
 import org.mariotaku.kpreferences.get
 import org.mariotaku.twidere.constant.mediaPreloadKey
 import org.mariotaku.twidere.constant.mediaPreloadOnWifiOnlyKey
 import org.mariotaku.twidere.extension.loadProfileImage
+import org.mariotaku.twidere.fragment.media.VideoPageFragment
 import org.mariotaku.twidere.model.ParcelableActivity
 import org.mariotaku.twidere.model.ParcelableMedia
 import org.mariotaku.twidere.model.ParcelableStatus
 import org.mariotaku.twidere.extension.model.activityStatus
 
-class MediaPreloader(val context: Context) {
+class MediaPreloader(val context: Context, val videoCache: VideoCache, val thumbor: ThumborWrapper) {
 
     var isNetworkMetered: Boolean = true
 
@@ -44,11 +46,23 @@ class MediaPreloader(val context: Context) {
 
     fun preloadStatus(status: ParcelableStatus) {
         if (!shouldPreload) return
+        // Images are requested at original size here, with Thumbor that's a different URL from
+        // resized ones views request, so preloading would only download every image twice
+        if (thumbor.available) return
         preLoadProfileImage(status)
         preloadMedia(status.media)
         preloadMedia(status.quoted_media)
     }
 
+    /**
+     * Prefetch beginning of videos in status displayed, so they can start playing immediately
+     */
+    fun preloadVideos(status: ParcelableStatus) {
+        if (!shouldPreload) return
+        preloadVideos(status.media)
+        preloadVideos(status.quoted_media)
+    }
+
     fun preloadActivity(activity: ParcelableActivity) {
         if (!shouldPreload) return
         activity.activityStatus?.let { preloadStatus(it) }
@@ -69,6 +83,17 @@ class MediaPreloader(val context: Context) {
         }
     }
 
+    private fun preloadVideos(media: Array<ParcelableMedia>?) {
+        media?.forEach { item ->
+            val url = VideoPageFragment.getBestVideoUrlAndType(item,
+                    VideoPageFragment.SUPPORTED_VIDEO_TYPES)?.first ?: return@forEach
+            val uri = Uri.parse(url)
+            // Protected videos require authorization, they won't be prefetched
+            if (uri.host == "ton.twitter.com") return@forEach
+            videoCache.prefetch(uri)
+        }
+    }
+
     private fun preLoadProfileImage(status: ParcelableStatus) {
         Glide.with(context).loadProfileImage(context, status, 0).into(Target.SIZE_ORIGINAL,
                 Target.SIZE_ORIGINAL)
@@ -22,9 +22,11 @@ package org.mariotaku.twidere.util.media
 import android.content.SharedPreferences
 import android.net.Uri
 import android.text.TextUtils
+import android.util.LruCache
 import android.webkit.URLUtil
 import com.squareup.pollexor.Thumbor
 import com.squareup.pollexor.ThumborUrlBuilder
+import com.squareup.pollexor.ThumborUrlBuilder.ImageFormat
 import org.mariotaku.twidere.constant.SharedPreferenceConstants.*
 
 /**
@@ -33,13 +35,42 @@ import org.mariotaku.twidere.constant.SharedPreferenceConstants.*
 
 class ThumborWrapper {
 
+    /** Signed URLs of recent requests, computing HMAC for every request is expensive */
+    private val urlCache = LruCache<String, String>(MAX_CACHED_URLS)
+
     internal var thumbor: Thumbor? = null
+        set(value) {
+            field = value
+            urlCache.evictAll()
+        }
 
     val available get() = thumbor != null
 
-    fun buildUri(uri: String): String {
+    /**
+     * @param size Size of bounding box in pixels, image will be scaled to fit in. Use
+     * [bucketSize] so requests with similar sizes share same URL. Original image will be
+     * requested if `0`
+     * @param webp Request image in WebP format
+     */
+    fun buildUri(uri: String, size: Int = 0, webp: Boolean = false): String {
         val thumbor = this.thumbor ?: return uri
-        return thumbor.buildImage(Uri.encode(uri)).filter(ThumborUrlBuilder.quality(85)).toUrl()
+        val cacheKey = "$size:$webp:$uri"
+        urlCache.get(cacheKey)?.let { return it }
+        val builder = thumbor.buildImage(Uri.encode(uri))
+        if (size > 0) {
+            builder.resize(size, size).fitIn()
+        }
+        if (webp) {
+            builder.filter(ThumborUrlBuilder.quality(85), ThumborUrlBuilder.format(ImageFormat.WEBP))
+        } else {
+            builder.filter(ThumborUrlBuilder.quality(85))
+        }
+        val url = builder.toUrl()
+        // Settings may be changed while building
+        if (thumbor === this.thumbor) {
+            urlCache.put(cacheKey, url)
+        }
+        return url
     }
 
     fun reloadSettings(preferences: SharedPreferences) {
@@ -59,4 +90,28 @@ class ThumborWrapper {
         }
 
     }
+
+    companion object {
+        private const val MAX_CACHED_URLS = 512
+        /** Sizes of bounding boxes in dp, targets larger than the last one load original image */
+        private val SIZE_BUCKETS_DP = intArrayOf(48, 96, 192, 384, 768)
+
+        /**
+         * Rounds target size up to a bucket, so the same image displayed in views with slightly
+         * different sizes hits HTTP cache
+         *
+         * @param width Target width in pixels, [Int.MIN_VALUE] (Glide's `SIZE_ORIGINAL`) or
+         * non-positive values for unknown size
+         * @return Bucketed size in pixels, `0` for original image
+         */
+        fun bucketSize(width: Int, height: Int, density: Float): Int {
+            if (width <= 0 || height <= 0) return 0
+            val size = Math.max(width, height)
+            SIZE_BUCKETS_DP.forEach { dp ->
+                val px = Math.round(dp * density)
+                if (size <= px) return px
+            }
+            return 0
+        }
+    }
 }
@@ -0,0 +1,122 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.media
+
+import android.net.Uri
+import android.util.LruCache
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor
+import com.google.android.exoplayer2.upstream.cache.SimpleCache
+import org.apache.commons.lang3.concurrent.BasicThreadFactory
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.util.DebugLog
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionHandler
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Range aware disk cache for videos played by ExoPlayer. Replaying or reopening a video reads
+ * cached spans instead of downloading again.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+class VideoCache(dir: File, maxBytes: Long, private val upstream: DataSource.Factory) {
+
+    private val cache = SimpleCache(dir, LeastRecentlyUsedCacheEvictor(maxBytes))
+    /** Videos prefetched recently, so scrolling back and forth won't prefetch again */
+    private val prefetched = LruCache<String, Boolean>(MAX_PREFETCHED_RECORDS)
+
+    /**
+     * @param upstream Factory to load data not in cache, it should add headers (e.g.
+     * authorization) to requests if needed
+     */
+    fun dataSourceFactory(upstream: DataSource.Factory = this.upstream): DataSource.Factory {
+        return CacheDataSourceFactory(cache, upstream, CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+    }
+
+    /**
+     * Loads first [length] bytes of video to cache in background, so playback can start
+     * without waiting for network. Only a few latest requests are kept waiting, older ones are
+     * dropped (e.g. videos scrolled past in a fling).
+     */
+    fun prefetch(uri: Uri, length: Long = PREFETCH_LENGTH) {
+        val key = uri.toString()
+        synchronized(prefetched) {
+            if (prefetched.get(key) != null) return
+            prefetched.put(key, true)
+        }
+        executor.execute(PrefetchTask(uri, key, length))
+    }
+
+    private inner class PrefetchTask(val uri: Uri, val key: String, val length: Long) : Runnable {
+
+        override fun run() {
+            val dataSource = dataSourceFactory().createDataSource()
+            try {
+                dataSource.open(DataSpec(uri, 0, length, null))
+                val buffer = ByteArray(BUFFER_SIZE)
+                @Suppress("ControlFlowWithEmptyBody")
+                while (dataSource.read(buffer, 0, buffer.size) != C.RESULT_END_OF_INPUT) {
+                }
+            } catch (e: IOException) {
+                // Prefetch failures can be ignored, it will be loaded again when playing
+                onDropped()
+                DebugLog.w(LOGTAG, "Unable to prefetch $uri", e)
+            } finally {
+                try {
+                    dataSource.close()
+                } catch (e: IOException) {
+                    // Ignore
+                }
+            }
+        }
+
+        /**
+         * Not prefetched, so it can be requested again
+         */
+        fun onDropped() {
+            synchronized(prefetched) { prefetched.remove(key) }
+        }
+    }
+
+    companion object {
+        private const val PREFETCH_LENGTH = 384 * 1024L
+        private const val BUFFER_SIZE = 8192
+        private const val MAX_PREFETCHED_RECORDS = 256
+        private const val MAX_PENDING_PREFETCHES = 4
+
+        private val executor = ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS,
+                LinkedBlockingQueue<Runnable>(MAX_PENDING_PREFETCHES), BasicThreadFactory.Builder()
+                .namingPattern("twidere-video-prefetch-%d").daemon(true)
+                .priority(Thread.MIN_PRIORITY).build(), RejectedExecutionHandler { r, e ->
+            if (e.isShutdown) return@RejectedExecutionHandler
+            // Drop oldest waiting prefetch
+            (e.queue.poll() as? PrefetchTask)?.onDropped()
+            e.execute(r)
+        })
+    }
+}
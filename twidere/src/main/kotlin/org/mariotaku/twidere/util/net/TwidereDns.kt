@@ -21,20 +21,31 @@ package org.mariotaku.twidere.util.net
 
 import android.content.Context
 import android.content.SharedPreferences
+import android.os.SystemClock
 import android.util.Log
 import android.util.TimingLogger
 import okhttp3.Dns
+import org.apache.commons.lang3.concurrent.BasicThreadFactory
 import org.mariotaku.ktextension.toIntOr
 import org.mariotaku.twidere.BuildConfig
 import org.mariotaku.twidere.TwidereConstants.HOST_MAPPING_PREFERENCES_NAME
 import org.mariotaku.twidere.constant.SharedPreferenceConstants.*
+import org.mariotaku.twidere.util.DebugLog
 import org.xbill.DNS.*
 import java.io.IOException
 import java.net.InetAddress
 import java.net.UnknownHostException
 import java.util.*
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Singleton
 
+/**
+ * Answers from DNS servers are cached by host name, respecting record TTLs. Failed lookups are
+ * cached for [NEGATIVE_TTL]. Pinned hosts (API hosts of accounts) are refreshed in background
+ * before they expire, so requests to them never wait for DNS.
+ */
 @Singleton
 class TwidereDns(context: Context, private val preferences: SharedPreferences) : Dns {
 
@@ -45,14 +56,68 @@ class TwidereDns(context: Context, private val preferences: SharedPreferences) :
     private var resolver: Resolver? = null
     private var useResolver: Boolean = false
 
+    @Volatile
+    private var mappingRules = HostMappingRules(emptyMap<String, Any>())
+    // Preferences only keep weak reference of listeners
+    private val hostMappingListener = SharedPreferences.OnSharedPreferenceChangeListener { _, _ ->
+        reloadHostMapping()
+    }
+
+    private val cache = object : LinkedHashMap<String, CachedAnswer>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, CachedAnswer>?): Boolean {
+            return size > MAX_CACHE_SIZE
+        }
+    }
+    /** Increased on every cache clear, so answers resolved before it won't be cached */
+    private var cacheGeneration = 0
+    @Volatile
+    private var pinnedHosts: Set<String> = emptySet()
+    private val refreshingHosts = HashSet<String>()
+    private val refreshExecutor = Executors.newSingleThreadExecutor(BasicThreadFactory.Builder()
+            .namingPattern("twidere-dns-refresh-%d").daemon(true).build())
+
+    private val hitCount = AtomicLong()
+    private val negativeHitCount = AtomicLong()
+    private val missCount = AtomicLong()
+    private val refreshCount = AtomicLong()
+
+    val cacheStatistics: CacheStatistics
+        get() = CacheStatistics(hitCount.get(), negativeHitCount.get(), missCount.get(),
+                refreshCount.get(), synchronized(cache) { cache.size })
+
     init {
         reloadDnsSettings()
+        reloadHostMapping()
+        hostMapping.registerOnSharedPreferenceChangeListener(hostMappingListener)
     }
 
     @Throws(UnknownHostException::class)
     override fun lookup(hostname: String): List<InetAddress> {
+        val key = hostname.toLowerCase(Locale.US)
+        val now = SystemClock.elapsedRealtime()
+        val cached = synchronized(cache) { cache[key] }
+        if (cached != null && now < cached.expiresAt) {
+            val addresses = cached.addresses
+            if (addresses == null) {
+                negativeHitCount.incrementAndGet()
+                throw UnknownHostException("Unable to resolve address $hostname")
+            }
+            hitCount.incrementAndGet()
+            if (now >= cached.refreshAt && key in pinnedHosts) {
+                refreshAsync(hostname, key)
+            }
+            return addresses
+        }
+        return lookupAndCache(hostname, key, false)
+    }
+
+    /**
+     * Lookup with built-in resolver, bypassing answer cache
+     */
+    @Throws(UnknownHostException::class)
+    fun lookupResolver(hostname: String): List<InetAddress> {
         try {
-            return resolveInternal(hostname, hostname, 0, useResolver)
+            return resolveInternal(hostname, hostname, 0, true).addresses
         } catch (e: IOException) {
             if (e is UnknownHostException) throw e
             throw UnknownHostException("Unable to resolve address " + e.message)
@@ -62,34 +127,108 @@ class TwidereDns(context: Context, private val preferences: SharedPreferences) :
 
     }
 
+    fun reloadDnsSettings() {
+        this.resolver = null
+        useResolver = preferences.getBoolean(KEY_BUILTIN_DNS_RESOLVER, false)
+        clearCache()
+    }
+
+    fun clearCache() {
+        synchronized(cache) {
+            cacheGeneration++
+            cache.clear()
+        }
+    }
+
+    /**
+     * Keep answers of [hosts] fresh, lookups of them are started immediately
+     */
+    fun setPinnedHosts(hosts: Collection<String>) {
+        val keys = hosts.associateBy { it.toLowerCase(Locale.US) }
+        pinnedHosts = keys.keys
+        val now = SystemClock.elapsedRealtime()
+        keys.forEach { (key, hostname) ->
+            val cached = synchronized(cache) { cache[key] }
+            if (cached == null || now >= cached.refreshAt) {
+                refreshAsync(hostname, key)
+            }
+        }
+    }
+
+    private fun reloadHostMapping() {
+        mappingRules = HostMappingRules(hostMapping.all)
+        clearCache()
+    }
+
+    private fun refreshAsync(hostname: String, key: String) {
+        synchronized(refreshingHosts) {
+            if (!refreshingHosts.add(key)) return
+        }
+        refreshExecutor.execute {
+            try {
+                lookupAndCache(hostname, key, true)
+            } catch (e: UnknownHostException) {
+                DebugLog.w(RESOLVER_LOGTAG, "Unable to refresh $hostname", e)
+            } finally {
+                synchronized(refreshingHosts) {
+                    refreshingHosts.remove(key)
+                }
+            }
+        }
+    }
+
     @Throws(UnknownHostException::class)
-    fun lookupResolver(hostname: String): List<InetAddress> {
+    private fun lookupAndCache(hostname: String, key: String, refresh: Boolean): List<InetAddress> {
+        val generation = synchronized(cache) { cacheGeneration }
+        val answer: Answer
         try {
-            return resolveInternal(hostname, hostname, 0, true)
+            answer = resolveInternal(hostname, hostname, 0, useResolver)
         } catch (e: IOException) {
-            if (e is UnknownHostException) throw e
+            if (e is UnknownHostException) {
+                countLookup(refresh)
+                putCache(key, generation, CachedAnswer(null, NEGATIVE_TTL))
+                throw e
+            }
             throw UnknownHostException("Unable to resolve address " + e.message)
         } catch (e: SecurityException) {
             throw UnknownHostException("Security exception" + e.message)
         }
+        if (answer.ttl > 0) {
+            countLookup(refresh)
+            putCache(key, generation, CachedAnswer(answer.addresses, answer.ttl))
+        }
+        return answer.addresses
+    }
 
+    private fun countLookup(refresh: Boolean) {
+        if (refresh) {
+            refreshCount.incrementAndGet()
+        } else {
+            missCount.incrementAndGet()
+        }
     }
 
-    fun reloadDnsSettings() {
-        this.resolver = null
-        useResolver = preferences.getBoolean(KEY_BUILTIN_DNS_RESOLVER, false)
+    private fun putCache(key: String, generation: Int, answer: CachedAnswer) {
+        synchronized(cache) {
+            if (generation != cacheGeneration) return
+            cache[key] = answer
+        }
     }
 
+    /**
+     * @return Resolved addresses, [Answer.ttl] is 0 if addresses resolved locally and shouldn't be
+     * cached
+     */
     @Throws(IOException::class, SecurityException::class)
     private fun resolveInternal(originalHost: String, host: String, depth: Int,
-            useResolver: Boolean): List<InetAddress> {
+            useResolver: Boolean): Answer {
         val logger = TimingLogger(RESOLVER_LOGTAG, "resolve")
         // Return if host is an address
         val fromAddressString = fromAddressString(originalHost, host)
         if (fromAddressString != null) {
             addLogSplit(logger, host, "valid ip address", depth)
             dumpLog(logger, fromAddressString)
-            return fromAddressString
+            return Answer(fromAddressString, 0)
         }
         // Load from custom mapping
         addLogSplit(logger, host, "start custom mapping resolve", depth)
@@ -97,7 +236,7 @@ class TwidereDns(context: Context, private val preferences: SharedPreferences) :
         addLogSplit(logger, host, "end custom mapping resolve", depth)
         if (fromMapping != null) {
             dumpLog(logger, fromMapping)
-            return fromMapping
+            return Answer(fromMapping, 0)
         }
         if (useResolver) {
             // Load from /etc/hosts, since Dnsjava doesn't support hosts entry lookup
@@ -106,7 +245,7 @@ class TwidereDns(context: Context, private val preferences: SharedPreferences) :
             addLogSplit(logger, host, "end /etc/hosts resolve", depth)
             if (fromSystemHosts != null) {
                 dumpLog(logger, fromSystemHosts)
-                return fromSystemHosts
+                return Answer(fromSystemHosts, DEFAULT_TTL)
             }
 
             // Use DNS resolver
@@ -114,15 +253,15 @@ class TwidereDns(context: Context, private val preferences: SharedPreferences) :
             val fromResolver = fromResolver(originalHost, host)
             addLogSplit(logger, host, "end resolver resolve", depth)
             if (fromResolver != null) {
-                dumpLog(logger, fromResolver)
+                dumpLog(logger, fromResolver.addresses)
                 return fromResolver
             }
         }
         addLogSplit(logger, host, "start system default resolve", depth)
-        val fromDefault = Arrays.asList(*InetAddress.getAllByName(host))
+        val fromDefault = Collections.unmodifiableList(Arrays.asList(*InetAddress.getAllByName(host)))
         addLogSplit(logger, host, "end system default resolve", depth)
         dumpLog(logger, fromDefault)
-        return fromDefault
+        return Answer(fromDefault, DEFAULT_TTL)
     }
 
     private fun dumpLog(logger: TimingLogger, addresses: List<InetAddress>) {
@@ -155,15 +294,17 @@ class TwidereDns(context: Context, private val preferences: SharedPreferences) :
     }
 
     @Throws(IOException::class)
-    private fun fromResolver(originalHost: String, host: String): List<InetAddress>? {
+    private fun fromResolver(originalHost: String, host: String): Answer? {
         val resolver = this.getResolver()
         val records = lookupHostName(resolver, host, true)
         val addrs = ArrayList<InetAddress>(records.size)
+        var ttl = MAX_POSITIVE_TTL
         for (record in records) {
             addrs.add(addrFromRecord(originalHost, record))
+            ttl = Math.min(ttl, TimeUnit.SECONDS.toMillis(record.ttl))
         }
         if (addrs.isEmpty()) return null
-        return addrs
+        return Answer(Collections.unmodifiableList(addrs), Math.max(ttl, MIN_POSITIVE_TTL))
     }
 
     @Throws(UnknownHostException::class)
@@ -177,15 +318,10 @@ class TwidereDns(context: Context, private val preferences: SharedPreferences) :
             // Recursive resolution, stop this call
             return null
         }
-        for ((key, value1) in hostMapping.all) {
-            if (hostMatches(host, key)) {
-                val value = value1 as String
-                val resolved = getResolvedIPAddress(origHost, value) ?: // Maybe another hostname
-                        return getFromMappingInternal(value, origHost, true)
-                return listOf(resolved)
-            }
-        }
-        return null
+        val value = mappingRules.find(host) ?: return null
+        val resolved = getResolvedIPAddress(origHost, value) ?: // Maybe another hostname
+                return getFromMappingInternal(value, origHost, true)
+        return listOf(resolved)
     }
 
     private fun getResolver(): Resolver {
@@ -223,10 +359,79 @@ class TwidereDns(context: Context, private val preferences: SharedPreferences) :
         return listOf(resolved)
     }
 
+    data class CacheStatistics(
+            val hitCount: Long,
+            val negativeHitCount: Long,
+            val missCount: Long,
+            val refreshCount: Long,
+            val size: Int
+    ) {
+        override fun toString(): String {
+            val lookups = hitCount + negativeHitCount + missCount
+            val hitRate = if (lookups > 0) (hitCount + negativeHitCount) * 100 / lookups else 0
+            return "hits: $hitCount, negative hits: $negativeHitCount, misses: $missCount " +
+                    "($hitRate% hit rate), background refreshes: $refreshCount, entries: $size"
+        }
+    }
+
+    private class Answer(val addresses: List<InetAddress>, val ttl: Long)
+
+    private class CachedAnswer(val addresses: List<InetAddress>?, ttl: Long) {
+        val expiresAt: Long
+        val refreshAt: Long
+
+        init {
+            val now = SystemClock.elapsedRealtime()
+            expiresAt = now + ttl
+            refreshAt = now + ttl * REFRESH_AHEAD_PERCENT / 100
+        }
+    }
+
+    /**
+     * Host mapping compiled into hash tables. Exact rules win over wildcard (".example.com") rules,
+     * and longer wildcard rules win over shorter ones.
+     */
+    private class HostMappingRules(mapping: Map<String, *>) {
+        private val exact = HashMap<String, String>()
+        private val suffix = HashMap<String, String>()
+
+        init {
+            mapping.forEach { (rule, value) ->
+                if (value !is String) return@forEach
+                val key = rule.toLowerCase(Locale.US)
+                if (key.startsWith(".")) {
+                    suffix[key] = value
+                } else {
+                    exact[key] = value
+                }
+            }
+        }
+
+        fun find(host: String): String? {
+            val key = host.toLowerCase(Locale.US)
+            exact[key]?.let { return it }
+            if (suffix.isEmpty()) return null
+            var dot = key.indexOf('.')
+            while (dot >= 0) {
+                suffix[key.substring(dot)]?.let { return it }
+                dot = key.indexOf('.', dot + 1)
+            }
+            return null
+        }
+    }
+
     companion object {
 
         private val RESOLVER_LOGTAG = "TwidereDns"
 
+        private const val MAX_CACHE_SIZE = 128
+        /** Used when resolved by system, which doesn't give us TTL */
+        private val DEFAULT_TTL = TimeUnit.MINUTES.toMillis(1)
+        private val NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(10)
+        private val MIN_POSITIVE_TTL = TimeUnit.SECONDS.toMillis(10)
+        private val MAX_POSITIVE_TTL = TimeUnit.HOURS.toMillis(1)
+        private const val REFRESH_AHEAD_PERCENT = 80
+
 
         private fun hostMatches(host: String?, rule: String?): Boolean {
             if (rule == null || host == null) return false
@@ -0,0 +1,143 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.okhttp
+
+import android.os.Process
+import okhttp3.Dispatcher
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Response
+import java.io.InterruptedIOException
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Kinds of HTTP traffic, each has its own concurrency limit and thread priority, so a burst of
+ * one kind (e.g. images of a fast scrolled timeline) won't delay requests of others.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+enum class TrafficClass(val maxRequests: Int, val threadPriority: Int) {
+    API(8, Process.THREAD_PRIORITY_DEFAULT),
+    IMAGE(6, Process.THREAD_PRIORITY_BACKGROUND),
+    VIDEO(3, Process.THREAD_PRIORITY_BACKGROUND);
+
+    val statistics = Statistics(this)
+
+    internal val dispatcher: Dispatcher by lazy {
+        val threadNumber = AtomicInteger()
+        val threadFactory = ThreadFactory { r ->
+            val thread = Thread({
+                Process.setThreadPriority(threadPriority)
+                r.run()
+            }, "twidere-http-${name.toLowerCase()}-${threadNumber.incrementAndGet()}")
+            thread.isDaemon = true
+            return@ThreadFactory thread
+        }
+        val executor = ThreadPoolExecutor(0, Int.MAX_VALUE, 60, TimeUnit.SECONDS,
+                SynchronousQueue<Runnable>(), threadFactory)
+        return@lazy Dispatcher(executor).apply {
+            maxRequests = this@TrafficClass.maxRequests
+            maxRequestsPerHost = Math.min(this@TrafficClass.maxRequests, 5)
+        }
+    }
+
+    /**
+     * Dispatcher only limits asynchronous calls, synchronous calls (used by REST client, Glide and
+     * ExoPlayer) wait for permits here. Permit is released once response headers arrived, a body
+     * not closed by caller won't block requests after it.
+     */
+    internal val interceptor: Interceptor = object : Interceptor {
+        private val permits = Semaphore(maxRequests, true)
+
+        override fun intercept(chain: Interceptor.Chain): Response {
+            val waitStart = System.nanoTime()
+            statistics.waiting.incrementAndGet()
+            try {
+                permits.acquire()
+            } catch (e: InterruptedException) {
+                throw InterruptedIOException("Interrupted while waiting for request slot")
+            } finally {
+                statistics.waiting.decrementAndGet()
+            }
+            statistics.onStart(System.nanoTime() - waitStart)
+            var succeeded = false
+            try {
+                val response = chain.proceed(chain.request())
+                succeeded = true
+                return response
+            } finally {
+                permits.release()
+                statistics.onFinish(succeeded)
+            }
+        }
+    }
+
+    /**
+     * Creates a client shares connection pool, cache and configurations with [root], with
+     * concurrency limit of this traffic class
+     */
+    fun newClientBuilder(root: OkHttpClient): OkHttpClient.Builder {
+        return root.newBuilder().dispatcher(dispatcher).addInterceptor(interceptor)
+    }
+
+    class Statistics internal constructor(val trafficClass: TrafficClass) {
+        internal val waiting = AtomicInteger()
+        private val running = AtomicInteger()
+        private val requests = AtomicLong()
+        private val failures = AtomicLong()
+        private val totalWaitNanos = AtomicLong()
+        private val maxWaitNanos = AtomicLong()
+
+        val waitingCount: Int get() = waiting.get()
+        val runningCount: Int get() = running.get()
+        val requestCount: Long get() = requests.get()
+        val failureCount: Long get() = failures.get()
+        val averageWaitMillis: Long get() {
+            val count = requests.get()
+            if (count == 0L) return 0
+            return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count)
+        }
+        val maxWaitMillis: Long get() = TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get())
+
+        internal fun onStart(waitNanos: Long) {
+            running.incrementAndGet()
+            requests.incrementAndGet()
+            totalWaitNanos.addAndGet(waitNanos)
+            do {
+                val max = maxWaitNanos.get()
+            } while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos))
+        }
+
+        internal fun onFinish(succeeded: Boolean) {
+            running.decrementAndGet()
+            if (!succeeded) {
+                failures.incrementAndGet()
+            }
+        }
+
+        override fun toString(): String {
+            return "$trafficClass: $requestCount requests, $failureCount failed, " +
+                    "$runningCount running, $waitingCount waiting, " +
+                    "wait ${averageWaitMillis}ms avg, ${maxWaitMillis}ms max"
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.refresh
+
+import android.os.SystemClock
+import android.support.annotation.WorkerThread
+import org.apache.commons.lang3.concurrent.BasicThreadFactory
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.util.DebugLog
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Refreshes multiple accounts concurrently.
+ *
+ * Fetches run on a shared pool of [MAX_PARALLELISM] threads. Each fetch returns a store function,
+ * which is invoked on the calling thread in completion order, so database writes never overlap.
+ *
+ * Created by mariotaku on 2017/5/24.
+ */
+object AccountsRefreshRunner {
+
+    private const val MAX_PARALLELISM = 4
+
+    private val executor = Executors.newFixedThreadPool(MAX_PARALLELISM, BasicThreadFactory.Builder()
+            .namingPattern("twidere-refresh-%d").daemon(true).build())
+
+    /**
+     * @param fetch Called with account index, should catch its own errors and return a function
+     * storing fetched data
+     * @return Results of store functions, in account order
+     */
+    @WorkerThread
+    fun <R> run(tag: String, count: Int, fetch: (Int) -> (() -> R)): List<R> {
+        val start = SystemClock.elapsedRealtime()
+        val fetchTimes = LongArray(count)
+        val timedFetch = { i: Int ->
+            val fetchStart = SystemClock.elapsedRealtime()
+            try {
+                fetch(i)
+            } finally {
+                fetchTimes[i] = SystemClock.elapsedRealtime() - fetchStart
+            }
+        }
+        val results: List<R>
+        if (count <= 1) {
+            results = (0 until count).map { timedFetch(it)() }
+        } else {
+            val completionService = ExecutorCompletionService<Pair<Int, () -> R>>(executor)
+            val futures = ArrayList<Future<Pair<Int, () -> R>>>(count)
+            for (i in 0 until count) {
+                futures.add(completionService.submit { Pair(i, timedFetch(i)) })
+            }
+            val stored = arrayOfNulls<Any?>(count)
+            try {
+                repeat(count) {
+                    val (i, store) = try {
+                        completionService.take().get()
+                    } catch (e: ExecutionException) {
+                        throw e.cause ?: e
+                    }
+                    stored[i] = store()
+                }
+            } finally {
+                futures.forEach { it.cancel(true) }
+            }
+            @Suppress("UNCHECKED_CAST")
+            results = stored.map { it as R }
+        }
+        DebugLog.d(LOGTAG, "$tag: refreshed $count accounts in " +
+                "${SystemClock.elapsedRealtime() - start}ms, fetches took ${fetchTimes.sum()}ms in total")
+        return results
+    }
+
+}
@@ -1,31 +1,61 @@
 package org.mariotaku.twidere.util.refresh
 
 import android.content.Context
+import android.net.ConnectivityManager
+import android.support.v4.net.ConnectivityManagerCompat
 import org.mariotaku.kpreferences.KPreferences
-import org.mariotaku.twidere.annotation.AutoRefreshType
+import org.mariotaku.twidere.TwidereConstants.LOGTAG
+import org.mariotaku.twidere.constant.refreshIntervalKey
+import org.mariotaku.twidere.util.DebugLog
+import java.util.concurrent.TimeUnit
 
 /**
+ * Schedules one periodic refresh for all timelines, which runs `TaskServiceRunner.ACTION_REFRESH_ALL`
+ *
  * Created by mariotaku on 2016/12/17.
  */
 
 abstract class AutoRefreshController(
         val context: Context,
-        val kPreferences: KPreferences
+        val kPreferences: KPreferences,
+        val stats: AutoRefreshStats
 ) {
 
+    /**
+     * Interval adapted to recent refreshes by [AutoRefreshStats.intervalMillis]
+     */
+    protected val refreshInterval: Long
+        get() {
+            val baseInterval = TimeUnit.MINUTES.toMillis(kPreferences[refreshIntervalKey])
+            val cm = context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
+            return stats.intervalMillis(baseInterval, ConnectivityManagerCompat.isActiveNetworkMetered(cm))
+        }
+
     abstract fun appStarted()
 
-    abstract fun schedule(@AutoRefreshType type: String)
+    protected abstract fun schedule(intervalMillis: Long)
 
-    abstract fun unschedule(@AutoRefreshType type: String)
+    protected abstract fun unschedule()
 
-    open fun reschedule(@AutoRefreshType type: String) {
-        unschedule(type)
-        schedule(type)
+    open fun reschedule() {
+        unschedule()
+        val interval = refreshInterval
+        if (interval > 0) {
+            schedule(interval)
+            stats.scheduledInterval = interval
+        } else {
+            stats.scheduledInterval = 0
+        }
     }
 
-    open fun rescheduleAll() {
-        AutoRefreshType.ALL.forEach { reschedule(it) }
+    /**
+     * Reschedule if interval changed since last scheduled, called after every refresh
+     */
+    fun adjustInterval() {
+        val interval = refreshInterval
+        if (interval == stats.scheduledInterval) return
+        DebugLog.d(LOGTAG, "Auto refresh interval changed from ${stats.scheduledInterval}ms to ${interval}ms")
+        reschedule()
     }
 
 }
@@ -0,0 +1,209 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.refresh
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.support.annotation.WorkerThread
+import org.mariotaku.twidere.TwidereConstants.AUTO_REFRESH_STATS_PREFERENCES_NAME
+import org.mariotaku.twidere.annotation.AutoRefreshType
+import org.mariotaku.twidere.model.UserKey
+import java.util.concurrent.TimeUnit
+
+/**
+ * Records what coalesced auto refreshes did, and derives interval of next refresh from it.
+ *
+ * New items of every account and timeline are tracked as moving average of items per hour.
+ * Interval is stretched until busiest timeline gets about [TARGET_ITEMS_PER_REFRESH] items per
+ * refresh, then doubled for every consecutive failed refresh and on metered networks. It's never
+ * shorter than interval set by user, and never longer than [MAX_INTERVAL_MULTIPLIER] times of it.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+class AutoRefreshStats(context: Context) {
+
+    private val preferences = context.getSharedPreferences(AUTO_REFRESH_STATS_PREFERENCES_NAME,
+            Context.MODE_PRIVATE)
+
+    /**
+     * Interval of scheduled refresh, 0 if not scheduled
+     */
+    var scheduledInterval: Long
+        get() = preferences.getLong(KEY_SCHEDULED_INTERVAL, 0)
+        set(value) = preferences.edit().putLong(KEY_SCHEDULED_INTERVAL, value).apply()
+
+    val consecutiveErrors: Int
+        get() = preferences.getInt(KEY_CONSECUTIVE_ERRORS, 0)
+
+    val isFiltersSubscriptionsRefreshDue: Boolean
+        get() {
+            val lastRefresh = preferences.getLong(KEY_LAST_FILTERS_SUBSCRIPTIONS_REFRESH, 0)
+            return System.currentTimeMillis() - lastRefresh >= FILTERS_SUBSCRIPTIONS_INTERVAL
+        }
+
+    /**
+     * @param baseInterval Refresh interval set by user
+     * @param metered Whether active network is metered
+     */
+    fun intervalMillis(baseInterval: Long, metered: Boolean): Long {
+        val maxRate = preferences.all.filterKeys { it.startsWith(KEY_PREFIX_RATE) }.values
+                .filterIsInstance<Float>().max()
+        return intervalMillis(baseInterval, maxRate, consecutiveErrors, metered)
+    }
+
+    /**
+     * @param tasks Tasks ran in this refresh
+     * @param newItems New items of every refreshed account, grouped by [AutoRefreshType]
+     * @param wakeupMillis Time taken by whole refresh
+     */
+    @WorkerThread
+    fun recordRefresh(tasks: List<TaskResult>, newItems: Map<String, Map<UserKey, Int>>,
+            wakeupMillis: Long) {
+        val now = System.currentTimeMillis()
+        val editor = preferences.edit()
+        val lastRefresh = preferences.getLong(KEY_LAST_REFRESH, 0)
+        val elapsedHours = (now - lastRefresh).toFloat() / TimeUnit.HOURS.toMillis(1)
+        newItems.forEach { (type, accountItems) ->
+            val typePrefix = "$KEY_PREFIX_RATE${type}_"
+            // Accounts no longer refreshed
+            val refreshedKeys = accountItems.keys.map { "$typePrefix$it" }
+            preferences.all.keys.filter {
+                it.startsWith(typePrefix) && it !in refreshedKeys
+            }.forEach { editor.remove(it) }
+            // Rate can't be told from first refresh, or after refresh stopped for long time
+            if (lastRefresh <= 0 || elapsedHours <= 0 || elapsedHours > MAX_RATE_WINDOW_HOURS) return@forEach
+            accountItems.forEach { (accountKey, items) ->
+                val key = "$typePrefix$accountKey"
+                val rate = items / elapsedHours
+                val average = if (preferences.contains(key)) {
+                    preferences.getFloat(key, 0f) * (1 - RATE_SMOOTHING) + rate * RATE_SMOOTHING
+                } else {
+                    rate
+                }
+                editor.putFloat(key, average)
+            }
+        }
+        tasks.forEach { task ->
+            editor.increase("$KEY_PREFIX_TASK_RUNS${task.name}", 1)
+            editor.increase("$KEY_PREFIX_TASK_TIME${task.name}", task.durationMillis)
+            editor.increase("$KEY_PREFIX_TASK_ITEMS${task.name}", task.items.toLong())
+            if (!task.success) {
+                editor.increase("$KEY_PREFIX_TASK_ERRORS${task.name}", 1)
+            }
+            if (task.name == TASK_FILTERS_SUBSCRIPTIONS) {
+                editor.putLong(KEY_LAST_FILTERS_SUBSCRIPTIONS_REFRESH, now)
+            }
+        }
+        if (tasks.all(TaskResult::success)) {
+            editor.putInt(KEY_CONSECUTIVE_ERRORS, 0)
+        } else {
+            editor.putInt(KEY_CONSECUTIVE_ERRORS, consecutiveErrors + 1)
+        }
+        editor.increase(KEY_WAKEUPS, 1)
+        editor.increase(KEY_WAKEUP_TIME, wakeupMillis)
+        editor.increase(KEY_TASKS, tasks.size.toLong())
+        editor.putLong(KEY_LAST_REFRESH, now)
+        editor.apply()
+    }
+
+    override fun toString(): String {
+        val wakeups = preferences.getLong(KEY_WAKEUPS, 0)
+        val tasks = preferences.getLong(KEY_TASKS, 0)
+        val sb = StringBuilder()
+        sb.append("scheduled_interval: ${TimeUnit.MILLISECONDS.toMinutes(scheduledInterval)} min\n")
+        sb.append("consecutive_errors: $consecutiveErrors\n")
+        sb.append("wakeups: $wakeups, $tasks tasks, ${tasks - wakeups} wakeups saved, ")
+        sb.append("avg ${preferences.getLong(KEY_WAKEUP_TIME, 0) / Math.max(wakeups, 1)} ms\n")
+        TASKS.forEach { name ->
+            val runs = preferences.getLong("$KEY_PREFIX_TASK_RUNS$name", 0)
+            if (runs <= 0) return@forEach
+            sb.append("$name: $runs runs, ")
+            sb.append("avg ${preferences.getLong("$KEY_PREFIX_TASK_TIME$name", 0) / runs} ms, ")
+            sb.append("${preferences.getLong("$KEY_PREFIX_TASK_ITEMS$name", 0)} items, ")
+            sb.append("${preferences.getLong("$KEY_PREFIX_TASK_ERRORS$name", 0)} errors\n")
+        }
+        preferences.all.filterKeys { it.startsWith(KEY_PREFIX_RATE) }.toSortedMap().forEach { (key, rate) ->
+            sb.append("${key.removePrefix(KEY_PREFIX_RATE)}: $rate items/h\n")
+        }
+        return sb.toString()
+    }
+
+    private fun SharedPreferences.Editor.increase(key: String, value: Long) {
+        putLong(key, preferences.getLong(key, 0) + value)
+    }
+
+    /**
+     * @param name [AutoRefreshType] or [TASK_FILTERS_SUBSCRIPTIONS]
+     * @param items New items fetched, 0 for filters subscriptions
+     */
+    data class TaskResult(val name: String, val durationMillis: Long, val items: Int, val success: Boolean)
+
+    companion object {
+        const val TASK_FILTERS_SUBSCRIPTIONS = "filters_subscriptions"
+
+        private const val TARGET_ITEMS_PER_REFRESH = 10f
+        private const val MAX_RATE_MULTIPLIER = 8
+        private const val MAX_ERROR_BACKOFF = 3
+        private const val MAX_INTERVAL_MULTIPLIER = 16
+        private const val MAX_RATE_WINDOW_HOURS = 24f
+        private const val RATE_SMOOTHING = 0.3f
+        private val FILTERS_SUBSCRIPTIONS_INTERVAL = TimeUnit.HOURS.toMillis(4)
+
+        private val TASKS = AutoRefreshType.ALL + TASK_FILTERS_SUBSCRIPTIONS
+
+        /**
+         * @param maxRate Items per hour of busiest timeline, null if not known yet
+         */
+        fun intervalMillis(baseInterval: Long, maxRate: Float?, consecutiveErrors: Int,
+                metered: Boolean): Long {
+            if (baseInterval <= 0) return baseInterval
+            var multiplier = 1
+            if (maxRate != null) {
+                val rateInterval = if (maxRate > 0) {
+                    TARGET_ITEMS_PER_REFRESH / maxRate * TimeUnit.HOURS.toMillis(1)
+                } else {
+                    Float.MAX_VALUE
+                }
+                // Powers of two, so interval doesn't change after every refresh
+                while (multiplier < MAX_RATE_MULTIPLIER && baseInterval * multiplier < rateInterval) {
+                    multiplier *= 2
+                }
+            }
+            multiplier = multiplier shl Math.min(consecutiveErrors, MAX_ERROR_BACKOFF)
+            if (metered) {
+                multiplier *= 2
+            }
+            return baseInterval * Math.min(multiplier, MAX_INTERVAL_MULTIPLIER)
+        }
+
+        private const val KEY_SCHEDULED_INTERVAL = "scheduled_interval"
+        private const val KEY_CONSECUTIVE_ERRORS = "consecutive_errors"
+        private const val KEY_LAST_REFRESH = "last_refresh"
+        private const val KEY_LAST_FILTERS_SUBSCRIPTIONS_REFRESH = "last_filters_subscriptions_refresh"
+        private const val KEY_WAKEUPS = "wakeups"
+        private const val KEY_WAKEUP_TIME = "wakeup_time"
+        private const val KEY_TASKS = "tasks"
+        private const val KEY_PREFIX_RATE = "rate_"
+        private const val KEY_PREFIX_TASK_RUNS = "task_runs_"
+        private const val KEY_PREFIX_TASK_TIME = "task_time_"
+        private const val KEY_PREFIX_TASK_ITEMS = "task_items_"
+        private const val KEY_PREFIX_TASK_ERRORS = "task_errors_"
+    }
+}
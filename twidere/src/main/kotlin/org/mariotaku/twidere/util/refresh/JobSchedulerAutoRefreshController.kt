@@ -7,11 +7,9 @@ import android.content.ComponentName
 import android.content.Context
 import android.os.Build
 import org.mariotaku.kpreferences.KPreferences
-import org.mariotaku.twidere.annotation.AutoRefreshType
-import org.mariotaku.twidere.constant.refreshIntervalKey
 import org.mariotaku.twidere.service.JobTaskService
-import org.mariotaku.twidere.service.JobTaskService.Companion.JOB_ID_REFRESH_FILTERS_SUBSCRIPTIONS
-import java.util.concurrent.TimeUnit
+import org.mariotaku.twidere.service.JobTaskService.Companion.JOB_IDS_REFRESH
+import org.mariotaku.twidere.service.JobTaskService.Companion.JOB_ID_REFRESH_ALL
 import android.Manifest.permission as AndroidPermissions
 
 /**
@@ -21,39 +19,39 @@ import android.Manifest.permission as AndroidPermissions
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
 class JobSchedulerAutoRefreshController(
         context: Context,
-        kPreferences: KPreferences
-) : AutoRefreshController(context, kPreferences) {
+        kPreferences: KPreferences,
+        stats: AutoRefreshStats
+) : AutoRefreshController(context, kPreferences, stats) {
     val scheduler: JobScheduler = context.getSystemService(Context.JOB_SCHEDULER_SERVICE) as JobScheduler
 
     override fun appStarted() {
         val allJobs = scheduler.allPendingJobs
-        AutoRefreshType.ALL.forEach { type ->
-            val jobId = JobTaskService.getRefreshJobId(type)
-            if (allJobs.none { job -> job.id == jobId }) {
-                // Start non existing job
-                schedule(type)
+        // Jobs scheduled before refreshes were coalesced
+        JOB_IDS_REFRESH.filter { it != JOB_ID_REFRESH_ALL }.forEach { jobId ->
+            if (allJobs.any { job -> job.id == jobId }) {
+                scheduler.cancel(jobId)
             }
         }
-        if (allJobs.none { job -> job.id == JOB_ID_REFRESH_FILTERS_SUBSCRIPTIONS }) {
-            scheduleJob(JOB_ID_REFRESH_FILTERS_SUBSCRIPTIONS, TimeUnit.HOURS.toMillis(4))
+        if (allJobs.none { job -> job.id == JOB_ID_REFRESH_ALL }) {
+            // Start non existing job
+            reschedule()
         }
     }
 
-    override fun schedule(@AutoRefreshType type: String) {
-        val jobId = JobTaskService.getRefreshJobId(type)
-        scheduler.cancel(jobId)
-        scheduleJob(jobId)
+    override fun schedule(intervalMillis: Long) {
+        scheduleJob(JOB_ID_REFRESH_ALL, intervalMillis)
     }
 
-    override fun unschedule(type: String) {
-        val jobId = JobTaskService.getRefreshJobId(type)
-        scheduler.cancel(jobId)
+    override fun unschedule() {
+        scheduler.cancel(JOB_ID_REFRESH_ALL)
     }
 
-    fun scheduleJob(jobId: Int, periodMillis: Long = TimeUnit.MINUTES.toMillis(kPreferences[refreshIntervalKey]), persisted: Boolean = true) {
+    fun scheduleJob(jobId: Int, periodMillis: Long, persisted: Boolean = true) {
         val builder = JobInfo.Builder(jobId, ComponentName(context, JobTaskService::class.java))
         builder.setPeriodic(periodMillis)
         builder.setPersisted(persisted)
+        // Don't wake up for nothing
+        builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
         try {
             scheduler.schedule(builder.build())
         } catch (e: IllegalArgumentException) {
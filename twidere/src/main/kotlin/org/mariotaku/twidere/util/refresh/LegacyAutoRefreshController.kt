@@ -8,65 +8,56 @@ import android.content.Context
 import android.content.Intent
 import android.os.Build
 import android.os.SystemClock
-import android.support.v4.util.ArrayMap
 import org.mariotaku.kpreferences.KPreferences
-import org.mariotaku.twidere.annotation.AutoRefreshType
-import org.mariotaku.twidere.constant.refreshIntervalKey
 import org.mariotaku.twidere.service.JobTaskService.Companion.JOB_IDS_REFRESH
 import org.mariotaku.twidere.service.LegacyTaskService
+import org.mariotaku.twidere.util.TaskServiceRunner.Companion.ACTIONS_REFRESH
+import org.mariotaku.twidere.util.TaskServiceRunner.Companion.ACTION_REFRESH_ALL
 import org.mariotaku.twidere.util.TaskServiceRunner.Companion.ACTION_REFRESH_FILTERS_SUBSCRIPTIONS
-import java.util.concurrent.TimeUnit
 
 class LegacyAutoRefreshController(
         context: Context,
-        kPreferences: KPreferences
-) : AutoRefreshController(context, kPreferences) {
+        kPreferences: KPreferences,
+        stats: AutoRefreshStats
+) : AutoRefreshController(context, kPreferences, stats) {
 
     private val alarmManager: AlarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
-    private val pendingIntents: ArrayMap<String, PendingIntent> = ArrayMap()
+    private val pendingIntent: PendingIntent
 
     init {
-        AutoRefreshType.ALL.forEach { type ->
-            val action = LegacyTaskService.getRefreshAction(type) ?: return@forEach
-            val intent = Intent(context, LegacyTaskService::class.java)
-            intent.action = action
-            pendingIntents[type] = PendingIntent.getService(context, 0, intent, 0)
-        }
+        val intent = Intent(context, LegacyTaskService::class.java)
+        intent.action = ACTION_REFRESH_ALL
+        pendingIntent = PendingIntent.getService(context, 0, intent, 0)
     }
 
     override fun appStarted() {
-        rescheduleAll()
-        rescheduleFiltersSubscriptionsRefresh()
+        // Alarms set before refreshes were coalesced
+        (ACTIONS_REFRESH + ACTION_REFRESH_FILTERS_SUBSCRIPTIONS).forEach { action ->
+            val intent = Intent(context, LegacyTaskService::class.java)
+            intent.action = action
+            val legacyIntent = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_NO_CREATE)
+                    ?: return@forEach
+            alarmManager.cancel(legacyIntent)
+            legacyIntent.cancel()
+        }
+        reschedule()
     }
 
-    override fun rescheduleAll() {
+    override fun reschedule() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             removeAllJobs(context, JOB_IDS_REFRESH)
         }
-        super.rescheduleAll()
+        super.reschedule()
     }
 
-    override fun unschedule(type: String) {
-        val pendingIntent = pendingIntents[type] ?: return
+    override fun unschedule() {
         alarmManager.cancel(pendingIntent)
     }
 
-    override fun schedule(type: String) {
-        val pendingIntent = pendingIntents[type] ?: return
-        val interval = TimeUnit.MINUTES.toMillis(kPreferences[refreshIntervalKey])
-        if (interval > 0) {
-            val triggerAt = SystemClock.elapsedRealtime() + interval
-            alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, interval, pendingIntent)
-        }
-    }
-
-    private fun rescheduleFiltersSubscriptionsRefresh() {
-        val interval = TimeUnit.HOURS.toMillis(4)
-        val triggerAt = SystemClock.elapsedRealtime() + interval
-        val intent = Intent(context, LegacyTaskService::class.java)
-        intent.action = ACTION_REFRESH_FILTERS_SUBSCRIPTIONS
-        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, interval,
-                PendingIntent.getService(context, 0, intent, 0))
+    override fun schedule(intervalMillis: Long) {
+        val triggerAt = SystemClock.elapsedRealtime() + intervalMillis
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, intervalMillis,
+                pendingIntent)
     }
 
     companion object {
@@ -0,0 +1,149 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.streaming
+
+import android.content.ContentResolver
+import android.content.ContentValues
+import android.net.Uri
+import org.mariotaku.twidere.TwidereConstants.QUERY_PARAM_NOTIFY_CHANGE
+import org.mariotaku.twidere.util.UriUtils
+import org.mariotaku.twidere.util.content.ContentResolverUtils
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Collects rows produced by streaming callbacks and writes them in micro-batches.
+ *
+ * A batch is flushed when it reaches [maxBatchSize] rows or [flushDelay] ms after its first row,
+ * whichever comes first. Each flush removes replaced rows, does one `bulkInsert` per URI, runs
+ * pending deletions, then sends exactly one `notifyChange` per affected URI.
+ *
+ * Created by mariotaku on 2017/5/22.
+ */
+class StreamingBatchWriter(
+        private val resolver: ContentResolver,
+        private val maxBatchSize: Int = 50,
+        private val flushDelay: Long = 500
+) {
+
+    private val lock = Any()
+    private val inserts = LinkedHashMap<Uri, MutableList<ContentValues>>()
+    private val replaced = LinkedHashMap<Uri, MutableList<Pair<String, Array<String>?>>>()
+    private val deletions = LinkedHashMap<Uri, MutableList<Pair<String, Array<String>?>>>()
+    private var pendingCount = 0
+    private var scheduledFlush: ScheduledFuture<*>? = null
+
+    private val executor = Executors.newSingleThreadScheduledExecutor()
+
+    fun insert(uri: Uri, values: ContentValues) {
+        synchronized(lock) {
+            inserts.getOrPut(uri) { ArrayList() }.add(values)
+            onItemAdded()
+        }
+    }
+
+    /**
+     * Replace row previously added by [insert]. If [old] is still pending it will be swapped
+     * in place, otherwise rows matching [where] are deleted before [values] get inserted.
+     */
+    fun replace(uri: Uri, old: ContentValues, values: ContentValues, where: String,
+            whereArgs: Array<String>?) {
+        synchronized(lock) {
+            val list = inserts[uri]
+            val idx = list?.indexOfFirst { it === old } ?: -1
+            if (list != null && idx >= 0) {
+                list[idx] = values
+                return
+            }
+            inserts.getOrPut(uri) { ArrayList() }.add(values)
+            replaced.getOrPut(uri) { ArrayList() }.add(Pair(where, whereArgs))
+            onItemAdded()
+        }
+    }
+
+    fun delete(uri: Uri, where: String, whereArgs: Array<String>?) {
+        synchronized(lock) {
+            deletions.getOrPut(uri) { ArrayList() }.add(Pair(where, whereArgs))
+            onItemAdded()
+        }
+    }
+
+    fun flush() {
+        val batchInserts: Map<Uri, List<ContentValues>>
+        val batchReplaced: Map<Uri, List<Pair<String, Array<String>?>>>
+        val batchDeletions: Map<Uri, List<Pair<String, Array<String>?>>>
+        synchronized(lock) {
+            scheduledFlush?.cancel(false)
+            scheduledFlush = null
+            if (pendingCount == 0) return
+            batchInserts = LinkedHashMap(inserts)
+            batchReplaced = LinkedHashMap(replaced)
+            batchDeletions = LinkedHashMap(deletions)
+            inserts.clear()
+            replaced.clear()
+            deletions.clear()
+            pendingCount = 0
+        }
+        val changedUris = LinkedHashSet<Uri>()
+        delete(batchReplaced, changedUris)
+        batchInserts.forEach { (uri, values) ->
+            if (ContentResolverUtils.bulkInsert(resolver, uri.withoutNotify(), values) > 0) {
+                changedUris.add(uri)
+            }
+        }
+        // Deletion events may refer to statuses inserted in the same batch
+        delete(batchDeletions, changedUris)
+        changedUris.forEach { resolver.notifyChange(it, null) }
+    }
+
+    /**
+     * Flush remaining rows in background, rows added after this call will be dropped
+     */
+    fun close() {
+        if (executor.isShutdown) return
+        executor.execute { flush() }
+        executor.shutdown()
+    }
+
+    private fun delete(deletions: Map<Uri, List<Pair<String, Array<String>?>>>,
+            changedUris: MutableSet<Uri>) {
+        deletions.forEach { (uri, list) ->
+            list.forEach { (where, whereArgs) ->
+                if (resolver.delete(uri.withoutNotify(), where, whereArgs) > 0) {
+                    changedUris.add(uri)
+                }
+            }
+        }
+    }
+
+    private fun onItemAdded() {
+        pendingCount++
+        if (executor.isShutdown) return
+        if (pendingCount >= maxBatchSize) {
+            executor.execute { flush() }
+        } else if (scheduledFlush == null) {
+            scheduledFlush = executor.schedule({ flush() }, flushDelay, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    private fun Uri.withoutNotify() = UriUtils.appendQueryParameters(this,
+            QUERY_PARAM_NOTIFY_CHANGE, false)
+}
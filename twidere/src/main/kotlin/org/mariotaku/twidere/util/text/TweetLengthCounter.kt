@@ -0,0 +1,128 @@
+/*
+ *             Twidere - Twitter client for Android
+ *
+ *  Copyright (C) 2012-2017 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.text
+
+import com.twitter.Validator
+
+/**
+ * Computes same result as [Validator.getTweetLength], but only re-scans words touched since last
+ * call, so counting length on every keystroke doesn't run URL regex over whole text.
+ *
+ * Text is split into words by space, tab and line breaks. None of them can be part of a URL, or
+ * compose with neighbouring characters in NFC, so tweet length of text is its char count plus
+ * sum of differences between tweet length and char count of every word. Differences of words
+ * are cached between calls, words overlapping or next to changed range are measured again.
+ *
+ * Not thread safe, use one instance for every text field.
+ *
+ * Created by mariotaku on 2017/5/27.
+ */
+class TweetLengthCounter(private val validator: Validator) {
+
+    private var text: String = ""
+    private var words: ArrayList<Word> = ArrayList()
+    private var adjustment: Int = 0
+
+    fun getTweetLength(text: String): Int {
+        if (text != this.text) {
+            update(text)
+        }
+        return text.length + adjustment
+    }
+
+    private fun update(newText: String) {
+        val oldText = text
+        val minLength = Math.min(oldText.length, newText.length)
+        var prefix = 0
+        while (prefix < minLength && oldText[prefix] == newText[prefix]) {
+            prefix++
+        }
+        var suffix = 0
+        while (suffix < minLength - prefix && oldText[oldText.length - 1 - suffix] ==
+                newText[newText.length - 1 - suffix]) {
+            suffix++
+        }
+        // Changed range is [prefix, oldChangeEnd) in old text
+        val oldChangeEnd = oldText.length - suffix
+        val shift = newText.length - oldText.length
+
+        // Words ending before changed range, they are followed by an unchanged separator
+        var head = 0
+        while (head < words.size && words[head].end < prefix) {
+            head++
+        }
+        // Words starting after changed range, they are preceded by an unchanged separator
+        var tail = head
+        while (tail < words.size && words[tail].start <= oldChangeEnd) {
+            tail++
+        }
+        val scanStart = if (head > 0) words[head - 1].end else 0
+        val scanEnd = if (tail < words.size) words[tail].start + shift else newText.length
+
+        val result = ArrayList<Word>(words.size + 4)
+        var newAdjustment = 0
+        for (i in 0 until head) {
+            val word = words[i]
+            result.add(word)
+            newAdjustment += word.adjustment
+        }
+        var wordStart = -1
+        for (i in scanStart..scanEnd) {
+            if (i < scanEnd && !isSeparator(newText[i])) {
+                if (wordStart < 0) wordStart = i
+                continue
+            }
+            if (wordStart < 0) continue
+            val word = measure(newText, wordStart, i)
+            result.add(word)
+            newAdjustment += word.adjustment
+            wordStart = -1
+        }
+        for (i in tail until words.size) {
+            val word = words[i]
+            word.start += shift
+            word.end += shift
+            result.add(word)
+            newAdjustment += word.adjustment
+        }
+
+        text = newText
+        words = result
+        adjustment = newAdjustment
+    }
+
+    private fun measure(text: String, start: Int, end: Int): Word {
+        val length = validator.getTweetLength(text.substring(start, end))
+        return Word(start, end, length - (end - start))
+    }
+
+    /**
+     * @param adjustment Tweet length minus char count of this word
+     */
+    private class Word(var start: Int, var end: Int, val adjustment: Int)
+
+    companion object {
+
+        /**
+         * Characters never matched by URL patterns, and never composed with others in NFC
+         */
+        private fun isSeparator(ch: Char) = ch == ' ' || ch == '\n' || ch == '\t' || ch == '\r'
+    }
+}
@@ -144,6 +144,7 @@ class StatusViewHolder(private val adapter: IStatusesAdapter<*>, itemView: View)
         val requestManager = adapter.requestManager
         val twitter = adapter.twitterWrapper
         val linkify = adapter.twidereLinkify
+        val textCache = adapter.statusTextCache
         val formatter = adapter.bidiFormatter
         val colorNameManager = adapter.userColorNameManager
         val nameFirst = adapter.nameFirst
@@ -216,21 +217,25 @@ class StatusViewHolder(private val adapter: IStatusesAdapter<*>, itemView: View)
                         status.quoted_user_name)
                 quotedNameView.screenName = "@${status.quoted_user_acct}"
 
-                val quotedDisplayEnd = status.extras?.quoted_display_text_range?.getOrNull(1) ?: -1
-                val quotedText: CharSequence
-                if (adapter.linkHighlightingStyle != VALUE_LINK_HIGHLIGHT_OPTION_CODE_NONE) {
-                    quotedText = SpannableStringBuilder.valueOf(status.quoted_text_unescaped)
-                    status.quoted_spans?.applyTo(quotedText)
-                    linkify.applyAllLinks(quotedText, status.account_key, layoutPosition.toLong(),
-                            status.is_possibly_sensitive, adapter.linkHighlightingStyle,
-                            skipLinksInText)
+                if (textCache != null) {
+                    quotedTextView.spannable = textCache.get(status).quotedText
                 } else {
-                    quotedText = status.quoted_text_unescaped
-                }
-                if (quotedDisplayEnd != -1 && quotedDisplayEnd <= quotedText.length) {
-                    quotedTextView.spannable = quotedText.subSequence(0, quotedDisplayEnd)
-                } else {
-                    quotedTextView.spannable = quotedText
+                    val quotedDisplayEnd = status.extras?.quoted_display_text_range?.getOrNull(1) ?: -1
+                    val quotedText: CharSequence
+                    if (adapter.linkHighlightingStyle != VALUE_LINK_HIGHLIGHT_OPTION_CODE_NONE) {
+                        quotedText = SpannableStringBuilder.valueOf(status.quoted_text_unescaped)
+                        status.quoted_spans?.applyTo(quotedText)
+                        linkify.applyAllLinks(quotedText, status.account_key, layoutPosition.toLong(),
+                                status.is_possibly_sensitive, adapter.linkHighlightingStyle,
+                                skipLinksInText)
+                    } else {
+                        quotedText = status.quoted_text_unescaped
+                    }
+                    if (quotedDisplayEnd != -1 && quotedDisplayEnd <= quotedText.length) {
+                        quotedTextView.spannable = quotedText.subSequence(0, quotedDisplayEnd)
+                    } else {
+                        quotedTextView.spannable = quotedText
+                    }
                 }
 
                 if (quotedTextView.length() == 0) {
@@ -368,6 +373,10 @@ class StatusViewHolder(private val adapter: IStatusesAdapter<*>, itemView: View)
                 setSpan(StyleSpan(Typeface.ITALIC), 0, length, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE)
             }
             displayEnd = -1
+        } else if (textCache != null) {
+            // Already trimmed to display range
+            text = textCache.get(status).text
+            displayEnd = -1
         } else if (adapter.linkHighlightingStyle != VALUE_LINK_HIGHLIGHT_OPTION_CODE_NONE) {
             text = SpannableStringBuilder.valueOf(status.text_unescaped).apply {
                 status.spans?.applyTo(this)